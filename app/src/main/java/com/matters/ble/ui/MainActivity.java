@@ -10,9 +10,11 @@ import com.matters.ble.Utils;
 import com.matters.ble.library.device.BLEDevice;
 import com.matters.ble.library.manager.BLEManager;
 
+import java.util.Collection;
+
 import javax.inject.Inject;
 
-public class MainActivity extends ContractActivity<MainActivity.Contract> implements BLEManager.RangingListener {
+public class MainActivity extends ContractActivity<MainActivity.Contract> implements BLEManager.BatchRangingListener {
 
     private static final int REQUEST_CODE_ENABLE_BLUETOOTH = 1;
 
@@ -70,6 +72,12 @@ public class MainActivity extends ContractActivity<MainActivity.Contract> implem
         Utils.showToast(this, bleDevice.toString());
     }
 
+    @Override
+    public void onDevicesFound(Collection<BLEDevice> bleDevices) {
+        // batches arrive every 100 ms, too often for a toast
+        setTitle(String.format("%d devices updated", bleDevices.size()));
+    }
+
     private void connectAndStartRanging() {
         bleManager.connect(new BLEManager.ServiceBoundCallback() {
             @Override
@@ -0,0 +1,14 @@
+package android.bluetooth;
+
+/**
+ * Benchmark stub of the Android class, only the scan callback is used.
+ */
+public final class BluetoothAdapter {
+
+    public interface LeScanCallback {
+        void onLeScan(BluetoothDevice device, int rssi, byte[] scanRecord);
+    }
+
+    private BluetoothAdapter() {
+    }
+}
@@ -0,0 +1,33 @@
+package android.bluetooth;
+
+/**
+ * Benchmark stub of the Android class, a device with a fixed address and no name.
+ */
+public final class BluetoothDevice {
+
+    public static final int BOND_NONE = 10;
+
+    public static final int DEVICE_TYPE_LE = 2;
+
+    private final String address;
+
+    public BluetoothDevice(String address) {
+        this.address = address;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return null;
+    }
+
+    public int getType() {
+        return DEVICE_TYPE_LE;
+    }
+
+    public int getBondState() {
+        return BOND_NONE;
+    }
+}
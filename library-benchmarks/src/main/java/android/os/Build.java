@@ -0,0 +1,23 @@
+package android.os;
+
+/**
+ * Benchmark stub of the Android class.
+ */
+public final class Build {
+
+    public static final class VERSION {
+        public static final int SDK_INT = 21;
+    }
+
+    public static final class VERSION_CODES {
+        public static final int GINGERBREAD = 9;
+        public static final int ICE_CREAM_SANDWICH = 14;
+        public static final int JELLY_BEAN = 16;
+        public static final int JELLY_BEAN_MR2 = 18;
+        public static final int KITKAT = 19;
+        public static final int LOLLIPOP = 21;
+    }
+
+    private Build() {
+    }
+}
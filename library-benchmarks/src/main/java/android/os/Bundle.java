@@ -0,0 +1,20 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmark stub of the Android class, holding the byte arrays of device blocks.
+ */
+public final class Bundle {
+
+    private final Map<String, byte[]> byteArrays = new HashMap<String, byte[]>();
+
+    public void putByteArray(String key, byte[] value) {
+        byteArrays.put(key, value);
+    }
+
+    public byte[] getByteArray(String key) {
+        return byteArrays.get(key);
+    }
+}
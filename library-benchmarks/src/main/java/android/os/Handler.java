@@ -0,0 +1,25 @@
+package android.os;
+
+/**
+ * Benchmark stub of the Android class. Posted work is dropped, so the benchmarks
+ * measure the scan thread side of the delivery only.
+ */
+public class Handler {
+
+    public Handler() {
+    }
+
+    public Handler(Looper looper) {
+    }
+
+    public boolean post(Runnable runnable) {
+        return true;
+    }
+
+    public boolean postDelayed(Runnable runnable, long delayMillis) {
+        return true;
+    }
+
+    public void removeCallbacks(Runnable runnable) {
+    }
+}
@@ -0,0 +1,20 @@
+package android.os;
+
+/**
+ * Benchmark stub of the Android class.
+ */
+public final class Looper {
+
+    private static final Looper MAIN = new Looper();
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+
+    public static Looper myLooper() {
+        return MAIN;
+    }
+
+    private Looper() {
+    }
+}
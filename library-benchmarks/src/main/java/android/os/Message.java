@@ -0,0 +1,34 @@
+package android.os;
+
+/**
+ * Benchmark stub of the Android class.
+ */
+public final class Message {
+
+    public int what;
+
+    public int arg1;
+
+    public int arg2;
+
+    public Messenger replyTo;
+
+    private Bundle data;
+
+    public static Message obtain(Handler handler, int what) {
+        final Message message = new Message();
+        message.what = what;
+        return message;
+    }
+
+    public Bundle getData() {
+        if (data == null) {
+            data = new Bundle();
+        }
+        return data;
+    }
+
+    public void setData(Bundle data) {
+        this.data = data;
+    }
+}
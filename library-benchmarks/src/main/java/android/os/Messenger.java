@@ -0,0 +1,13 @@
+package android.os;
+
+/**
+ * Benchmark stub of the Android class. Sent messages are dropped.
+ */
+public final class Messenger {
+
+    public Messenger(Handler handler) {
+    }
+
+    public void send(Message message) throws RemoteException {
+    }
+}
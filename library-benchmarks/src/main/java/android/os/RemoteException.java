@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * Benchmark stub of the Android class.
+ */
+public class RemoteException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public RemoteException() {
+    }
+}
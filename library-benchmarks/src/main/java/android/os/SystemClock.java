@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * Benchmark stub of the Android class.
+ */
+public final class SystemClock {
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private SystemClock() {
+    }
+}
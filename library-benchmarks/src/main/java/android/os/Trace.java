@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Benchmark stub of the Android class. Sections are not recorded.
+ */
+public final class Trace {
+
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+
+    private Trace() {
+    }
+}
@@ -0,0 +1,19 @@
+package android.util;
+
+/**
+ * Benchmark stub of the Android class.
+ */
+public final class Log {
+
+    public static int e(String tag, String message, Throwable throwable) {
+        System.err.println(tag + ": " + message);
+        return 0;
+    }
+
+    public static int d(String tag, String message) {
+        return 0;
+    }
+
+    private Log() {
+    }
+}
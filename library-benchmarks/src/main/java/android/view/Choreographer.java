@@ -0,0 +1,23 @@
+package android.view;
+
+/**
+ * Benchmark stub of the Android class. Frame callbacks are dropped.
+ */
+public final class Choreographer {
+
+    private static final Choreographer INSTANCE = new Choreographer();
+
+    public interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    public static Choreographer getInstance() {
+        return INSTANCE;
+    }
+
+    public void postFrameCallback(FrameCallback callback) {
+    }
+
+    private Choreographer() {
+    }
+}
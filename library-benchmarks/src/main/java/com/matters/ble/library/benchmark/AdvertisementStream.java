@@ -0,0 +1,143 @@
+package com.matters.ble.library.benchmark;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.util.Random;
+
+import com.matters.ble.library.util.MacAddress;
+
+/**
+ * Precomputed sequence of advertisements replayed by the benchmarks.
+ *
+ * A resident population of devices fills the cache. Every advertisement comes from a resident
+ * device with the hit ratio probability and from a device of a much larger cold population
+ * otherwise, so the cache sees the requested ratio of hits once warm.
+ */
+public final class AdvertisementStream {
+
+    private static final int LENGTH = 1 << 14;
+
+    private static final int COLD_POPULATION_FACTOR = 64;
+
+    private final BluetoothDevice[] devices = new BluetoothDevice[LENGTH];
+
+    private final long[] addresses = new long[LENGTH];
+
+    private final String[] addressStrings = new String[LENGTH];
+
+    private final int[] rssis = new int[LENGTH];
+
+    private final byte[][] records = new byte[LENGTH][];
+
+    private final BluetoothDevice[] residentDevices;
+
+    private int position;
+
+    /**
+     * Instantiates a new Advertisement stream.
+     *
+     * @param population the number of resident devices
+     * @param payloadSize the scan record length
+     * @param hitRatio the share of advertisements coming from resident devices
+     */
+    public AdvertisementStream(int population, int payloadSize, double hitRatio) {
+        final Random random = new Random(42);
+        residentDevices = newDevices(population, 0);
+        final BluetoothDevice[] coldDevices = newDevices(population * COLD_POPULATION_FACTOR, population);
+
+        for (int i = 0; i < LENGTH; i++) {
+            final BluetoothDevice device = random.nextDouble() < hitRatio
+                                           ? residentDevices[random.nextInt(residentDevices.length)]
+                                           : coldDevices[random.nextInt(coldDevices.length)];
+            devices[i] = device;
+            addressStrings[i] = device.getAddress();
+            addresses[i] = MacAddress.toLong(device.getAddress());
+            rssis[i] = -40 - random.nextInt(50);
+            records[i] = newRecord(payloadSize, random);
+        }
+    }
+
+    /**
+     * Advances to the next advertisement.
+     */
+    public void next() {
+        position = (position + 1) & (LENGTH - 1);
+    }
+
+    /**
+     * Gets device of the current advertisement.
+     *
+     * @return the device
+     */
+    public BluetoothDevice device() {
+        return devices[position];
+    }
+
+    /**
+     * Gets packed address of the current advertisement.
+     *
+     * @return the address
+     */
+    public long address() {
+        return addresses[position];
+    }
+
+    /**
+     * Gets address of the current advertisement as a string.
+     *
+     * @return the address string
+     */
+    public String addressString() {
+        return addressStrings[position];
+    }
+
+    /**
+     * Gets rssi of the current advertisement.
+     *
+     * @return the rssi
+     */
+    public int rssi() {
+        return rssis[position];
+    }
+
+    /**
+     * Gets scan record of the current advertisement.
+     *
+     * @return the record
+     */
+    public byte[] record() {
+        return records[position];
+    }
+
+    /**
+     * Gets the resident devices, to warm up caches with.
+     *
+     * @return the resident devices
+     */
+    public BluetoothDevice[] residentDevices() {
+        return residentDevices;
+    }
+
+    private static BluetoothDevice[] newDevices(int count, int offset) {
+        final BluetoothDevice[] devices = new BluetoothDevice[count];
+        for (int i = 0; i < count; i++) {
+            devices[i] = new BluetoothDevice(MacAddress.toString(0xC0FFEE000000L + offset + i));
+        }
+        return devices;
+    }
+
+    private static byte[] newRecord(int payloadSize, Random random) {
+        final byte[] record = new byte[payloadSize];
+        random.nextBytes(record);
+        if (payloadSize >= 3) {
+            record[0] = 2;
+            record[1] = 0x01;
+            record[2] = 0x06;
+        }
+        if (payloadSize >= 7) {
+            record[3] = (byte) Math.min(payloadSize - 4, 30);
+            record[4] = (byte) 0xFF;
+        }
+        return record;
+    }
+}
@@ -0,0 +1,54 @@
+package com.matters.ble.library.callback;
+
+import android.bluetooth.BluetoothDevice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.benchmark.AdvertisementStream;
+
+/**
+ * Cost of creating the device of an advertisement from an unknown address.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MutableBLEDeviceBenchmark {
+
+    @Param({"31", "62"})
+    public int payloadSize;
+
+    private AdvertisementStream stream;
+
+    private DeviceAttributeCache attributeCache;
+
+    @Setup
+    public void setUp() {
+        stream = new AdvertisementStream(1000, payloadSize, 1);
+        attributeCache = new DeviceAttributeCache();
+    }
+
+    @Benchmark
+    public MutableBLEDevice construct() {
+        stream.next();
+        final BluetoothDevice device = stream.device();
+        final MutableBLEDevice bleDevice = new MutableBLEDevice(device, attributeCache, stream.address());
+        bleDevice.setScanResponse(stream.record());
+        bleDevice.setRssi(stream.rssi());
+        return bleDevice;
+    }
+}
@@ -0,0 +1,75 @@
+package com.matters.ble.library.callback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.benchmark.AdvertisementStream;
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.pipeline.OverflowPolicy;
+
+/**
+ * Cost of a single advertisement in {@link RangeCallback#onLeScan}. With a scan queue the
+ * benchmark measures the scan thread side only, the copy into the queue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RangeCallbackBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int population;
+
+    @Param({"31", "62"})
+    public int payloadSize;
+
+    @Param({"0.5", "0.99"})
+    public double hitRatio;
+
+    @Param({"0", "1024"})
+    public int scanQueueCapacity;
+
+    private AdvertisementStream stream;
+
+    private RangeCallback callback;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stream = new AdvertisementStream(population, payloadSize, hitRatio);
+        callback = new RangeCallback(new BLEManager.Configuration.Builder()
+                                             .setCacheCapacity(population)
+                                             .setScanQueueCapacity(scanQueueCapacity)
+                                             .setScanQueueOverflowPolicy(OverflowPolicy.DROP_NEWEST)
+                                             .build(),
+                                     new DeviceAttributeCache());
+        for (int i = 0; i < stream.residentDevices().length; i++) {
+            callback.onLeScan(stream.residentDevices()[i], -60, stream.record());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        callback.close();
+    }
+
+    @Benchmark
+    public void onLeScan() {
+        stream.next();
+        callback.onLeScan(stream.device(), stream.rssi(), stream.record());
+    }
+}
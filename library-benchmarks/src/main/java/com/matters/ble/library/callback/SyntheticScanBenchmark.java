@@ -0,0 +1,95 @@
+package com.matters.ble.library.callback;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.scan.SyntheticScanSource;
+
+/**
+ * Advertisements per second {@link RangeCallback} keeps up with when a synthetic population
+ * advertises at 195 ms, i.e. about 50000 advertisements per simulated second for 10000
+ * devices. Every invocation simulates 100 ms, the advertisements counter reports the rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyntheticScanBenchmark {
+
+    private static final long SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Param({"1000", "10000"})
+    public int population;
+
+    @Param({"0", "0.05"})
+    public double payloadChurnProbability;
+
+    private SyntheticScanSource source;
+
+    private RangeCallback callback;
+
+    private long simulatedNanos;
+
+    /**
+     * The advertisements emitted in an iteration, reported per second by JMH.
+     */
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long advertisements;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            advertisements = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = new SyntheticScanSource.Builder()
+                .setDeviceCount(population)
+                .setAdvertisingIntervalMillis(195)
+                .setPayloadChurnProbability(payloadChurnProbability)
+                .build();
+        callback = new RangeCallback(new BLEManager.Configuration.Builder()
+                                             .setCacheCapacity(population)
+                                             .setScanQueueCapacity(0)
+                                             .setReportRssiDelta(3)
+                                             .build(),
+                                     new DeviceAttributeCache());
+        // the registry is filled before measuring, so that only known devices are updated
+        simulatedNanos = TimeUnit.SECONDS.toNanos(1);
+        source.advance(simulatedNanos, callback);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        callback.close();
+    }
+
+    @Benchmark
+    public int advance(Counters counters) {
+        simulatedNanos += SLICE_NANOS;
+        final int emitted = source.advance(simulatedNanos, callback);
+        counters.advertisements += emitted;
+        return emitted;
+    }
+}
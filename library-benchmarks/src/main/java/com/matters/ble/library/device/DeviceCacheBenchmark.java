@@ -0,0 +1,110 @@
+package com.matters.ble.library.device;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.benchmark.AdvertisementStream;
+import com.matters.ble.library.util.Clock;
+import com.matters.ble.library.util.LimitedLinkedHashMap;
+import com.matters.ble.library.util.MacAddress;
+
+/**
+ * Cost of a lookup-or-insert in the device cache: the string keyed {@link LimitedLinkedHashMap}
+ * the callback used to keep devices in, against the {@link DeviceRegistry} keyed by packed address.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceCacheBenchmark {
+
+    private static final Object DEVICE = new Object();
+
+    @Param({"100", "1000", "10000"})
+    public int population;
+
+    @Param({"0.5", "0.9", "0.99"})
+    public double hitRatio;
+
+    private AdvertisementStream stream;
+
+    private LimitedLinkedHashMap<String, Object> linkedHashMap;
+
+    private DeviceRegistry<Object> lruRegistry;
+
+    private DeviceRegistry<Object> lfuRegistry;
+
+    @Setup
+    public void setUp() {
+        stream = new AdvertisementStream(population, 0, hitRatio);
+        linkedHashMap = new LimitedLinkedHashMap<String, Object>(population, true);
+        lruRegistry = new DeviceRegistry<Object>(population);
+        lfuRegistry = new DeviceRegistry<Object>(population, DeviceRegistry.EvictionPolicy.LFU, DeviceRegistry.NO_TTL,
+                                                 Clock.SYSTEM,
+                                                 DeviceRegistry.EvictionListener.NULL);
+        for (int i = 0; i < stream.residentDevices().length; i++) {
+            final String address = stream.residentDevices()[i].getAddress();
+            linkedHashMap.put(address, DEVICE);
+            lruRegistry.put(MacAddress.toLong(address), DEVICE);
+            lfuRegistry.put(MacAddress.toLong(address), DEVICE);
+        }
+    }
+
+    @Benchmark
+    public Object limitedLinkedHashMap() {
+        stream.next();
+        final String address = stream.addressString();
+        Object device = linkedHashMap.get(address);
+        if (device == null) {
+            device = DEVICE;
+            linkedHashMap.put(address, device);
+        }
+        return device;
+    }
+
+    @Benchmark
+    public Object deviceRegistryLru() {
+        return getOrPut(lruRegistry);
+    }
+
+    @Benchmark
+    public Object deviceRegistryLfu() {
+        return getOrPut(lfuRegistry);
+    }
+
+    @Benchmark
+    public Object deviceRegistryLruWithAddressParsing() {
+        stream.next();
+        final long address = MacAddress.toLong(stream.addressString());
+        Object device = lruRegistry.get(address);
+        if (device == null) {
+            device = DEVICE;
+            lruRegistry.put(address, device);
+        }
+        return device;
+    }
+
+    private Object getOrPut(DeviceRegistry<Object> registry) {
+        stream.next();
+        final long address = stream.address();
+        Object device = registry.get(address);
+        if (device == null) {
+            device = DEVICE;
+            registry.put(address, device);
+        }
+        return device;
+    }
+}
@@ -0,0 +1,51 @@
+package com.matters.ble.library.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of hashing a scan record with {@link HashCodeBuilder#append(byte[])}, against
+ * {@link Arrays#hashCode(byte[])} as baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashCodeBuilderBenchmark {
+
+    @Param({"31", "62", "255"})
+    public int payloadSize;
+
+    private byte[] record;
+
+    @Setup
+    public void setUp() {
+        record = new byte[payloadSize];
+        new Random(42).nextBytes(record);
+    }
+
+    @Benchmark
+    public int appendBytes() {
+        return HashCodeBuilder.init().append(record).toHashCode();
+    }
+
+    @Benchmark
+    public int arraysHashCode() {
+        return Arrays.hashCode(record);
+    }
+}
@@ -0,0 +1,106 @@
+package com.matters.ble.library.att;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class AttPduTest {
+
+    private static final UUID CUSTOM = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+
+    private AttPdu SUT;
+
+    @Before
+    public void setUp() {
+        SUT = new AttPdu();
+    }
+
+    @Test
+    public void shouldDecodeWhatItEncodes() {
+        final byte[] value = new byte[] { 1, 2, 3, 4 };
+        SUT.writeRequest(0x0123, value, 1, 2);
+
+        assertThat(SUT.getLength()).isEqualTo(5);
+        assertThat(SUT.isValid()).isTrue();
+        assertThat(SUT.getOpcode()).isEqualTo(Att.WRITE_REQ);
+        assertThat(SUT.getHandle()).isEqualTo(0x0123);
+        assertThat(SUT.getBuffer().get(1)).isEqualTo((byte) 0x23);
+        final byte[] copy = new byte[2];
+        assertThat(SUT.copyValue(copy, 0)).isEqualTo(2);
+        assertThat(copy).isEqualTo(new byte[] { 2, 3 });
+
+        SUT.prepareWriteRequest(0xFFFE, 600, value, 0, 4);
+        assertThat(SUT.isValid()).isTrue();
+        assertThat(SUT.getHandle()).isEqualTo(0xFFFE);
+        assertThat(SUT.getValueOffset()).isEqualTo(600);
+        assertThat(SUT.getValueStart()).isEqualTo(5);
+        assertThat(SUT.getValueLength()).isEqualTo(4);
+
+        SUT.errorResponse(Att.READ_REQ, 0x0042, Att.ERROR_READ_NOT_PERMITTED);
+        assertThat(SUT.isValid()).isTrue();
+        assertThat(SUT.getErrorRequestOpcode()).isEqualTo(Att.READ_REQ);
+        assertThat(SUT.getErrorHandle()).isEqualTo(0x0042);
+        assertThat(SUT.getErrorCode()).isEqualTo(Att.ERROR_READ_NOT_PERMITTED);
+    }
+
+    @Test
+    public void shouldTruncateValuesToMtu() {
+        final byte[] value = new byte[100];
+        SUT.readResponse(value, 0, value.length);
+        assertThat(SUT.getLength()).isEqualTo(Att.DEFAULT_MTU);
+        assertThat(SUT.getValueLength()).isEqualTo(Att.DEFAULT_MTU - 1);
+
+        SUT.setMtu(64);
+        SUT.notification(0x0010, value, 0, value.length);
+        assertThat(SUT.getLength()).isEqualTo(64);
+        assertThat(SUT.getValueLength()).isEqualTo(61);
+    }
+
+    @Test
+    public void shouldFillListsUpToMtu() {
+        SUT.readByGroupTypeResponse(2);
+        final byte[] uuid16 = new byte[] { 0x0F, 0x18 };
+        int count = 0;
+        while (SUT.addGroup(1 + 4 * count, 4 + 4 * count, uuid16, 0)) {
+            count++;
+        }
+
+        assertThat(count).isEqualTo(3);
+        assertThat(SUT.isValid()).isTrue();
+        assertThat(SUT.getEntryCount()).isEqualTo(3);
+        assertThat(SUT.getEntryHandle(2)).isEqualTo(9);
+        assertThat(SUT.getEntryEndGroupHandle(2)).isEqualTo(12);
+        assertThat(SUT.getEntryValueLength()).isEqualTo(2);
+        assertThat(SUT.getBuffer().get(SUT.getEntryValueStart(1))).isEqualTo((byte) 0x0F);
+    }
+
+    @Test
+    public void shouldEncodeShortAndLongUuids() {
+        final UUID battery = Att.shortUuid(0x180F);
+        SUT.readByTypeRequest(1, 0xFFFF, battery);
+        assertThat(SUT.getLength()).isEqualTo(7);
+        assertThat(SUT.isValid()).isTrue();
+        assertThat(new UUID(SUT.getTypeMsb(), SUT.getTypeLsb())).isEqualTo(battery);
+
+        SUT.readByTypeRequest(1, 0xFFFF, CUSTOM);
+        assertThat(SUT.getLength()).isEqualTo(21);
+        assertThat(new UUID(SUT.getTypeMsb(), SUT.getTypeLsb())).isEqualTo(CUSTOM);
+
+        SUT.findInformationResponse(true);
+        assertThat(SUT.addInformation(0x0021, CUSTOM.getMostSignificantBits(), CUSTOM.getLeastSignificantBits())).isTrue();
+        assertThat(SUT.addInformation(0x0022, CUSTOM.getMostSignificantBits(), CUSTOM.getLeastSignificantBits())).isFalse();
+
+        final ByteBuffer received = ByteBuffer.allocate(Att.DEFAULT_MTU);
+        received.put(SUT.getBuffer());
+        received.flip();
+        final AttPdu pdu = new AttPdu(received);
+        assertThat(pdu.isValid()).isTrue();
+        assertThat(pdu.getEntryCount()).isEqualTo(1);
+        assertThat(pdu.getEntryHandle(0)).isEqualTo(0x0021);
+        assertThat(new UUID(pdu.getEntryTypeMsb(0), pdu.getEntryTypeLsb(0))).isEqualTo(CUSTOM);
+    }
+}
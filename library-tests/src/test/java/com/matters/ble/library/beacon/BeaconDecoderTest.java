@@ -0,0 +1,102 @@
+package com.matters.ble.library.beacon;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BeaconDecoderTest {
+
+    private static final byte[] IBEACON = {
+            0x02, 0x01, 0x06,
+            0x1A, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15,
+            (byte) 0xF7, (byte) 0x82, 0x6D, (byte) 0xA6, 0x4F, (byte) 0xA2, 0x4E, (byte) 0x98,
+            (byte) 0x80, 0x24, (byte) 0xBC, 0x5B, 0x71, (byte) 0xE0, (byte) 0x89, 0x3E,
+            0x00, 0x01, 0x00, 0x02, (byte) 0xC5
+    };
+
+    private static final byte[] ALTBEACON = {
+            0x1B, (byte) 0xFF, 0x18, 0x01, (byte) 0xBE, (byte) 0xAC,
+            0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0A, 0x0B, 0x0C, 0x0D, 0x0E, 0x0F, 0x10,
+            0x00, 0x07, 0x00, 0x09, (byte) 0xBB, 0x00
+    };
+
+    private static final byte[] EDDYSTONE_UID = {
+            0x03, 0x03, (byte) 0xAA, (byte) 0xFE,
+            0x17, 0x16, (byte) 0xAA, (byte) 0xFE, 0x00, (byte) 0xEE,
+            0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0A,
+            0x00, 0x00, 0x00, 0x00, 0x00, 0x2A, 0x00, 0x00
+    };
+
+    private static final byte[] EDDYSTONE_URL = {
+            0x0D, 0x16, (byte) 0xAA, (byte) 0xFE, 0x10, (byte) 0xEE, 0x03, 'g', 'o', 'o', '.', 'g', 'l', 0x07
+    };
+
+    private static final byte[] EDDYSTONE_TLM = {
+            0x11, 0x16, (byte) 0xAA, (byte) 0xFE, 0x20, 0x00, 0x0B, (byte) 0xB8, 0x19, (byte) 0x80,
+            0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x64
+    };
+
+    private final BeaconDecoder SUT = new BeaconDecoder();
+
+    @Test
+    public void shouldDecodeIBeacon() {
+        assertThat(SUT.decode(IBEACON)).isEqualTo(BeaconDecoder.FRAME_IBEACON);
+
+        final IBeacon iBeacon = SUT.getIBeacon();
+        assertThat(iBeacon.getUuidMostSignificantBits()).isEqualTo(0xF7826DA64FA24E98L);
+        assertThat(iBeacon.getUuidLeastSignificantBits()).isEqualTo(0x8024BC5B71E0893EL);
+        assertThat(iBeacon.getMajor()).isEqualTo(1);
+        assertThat(iBeacon.getMinor()).isEqualTo(2);
+        assertThat(iBeacon.getMeasuredPower()).isEqualTo(-59);
+    }
+
+    @Test
+    public void shouldDecodeAltBeacon() {
+        assertThat(SUT.decode(ALTBEACON)).isEqualTo(BeaconDecoder.FRAME_ALTBEACON);
+
+        final AltBeacon altBeacon = SUT.getAltBeacon();
+        assertThat(altBeacon.getManufacturerId()).isEqualTo(0x0118);
+        assertThat(altBeacon.getId1MostSignificantBits()).isEqualTo(0x0102030405060708L);
+        assertThat(altBeacon.getId2()).isEqualTo(7);
+        assertThat(altBeacon.getId3()).isEqualTo(9);
+        assertThat(altBeacon.getReferenceRssi()).isEqualTo(-69);
+    }
+
+    @Test
+    public void shouldKeepEddystoneUrlWhenRecordIsReused() {
+        final byte[] record = EDDYSTONE_URL.clone();
+        assertThat(SUT.decode(record)).isEqualTo(BeaconDecoder.FRAME_EDDYSTONE_URL);
+
+        Arrays.fill(record, (byte) 0);
+
+        assertThat(SUT.getEddystoneUrl().getSchemeCode()).isEqualTo(3);
+        assertThat(SUT.getEddystoneUrl().getUrl()).isEqualTo("https://goo.gl.com");
+    }
+
+    @Test
+    public void shouldDecodeEddystoneFrames() {
+        assertThat(SUT.decode(EDDYSTONE_UID)).isEqualTo(BeaconDecoder.FRAME_EDDYSTONE_UID);
+        assertThat(SUT.getEddystoneUid().getTxPower()).isEqualTo(-18);
+        assertThat(SUT.getEddystoneUid().getNamespaceHigh()).isEqualTo(0x0102);
+        assertThat(SUT.getEddystoneUid().getNamespaceLow()).isEqualTo(0x030405060708090AL);
+        assertThat(SUT.getEddystoneUid().getInstance()).isEqualTo(42L);
+
+        assertThat(SUT.decode(EDDYSTONE_URL)).isEqualTo(BeaconDecoder.FRAME_EDDYSTONE_URL);
+        assertThat(SUT.getEddystoneUrl().getUrl()).isEqualTo("https://goo.gl.com");
+
+        assertThat(SUT.decode(EDDYSTONE_TLM)).isEqualTo(BeaconDecoder.FRAME_EDDYSTONE_TLM);
+        assertThat(SUT.getEddystoneTlm().getBatteryMillivolts()).isEqualTo(3000);
+        assertThat(SUT.getEddystoneTlm().getTemperature()).isEqualTo(25.5f);
+        assertThat(SUT.getEddystoneTlm().getAdvertisingCount()).isEqualTo(256L);
+        assertThat(SUT.getEddystoneTlm().getUptimeDeciseconds()).isEqualTo(100L);
+    }
+
+    @Test
+    public void shouldIgnoreUnknownFrames() {
+        assertThat(SUT.decode(new byte[] { 0x02, 0x01, 0x06, 0x03, (byte) 0xFF, 0x59, 0x00 }))
+                .isEqualTo(BeaconDecoder.FRAME_NONE);
+        assertThat(SUT.decode(null)).isEqualTo(BeaconDecoder.FRAME_NONE);
+    }
+}
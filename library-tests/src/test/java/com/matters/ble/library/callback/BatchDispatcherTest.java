@@ -0,0 +1,236 @@
+package com.matters.ble.library.callback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.matters.ble.library.device.BLEDevice;
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.metrics.ScanMetrics;
+import com.matters.ble.library.util.Clock;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BatchDispatcherTest {
+
+    private final FakeTimer timer = new FakeTimer();
+
+    private final RecordingListener listener = new RecordingListener();
+
+    private final ScanMetrics metrics = new ScanMetrics(new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return 0;
+        }
+    });
+
+    private final DeviceReport first = new MutableBLEDevice(null, null, 1L).getReport(0, this);
+
+    private final DeviceReport second = new MutableBLEDevice(null, null, 2L).getReport(0, this);
+
+    @Test
+    public void shouldFlushCoalescedDevicesAfterInterval() {
+        final BatchDispatcher SUT = dispatcher(BLEManager.DeliveryMode.INTERVAL, listener);
+
+        SUT.dispatch(first);
+        SUT.dispatch(second);
+        SUT.dispatch(first);
+
+        assertThat(timer.delayed).hasSize(1);
+        assertThat(timer.delays).containsExactly(100L);
+        assertThat(timer.frames).isEmpty();
+        assertThat(listener.batches).isEmpty();
+
+        timer.runDelayed();
+
+        assertThat(listener.batches).hasSize(1);
+        assertThat(listener.batches.get(0)).containsExactly(first.getDevice(), second.getDevice());
+    }
+
+    @Test
+    public void shouldFlushCoalescedDevicesOnNextFrame() {
+        final BatchDispatcher SUT = dispatcher(BLEManager.DeliveryMode.FRAME, listener);
+
+        SUT.dispatch(first);
+        SUT.dispatch(first);
+
+        assertThat(timer.frames).hasSize(1);
+        assertThat(timer.delayed).isEmpty();
+
+        timer.runFrames();
+
+        assertThat(listener.batches).hasSize(1);
+        assertThat(listener.batches.get(0)).containsExactly(first.getDevice());
+    }
+
+    @Test
+    public void shouldScheduleAgainOnlyAfterFlush() {
+        final BatchDispatcher SUT = dispatcher(BLEManager.DeliveryMode.INTERVAL, listener);
+
+        SUT.dispatch(first);
+        timer.runDelayed();
+        SUT.dispatch(first);
+
+        assertThat(timer.delayed).hasSize(1);
+
+        timer.runDelayed();
+
+        assertThat(listener.batches).hasSize(2);
+        assertThat(listener.batches.get(1)).containsExactly(first.getDevice());
+    }
+
+    @Test
+    public void shouldSwapAndReuseBatches() {
+        final BatchDispatcher SUT = dispatcher(BLEManager.DeliveryMode.INTERVAL, listener);
+
+        SUT.dispatch(first);
+        timer.runDelayed();
+        SUT.dispatch(second);
+        timer.runDelayed();
+        SUT.dispatch(first);
+        timer.runDelayed();
+
+        assertThat(listener.views).hasSize(3);
+        assertThat(listener.views.get(0)).isNotSameAs(listener.views.get(1));
+        assertThat(listener.views.get(2)).isSameAs(listener.views.get(0));
+        assertThat(listener.batches.get(2)).containsExactly(first.getDevice());
+    }
+
+    @Test
+    public void shouldCollectDevicesDispatchedDuringDeliveryIntoNextBatch() {
+        final List<BatchDispatcher> dispatcher = new ArrayList<BatchDispatcher>();
+        final RecordingListener reentrant = new RecordingListener() {
+            @Override
+            public void onDevicesFound(Collection<BLEDevice> bleDevices) {
+                super.onDevicesFound(bleDevices);
+                if (batches.size() == 1) {
+                    dispatcher.get(0).dispatch(first);
+                }
+            }
+        };
+        final BatchDispatcher SUT = dispatcher(BLEManager.DeliveryMode.INTERVAL, reentrant);
+        dispatcher.add(SUT);
+
+        SUT.dispatch(first);
+        timer.runDelayed();
+        timer.runDelayed();
+
+        assertThat(reentrant.batches).hasSize(2);
+        assertThat(reentrant.batches.get(1)).containsExactly(first.getDevice());
+    }
+
+    @Test
+    public void shouldDeliverDeviceByDeviceToPlainListener() {
+        final List<BLEDevice> devices = new ArrayList<BLEDevice>();
+        final BatchDispatcher SUT = dispatcher(BLEManager.DeliveryMode.INTERVAL, new BLEManager.RangingListener() {
+            @Override
+            public void onDeviceFound(BLEDevice bleDevice) {
+                devices.add(bleDevice);
+            }
+        });
+
+        SUT.dispatch(first);
+        SUT.dispatch(second);
+        timer.runDelayed();
+
+        assertThat(devices).containsExactly(first.getDevice(), second.getDevice());
+    }
+
+    @Test
+    public void shouldRecordLatencyOnDeliveryOnly() {
+        final BatchDispatcher SUT = dispatcher(BLEManager.DeliveryMode.INTERVAL, listener);
+
+        SUT.dispatch(first);
+        SUT.dispatch(second);
+        assertThat(metrics.snapshot().getDeliveryCount()).isEqualTo(0);
+
+        timer.runDelayed();
+        assertThat(metrics.snapshot().getDeliveryCount()).isEqualTo(2);
+
+        SUT.dispatch(first);
+        SUT.close();
+        SUT.flush();
+        assertThat(metrics.snapshot().getDeliveryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDropPendingDevicesOnClose() {
+        final BatchDispatcher SUT = dispatcher(BLEManager.DeliveryMode.INTERVAL, listener);
+
+        SUT.dispatch(first);
+        SUT.close();
+        SUT.flush();
+        SUT.dispatch(second);
+
+        assertThat(timer.removed).isEqualTo(1);
+        assertThat(timer.delayed).hasSize(1);
+        assertThat(listener.batches).isEmpty();
+    }
+
+    private BatchDispatcher dispatcher(BLEManager.DeliveryMode deliveryMode, BLEManager.RangingListener listener) {
+        return new BatchDispatcher(timer, listener, deliveryMode, 100, metrics);
+    }
+
+    private static class RecordingListener implements BLEManager.BatchRangingListener {
+
+        final List<List<BLEDevice>> batches = new ArrayList<List<BLEDevice>>();
+
+        final List<Collection<BLEDevice>> views = new ArrayList<Collection<BLEDevice>>();
+
+        @Override
+        public void onDeviceFound(BLEDevice bleDevice) {
+            throw new AssertionError("Batches are delivered at once");
+        }
+
+        @Override
+        public void onDevicesFound(Collection<BLEDevice> bleDevices) {
+            views.add(bleDevices);
+            batches.add(new ArrayList<BLEDevice>(bleDevices));
+        }
+    }
+
+    private static final class FakeTimer implements BatchDispatcher.Timer {
+
+        private final List<Runnable> delayed = new ArrayList<Runnable>();
+
+        private final List<Long> delays = new ArrayList<Long>();
+
+        private final List<Runnable> frames = new ArrayList<Runnable>();
+
+        private int removed;
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            delayed.add(task);
+            delays.add(delayMillis);
+        }
+
+        @Override
+        public void postFrame(Runnable task) {
+            frames.add(task);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            removed++;
+        }
+
+        void runDelayed() {
+            run(delayed);
+        }
+
+        void runFrames() {
+            run(frames);
+        }
+
+        private static void run(List<Runnable> tasks) {
+            final List<Runnable> due = new ArrayList<Runnable>(tasks);
+            tasks.clear();
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.matters.ble.library.callback;
+
+import org.junit.Test;
+
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.util.Clock;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ChangeFilterTest {
+
+    private static final byte[] PAYLOAD = { 2, 1, 6 };
+
+    private static final byte[] OTHER_PAYLOAD = { 2, 1, 4 };
+
+    private long now;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    };
+
+    private final DeviceReport device = new MutableBLEDevice(null, null, 1L).getReport(0, this);
+
+    @Test
+    public void shouldReportEveryUpdateByDefault() {
+        final ChangeFilter SUT = new ChangeFilter(new BLEManager.Configuration.Builder().build(), clock);
+
+        assertThat(SUT.shouldReport(device, -60, PAYLOAD)).isTrue();
+        assertThat(SUT.shouldReport(device, -60, PAYLOAD)).isTrue();
+    }
+
+    @Test
+    public void shouldReportOnlyMeaningfulRssiOrPayloadChanges() {
+        final ChangeFilter SUT = new ChangeFilter(new BLEManager.Configuration.Builder()
+                                                          .setReportRssiDelta(5)
+                                                          .build(), clock);
+
+        assertThat(SUT.shouldReport(device, -60, PAYLOAD)).isTrue();
+        assertThat(SUT.shouldReport(device, -62, PAYLOAD)).isFalse();
+        assertThat(SUT.shouldReport(device, -64, PAYLOAD)).isFalse();
+        assertThat(SUT.shouldReport(device, -65, PAYLOAD)).isTrue();
+        assertThat(SUT.shouldReport(device, -65, OTHER_PAYLOAD)).isTrue();
+        assertThat(SUT.shouldReport(device, -65, OTHER_PAYLOAD)).isFalse();
+    }
+
+    @Test
+    public void shouldNotReReportWithinMinimumInterval() {
+        final ChangeFilter SUT = new ChangeFilter(new BLEManager.Configuration.Builder()
+                                                          .setMinReportIntervalMillis(1000)
+                                                          .build(), clock);
+
+        assertThat(SUT.shouldReport(device, -60, PAYLOAD)).isTrue();
+        now = 999;
+        assertThat(SUT.shouldReport(device, -70, PAYLOAD)).isFalse();
+        now = 1000;
+        assertThat(SUT.shouldReport(device, -70, PAYLOAD)).isTrue();
+    }
+
+    @Test
+    public void shouldLimitReportRatePerDevice() {
+        final ChangeFilter SUT = new ChangeFilter(new BLEManager.Configuration.Builder()
+                                                          .setReportRateLimit(2, 2)
+                                                          .build(), clock);
+
+        assertThat(SUT.shouldReport(device, -60, PAYLOAD)).isTrue();
+        assertThat(SUT.shouldReport(device, -60, PAYLOAD)).isTrue();
+        assertThat(SUT.shouldReport(device, -60, PAYLOAD)).isFalse();
+
+        now = 500;
+        assertThat(SUT.shouldReport(device, -60, PAYLOAD)).isTrue();
+        assertThat(SUT.shouldReport(device, -60, PAYLOAD)).isFalse();
+    }
+}
@@ -0,0 +1,98 @@
+package com.matters.ble.library.callback;
+
+import android.bluetooth.BluetoothDevice;
+
+import org.junit.Test;
+
+import com.matters.ble.library.util.Clock;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DeviceAttributeCacheTest {
+
+    private static final String FIRST = "00:00:00:00:00:01";
+
+    private static final String SECOND = "00:00:00:00:00:02";
+
+    private static final String THIRD = "00:00:00:00:00:03";
+
+    private long now = 1000;
+
+    private int fetchCount;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    };
+
+    private final DeviceAttributeCache.Fetcher fetcher = new DeviceAttributeCache.Fetcher() {
+        @Override
+        public DeviceAttributeCache.Attributes fetch(BluetoothDevice device, long now) {
+            fetchCount++;
+            return new DeviceAttributeCache.Attributes("Device " + fetchCount, BluetoothDevice.DEVICE_TYPE_LE,
+                                                       BluetoothDevice.BOND_NONE, now);
+        }
+    };
+
+    private final DeviceAttributeCache SUT = new DeviceAttributeCache(1000, 2, clock, fetcher);
+
+    @Test
+    public void shouldFetchOncePerStalenessWindow() {
+        final DeviceAttributeCache.Attributes first = SUT.get(FIRST, null);
+        now += 999;
+        assertThat(SUT.get(FIRST, null)).isSameAs(first);
+        assertThat(fetchCount).isEqualTo(1);
+
+        now += 1;
+        assertThat(SUT.get(FIRST, null).getName()).isEqualTo("Device 2");
+        assertThat(fetchCount).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedAddressBeyondCapacity() {
+        SUT.get(FIRST, null);
+        SUT.get(SECOND, null);
+        // touches the first address so the second is the eldest
+        SUT.get(FIRST, null);
+        SUT.get(THIRD, null);
+
+        assertThat(SUT.size()).isEqualTo(2);
+        assertThat(fetchCount).isEqualTo(3);
+
+        SUT.get(FIRST, null);
+        assertThat(fetchCount).isEqualTo(3);
+        SUT.get(SECOND, null);
+        assertThat(fetchCount).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldUpdateCachedAttributesOnBroadcasts() {
+        SUT.get(FIRST, null);
+        SUT.onNameChanged(FIRST, "Renamed");
+        SUT.onBondStateChanged(FIRST, BluetoothDevice.BOND_BONDED);
+
+        final DeviceAttributeCache.Attributes attributes = SUT.get(FIRST, null);
+        assertThat(attributes.getName()).isEqualTo("Renamed");
+        assertThat(attributes.getBondState()).isEqualTo(BluetoothDevice.BOND_BONDED);
+        assertThat(fetchCount).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldIgnoreBroadcastsOfUncachedAddresses() {
+        SUT.onNameChanged(FIRST, "Renamed");
+        SUT.onBondStateChanged(FIRST, BluetoothDevice.BOND_BONDED);
+
+        assertThat(SUT.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFetchAgainAfterInvalidation() {
+        SUT.get(FIRST, null);
+        SUT.invalidate(FIRST);
+        SUT.get(FIRST, null);
+
+        assertThat(fetchCount).isEqualTo(2);
+    }
+}
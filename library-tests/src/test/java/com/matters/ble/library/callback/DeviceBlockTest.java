@@ -0,0 +1,77 @@
+package com.matters.ble.library.callback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.matters.ble.library.device.BLEDevice;
+import com.matters.ble.library.filter.ScanFilter;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DeviceBlockTest {
+
+    private static final byte[] PAYLOAD = { 2, 1, 6, 3, -1, 0x4C, 0 };
+
+    private final DeviceBlock.Writer writer = new DeviceBlock.Writer(DeviceBlock.MIN_BLOCK_SIZE * 4);
+
+    private final DeviceBlock.Reader SUT = new DeviceBlock.Reader(16);
+
+    @Test
+    public void shouldReadWrittenDevices() {
+        writer.add(0x0000C0FFEE000001L, -60, "Tag", PAYLOAD);
+        writer.add(2L, -90, null, null);
+
+        final List<BLEDevice> devices = new ArrayList<BLEDevice>(SUT.read(writer.toByteArray(), ScanFilter.ACCEPT_ALL));
+
+        assertThat(devices).hasSize(2);
+        assertThat(devices.get(0).getAddress()).isEqualTo("C0:FF:EE:00:00:01");
+        assertThat(devices.get(0).getRssi()).isEqualTo(-60);
+        assertThat(devices.get(0).getName()).isEqualTo("Tag");
+        assertThat(devices.get(0).getScanResponse()).isEqualTo(PAYLOAD);
+        assertThat(devices.get(1).getAddress()).isEqualTo("00:00:00:00:00:02");
+        assertThat(devices.get(1).getName()).isNull();
+        assertThat(devices.get(1).getScanResponse()).isEmpty();
+    }
+
+    @Test
+    public void shouldReuseDevicesAcrossBlocks() {
+        writer.add(1L, -60, "Tag", PAYLOAD);
+        final BLEDevice first = SUT.read(writer.toByteArray(), ScanFilter.ACCEPT_ALL).iterator().next();
+        final byte[] scanResponse = first.getScanResponse();
+
+        writer.reset();
+        writer.add(1L, -50, "Tag", PAYLOAD);
+        final BLEDevice second = SUT.read(writer.toByteArray(), ScanFilter.ACCEPT_ALL).iterator().next();
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.getRssi()).isEqualTo(-50);
+        assertThat(second.getScanResponse()).isSameAs(scanResponse);
+    }
+
+    @Test
+    public void shouldRefuseDevicesBeyondBlockSize() {
+        int added = 0;
+        while (writer.add(added, -60, null, new byte[DeviceBlock.MAX_RECORD_LENGTH])) {
+            added++;
+        }
+
+        assertThat(added).isGreaterThan(0);
+        assertThat(writer.toByteArray().length).isLessThanOrEqualTo(DeviceBlock.MIN_BLOCK_SIZE * 4);
+        assertThat(SUT.read(writer.toByteArray(), ScanFilter.ACCEPT_ALL)).hasSize(added);
+    }
+
+    @Test
+    public void shouldApplyScanFilter() {
+        writer.add(1L, -60, null, PAYLOAD);
+        writer.add(2L, -60, null, PAYLOAD);
+
+        final Collection<BLEDevice> devices = SUT.read(writer.toByteArray(),
+                                                       new ScanFilter.Builder().allowAddress("00:00:00:00:00:02").build());
+
+        assertThat(devices).hasSize(1);
+        assertThat(devices.iterator().next().getAddress()).isEqualTo("00:00:00:00:00:02");
+    }
+}
@@ -0,0 +1,101 @@
+package com.matters.ble.library.callback;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.matters.ble.library.LibraryRobolectrictTestRunner;
+import com.matters.ble.library.device.BLEDevice;
+import com.matters.ble.library.filter.ScanFilter;
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.metrics.ScanMetrics;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(LibraryRobolectrictTestRunner.class)
+public class RangeCallbackClientsTest {
+
+    private static final byte[] PAYLOAD = { 2, 1, 6 };
+
+    private final RangeCallback SUT = new RangeCallback(new BLEManager.Configuration.Builder()
+                                                                .setScanQueueCapacity(0)
+                                                                .build(),
+                                                        new DeviceAttributeCache(),
+                                                        new ScanMetrics());
+
+    @After
+    public void tearDown() {
+        SUT.close();
+    }
+
+    @Test
+    public void shouldFanOutToEveryAcceptingClient() {
+        final RecordingListener all = new RecordingListener();
+        final RecordingListener odd = new RecordingListener();
+        SUT.addClient(client(all, ScanFilter.ACCEPT_ALL));
+        SUT.addClient(client(odd, new ScanFilter.Builder().allowAddress("00:00:00:00:00:01").build()));
+
+        SUT.onAdvertisement(null, 1L, -60, System.nanoTime(), PAYLOAD);
+        SUT.onAdvertisement(null, 2L, -60, System.nanoTime(), PAYLOAD);
+
+        assertThat(all.addresses).containsOnly("00:00:00:00:00:01", "00:00:00:00:00:02");
+        assertThat(odd.addresses).containsOnly("00:00:00:00:00:01");
+        assertThat(all.devices.get(0)).isSameAs(odd.devices.get(0));
+        assertThat(SUT.getTrackedDeviceCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotTrackDevicesNoClientAccepts() {
+        SUT.addClient(client(new RecordingListener(), new ScanFilter.Builder().allowAddress("00:00:00:00:00:01").build()));
+
+        SUT.onAdvertisement(null, 2L, -60, System.nanoTime(), PAYLOAD);
+
+        assertThat(SUT.getTrackedDeviceCount()).isZero();
+    }
+
+    @Test
+    public void shouldStartOverWhenSlotIsReused() {
+        final RecordingListener first = new RecordingListener();
+        final ScanClient client = SUT.addClient(client(first, ScanFilter.ACCEPT_ALL, 10));
+        SUT.onAdvertisement(null, 1L, -60, System.nanoTime(), PAYLOAD);
+        assertThat(SUT.removeClient(client)).isTrue();
+        assertThat(SUT.removeClient(client)).isFalse();
+
+        final RecordingListener second = new RecordingListener();
+        SUT.addClient(client(second, ScanFilter.ACCEPT_ALL, 10));
+        SUT.onAdvertisement(null, 1L, -61, System.nanoTime(), PAYLOAD);
+
+        assertThat(first.addresses).hasSize(1);
+        assertThat(second.addresses).hasSize(1);
+        assertThat(SUT.getClientCount()).isEqualTo(1);
+    }
+
+    private static BLEManager.Configuration client(BLEManager.RangingListener listener, ScanFilter filter) {
+        return client(listener, filter, 0);
+    }
+
+    private static BLEManager.Configuration client(BLEManager.RangingListener listener, ScanFilter filter, int rssiDelta) {
+        return new BLEManager.Configuration.Builder()
+                .setRangingListener(listener)
+                .setDeliveryMode(BLEManager.DeliveryMode.PER_ADVERTISEMENT)
+                .setScanFilter(filter)
+                .setReportRssiDelta(rssiDelta)
+                .build();
+    }
+
+    private static final class RecordingListener implements BLEManager.RangingListener {
+
+        private final List<BLEDevice> devices = new ArrayList<BLEDevice>();
+
+        private final List<String> addresses = new ArrayList<String>();
+
+        @Override
+        public void onDeviceFound(BLEDevice bleDevice) {
+            devices.add(bleDevice);
+            addresses.add(bleDevice.getAddress());
+        }
+    }
+}
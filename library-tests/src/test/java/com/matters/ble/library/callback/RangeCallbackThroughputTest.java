@@ -0,0 +1,65 @@
+package com.matters.ble.library.callback;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.LibraryRobolectrictTestRunner;
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.pipeline.OverflowPolicy;
+import com.matters.ble.library.scan.SyntheticScanSource;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(LibraryRobolectrictTestRunner.class)
+public class RangeCallbackThroughputTest {
+
+    private static final int DEVICES = 10000;
+
+    private static final long SIMULATED_SECONDS = 10;
+
+    private final SyntheticScanSource source = new SyntheticScanSource.Builder()
+            .setDeviceCount(DEVICES)
+            .setAdvertisingIntervalMillis(195)
+            .setPayloadChurnProbability(0.05)
+            .build();
+
+    @Test
+    public void shouldTrackTenThousandDevicesAtFiftyThousandAdvertisementsPerSecond() {
+        final RangeCallback SUT = new RangeCallback(new BLEManager.Configuration.Builder()
+                                                            .setCacheCapacity(DEVICES)
+                                                            .setScanQueueCapacity(0)
+                                                            .setReportRssiDelta(3)
+                                                            .build(),
+                                                    new DeviceAttributeCache());
+        // the advertising rate is measured by SyntheticScanBenchmark of library-benchmarks
+        source.advance(TimeUnit.SECONDS.toNanos(1), SUT);
+
+        final long emitted = source.advance(TimeUnit.SECONDS.toNanos(1 + SIMULATED_SECONDS), SUT);
+
+        assertThat(emitted).isGreaterThan(SIMULATED_SECONDS * 50000 * 9 / 10);
+        assertThat(emitted).isLessThan(SIMULATED_SECONDS * 50000 * 11 / 10);
+        assertThat(SUT.getTrackedDeviceCount()).isEqualTo(DEVICES);
+        SUT.close();
+    }
+
+    @Test
+    public void shouldNotDropWithBlockingQueue() throws InterruptedException {
+        final RangeCallback SUT = new RangeCallback(new BLEManager.Configuration.Builder()
+                                                            .setCacheCapacity(DEVICES)
+                                                            .setScanQueueCapacity(1024)
+                                                            .setScanQueueOverflowPolicy(OverflowPolicy.BLOCK)
+                                                            .build(),
+                                                    new DeviceAttributeCache());
+
+        source.advance(TimeUnit.SECONDS.toNanos(2), SUT);
+        while (SUT.getQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+        SUT.close();
+
+        assertThat(SUT.getDroppedCount()).isZero();
+        assertThat(SUT.getTrackedDeviceCount()).isEqualTo(DEVICES);
+    }
+}
@@ -0,0 +1,95 @@
+package com.matters.ble.library.callback;
+
+import android.os.Binder;
+import android.os.DeadObjectException;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.matters.ble.library.LibraryRobolectrictTestRunner;
+import com.matters.ble.library.metrics.ScanMetrics;
+import com.matters.ble.library.util.Clock;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(LibraryRobolectrictTestRunner.class)
+public class RemoteDispatcherTest {
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final ScanMetrics metrics = new ScanMetrics(new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return 0;
+        }
+    });
+
+    private final List<Message> blocks = new ArrayList<Message>();
+
+    private int unreachableCount;
+
+    private final Runnable unreachableCallback = new Runnable() {
+        @Override
+        public void run() {
+            unreachableCount++;
+        }
+    };
+
+    private final DeviceReport first = device(1L).getReport(0, this);
+
+    private final DeviceReport second = device(2L).getReport(0, this);
+
+    @Test
+    public void shouldShipPendingDevicesInOneBlock() {
+        final Messenger client = new Messenger(new Handler(Looper.getMainLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                blocks.add(Message.obtain(msg));
+                return true;
+            }
+        }));
+        final RemoteDispatcher SUT = new RemoteDispatcher(handler, client, 100, 1024, metrics, unreachableCallback);
+
+        SUT.dispatch(first);
+        SUT.dispatch(second);
+        SUT.flush();
+
+        assertThat(blocks).hasSize(1);
+        assertThat(blocks.get(0).what).isEqualTo(DeviceBlock.MESSAGE_DEVICES);
+        assertThat(metrics.snapshot().getDeliveryCount()).isEqualTo(2);
+        assertThat(unreachableCount).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldStopAndReportClientWhichCannotBeReached() {
+        final Messenger deadClient = new Messenger(new Binder() {
+            @Override
+            protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+                throw new DeadObjectException();
+            }
+        });
+        final RemoteDispatcher SUT = new RemoteDispatcher(handler, deadClient, 100, 1024, metrics, unreachableCallback);
+
+        SUT.dispatch(first);
+        SUT.flush();
+        SUT.dispatch(second);
+        SUT.flush();
+
+        assertThat(unreachableCount).isEqualTo(1);
+    }
+
+    private static MutableBLEDevice device(long address) {
+        final MutableBLEDevice device = new MutableBLEDevice(null, null, address);
+        device.setScanResponse(new byte[]{2, 1, 6});
+        return device;
+    }
+}
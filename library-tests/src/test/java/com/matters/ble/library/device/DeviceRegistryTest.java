@@ -0,0 +1,167 @@
+package com.matters.ble.library.device;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.matters.ble.library.util.Clock;
+import com.matters.ble.library.util.MacAddress;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DeviceRegistryTest {
+
+    private final List<Long> evicted = new ArrayList<Long>();
+
+    private long now;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    };
+
+    private final DeviceRegistry.EvictionListener<Object> recordingListener = new DeviceRegistry.EvictionListener<Object>() {
+        @Override
+        public void onEvicted(long address, Object value) {
+            evicted.add(address);
+        }
+    };
+
+    private final DeviceRegistry<String> SUT = new DeviceRegistry<String>(3, new DeviceRegistry.EvictionListener<String>() {
+        @Override
+        public void onEvicted(long address, String value) {
+            evicted.add(address);
+        }
+    });
+
+    @Test
+    public void shouldPackAndFormatAddress() {
+        final long address = MacAddress.toLong("00:1A:7D:DA:71:13");
+
+        assertThat(address).isEqualTo(0x001A7DDA7113L);
+        assertThat(MacAddress.toString(address)).isEqualTo("00:1A:7D:DA:71:13");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMalformedAddress() {
+        MacAddress.toLong("00-1A-7D-DA-71-13");
+    }
+
+    @Test
+    public void shouldReplaceValueOfKnownAddress() {
+        SUT.put(1L, "first");
+
+        assertThat(SUT.put(1L, "second")).isEqualTo("first");
+        assertThat(SUT.get(1L)).isEqualTo("second");
+        assertThat(SUT.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedDevice() {
+        SUT.put(1L, "a");
+        SUT.put(2L, "b");
+        SUT.put(3L, "c");
+
+        SUT.get(1L);
+        SUT.put(4L, "d");
+
+        assertThat(evicted).containsOnly(2L);
+        assertThat(SUT.contains(2L)).isFalse();
+        assertThat(SUT.contains(1L)).isTrue();
+        assertThat(SUT.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNotChangeEvictionOrderOnPeek() {
+        SUT.put(1L, "a");
+        SUT.put(2L, "b");
+        SUT.put(3L, "c");
+
+        SUT.peek(1L);
+        SUT.put(4L, "d");
+
+        assertThat(evicted).containsOnly(1L);
+    }
+
+    @Test
+    public void shouldKeepCollidingAddressesReachableAfterRemoval() {
+        final DeviceRegistry<Long> registry = new DeviceRegistry<Long>(1000);
+
+        for (long address = 0; address < 1000; address++) {
+            registry.put(address << 24, address);
+        }
+        for (long address = 0; address < 1000; address += 2) {
+            assertThat(registry.remove(address << 24)).isEqualTo(address);
+        }
+        for (long address = 1; address < 1000; address += 2) {
+            assertThat(registry.get(address << 24)).isEqualTo(address);
+        }
+        assertThat(registry.size()).isEqualTo(500);
+    }
+
+    @Test
+    public void shouldExpireDeviceNotSeenWithinTimeToLive() {
+        final DeviceRegistry<String> registry =
+                new DeviceRegistry<String>(10, DeviceRegistry.EvictionPolicy.LRU, 1000, clock, recordingListener);
+
+        registry.put(1L, "a");
+        now = 999;
+        assertThat(registry.get(1L)).isEqualTo("a");
+
+        now = 1999;
+        assertThat(registry.get(1L)).isNull();
+        assertThat(registry.size()).isZero();
+        assertThat(evicted).containsOnly(1L);
+    }
+
+    @Test
+    public void shouldReclaimExpiredDevicesLazilyOnPut() {
+        final DeviceRegistry<String> registry =
+                new DeviceRegistry<String>(10, DeviceRegistry.EvictionPolicy.LRU, 1000, clock, recordingListener);
+
+        registry.put(1L, "a");
+        registry.put(2L, "b");
+        now = 1500;
+        registry.put(3L, "c");
+
+        assertThat(evicted).containsOnly(1L, 2L);
+        assertThat(registry.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictLeastFrequentlyUsedDevice() {
+        final DeviceRegistry<String> registry =
+                new DeviceRegistry<String>(4, DeviceRegistry.EvictionPolicy.LFU, DeviceRegistry.NO_TTL, clock, recordingListener);
+
+        for (long address = 1; address <= 4; address++) {
+            registry.put(address, "device");
+            now++;
+        }
+        for (int i = 0; i < 5; i++) {
+            registry.get(1L);
+            registry.get(2L);
+            registry.get(4L);
+        }
+
+        registry.put(5L, "device");
+
+        assertThat(evicted).containsOnly(3L);
+    }
+
+    @Test
+    public void shouldHandleLargePopulation() {
+        final DeviceRegistry<Long> registry = new DeviceRegistry<Long>(10000);
+
+        for (long address = 0; address < 20000; address++) {
+            registry.put(address, address);
+        }
+
+        assertThat(registry.size()).isEqualTo(10000);
+        assertThat(registry.get(9999L)).isNull();
+        assertThat(registry.get(10000L)).isEqualTo(10000L);
+        assertThat(registry.get(19999L)).isEqualTo(19999L);
+    }
+}
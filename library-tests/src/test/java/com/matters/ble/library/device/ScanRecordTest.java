@@ -0,0 +1,114 @@
+package com.matters.ble.library.device;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ScanRecordTest {
+
+    private static final byte[] RECORD = {
+            // Flags
+            0x02, 0x01, 0x06,
+            // Complete list of 16-bit service UUIDs: 0x180F, 0xFEAA
+            0x05, 0x03, 0x0F, 0x18, (byte) 0xAA, (byte) 0xFE,
+            // Tx Power Level: -12 dBm
+            0x02, 0x0A, (byte) 0xF4,
+            // Complete Local Name: "BLE"
+            0x04, 0x09, 'B', 'L', 'E',
+            // Service Data 0xFEAA: 0x10 0x20
+            0x05, 0x16, (byte) 0xAA, (byte) 0xFE, 0x10, 0x20,
+            // Manufacturer data of company 0x004C: 0x02 0x15
+            0x05, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15,
+            // padding
+            0x00, 0x00, 0x00
+    };
+
+    private final ScanRecord SUT = ScanRecord.parse(RECORD);
+
+    @Test
+    public void shouldIndexAllStructures() {
+        assertThat(SUT.getStructureCount()).isEqualTo(6);
+        assertThat(SUT.getType(4)).isEqualTo(ScanRecord.TYPE_SERVICE_DATA_16);
+        assertThat(SUT.getDataOffset(4)).isEqualTo(19);
+        assertThat(SUT.getDataLength(4)).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldDecodeRequestedValues() {
+        assertThat(SUT.getFlags()).isEqualTo(0x06);
+        assertThat(SUT.getTxPowerLevel()).isEqualTo(-12);
+        assertThat(SUT.getLocalName()).isEqualTo("BLE");
+        assertThat(SUT.hasServiceUuid16(0xFEAA)).isTrue();
+        assertThat(SUT.hasServiceUuid16(0x180A)).isFalse();
+    }
+
+    @Test
+    public void shouldSliceDataWithoutCopying() {
+        final ByteBuffer serviceData = SUT.getServiceData16(0xFEAA);
+        final ByteBuffer manufacturerData = SUT.getManufacturerData(0x004C);
+
+        assertThat(serviceData.remaining()).isEqualTo(2);
+        assertThat(serviceData.get(0)).isEqualTo((byte) 0x10);
+        assertThat(manufacturerData.remaining()).isEqualTo(2);
+        assertThat(manufacturerData.get(1)).isEqualTo((byte) 0x15);
+        assertThat(SUT.getManufacturerData(0x0059)).isNull();
+    }
+
+    @Test
+    public void shouldStopAtMalformedStructure() {
+        final ScanRecord record = ScanRecord.parse(new byte[] { 0x02, 0x01, 0x06, 0x09, 0x09, 'B' });
+
+        assertThat(record.getStructureCount()).isEqualTo(1);
+        assertThat(record.getLocalName()).isNull();
+        assertThat(record.getTxPowerLevel()).isEqualTo(ScanRecord.TX_POWER_UNKNOWN);
+    }
+
+    @Test
+    public void shouldSliceServiceDataOfLongUuids() {
+        final ScanRecord record = ScanRecord.parse(new byte[] {
+                // Service Data 0x12345678: 0x01
+                0x06, 0x20, 0x78, 0x56, 0x34, 0x12, 0x01,
+                // Service Data 00112233-4455-6677-8899-AABBCCDDEEFF: 0x02 0x03
+                0x13, 0x21,
+                (byte) 0xFF, (byte) 0xEE, (byte) 0xDD, (byte) 0xCC, (byte) 0xBB, (byte) 0xAA, (byte) 0x99, (byte) 0x88,
+                0x77, 0x66, 0x55, 0x44, 0x33, 0x22, 0x11, 0x00,
+                0x02, 0x03
+        });
+
+        final ByteBuffer serviceData32 = record.getServiceData32(0x12345678L);
+        final ByteBuffer serviceData128 = record.getServiceData128(0x0011223344556677L, 0x8899AABBCCDDEEFFL);
+
+        assertThat(serviceData32.remaining()).isEqualTo(1);
+        assertThat(serviceData32.get(0)).isEqualTo((byte) 0x01);
+        assertThat(serviceData128.remaining()).isEqualTo(2);
+        assertThat(serviceData128.get(1)).isEqualTo((byte) 0x03);
+        assertThat(record.getServiceData32(0x87654321L)).isNull();
+        assertThat(record.getServiceData128(0L, 0L)).isNull();
+    }
+
+    @Test
+    public void shouldWalkRawRecordLikeTheView() {
+        int count = 0;
+        for (int position = ScanRecord.firstStructure(RECORD); position != ScanRecord.NOT_FOUND;
+                position = ScanRecord.nextStructure(RECORD, position)) {
+            assertThat(ScanRecord.typeAt(RECORD, position)).isEqualTo(SUT.getType(count));
+            assertThat(ScanRecord.dataOffsetAt(position)).isEqualTo(SUT.getDataOffset(count));
+            assertThat(ScanRecord.dataLengthAt(RECORD, position)).isEqualTo(SUT.getDataLength(count));
+            count++;
+        }
+
+        assertThat(count).isEqualTo(SUT.getStructureCount());
+        assertThat(ScanRecord.firstStructure(null)).isEqualTo(ScanRecord.NOT_FOUND);
+    }
+
+    @Test
+    public void shouldBeReusable() {
+        SUT.reset(new byte[] { 0x02, 0x01, 0x1A });
+
+        assertThat(SUT.getStructureCount()).isEqualTo(1);
+        assertThat(SUT.getFlags()).isEqualTo(0x1A);
+        assertThat(SUT.getLocalName()).isNull();
+    }
+}
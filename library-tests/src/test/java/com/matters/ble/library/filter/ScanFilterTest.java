@@ -0,0 +1,89 @@
+package com.matters.ble.library.filter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.matters.ble.library.util.MacAddress;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ScanFilterTest {
+
+    private static final long ADDRESS = MacAddress.toLong("00:11:22:33:44:55");
+
+    private static final byte[] IBEACON_PREFIX = {
+            0x02, 0x01, 0x06,
+            0x1A, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15,
+            (byte) 0xF7, (byte) 0x82, 0x6D, (byte) 0xA6, 0x4F, (byte) 0xA2, 0x4E, (byte) 0x98,
+            (byte) 0x80, 0x24, (byte) 0xBC, 0x5B, 0x71, (byte) 0xE0, (byte) 0x89, 0x3E,
+            0x00, 0x01, 0x00, 0x02, (byte) 0xC5
+    };
+
+    private static final byte[] SERVICES = {
+            0x03, 0x03, (byte) 0xAA, (byte) 0xFE,
+            0x11, 0x07, 0x10, 0x0F, 0x0E, 0x0D, 0x0C, 0x0B, 0x0A, 0x09, 0x08, 0x07, 0x06, 0x05, 0x04, 0x03, 0x02, 0x01
+    };
+
+    @Test
+    public void shouldAcceptEverythingByDefault() {
+        assertThat(ScanFilter.ACCEPT_ALL.accept(ADDRESS, null)).isTrue();
+    }
+
+    @Test
+    public void shouldApplyAddressAllowAndDenyLists() {
+        final ScanFilter SUT = new ScanFilter.Builder()
+                .allowAddress("00:11:22:33:44:55")
+                .allowAddress("00:11:22:33:44:56")
+                .denyAddress("00:11:22:33:44:56")
+                .build();
+
+        assertThat(SUT.accept(ADDRESS, SERVICES)).isTrue();
+        assertThat(SUT.accept(MacAddress.toLong("00:11:22:33:44:56"), SERVICES)).isFalse();
+        assertThat(SUT.accept(MacAddress.toLong("00:11:22:33:44:57"), SERVICES)).isFalse();
+    }
+
+    @Test
+    public void shouldCheckLargeAllowList() {
+        final List<String> addresses = new ArrayList<String>();
+        for (long address = 0; address < 20000; address++) {
+            addresses.add(MacAddress.toString(address * 7));
+        }
+        final ScanFilter SUT = new ScanFilter.Builder().allowAddresses(addresses).build();
+
+        int accepted = 0;
+        for (long address = 0; address < 140000; address++) {
+            if (SUT.accept(address, null)) {
+                accepted++;
+            }
+        }
+        assertThat(accepted).isEqualTo(20000);
+    }
+
+    @Test
+    public void shouldMatchCompanyIdAndDataPattern() {
+        final ScanFilter byCompany = new ScanFilter.Builder().addCompanyId(0x004C).build();
+        final ScanFilter byPattern = new ScanFilter.Builder()
+                .addDataPattern(0xFF, new byte[] { 0x00, 0x00, 0x02, 0x15 }, new byte[] { 0x00, 0x00, (byte) 0xFF, (byte) 0xFF })
+                .build();
+
+        assertThat(byCompany.accept(ADDRESS, IBEACON_PREFIX)).isTrue();
+        assertThat(byCompany.accept(ADDRESS, SERVICES)).isFalse();
+        assertThat(byPattern.accept(ADDRESS, IBEACON_PREFIX)).isTrue();
+        assertThat(byPattern.accept(ADDRESS, SERVICES)).isFalse();
+    }
+
+    @Test
+    public void shouldMatchServiceUuids() {
+        final ScanFilter by16 = new ScanFilter.Builder().addServiceUuid16(0xFEAA).build();
+        final ScanFilter by128 = new ScanFilter.Builder()
+                .addServiceUuid128(new UUID(0x0102030405060708L, 0x090A0B0C0D0E0F10L))
+                .build();
+
+        assertThat(by16.accept(ADDRESS, SERVICES)).isTrue();
+        assertThat(by16.accept(ADDRESS, IBEACON_PREFIX)).isFalse();
+        assertThat(by128.accept(ADDRESS, SERVICES)).isTrue();
+    }
+}
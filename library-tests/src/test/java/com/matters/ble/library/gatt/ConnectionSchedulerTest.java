@@ -0,0 +1,267 @@
+package com.matters.ble.library.gatt;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class ConnectionSchedulerTest {
+
+    private final ManualTimer timer = new ManualTimer();
+
+    private final FakeConnectors connectors = new FakeConnectors();
+
+    private ConnectionScheduler SUT;
+
+    @After
+    public void tearDown() {
+        SUT.close();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void shouldCapConcurrentLinks() throws Exception {
+        SUT = new ConnectionScheduler.Builder(connectors, timer).setMaxConnections(2).build();
+
+        final ListenableFuture<ConnectionScheduler.Lease> first = SUT.acquire("A", ConnectionScheduler.Priority.NORMAL);
+        SUT.acquire("B", ConnectionScheduler.Priority.NORMAL);
+        SUT.acquire("C", ConnectionScheduler.Priority.NORMAL);
+        assertThat(connectors.opened()).containsExactly("A", "B");
+        assertThat(SUT.getWaitingCount()).isEqualTo(1);
+
+        connectors.ready("A");
+        first.get(1, TimeUnit.SECONDS).close();
+
+        assertThat(connectors.opened()).containsExactly("A", "B", "C");
+        assertThat(SUT.getConnectionCount()).isEqualTo(2);
+        assertThat(SUT.getIdleConnectionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldServeReleasedLinkFromIdlePool() throws Exception {
+        SUT = new ConnectionScheduler.Builder(connectors, timer).build();
+
+        final ListenableFuture<ConnectionScheduler.Lease> first = SUT.acquire("A", ConnectionScheduler.Priority.NORMAL);
+        connectors.ready("A");
+        first.get(1, TimeUnit.SECONDS).close();
+        assertThat(SUT.getIdleConnectionCount()).isEqualTo(1);
+
+        final ListenableFuture<ConnectionScheduler.Lease> second = SUT.acquire("A", ConnectionScheduler.Priority.NORMAL);
+
+        assertThat(second.isDone()).isTrue();
+        assertThat(connectors.opened()).containsExactly("A");
+        assertThat(SUT.getStats("A").getConnectCount()).isEqualTo(1);
+        assertThat(SUT.getStats("A").getReuseCount()).isEqualTo(1);
+        assertThat(SUT.getStats("A").getWaitTimes().getCount()).isEqualTo(2);
+        assertThat(SUT.getStats("A").getConnectTimes().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldServeHigherPriorityWithinAgingInterval() throws Exception {
+        SUT = new ConnectionScheduler.Builder(connectors, timer).setMaxConnections(1).setAgingMillis(60000).build();
+
+        final ListenableFuture<ConnectionScheduler.Lease> busy = SUT.acquire("A", ConnectionScheduler.Priority.HIGH);
+        SUT.acquire("LOW", ConnectionScheduler.Priority.LOW);
+        SUT.acquire("HIGH", ConnectionScheduler.Priority.HIGH);
+
+        connectors.ready("A");
+        busy.get(1, TimeUnit.SECONDS).close();
+
+        assertThat(connectors.opened()).containsExactly("A", "HIGH");
+    }
+
+    @Test
+    public void shouldDisconnectIdleLinksAfterTimeout() throws Exception {
+        SUT = new ConnectionScheduler.Builder(connectors, timer).setIdlePool(4, 20).build();
+
+        final ListenableFuture<ConnectionScheduler.Lease> lease = SUT.acquire("A", ConnectionScheduler.Priority.NORMAL);
+        connectors.ready("A");
+        lease.get(1, TimeUnit.SECONDS).close();
+        timer.advance(19);
+        assertThat(SUT.getIdleConnectionCount()).isEqualTo(1);
+        timer.advance(1);
+
+        assertThat(SUT.getIdleConnectionCount()).isEqualTo(0);
+        assertThat(SUT.getConnectionCount()).isEqualTo(0);
+        assertThat(connectors.closed).containsExactly("A");
+    }
+
+    @Test
+    public void shouldPoolLinkOfCancelledRequestOnceReady() throws Exception {
+        SUT = new ConnectionScheduler.Builder(connectors, timer).setMaxConnections(1).build();
+
+        SUT.acquire("A", ConnectionScheduler.Priority.NORMAL).cancel(false);
+        connectors.ready("A");
+        assertThat(SUT.getIdleConnectionCount()).isEqualTo(1);
+
+        final ListenableFuture<ConnectionScheduler.Lease> lease = SUT.acquire("B", ConnectionScheduler.Priority.NORMAL);
+        connectors.ready("B");
+
+        assertThat(lease.get(1, TimeUnit.SECONDS).getAddress()).isEqualTo("B");
+        assertThat(connectors.closed).containsExactly("A");
+        assertThat(SUT.getWaitingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotConnectForCancelledWaitingRequest() throws Exception {
+        SUT = new ConnectionScheduler.Builder(connectors, timer).setMaxConnections(1).build();
+
+        final ListenableFuture<ConnectionScheduler.Lease> busy = SUT.acquire("A", ConnectionScheduler.Priority.NORMAL);
+        SUT.acquire("B", ConnectionScheduler.Priority.NORMAL).cancel(false);
+        assertThat(SUT.getWaitingCount()).isEqualTo(0);
+
+        connectors.ready("A");
+        busy.get(1, TimeUnit.SECONDS).close();
+
+        assertThat(connectors.opened()).containsExactly("A");
+        assertThat(SUT.getIdleConnectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCloseLostLinkAndFailItsLeases() throws Exception {
+        SUT = new ConnectionScheduler.Builder(connectors, timer).build();
+
+        final ListenableFuture<ConnectionScheduler.Lease> future = SUT.acquire("A", ConnectionScheduler.Priority.NORMAL);
+        connectors.ready("A");
+        final ConnectionScheduler.Lease lease = future.get(1, TimeUnit.SECONDS);
+        connectors.disconnect("A");
+
+        assertThat(lease.isLost()).isTrue();
+        assertThat(connectors.closed).containsExactly("A");
+        assertThat(SUT.getConnectionCount()).isEqualTo(0);
+        try {
+            lease.getClient().read(UUID.randomUUID(), UUID.randomUUID()).get(1, TimeUnit.SECONDS);
+            fail("Read through a lost link succeeded");
+        } catch (ExecutionException e) {
+            assertThat(((GattException) e.getCause()).getStatus()).isEqualTo(GattException.STATUS_CLOSED);
+        }
+        lease.close();
+        assertThat(SUT.getIdleConnectionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldOpenLinksOutsideSchedulerLock() throws Exception {
+        SUT = new ConnectionScheduler.Builder(connectors, timer).build();
+        final ExecutorService prober = Executors.newSingleThreadExecutor();
+        final List<Integer> probedCounts = new ArrayList<Integer>();
+        connectors.onOpen = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // times out if the scheduler lock is held while opening
+                    probedCounts.add(prober.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            return SUT.getConnectionCount();
+                        }
+                    }).get(1, TimeUnit.SECONDS));
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+
+        try {
+            SUT.acquire("A", ConnectionScheduler.Priority.NORMAL);
+        } finally {
+            prober.shutdownNow();
+        }
+
+        assertThat(probedCounts).containsExactly(1);
+    }
+
+    private static final class FakeConnectors implements ConnectionScheduler.ConnectorFactory {
+
+        private final Map<String, GattTransport.Callback> callbacks = new LinkedHashMap<String, GattTransport.Callback>();
+
+        private final List<String> closed = new ArrayList<String>();
+
+        private volatile Runnable onOpen;
+
+        @Override
+        public GattTransport.Connector connector(final String address) {
+            return new GattTransport.Connector() {
+                @Override
+                public GattTransport open(GattTransport.Callback callback) {
+                    synchronized (FakeConnectors.this) {
+                        callbacks.put(address, callback);
+                    }
+                    if (onOpen != null) {
+                        onOpen.run();
+                    }
+                    return new IdleTransport(address);
+                }
+            };
+        }
+
+        synchronized List<String> opened() {
+            return new ArrayList<String>(callbacks.keySet());
+        }
+
+        void ready(String address) {
+            final GattTransport.Callback callback;
+            synchronized (this) {
+                callback = callbacks.get(address);
+            }
+            callback.onReady();
+        }
+
+        void disconnect(String address) {
+            final GattTransport.Callback callback;
+            synchronized (this) {
+                callback = callbacks.get(address);
+            }
+            callback.onDisconnected(8);
+        }
+
+        private final class IdleTransport implements GattTransport {
+
+            private final String address;
+
+            private IdleTransport(String address) {
+                this.address = address;
+            }
+
+            @Override
+            public boolean readCharacteristic(UUID service, UUID characteristic) {
+                return true;
+            }
+
+            @Override
+            public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+                return true;
+            }
+
+            @Override
+            public boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+                return true;
+            }
+
+            @Override
+            public boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable) {
+                return true;
+            }
+
+            @Override
+            public void close() {
+                synchronized (FakeConnectors.this) {
+                    closed.add(address);
+                }
+            }
+        }
+    }
+}
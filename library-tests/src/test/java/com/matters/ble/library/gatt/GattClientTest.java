@@ -0,0 +1,208 @@
+package com.matters.ble.library.gatt;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class GattClientTest {
+
+    private static final UUID SERVICE = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+
+    private static final UUID LEVEL = UUID.fromString("00002a19-0000-1000-8000-00805f9b34fb");
+
+    private static final UUID CONTROL = UUID.fromString("00002a1a-0000-1000-8000-00805f9b34fb");
+
+    private final FakeGattTransport transport = new FakeGattTransport();
+
+    private ScheduledExecutorService timer;
+
+    private GattClient SUT;
+
+    @Before
+    public void setUp() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+        SUT = GattClient.open(transport, timer, GattClient.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        SUT.close();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void shouldStartNextOperationOnCompletion() throws Exception {
+        final ListenableFuture<byte[]> read = SUT.read(SERVICE, LEVEL);
+        final ListenableFuture<byte[]> write = SUT.write(SERVICE, CONTROL, new byte[] { 1 }, true);
+        assertThat(transport.started).isEmpty();
+
+        transport.callback.onReady();
+        assertThat(transport.started).containsExactly("read " + LEVEL);
+
+        transport.callback.onCharacteristicRead(SERVICE, LEVEL, 0, new byte[] { 42 });
+        assertThat(transport.started).containsExactly("read " + LEVEL, "write " + CONTROL);
+        assertThat(read.get()).isEqualTo(new byte[] { 42 });
+        assertThat(write.isDone()).isFalse();
+
+        transport.callback.onCharacteristicWrite(SERVICE, CONTROL, 0);
+        assertThat(write.get()).isEqualTo(new byte[] { 1 });
+        assertThat(SUT.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldTimeOutAndMoveOnAfterLateCompletion() throws Exception {
+        transport.callback.onReady();
+        final ListenableFuture<byte[]> slow = SUT.read(SERVICE, LEVEL, 20, TimeUnit.MILLISECONDS);
+        final ListenableFuture<byte[]> next = SUT.read(SERVICE, CONTROL);
+
+        assertStatus(slow, GattException.STATUS_TIMEOUT);
+        // the stack still runs the timed out read
+        assertThat(transport.started()).containsExactly("read " + LEVEL);
+
+        transport.callback.onCharacteristicRead(SERVICE, LEVEL, 0, new byte[] { 1 });
+        assertThat(transport.started()).containsExactly("read " + LEVEL, "read " + CONTROL);
+        assertThat(next.isDone()).isFalse();
+        transport.callback.onCharacteristicRead(SERVICE, CONTROL, 0, new byte[] { 2 });
+        assertThat(next.get()).isEqualTo(new byte[] { 2 });
+    }
+
+    @Test
+    public void shouldDropLateCompletionOfTimedOutOperation() throws Exception {
+        transport.callback.onReady();
+        final ListenableFuture<byte[]> slow = SUT.read(SERVICE, LEVEL, 20, TimeUnit.MILLISECONDS);
+        final ListenableFuture<byte[]> again = SUT.read(SERVICE, LEVEL);
+        assertStatus(slow, GattException.STATUS_TIMEOUT);
+
+        // completes the timed out read, not the read of the same characteristic queued behind it
+        transport.callback.onCharacteristicRead(SERVICE, LEVEL, 0, new byte[] { 1 });
+        assertThat(again.isDone()).isFalse();
+        assertThat(transport.started()).containsExactly("read " + LEVEL, "read " + LEVEL);
+
+        transport.callback.onCharacteristicRead(SERVICE, LEVEL, 0, new byte[] { 2 });
+        assertThat(again.get()).isEqualTo(new byte[] { 2 });
+    }
+
+    @Test
+    public void shouldUnblockQueueOfTimedOutOperationOnDisconnect() throws Exception {
+        transport.callback.onReady();
+        assertStatus(SUT.read(SERVICE, LEVEL, 20, TimeUnit.MILLISECONDS), GattException.STATUS_TIMEOUT);
+
+        transport.callback.onDisconnected(8);
+        transport.callback.onReady();
+        SUT.read(SERVICE, CONTROL);
+
+        assertThat(transport.started()).containsExactly("read " + LEVEL, "read " + CONTROL);
+    }
+
+    @Test
+    public void shouldEnableNotificationsThroughConfigurationDescriptor() throws Exception {
+        final List<byte[]> notifications = new ArrayList<byte[]>();
+        SUT.setNotificationListener(new GattClient.NotificationListener() {
+            @Override
+            public void onNotification(UUID service, UUID characteristic, byte[] value) {
+                notifications.add(value);
+            }
+        });
+        transport.callback.onReady();
+
+        final ListenableFuture<byte[]> enabled = SUT.enableNotifications(SERVICE, LEVEL, false);
+        assertThat(transport.started).containsExactly("notify " + LEVEL,
+                                                      "descriptor " + GattClient.CLIENT_CHARACTERISTIC_CONFIGURATION);
+        transport.callback.onDescriptorWrite(SERVICE, LEVEL, GattClient.CLIENT_CHARACTERISTIC_CONFIGURATION, 0);
+        assertThat(enabled.get()).isEqualTo(new byte[] { 1, 0 });
+
+        transport.callback.onCharacteristicChanged(SERVICE, LEVEL, new byte[] { 7 });
+        assertThat(notifications).hasSize(1);
+    }
+
+    @Test
+    public void shouldFailPendingOperationsOnDisconnect() throws Exception {
+        transport.callback.onReady();
+        final ListenableFuture<byte[]> running = SUT.read(SERVICE, LEVEL);
+        final ListenableFuture<byte[]> queued = SUT.read(SERVICE, CONTROL);
+        transport.refuse = true;
+
+        transport.callback.onDisconnected(8);
+
+        assertStatus(running, GattException.STATUS_DISCONNECTED);
+        assertStatus(queued, GattException.STATUS_DISCONNECTED);
+
+        transport.callback.onReady();
+        assertStatus(SUT.read(SERVICE, LEVEL), GattException.STATUS_NOT_STARTED);
+    }
+
+    private static void assertStatus(ListenableFuture<byte[]> future, int status) throws InterruptedException {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Operation should have failed");
+        } catch (ExecutionException e) {
+            assertThat(((GattException) e.getCause()).getStatus()).isEqualTo(status);
+        } catch (java.util.concurrent.TimeoutException e) {
+            fail("Operation still pending");
+        }
+    }
+
+    private static final class FakeGattTransport implements GattTransport, GattTransport.Connector {
+
+        private final List<String> started = new ArrayList<String>();
+
+        private Callback callback;
+
+        private boolean refuse;
+
+        @Override
+        public GattTransport open(Callback callback) {
+            this.callback = callback;
+            return this;
+        }
+
+        @Override
+        public boolean readCharacteristic(UUID service, UUID characteristic) {
+            return start("read " + characteristic);
+        }
+
+        @Override
+        public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+            return start("write " + characteristic);
+        }
+
+        @Override
+        public boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+            return start("descriptor " + descriptor);
+        }
+
+        @Override
+        public boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable) {
+            return start("notify " + characteristic);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private synchronized List<String> started() {
+            return new ArrayList<String>(started);
+        }
+
+        private synchronized boolean start(String operation) {
+            if (refuse) {
+                return false;
+            }
+            started.add(operation);
+            return true;
+        }
+    }
+}
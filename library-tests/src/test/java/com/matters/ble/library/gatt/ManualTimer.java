@@ -0,0 +1,189 @@
+package com.matters.ble.library.gatt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer running its tasks on the calling thread: executed tasks at once, scheduled tasks
+ * once {@link #advance(long)} reaches their delay.
+ */
+final class ManualTimer extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final List<Task> tasks = new ArrayList<Task>();
+
+    private long nowMillis;
+
+    private long sequence;
+
+    private boolean shutdown;
+
+    /**
+     * Runs the tasks due within the time, in the order they are due.
+     *
+     * @param millis the time to advance by
+     */
+    void advance(long millis) {
+        final long until = nowMillis + millis;
+        while (true) {
+            final Task next;
+            synchronized (this) {
+                Collections.sort(tasks);
+                if (tasks.isEmpty() || tasks.get(0).dueMillis > until) {
+                    nowMillis = until;
+                    return;
+                }
+                next = tasks.remove(0);
+                nowMillis = next.dueMillis;
+            }
+            next.run();
+        }
+    }
+
+    /**
+     * Gets the number of scheduled tasks not run or cancelled yet.
+     *
+     * @return the pending count
+     */
+    synchronized int getPendingCount() {
+        int pending = 0;
+        for (Task task : tasks) {
+            if (!task.cancelled) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        command.run();
+    }
+
+    @Override
+    public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        final Task task = new Task(command, nowMillis + unit.toMillis(delay), sequence++);
+        tasks.add(task);
+        return task;
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        tasks.clear();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return isShutdown();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return isShutdown();
+    }
+
+    private final class Task implements ScheduledFuture<Object>, Runnable {
+
+        private final Runnable command;
+
+        private final long dueMillis;
+
+        private final long sequence;
+
+        private volatile boolean cancelled;
+
+        private volatile boolean done;
+
+        private Task(Runnable command, long dueMillis, long sequence) {
+            this.command = command;
+            this.dueMillis = dueMillis;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            if (!cancelled) {
+                done = true;
+                command.run();
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            synchronized (ManualTimer.this) {
+                return unit.convert(dueMillis - nowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            final Task task = (Task) other;
+            if (dueMillis != task.dueMillis) {
+                return dueMillis < task.dueMillis ? -1 : 1;
+            }
+            return sequence < task.sequence ? -1 : (sequence == task.sequence ? 0 : 1);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done || cancelled;
+        }
+
+        @Override
+        public Object get() {
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.matters.ble.library.gatt;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.att.Att;
+import com.matters.ble.library.util.Clock;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ValueCacheTest {
+
+    private static final UUID BATTERY = Att.shortUuid(0x180F);
+
+    private static final UUID LEVEL = Att.shortUuid(0x2A19);
+
+    private final FakeGattTransport transport = new FakeGattTransport();
+
+    private final FakeClock clock = new FakeClock();
+
+    private ScheduledExecutorService timer;
+
+    private GattClient client;
+
+    private ValueCache SUT;
+
+    @Before
+    public void setUp() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+        client = GattClient.open(transport, timer, GattClient.DEFAULT_TIMEOUT_MILLIS);
+        transport.callback.onReady();
+        SUT = new ValueCache(client, clock);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentReads() throws Exception {
+        final ListenableFuture<byte[]> first = SUT.read(BATTERY, LEVEL);
+        final ListenableFuture<byte[]> second = SUT.read(BATTERY, LEVEL);
+        final ListenableFuture<byte[]> third = SUT.read(BATTERY, LEVEL);
+        assertThat(transport.reads).isEqualTo(1);
+        assertThat(first.isDone()).isFalse();
+
+        transport.callback.onCharacteristicRead(BATTERY, LEVEL, 0, new byte[] { 42 });
+
+        assertThat(first.get()).isEqualTo(new byte[] { 42 });
+        assertThat(second.get()).isEqualTo(new byte[] { 42 });
+        assertThat(third.get()).isEqualTo(new byte[] { 42 });
+        assertThat(first.get()).isNotSameAs(second.get());
+        assertThat(SUT.getReadCount()).isEqualTo(1);
+        assertThat(SUT.getCoalescedCount()).isEqualTo(2);
+
+        // without freshness every read after the completion goes over the air
+        SUT.read(BATTERY, LEVEL);
+        assertThat(transport.reads).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldServeValuesWhileFresh() throws Exception {
+        SUT.setFreshness(BATTERY, LEVEL, ValueCache.Freshness.maxAge(1, TimeUnit.SECONDS));
+        SUT.read(BATTERY, LEVEL);
+        transport.callback.onCharacteristicRead(BATTERY, LEVEL, 0, new byte[] { 42 });
+
+        clock.now += 999;
+        assertThat(SUT.read(BATTERY, LEVEL).get()).isEqualTo(new byte[] { 42 });
+        assertThat(SUT.getHitCount()).isEqualTo(1);
+        assertThat(transport.reads).isEqualTo(1);
+
+        clock.now += 1;
+        assertThat(SUT.read(BATTERY, LEVEL).isDone()).isFalse();
+        assertThat(transport.reads).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldServeNotifiedValues() throws Exception {
+        final List<byte[]> forwarded = new ArrayList<byte[]>();
+        SUT.setNotificationListener(new GattClient.NotificationListener() {
+            @Override
+            public void onNotification(UUID service, UUID characteristic, byte[] value) {
+                forwarded.add(value);
+            }
+        });
+        SUT.setDefaultFreshness(ValueCache.Freshness.maxAge(10, TimeUnit.SECONDS));
+
+        final ListenableFuture<byte[]> read = SUT.read(BATTERY, LEVEL);
+        clock.now += 100;
+        transport.callback.onCharacteristicChanged(BATTERY, LEVEL, new byte[] { 43 });
+        transport.callback.onCharacteristicRead(BATTERY, LEVEL, 0, new byte[] { 42 });
+
+        assertThat(read.get()).isEqualTo(new byte[] { 42 });
+        assertThat(SUT.read(BATTERY, LEVEL).get()).isEqualTo(new byte[] { 43 });
+        assertThat(transport.reads).isEqualTo(1);
+        assertThat(forwarded).hasSize(1);
+    }
+
+    @Test
+    public void shouldKeepValueNotifiedInSameMillisecondAsRead() throws Exception {
+        SUT.setDefaultFreshness(ValueCache.Freshness.FOREVER);
+
+        final ListenableFuture<byte[]> read = SUT.read(BATTERY, LEVEL);
+        transport.callback.onCharacteristicChanged(BATTERY, LEVEL, new byte[] { 43 });
+        transport.callback.onCharacteristicRead(BATTERY, LEVEL, 0, new byte[] { 42 });
+
+        assertThat(read.get()).isEqualTo(new byte[] { 42 });
+        assertThat(SUT.peek(BATTERY, LEVEL)).isEqualTo(new byte[] { 43 });
+
+        SUT.invalidate(BATTERY, LEVEL);
+        SUT.read(BATTERY, LEVEL);
+        transport.callback.onCharacteristicRead(BATTERY, LEVEL, 0, new byte[] { 44 });
+        assertThat(SUT.peek(BATTERY, LEVEL)).isEqualTo(new byte[] { 44 });
+    }
+
+    @Test
+    public void shouldNotCacheReadsInvalidatedInFlight() throws Exception {
+        SUT.setFreshness(BATTERY, LEVEL, ValueCache.Freshness.FOREVER);
+        final ListenableFuture<byte[]> read = SUT.read(BATTERY, LEVEL);
+        SUT.invalidate(BATTERY, LEVEL);
+        transport.callback.onCharacteristicRead(BATTERY, LEVEL, 0, new byte[] { 42 });
+
+        assertThat(read.get()).isEqualTo(new byte[] { 42 });
+        assertThat(SUT.peek(BATTERY, LEVEL)).isNull();
+    }
+
+    private static final class FakeClock implements Clock {
+
+        private long now = 1000;
+
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    }
+
+    private static final class FakeGattTransport implements GattTransport, GattTransport.Connector {
+
+        private Callback callback;
+
+        private int reads;
+
+        @Override
+        public GattTransport open(Callback callback) {
+            this.callback = callback;
+            return this;
+        }
+
+        @Override
+        public boolean readCharacteristic(UUID service, UUID characteristic) {
+            reads++;
+            return true;
+        }
+
+        @Override
+        public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+            return true;
+        }
+
+        @Override
+        public boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+            return true;
+        }
+
+        @Override
+        public boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable) {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
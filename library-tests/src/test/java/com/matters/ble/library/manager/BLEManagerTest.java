@@ -1,7 +1,12 @@
 package com.matters.ble.library.manager;
 
 import android.content.ComponentName;
+import android.os.DeadObjectException;
 import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
 import android.os.RemoteException;
 
 import org.fest.assertions.Assertions;
@@ -14,9 +19,17 @@ import org.robolectric.shadows.ShadowApplication;
 import org.robolectric.shadows.ShadowLooper;
 import org.robolectric.util.ServiceController;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.matters.ble.library.LibraryRobolectrictTestRunner;
+import com.matters.ble.library.scan.SyntheticScanSource;
 
 import static com.matters.ble.library.assertions.BLEManagerAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -92,4 +105,156 @@ public class BLEManagerTest {
         Assertions.assertThat(messagingHandler.hasMessages(BLEService.MESSAGE_DISCONNECT));
     }
 
+    @Test
+    public void shouldApplyConfigurationToServiceOnConnect() throws RemoteException {
+        SUT.configure()
+           .setAttributeStalenessMillis(5000)
+           .setCacheCapacity(64)
+           .setBatchIntervalMillis(250);
+        SUT.connect(serviceBoundCallback);
+
+        final BLEService service = ((BLEService.ServiceBinder) backingService.onBind(null)).getServiceInstance();
+        final BLEManager.Configuration configuration = service.getConfiguration();
+        Assertions.assertThat(configuration.getCacheCapacity()).isEqualTo(64);
+        Assertions.assertThat(configuration.getBatchIntervalMillis()).isEqualTo(250);
+        Assertions.assertThat(service.getAttributeCache().getStalenessMillis()).isEqualTo(5000);
+
+        SUT.disconnect();
+
+        Assertions.assertThat(service.getConfiguration()).isSameAs(BLEManager.Configuration.NULL);
+    }
+
+    @Test
+    public void shouldAcknowledgeCommandsOfMainThreadDirectly() throws RemoteException {
+        SUT.configure().setScanSource(new SyntheticScanSource.Builder().setDeviceCount(1).build());
+        SUT.connect(serviceBoundCallback);
+
+        ShadowLooper.pauseMainLooper();
+
+        Assertions.assertThat(SUT.startRanging()).isTrue();
+        Assertions.assertThat(SUT.startRanging()).isFalse();
+        Assertions.assertThat(SUT.getState()).isEqualTo(BLEManager.State.RANGING);
+
+        Assertions.assertThat(SUT.stopRanging()).isTrue();
+
+        Assertions.assertThat(SUT.getState()).isEqualTo(BLEManager.State.IDLE);
+
+        ShadowLooper.unPauseMainLooper();
+        SUT.disconnect();
+    }
+
+    @Test
+    public void shouldNotifyEveryTransition() throws RemoteException {
+        final List<BLEManager.State> transitions = new ArrayList<BLEManager.State>();
+        SUT.addStateListener(new BLEManager.StateListener() {
+            @Override
+            public void onStateChanged(BLEManager.State previous, BLEManager.State current) {
+                transitions.add(current);
+            }
+        });
+        SUT.configure().setScanSource(new SyntheticScanSource.Builder().setDeviceCount(1).build());
+        SUT.connect(serviceBoundCallback);
+
+        SUT.startRanging();
+        SUT.stopRanging();
+        Assertions.assertThat(SUT.stopRanging()).isFalse();
+
+        Assertions.assertThat(transitions).containsExactly(BLEManager.State.STARTING,
+                                                           BLEManager.State.RANGING,
+                                                           BLEManager.State.STOPPING,
+                                                           BLEManager.State.IDLE);
+
+        SUT.disconnect();
+    }
+
+    @Test
+    public void shouldStopRangingAndForgetClientsOnDestroy() throws RemoteException {
+        SUT.configure().setScanSource(new SyntheticScanSource.Builder().setDeviceCount(1).build());
+        SUT.connect(serviceBoundCallback);
+        SUT.startRanging();
+
+        final BLEService service = ((BLEService.ServiceBinder) backingService.onBind(null)).getServiceInstance();
+        Assertions.assertThat(service.getRangingClientCount()).isEqualTo(1);
+
+        service.onDestroy();
+
+        Assertions.assertThat(service.getRangingClientCount()).isEqualTo(0);
+        Assertions.assertThat(service.getClientCount()).isEqualTo(0);
+        Assertions.assertThat(service.getConfiguration()).isSameAs(BLEManager.Configuration.NULL);
+    }
+
+    @Test
+    public void shouldIgnoreSupersededAcknowledgementsOfRemoteService() throws RemoteException {
+        final List<Message> commands = new ArrayList<Message>();
+        final Messenger remoteService = new Messenger(new Handler(Looper.getMainLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                if (msg.what == BLEService.MESSAGE_REGISTER) {
+                    reply(msg, BLEService.MESSAGE_REGISTERED);
+                } else {
+                    commands.add(Message.obtain(msg));
+                }
+                return true;
+            }
+        }));
+        shadowApplication.setComponentNameAndServiceForBindService(componentName, remoteService.getBinder());
+        SUT.connect(serviceBoundCallback);
+
+        SUT.startRanging();
+        SUT.stopRanging();
+        SUT.startRanging();
+        Assertions.assertThat(commands).hasSize(3);
+
+        reply(commands.get(1), BLEService.MESSAGE_RANGING_STOPPED);
+        reply(commands.get(0), BLEService.MESSAGE_RANGING_STARTED);
+        Assertions.assertThat(SUT.getState()).isEqualTo(BLEManager.State.STARTING);
+
+        reply(commands.get(2), BLEService.MESSAGE_RANGING_STARTED);
+        Assertions.assertThat(SUT.getState()).isEqualTo(BLEManager.State.RANGING);
+
+        reply(commands.get(1), BLEService.MESSAGE_RANGING_STOPPED);
+        Assertions.assertThat(SUT.getState()).isEqualTo(BLEManager.State.RANGING);
+
+        verify(serviceBoundCallback, times(1)).onServiceBound();
+        SUT.disconnect();
+    }
+
+    @Test
+    public void shouldNotRegisterClientDyingWhileRegistering() throws RemoteException {
+        final IBinder deadBinder = mock(IBinder.class);
+        doThrow(new DeadObjectException()).when(deadBinder).linkToDeath(any(IBinder.DeathRecipient.class), anyInt());
+
+        final int clientId = backingService.registerClient(new BLEManager.Configuration.Builder().build(),
+                                                          new Messenger(deadBinder));
+
+        Assertions.assertThat(clientId).isEqualTo(BLEService.NO_CLIENT);
+        Assertions.assertThat(backingService.getClientCount()).isEqualTo(0);
+        Assertions.assertThat(backingService.getConfiguration()).isSameAs(BLEManager.Configuration.NULL);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldRejectMetricsOfRemoteService() throws RemoteException {
+        final Messenger remoteService = new Messenger(new Handler(Looper.getMainLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                if (msg.what == BLEService.MESSAGE_REGISTER) {
+                    reply(msg, BLEService.MESSAGE_REGISTERED);
+                }
+                return true;
+            }
+        }));
+        shadowApplication.setComponentNameAndServiceForBindService(componentName, remoteService.getBinder());
+        SUT.connect(serviceBoundCallback);
+        verify(serviceBoundCallback, times(1)).onServiceBound();
+
+        SUT.getMetrics();
+    }
+
+    private static void reply(Message command, int what) {
+        try {
+            command.replyTo.send(Message.obtain(null, what, 1, command.arg2));
+        } catch (RemoteException e) {
+            throw new AssertionError(e);
+        }
+    }
 }
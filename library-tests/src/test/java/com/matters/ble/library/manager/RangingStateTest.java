@@ -0,0 +1,119 @@
+package com.matters.ble.library.manager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RangingStateTest {
+
+    private final List<BLEManager.State> transitions = Collections.synchronizedList(new ArrayList<BLEManager.State>());
+
+    private final RangingState SUT = new RangingState(new BLEManager.StateListener() {
+        @Override
+        public void onStateChanged(BLEManager.State previous, BLEManager.State current) {
+            transitions.add(current);
+        }
+    });
+
+    @Test
+    public void shouldClaimNextSequenceWithTransition() {
+        final RangingState.Stamp start = SUT.request(BLEManager.State.STARTING);
+
+        assertThat(start.getSequence()).isEqualTo(1);
+        assertThat(SUT.request(BLEManager.State.STARTING)).isNull();
+        assertThat(SUT.acknowledge(start.getSequence(), BLEManager.State.STARTING)).isTrue();
+        assertThat(SUT.request(BLEManager.State.STARTING)).isNull();
+        assertThat(SUT.request(BLEManager.State.STOPPING).getSequence()).isEqualTo(2);
+        assertThat(transitions).containsExactly(BLEManager.State.STARTING,
+                                                BLEManager.State.RANGING,
+                                                BLEManager.State.STOPPING);
+    }
+
+    @Test
+    public void shouldIgnoreAcknowledgementsOfSupersededCommands() {
+        final RangingState.Stamp start = SUT.request(BLEManager.State.STARTING);
+        final RangingState.Stamp stop = SUT.request(BLEManager.State.STOPPING);
+
+        assertThat(SUT.acknowledge(start.getSequence(), BLEManager.State.STARTING)).isFalse();
+        assertThat(SUT.get()).isEqualTo(BLEManager.State.STOPPING);
+        assertThat(SUT.acknowledge(stop.getSequence(), BLEManager.State.STOPPING)).isTrue();
+        assertThat(SUT.get()).isEqualTo(BLEManager.State.IDLE);
+    }
+
+    @Test
+    public void shouldRestorePreviousStateOfCancelledCommand() {
+        final RangingState.Stamp start = SUT.request(BLEManager.State.STARTING);
+        SUT.acknowledge(start.getSequence(), BLEManager.State.STARTING);
+        final RangingState.Stamp stop = SUT.request(BLEManager.State.STOPPING);
+
+        assertThat(SUT.cancel(stop)).isTrue();
+        assertThat(SUT.get()).isEqualTo(BLEManager.State.RANGING);
+        assertThat(SUT.acknowledge(stop.getSequence(), BLEManager.State.STOPPING)).isFalse();
+    }
+
+    @Test
+    public void shouldSupersedeCommandInFlightOnReset() {
+        final RangingState.Stamp start = SUT.request(BLEManager.State.STARTING);
+        SUT.reset();
+
+        assertThat(SUT.acknowledge(start.getSequence(), BLEManager.State.STARTING)).isFalse();
+        assertThat(SUT.get()).isEqualTo(BLEManager.State.IDLE);
+        assertThat(SUT.request(BLEManager.State.STARTING).getSequence()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldSettleLatestCommandOfConcurrentStartsAndStops() throws InterruptedException {
+        final int threadCount = 4;
+        final int commandsPerThread = 20000;
+        final Set<Integer> sequences = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        final AtomicInteger claimed = new AtomicInteger();
+        final CountDownLatch go = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            final BLEManager.State pending = i % 2 == 0 ? BLEManager.State.STARTING : BLEManager.State.STOPPING;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < commandsPerThread; j++) {
+                        final RangingState.Stamp command = SUT.request(j % 2 == 0 ? pending : opposite(pending));
+                        if (command != null) {
+                            claimed.incrementAndGet();
+                            sequences.add(command.getSequence());
+                            SUT.acknowledge(command.getSequence(), command.getState());
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // every command got its own sequence number and the latest one was never ignored
+        assertThat(sequences).hasSize(claimed.get());
+        assertThat(Collections.max(sequences)).isEqualTo(claimed.get());
+        assertThat(Arrays.asList(BLEManager.State.RANGING, BLEManager.State.IDLE)).contains(SUT.get());
+    }
+
+    private static BLEManager.State opposite(BLEManager.State pending) {
+        return pending == BLEManager.State.STARTING ? BLEManager.State.STOPPING : BLEManager.State.STARTING;
+    }
+}
@@ -0,0 +1,64 @@
+package com.matters.ble.library.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class EventTraceTest {
+
+    @After
+    public void tearDown() {
+        EventTrace.disable();
+    }
+
+    @Test
+    public void shouldNotRecordWhenDisabled() throws Exception {
+        EventTrace.begin(EventTrace.HANDLE_MESSAGE, 1);
+        EventTrace.end(EventTrace.HANDLE_MESSAGE);
+
+        assertThat(EventTrace.isEnabled()).isFalse();
+        assertThat(EventTrace.dump(new StringBuilder())).isFalse();
+    }
+
+    @Test
+    public void shouldWriteChromeTraceEvents() throws Exception {
+        EventTrace.enable(16, false);
+        EventTrace.asyncBegin(EventTrace.SERVICE_BIND, 7);
+        EventTrace.begin(EventTrace.HANDLE_MESSAGE, 2);
+        EventTrace.instant(EventTrace.EVICTION, 0xA0B0C0D0E0F0L);
+        EventTrace.end(EventTrace.HANDLE_MESSAGE);
+        EventTrace.asyncEnd(EventTrace.SERVICE_BIND, 7);
+
+        final StringBuilder out = new StringBuilder();
+        assertThat(EventTrace.dump(out)).isTrue();
+        final String json = out.toString();
+
+        assertThat(json).startsWith("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        assertThat(json).contains("\"name\":\"bindService\",\"cat\":\"ble\",\"ph\":\"b\"");
+        assertThat(json).contains("\"name\":\"handleMessage\",\"cat\":\"ble\",\"ph\":\"B\"");
+        assertThat(json).contains("\"args\":{\"arg\":2}");
+        assertThat(json).contains("\"ph\":\"i\"");
+        assertThat(json).contains("\"args\":{\"arg\":" + 0xA0B0C0D0E0F0L + "}");
+        assertThat(json).contains("\"name\":\"bindService\",\"cat\":\"ble\",\"ph\":\"e\"");
+        assertThat(json).contains("\"name\":\"thread_name\"");
+        assertThat(json.indexOf("\"ph\":\"B\"")).isLessThan(json.indexOf("\"ph\":\"E\""));
+    }
+
+    @Test
+    public void shouldKeepOnlyTheLatestEvents() throws Exception {
+        EventTrace.enable(4, false);
+        for (int i = 0; i < 10; i++) {
+            EventTrace.instant(EventTrace.EVICTION, i);
+        }
+
+        final StringBuilder out = new StringBuilder();
+        EventTrace.dump(out);
+        final String json = out.toString();
+
+        assertThat(json).excludes("{\"arg\":5}");
+        for (int i = 6; i < 10; i++) {
+            assertThat(json).contains("{\"arg\":" + i + "}");
+        }
+    }
+}
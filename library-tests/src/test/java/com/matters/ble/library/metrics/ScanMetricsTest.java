@@ -0,0 +1,135 @@
+package com.matters.ble.library.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.matters.ble.library.util.Clock;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ScanMetricsTest {
+
+    private long now = 1000;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    };
+
+    private final ScanMetrics SUT = new ScanMetrics(clock);
+
+    @Test
+    public void shouldSumCountersAcrossThreads() throws InterruptedException {
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        SUT.onAdvertisement();
+                        SUT.onCacheLookup(j % 4 != 0);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        final MetricsSnapshot snapshot = SUT.snapshot();
+        assertThat(snapshot.getAdvertisementCount()).isEqualTo(40000);
+        assertThat(snapshot.getCacheHitCount()).isEqualTo(30000);
+        assertThat(snapshot.getCacheMissCount()).isEqualTo(10000);
+    }
+
+    @Test
+    public void shouldMeasureRateSincePreviousSnapshot() {
+        for (int i = 0; i < 500; i++) {
+            SUT.onAdvertisement();
+        }
+        now += 1000;
+        final MetricsSnapshot first = SUT.snapshot(null);
+        assertThat(first.getAdvertisementsPerSecond()).isEqualTo(500.0);
+
+        for (int i = 0; i < 100; i++) {
+            SUT.onAdvertisement();
+        }
+        now += 2000;
+        assertThat(SUT.snapshot(first).getAdvertisementsPerSecond()).isEqualTo(50.0);
+    }
+
+    @Test
+    public void shouldKeepRateWindowsOfCallersApart() {
+        for (int i = 0; i < 300; i++) {
+            SUT.onAdvertisement();
+        }
+        now += 1000;
+        final MetricsSnapshot frequent = SUT.snapshot(null);
+        now += 500;
+        SUT.snapshot(frequent);
+
+        for (int i = 0; i < 300; i++) {
+            SUT.onAdvertisement();
+        }
+        now += 1500;
+        assertThat(SUT.snapshot(null).getAdvertisementsPerSecond()).isEqualTo(200.0);
+        assertThat(SUT.snapshot(frequent).getAdvertisementsPerSecond()).isEqualTo(150.0);
+    }
+
+    @Test
+    public void shouldBucketLatenciesByPowersOfTwo() {
+        for (int i = 0; i < 90; i++) {
+            SUT.onDelivery(1500);
+        }
+        for (int i = 0; i < 10; i++) {
+            SUT.onDelivery(1000000);
+        }
+
+        final Histogram.Snapshot latency = SUT.snapshot().getDeliveryLatency();
+        assertThat(latency.getCount()).isEqualTo(100);
+        assertThat(latency.getSum()).isEqualTo(90 * 1500 + 10 * 1000000);
+        assertThat(latency.getPercentile(50)).isEqualTo(2048);
+        assertThat(latency.getPercentile(99)).isEqualTo(1048576);
+    }
+
+    @Test
+    public void shouldReadGaugesAndWriteText() {
+        SUT.bind(new ScanMetrics.Gauges() {
+            @Override
+            public int getTrackedDeviceCount() {
+                return 42;
+            }
+
+            @Override
+            public int getQueueDepth() {
+                return 7;
+            }
+
+            @Override
+            public long getDroppedCount() {
+                return 3;
+            }
+        });
+        SUT.onFilterDrop();
+        SUT.onCacheEviction();
+        SUT.onDelivery(3);
+        SUT.onDelivery(5);
+
+        final String text = SUT.snapshot().toString();
+        assertThat(text).contains("ble_tracked_devices 42\n");
+        assertThat(text).contains("ble_queue_depth 7\n");
+        assertThat(text).contains("ble_queue_drops_total 3\n");
+        assertThat(text).contains("ble_filter_drops_total 1\n");
+        assertThat(text).contains("ble_cache_evictions_total 1\n");
+        assertThat(text).contains("ble_deliveries_total 2\n");
+        assertThat(text).contains("ble_delivery_latency_nanos_bucket{le=\"3\"} 1\n");
+        assertThat(text).contains("ble_delivery_latency_nanos_count 2\n");
+    }
+}
@@ -0,0 +1,196 @@
+package com.matters.ble.library.pipeline;
+
+import android.bluetooth.BluetoothDevice;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ScanRingBufferTest {
+
+    private final List<Long> received = new ArrayList<Long>();
+
+    private final AdvertisementSink recordingSink = new AdvertisementSink() {
+        @Override
+        public void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+            received.add(address);
+        }
+    };
+
+    @Test
+    public void shouldRoundCapacityUpToPowerOfTwo() {
+        assertThat(new ScanRingBuffer(5, OverflowPolicy.DROP_NEWEST).getCapacity()).isEqualTo(8);
+        assertThat(new ScanRingBuffer(8, OverflowPolicy.DROP_NEWEST).getCapacity()).isEqualTo(8);
+    }
+
+    @Test
+    public void shouldCopyRecordIntoSlot() {
+        final ScanRingBuffer SUT = new ScanRingBuffer(4, OverflowPolicy.DROP_NEWEST);
+        final byte[] record = {2, 1, 6};
+        final byte[][] delivered = new byte[1][];
+
+        SUT.offer(null, 1L, -60, 10L, record);
+        record[2] = 0;
+        SUT.poll(new AdvertisementSink() {
+            @Override
+            public void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+                delivered[0] = scanRecord.clone();
+                assertThat(rssi).isEqualTo(-60);
+                assertThat(timestampNanos).isEqualTo(10L);
+            }
+        });
+
+        assertThat(delivered[0][2]).isEqualTo((byte) 6);
+        assertThat(SUT.getDepth()).isZero();
+    }
+
+    @Test
+    public void shouldDropNewestWhenFull() {
+        final ScanRingBuffer SUT = new ScanRingBuffer(2, OverflowPolicy.DROP_NEWEST);
+
+        for (long address = 1; address <= 3; address++) {
+            SUT.offer(null, address, -60, 0, new byte[0]);
+        }
+        drain(SUT);
+
+        assertThat(received).containsOnly(1L, 2L);
+        assertThat(SUT.getDroppedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldDropOldestWhenFull() {
+        final ScanRingBuffer SUT = new ScanRingBuffer(2, OverflowPolicy.DROP_OLDEST);
+
+        for (long address = 1; address <= 4; address++) {
+            SUT.offer(null, address, -60, 0, new byte[0]);
+        }
+        assertThat(SUT.getDepth()).isEqualTo(2);
+        drain(SUT);
+
+        assertThat(received).containsOnly(3L, 4L);
+        assertThat(SUT.getDroppedCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldKeepRecordLengthWithoutReallocatingSlot() {
+        final ScanRingBuffer SUT = new ScanRingBuffer(1, OverflowPolicy.DROP_NEWEST);
+        final List<byte[]> delivered = new ArrayList<byte[]>();
+        final AdvertisementSink sink = new AdvertisementSink() {
+            @Override
+            public void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+                delivered.add(scanRecord);
+            }
+        };
+
+        SUT.offer(null, 1L, -60, 0, new byte[]{1, 2, 3});
+        SUT.poll(sink);
+        SUT.offer(null, 2L, -60, 0, new byte[]{4, 5, 6});
+        SUT.poll(sink);
+        SUT.offer(null, 3L, -60, 0, new byte[]{7});
+        SUT.poll(sink);
+
+        assertThat(delivered.get(1)).isEqualTo(new byte[]{4, 5, 6});
+        assertThat(delivered.get(1)).isSameAs(delivered.get(0));
+        assertThat(delivered.get(2)).isEqualTo(new byte[]{7});
+    }
+
+    @Test
+    public void shouldDropOnlyIncomingWhileOldestIsBeingConsumed() throws Exception {
+        final ScanRingBuffer SUT = new ScanRingBuffer(8, OverflowPolicy.DROP_OLDEST);
+        final CountDownLatch consuming = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (long address = 1; address <= 8; address++) {
+            SUT.offer(null, address, -60, 0, new byte[0]);
+        }
+        final Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SUT.poll(new AdvertisementSink() {
+                    @Override
+                    public void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+                        received.add(address);
+                        consuming.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        });
+
+        consumer.start();
+        assertThat(consuming.await(1, TimeUnit.SECONDS)).isTrue();
+        final boolean accepted = SUT.offer(null, 9L, -60, 0, new byte[0]);
+        release.countDown();
+        consumer.join();
+
+        assertThat(accepted).isFalse();
+        assertThat(SUT.getDroppedCount()).isEqualTo(1L);
+        drain(SUT);
+        assertThat(received).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+    }
+
+    @Test
+    public void shouldDeliverOrDropEveryAdvertisementOnceUnderConcurrentConsumer() throws InterruptedException {
+        final ScanRingBuffer SUT = new ScanRingBuffer(8, OverflowPolicy.DROP_OLDEST);
+        final int count = 100000;
+        final AtomicBoolean producing = new AtomicBoolean(true);
+        final Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (producing.get()) {
+                    SUT.poll(recordingSink);
+                }
+            }
+        });
+
+        consumer.start();
+        for (long address = 1; address <= count; address++) {
+            SUT.offer(null, address, -60, 0, new byte[]{(byte) address});
+        }
+        producing.set(false);
+        consumer.join();
+        drain(SUT);
+
+        assertThat(received.size() + SUT.getDroppedCount()).isEqualTo((long) count);
+        for (int i = 1; i < received.size(); i++) {
+            assertThat(received.get(i)).isGreaterThan(received.get(i - 1));
+        }
+    }
+
+    @Test
+    public void shouldBlockProducerUntilConsumerFreesSlot() throws InterruptedException {
+        final ScanRingBuffer SUT = new ScanRingBuffer(2, OverflowPolicy.BLOCK);
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long address = 1; address <= 100; address++) {
+                    SUT.offer(null, address, -60, 0, new byte[0]);
+                }
+            }
+        });
+
+        producer.start();
+        while (received.size() < 100) {
+            SUT.poll(recordingSink);
+        }
+        producer.join();
+
+        assertThat(received.get(99)).isEqualTo(100L);
+        assertThat(SUT.getDroppedCount()).isZero();
+    }
+
+    private void drain(ScanRingBuffer ringBuffer) {
+        while (ringBuffer.poll(recordingSink)) {
+            // keep polling
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.matters.ble.library.scan;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.matters.ble.library.util.Clock;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DutyCycleSchedulerTest {
+
+    private final List<String> radioEvents = new ArrayList<String>();
+
+    private long now;
+
+    private Runnable pendingTask;
+
+    private long pendingAt;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    };
+
+    private final DutyCycleScheduler.Radio radio = new DutyCycleScheduler.Radio() {
+        @Override
+        public void startScan() {
+            radioEvents.add("start@" + now);
+        }
+
+        @Override
+        public void stopScan() {
+            radioEvents.add("stop@" + now);
+        }
+    };
+
+    private final DutyCycleScheduler.Timer timer = new DutyCycleScheduler.Timer() {
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            pendingTask = task;
+            pendingAt = now + delayMillis;
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            pendingTask = null;
+        }
+    };
+
+    private final DutyCycleScheduler SUT = new DutyCycleScheduler(radio, timer, clock,
+                                                                  ScanProfile.CONTINUOUS,
+                                                                  new ScanProfile(1000, 5000));
+
+    @Test
+    public void shouldScanContinuouslyInForeground() {
+        SUT.start();
+
+        assertThat(SUT.isScanning()).isTrue();
+        assertThat(pendingTask).isNull();
+        assertThat(radioEvents).containsOnly("start@0");
+    }
+
+    @Test
+    public void shouldDutyCycleInBackground() {
+        SUT.setForeground(false);
+        SUT.start();
+
+        advanceTo(1000);
+        assertThat(SUT.isScanning()).isFalse();
+        advanceTo(5000);
+        advanceTo(6000);
+
+        assertThat(radioEvents).containsOnly("start@0", "stop@1000", "start@5000", "stop@6000");
+    }
+
+    @Test
+    public void shouldShortenWindowWhenSwitchingToBackground() {
+        SUT.start();
+        now = 3000;
+
+        SUT.setForeground(false);
+
+        assertThat(SUT.isScanning()).isFalse();
+        assertThat(pendingAt).isEqualTo(5000L);
+        assertThat(radioEvents).containsOnly("start@0", "stop@3000");
+    }
+
+    @Test
+    public void shouldResumeScanningAtOnceWhenSwitchingToForeground() {
+        SUT.setForeground(false);
+        SUT.start();
+        advanceTo(1000);
+        now = 2000;
+
+        SUT.setForeground(true);
+
+        assertThat(SUT.isScanning()).isTrue();
+        assertThat(pendingTask).isNull();
+        assertThat(radioEvents).containsOnly("start@0", "stop@1000", "start@2000");
+    }
+
+    @Test
+    public void shouldStopRadioAndTimerOnStop() {
+        SUT.setForeground(false);
+        SUT.start();
+
+        SUT.stop();
+
+        assertThat(SUT.isScanning()).isFalse();
+        assertThat(pendingTask).isNull();
+        assertThat(radioEvents).containsOnly("start@0", "stop@0");
+    }
+
+    private void advanceTo(long time) {
+        assertThat(pendingAt).isEqualTo(time);
+        now = time;
+        final Runnable task = pendingTask;
+        pendingTask = null;
+        task.run();
+    }
+}
@@ -0,0 +1,88 @@
+package com.matters.ble.library.scan;
+
+import android.bluetooth.BluetoothDevice;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.pipeline.AdvertisementSink;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SyntheticScanSourceTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Set<Long> addresses = new HashSet<Long>();
+
+    private final Set<Integer> payloads = new HashSet<Integer>();
+
+    private long lastTimestamp;
+
+    private boolean ordered = true;
+
+    private final AdvertisementSink recordingSink = new AdvertisementSink() {
+        @Override
+        public void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+            ordered &= timestampNanos >= lastTimestamp;
+            lastTimestamp = timestampNanos;
+            addresses.add(address);
+            payloads.add(Arrays.hashCode(scanRecord));
+            assertThat(rssi >= -100 && rssi <= -30).isTrue();
+        }
+    };
+
+    @Test
+    public void shouldAdvertiseEveryDeviceAtItsInterval() {
+        final SyntheticScanSource SUT = new SyntheticScanSource.Builder()
+                .setDeviceCount(50)
+                .setAdvertisingIntervalMillis(100)
+                .build();
+
+        final int emitted = SUT.advance(10 * SECOND, recordingSink);
+
+        // 100 ms interval plus up to 10 ms advertising delay
+        assertThat(emitted).isGreaterThan(50 * 90).isLessThan(50 * 101);
+        assertThat(addresses).hasSize(50);
+        assertThat(ordered).isTrue();
+    }
+
+    @Test
+    public void shouldRotateAddresses() {
+        final SyntheticScanSource SUT = new SyntheticScanSource.Builder()
+                .setDeviceCount(10)
+                .setMacRotationIntervalMillis(1000)
+                .build();
+
+        SUT.advance(5 * SECOND, recordingSink);
+
+        // every device rotates about 5 times, the initial address may be rotated before it is advertised
+        assertThat(SUT.getRotationCount()).isGreaterThan(40L).isLessThan(51L);
+        assertThat((long) addresses.size()).isGreaterThan(SUT.getRotationCount());
+    }
+
+    @Test
+    public void shouldKeepPayloadWithoutChurn() {
+        final SyntheticScanSource SUT = new SyntheticScanSource.Builder()
+                .setDeviceCount(10)
+                .setPayloadChurnProbability(0)
+                .build();
+
+        SUT.advance(SECOND, recordingSink);
+
+        assertThat(payloads).hasSize(10);
+    }
+
+    @Test
+    public void shouldBeReproducibleForSeed() {
+        final SyntheticScanSource first = new SyntheticScanSource.Builder().setSeed(42).build();
+        final SyntheticScanSource second = new SyntheticScanSource.Builder().setSeed(42).build();
+
+        assertThat(first.advance(SECOND, recordingSink)).isEqualTo(second.advance(SECOND, recordingSink));
+        assertThat(first.getNextAdvertisingAt()).isEqualTo(second.getNextAdvertisingAt());
+    }
+}
@@ -0,0 +1,42 @@
+package com.matters.ble.library.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trace clock advanced by hand, sleeping advances it without waiting.
+ */
+public class FakeTraceClock implements TraceClock {
+
+    /**
+     * The time base of advertisement timestamps.
+     */
+    public long nanoTime;
+
+    /**
+     * Nanoseconds since boot, ahead of {@link #nanoTime} by the time spent in deep sleep.
+     */
+    public long elapsedRealtimeNanos;
+
+    /**
+     * The nanoseconds slept, in order.
+     */
+    public final List<Long> sleeps = new ArrayList<Long>();
+
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    @Override
+    public long elapsedRealtimeNanos() {
+        return elapsedRealtimeNanos;
+    }
+
+    @Override
+    public void sleep(long nanos) {
+        sleeps.add(nanos);
+        nanoTime += nanos;
+        elapsedRealtimeNanos += nanos;
+    }
+}
@@ -0,0 +1,108 @@
+package com.matters.ble.library.trace;
+
+import android.bluetooth.BluetoothDevice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.matters.ble.library.pipeline.AdvertisementSink;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TraceQueryTest {
+
+    private static final int DEVICES = 100;
+
+    private static final int RECORDS = 3000;
+
+    private static final int SEGMENT_SIZE = TraceFormat.HEADER_SIZE + 1000 * TraceFormat.RECORD_SIZE;
+
+    private final List<Long> matchedTimestamps = new ArrayList<Long>();
+
+    private final AdvertisementSink recordingSink = new AdvertisementSink() {
+        @Override
+        public void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+            matchedTimestamps.add(timestampNanos);
+            assertThat(scanRecord[0]).isEqualTo((byte) address);
+        }
+    };
+
+    private File directory;
+
+    @Before
+    public void beforeEachTest() throws IOException {
+        directory = File.createTempFile("trace", "");
+        directory.delete();
+
+        final TraceRecorder recorder = new TraceRecorder(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE, new FakeTraceClock());
+        for (int i = 0; i < RECORDS; i++) {
+            final long address = addressOf(i);
+            recorder.onAdvertisement(null, address, -60, i * 1000L, new byte[]{(byte) address, 0, 0});
+        }
+        recorder.close();
+    }
+
+    @After
+    public void afterEachTest() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void shouldMatchDevicesWithinTimestampRange() throws IOException {
+        final TraceQuery SUT = new TraceQuery.Builder()
+                .addAddress(0xA00000000013L)
+                .addAddress(0xA00000000042L)
+                .setTimestampRange(500 * 1000L, 2500 * 1000L)
+                .build();
+
+        final long matches = SUT.execute(directory, recordingSink);
+
+        final List<Long> expected = new ArrayList<Long>();
+        for (int i = 500; i <= 2500; i++) {
+            if (addressOf(i) == 0xA00000000013L || addressOf(i) == 0xA00000000042L) {
+                expected.add(i * 1000L);
+            }
+        }
+        assertThat(matches).isEqualTo((long) expected.size());
+        assertThat(matchedTimestamps).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldMatchEveryDeviceWithoutAddresses() throws IOException {
+        final long matches = new TraceQuery.Builder().build().execute(directory, recordingSink);
+
+        assertThat(matches).isEqualTo((long) RECORDS);
+    }
+
+    @Test
+    public void shouldIndexOnlyBlocksHoldingDevice() throws IOException {
+        final TraceSegment segment = new TraceSegment(new TraceReader(directory, new FakeTraceClock()).getSegments()[0]);
+        final TraceIndex index = TraceIndex.forSegment(segment);
+        final boolean[] blocks = new boolean[index.getBlockCount()];
+
+        // device 0xA00000000001 advertises in the first 256 records only
+        index.markBlocks(0xA00000000001L, blocks);
+        segment.close();
+
+        assertThat(index.getBlockCount()).isEqualTo(4);
+        assertThat(index.getDeviceCount()).isEqualTo(DEVICES + 1);
+        assertThat(blocks[0]).isTrue();
+        assertThat(blocks[1] || blocks[2] || blocks[3]).isFalse();
+        assertThat(index.markBlocks(0xB00000000000L, blocks)).isFalse();
+        assertThat(TraceIndex.indexFile(segment.getFile()).isFile()).isTrue();
+    }
+
+    private static long addressOf(int record) {
+        // a rare device early in the trace, the others round robin
+        return record < 10 ? 0xA00000000001L : 0xA00000000000L + 0x10 + record % DEVICES;
+    }
+}
@@ -0,0 +1,151 @@
+package com.matters.ble.library.trace;
+
+import android.bluetooth.BluetoothDevice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.matters.ble.library.pipeline.AdvertisementSink;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TraceRecorderTest {
+
+    private static final int RECORDS_PER_SEGMENT = 10;
+
+    private static final int SEGMENT_SIZE = TraceFormat.HEADER_SIZE + RECORDS_PER_SEGMENT * TraceFormat.RECORD_SIZE;
+
+    private final List<Long> replayedAddresses = new ArrayList<Long>();
+
+    private final List<Long> replayedTimestamps = new ArrayList<Long>();
+
+    private final List<byte[]> replayedRecords = new ArrayList<byte[]>();
+
+    private final AdvertisementSink recordingSink = new AdvertisementSink() {
+        @Override
+        public void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+            replayedAddresses.add(address);
+            replayedTimestamps.add(timestampNanos);
+            replayedRecords.add(scanRecord.clone());
+            assertThat(rssi).isEqualTo(-(int) address);
+        }
+    };
+
+    private final FakeTraceClock clock = new FakeTraceClock();
+
+    private File directory;
+
+    @Before
+    public void beforeEachTest() throws IOException {
+        directory = File.createTempFile("trace", "");
+        directory.delete();
+    }
+
+    @After
+    public void afterEachTest() {
+        for (File file : TraceFormat.listSegments(directory)) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void shouldReplayRecordedAdvertisements() throws Exception {
+        final TraceRecorder SUT = new TraceRecorder(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE, clock);
+
+        record(SUT, 1, 25);
+        SUT.close();
+        final long replayed = new TraceReader(directory, clock).replay(recordingSink, TraceReader.AS_FAST_AS_POSSIBLE);
+
+        assertThat(replayed).isEqualTo(25L);
+        assertThat(new TraceReader(directory, clock).getSegments()).hasSize(3);
+        assertThat(replayedAddresses.get(0)).isEqualTo(1L);
+        assertThat(replayedAddresses.get(24)).isEqualTo(25L);
+        assertThat(replayedRecords.get(4)).isEqualTo(new byte[]{5, 5, 5, 5, 5});
+    }
+
+    @Test
+    public void shouldDeleteOldestSegmentsAboveSizeBudget() throws Exception {
+        final TraceRecorder SUT = new TraceRecorder(directory, SEGMENT_SIZE, 2 * SEGMENT_SIZE, clock);
+
+        record(SUT, 1, 35);
+        SUT.close();
+        new TraceReader(directory, clock).replay(recordingSink, TraceReader.AS_FAST_AS_POSSIBLE);
+
+        assertThat(new TraceReader(directory, clock).getSegments()).hasSize(2);
+        assertThat(replayedAddresses).hasSize(15);
+        assertThat(replayedAddresses.get(0)).isEqualTo(21L);
+    }
+
+    @Test
+    public void shouldContinueAfterExistingSegments() throws Exception {
+        final TraceRecorder first = new TraceRecorder(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE, clock);
+        record(first, 1, 5);
+        first.close();
+
+        final TraceRecorder second = new TraceRecorder(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE, clock);
+        record(second, 6, 10);
+        second.close();
+        new TraceReader(directory, clock).replay(recordingSink, TraceReader.AS_FAST_AS_POSSIBLE);
+
+        assertThat(replayedAddresses).hasSize(10);
+        assertThat(replayedAddresses.get(9)).isEqualTo(10L);
+    }
+
+    @Test
+    public void shouldReplayWithAcceleratedTiming() throws Exception {
+        final TraceRecorder SUT = new TraceRecorder(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE, clock);
+        final long second = 1000000000L;
+        SUT.onAdvertisement(null, 1, -1, 0, new byte[0]);
+        SUT.onAdvertisement(null, 2, -2, second, new byte[0]);
+        SUT.close();
+
+        new TraceReader(directory, clock).replay(recordingSink, 10);
+
+        assertThat(clock.sleeps).containsExactly(second / 10);
+        assertThat(replayedTimestamps).containsExactly(0L, second);
+    }
+
+    @Test
+    public void shouldRecordTimestampsInElapsedRealtime() throws Exception {
+        clock.nanoTime = 1000;
+        clock.elapsedRealtimeNanos = 5000;
+        final TraceRecorder SUT = new TraceRecorder(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE, clock);
+        SUT.onAdvertisement(null, 1, -1, 1000, new byte[0]);
+        // the device sleeps, elapsed realtime moves on without nanoTime
+        clock.elapsedRealtimeNanos += 3000;
+        SUT.onAdvertisement(null, 2, -2, 2000, new byte[0]);
+        SUT.close();
+
+        new TraceReader(directory, clock).replay(recordingSink, TraceReader.AS_FAST_AS_POSSIBLE);
+
+        assertThat(replayedTimestamps).containsExactly(5000L, 9000L);
+    }
+
+    @Test
+    public void shouldBudgetSegmentsOfRoundedSize() throws Exception {
+        // rounded down to 10 records, so the budget holds 3 segments rather than 2
+        final int segmentSize = SEGMENT_SIZE + TraceFormat.RECORD_SIZE / 2;
+        final TraceRecorder SUT = new TraceRecorder(directory, segmentSize, 3 * SEGMENT_SIZE, clock);
+
+        record(SUT, 1, 35);
+        SUT.close();
+
+        assertThat(new TraceReader(directory, clock).getSegments()).hasSize(3);
+    }
+
+    private void record(TraceRecorder recorder, int fromAddress, int toAddress) {
+        for (int address = fromAddress; address <= toAddress; address++) {
+            final byte[] record = new byte[Math.min(address, TraceRecorder.MAX_RECORD_LENGTH)];
+            Arrays.fill(record, (byte) address);
+            recorder.onAdvertisement(null, address, -address, address * 1000L, record);
+        }
+    }
+}
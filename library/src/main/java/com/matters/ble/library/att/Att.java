@@ -0,0 +1,263 @@
+package com.matters.ble.library.att;
+
+import java.util.UUID;
+
+/**
+ * Constants of the Attribute Protocol, Bluetooth Core Specification Vol 3 Part F.
+ */
+public final class Att {
+
+    /**
+     * The default ATT_MTU of LE.
+     */
+    public static final int DEFAULT_MTU = 23;
+
+    /**
+     * The largest ATT_MTU, an attribute value of 512 bytes plus a prepare write header.
+     */
+    public static final int MAX_MTU = 517;
+
+    /**
+     * The most significant bits of the Bluetooth Base UUID, 00000000-0000-1000-8000-00805F9B34FB.
+     */
+    public static final long BASE_UUID_MSB = 0x0000000000001000L;
+
+    /**
+     * The least significant bits of the Bluetooth Base UUID.
+     */
+    public static final long BASE_UUID_LSB = 0x800000805F9B34FBL;
+
+    /**
+     * The Error Response opcode.
+     */
+    public static final int ERROR_RSP = 0x01;
+
+    /**
+     * The Exchange MTU Request opcode.
+     */
+    public static final int EXCHANGE_MTU_REQ = 0x02;
+
+    /**
+     * The Exchange MTU Response opcode.
+     */
+    public static final int EXCHANGE_MTU_RSP = 0x03;
+
+    /**
+     * The Find Information Request opcode.
+     */
+    public static final int FIND_INFORMATION_REQ = 0x04;
+
+    /**
+     * The Find Information Response opcode.
+     */
+    public static final int FIND_INFORMATION_RSP = 0x05;
+
+    /**
+     * The Read By Type Request opcode.
+     */
+    public static final int READ_BY_TYPE_REQ = 0x08;
+
+    /**
+     * The Read By Type Response opcode.
+     */
+    public static final int READ_BY_TYPE_RSP = 0x09;
+
+    /**
+     * The Read Request opcode.
+     */
+    public static final int READ_REQ = 0x0A;
+
+    /**
+     * The Read Response opcode.
+     */
+    public static final int READ_RSP = 0x0B;
+
+    /**
+     * The Read Blob Request opcode.
+     */
+    public static final int READ_BLOB_REQ = 0x0C;
+
+    /**
+     * The Read Blob Response opcode.
+     */
+    public static final int READ_BLOB_RSP = 0x0D;
+
+    /**
+     * The Read By Group Type Request opcode.
+     */
+    public static final int READ_BY_GROUP_TYPE_REQ = 0x10;
+
+    /**
+     * The Read By Group Type Response opcode.
+     */
+    public static final int READ_BY_GROUP_TYPE_RSP = 0x11;
+
+    /**
+     * The Write Request opcode.
+     */
+    public static final int WRITE_REQ = 0x12;
+
+    /**
+     * The Write Response opcode.
+     */
+    public static final int WRITE_RSP = 0x13;
+
+    /**
+     * The Write Command opcode.
+     */
+    public static final int WRITE_CMD = 0x52;
+
+    /**
+     * The Prepare Write Request opcode.
+     */
+    public static final int PREPARE_WRITE_REQ = 0x16;
+
+    /**
+     * The Prepare Write Response opcode.
+     */
+    public static final int PREPARE_WRITE_RSP = 0x17;
+
+    /**
+     * The Execute Write Request opcode.
+     */
+    public static final int EXECUTE_WRITE_REQ = 0x18;
+
+    /**
+     * The Execute Write Response opcode.
+     */
+    public static final int EXECUTE_WRITE_RSP = 0x19;
+
+    /**
+     * The Handle Value Notification opcode.
+     */
+    public static final int HANDLE_VALUE_NTF = 0x1B;
+
+    /**
+     * The Handle Value Indication opcode.
+     */
+    public static final int HANDLE_VALUE_IND = 0x1D;
+
+    /**
+     * The Handle Value Confirmation opcode.
+     */
+    public static final int HANDLE_VALUE_CFM = 0x1E;
+
+    /**
+     * The Invalid Handle error code.
+     */
+    public static final int ERROR_INVALID_HANDLE = 0x01;
+
+    /**
+     * The Read Not Permitted error code.
+     */
+    public static final int ERROR_READ_NOT_PERMITTED = 0x02;
+
+    /**
+     * The Write Not Permitted error code.
+     */
+    public static final int ERROR_WRITE_NOT_PERMITTED = 0x03;
+
+    /**
+     * The Invalid PDU error code.
+     */
+    public static final int ERROR_INVALID_PDU = 0x04;
+
+    /**
+     * The Insufficient Authentication error code.
+     */
+    public static final int ERROR_INSUFFICIENT_AUTHENTICATION = 0x05;
+
+    /**
+     * The Request Not Supported error code.
+     */
+    public static final int ERROR_REQUEST_NOT_SUPPORTED = 0x06;
+
+    /**
+     * The Invalid Offset error code.
+     */
+    public static final int ERROR_INVALID_OFFSET = 0x07;
+
+    /**
+     * The Insufficient Authorization error code.
+     */
+    public static final int ERROR_INSUFFICIENT_AUTHORIZATION = 0x08;
+
+    /**
+     * The Prepare Queue Full error code.
+     */
+    public static final int ERROR_PREPARE_QUEUE_FULL = 0x09;
+
+    /**
+     * The Attribute Not Found error code.
+     */
+    public static final int ERROR_ATTRIBUTE_NOT_FOUND = 0x0A;
+
+    /**
+     * The Attribute Not Long error code.
+     */
+    public static final int ERROR_ATTRIBUTE_NOT_LONG = 0x0B;
+
+    /**
+     * The Insufficient Encryption Key Size error code.
+     */
+    public static final int ERROR_INSUFFICIENT_ENCRYPTION_KEY_SIZE = 0x0C;
+
+    /**
+     * The Invalid Attribute Value Length error code.
+     */
+    public static final int ERROR_INVALID_ATTRIBUTE_VALUE_LENGTH = 0x0D;
+
+    /**
+     * The Unlikely Error error code.
+     */
+    public static final int ERROR_UNLIKELY = 0x0E;
+
+    /**
+     * The Insufficient Encryption error code.
+     */
+    public static final int ERROR_INSUFFICIENT_ENCRYPTION = 0x0F;
+
+    /**
+     * The Unsupported Group Type error code.
+     */
+    public static final int ERROR_UNSUPPORTED_GROUP_TYPE = 0x10;
+
+    /**
+     * The Insufficient Resources error code.
+     */
+    public static final int ERROR_INSUFFICIENT_RESOURCES = 0x11;
+
+    private Att() {
+    }
+
+    /**
+     * Checks whether a UUID is a 16-bit UUID on top of the Bluetooth Base UUID.
+     *
+     * @param msb the most significant bits
+     * @param lsb the least significant bits
+     * @return the boolean
+     */
+    public static boolean isShortUuid(long msb, long lsb) {
+        return lsb == BASE_UUID_LSB && (msb & 0xFFFF0000FFFFFFFFL) == BASE_UUID_MSB;
+    }
+
+    /**
+     * Gets the most significant bits of a 16-bit UUID.
+     *
+     * @param uuid16 the 16-bit UUID
+     * @return the most significant bits
+     */
+    public static long shortUuidMsb(int uuid16) {
+        return BASE_UUID_MSB | ((long) (uuid16 & 0xFFFF) << 32);
+    }
+
+    /**
+     * Creates a UUID from a 16-bit UUID.
+     *
+     * @param uuid16 the 16-bit UUID
+     * @return the uuid
+     */
+    public static UUID shortUuid(int uuid16) {
+        return new UUID(shortUuidMsb(uuid16), BASE_UUID_LSB);
+    }
+}
@@ -0,0 +1,865 @@
+package com.matters.ble.library.att;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+
+/**
+ * Codec of Attribute Protocol PDUs over a reusable {@link ByteBuffer}.
+ *
+ * The PDU occupies the buffer from index 0 to its limit. Encoding methods overwrite the buffer
+ * with a new PDU and leave it ready to be sent, position 0 and limit at the end of the PDU.
+ * Responses holding lists are started with the encoding method and grown with the matching
+ * {@code add} method until it reports the PDU full. To decode, the received PDU is put into the
+ * buffer from index 0 with the limit at its end, e.g. by {@link ByteBuffer#flip()}, and read
+ * with the getters matching its {@link #getOpcode()} after {@link #isValid()}.
+ *
+ * PDUs are bounded by the ATT_MTU given with {@link #setMtu(int)}: read responses and handle
+ * value notifications and indications truncate their value as the specification requires,
+ * writes longer than the MTU are refused. Multi-byte fields are little endian and 128-bit UUIDs
+ * are passed as their most and least significant bits, so neither encoding nor decoding
+ * allocates. Not thread safe. Runs on a plain JVM.
+ */
+public final class AttPdu {
+
+    private static final int OPCODE = 0;
+
+    private static final int LIST_HEADER_SIZE = 2;
+
+    private static final int FORMAT_SHORT_UUIDS = 0x01;
+
+    private static final int FORMAT_LONG_UUIDS = 0x02;
+
+    private final ByteBuffer buffer;
+
+    private int mtu = Att.DEFAULT_MTU;
+
+    /**
+     * Instantiates a new PDU over a buffer holding a PDU of the largest MTU.
+     */
+    public AttPdu() {
+        this(ByteBuffer.allocate(Att.MAX_MTU));
+    }
+
+    /**
+     * Instantiates a new PDU over the buffer, whose byte order is set to little endian.
+     *
+     * @param buffer the buffer
+     */
+    public AttPdu(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Gets the buffer.
+     *
+     * @return the buffer
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Gets mtu.
+     *
+     * @return the ATT_MTU
+     */
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * Sets the ATT_MTU agreed with the peer, bounding the encoded PDUs.
+     *
+     * @param mtu the mtu
+     */
+    public void setMtu(int mtu) {
+        if (mtu < Att.DEFAULT_MTU || mtu > Math.min(Att.MAX_MTU, buffer.capacity())) {
+            throw new IllegalArgumentException("Unsupported MTU: " + mtu);
+        }
+        this.mtu = mtu;
+    }
+
+    /**
+     * Gets the length of the PDU.
+     *
+     * @return the length
+     */
+    public int getLength() {
+        return buffer.limit();
+    }
+
+    // encoding
+
+    /**
+     * Encodes an Error Response.
+     *
+     * @param requestOpcode the opcode of the failed request
+     * @param handle the handle in error
+     * @param errorCode the error code, one of the ERROR constants of {@link Att}
+     * @return the pdu
+     */
+    public AttPdu errorResponse(int requestOpcode, int handle, int errorCode) {
+        start(Att.ERROR_RSP, 5);
+        buffer.put(1, (byte) requestOpcode);
+        buffer.putShort(2, (short) handle);
+        buffer.put(4, (byte) errorCode);
+        return this;
+    }
+
+    /**
+     * Encodes an Exchange MTU Request.
+     *
+     * @param clientMtu the client receive MTU
+     * @return the pdu
+     */
+    public AttPdu exchangeMtuRequest(int clientMtu) {
+        start(Att.EXCHANGE_MTU_REQ, 3);
+        buffer.putShort(1, (short) clientMtu);
+        return this;
+    }
+
+    /**
+     * Encodes an Exchange MTU Response.
+     *
+     * @param serverMtu the server receive MTU
+     * @return the pdu
+     */
+    public AttPdu exchangeMtuResponse(int serverMtu) {
+        start(Att.EXCHANGE_MTU_RSP, 3);
+        buffer.putShort(1, (short) serverMtu);
+        return this;
+    }
+
+    /**
+     * Encodes a Find Information Request.
+     *
+     * @param startHandle the first handle
+     * @param endHandle the last handle
+     * @return the pdu
+     */
+    public AttPdu findInformationRequest(int startHandle, int endHandle) {
+        return handleRange(Att.FIND_INFORMATION_REQ, startHandle, endHandle, 5);
+    }
+
+    /**
+     * Starts a Find Information Response, see {@link #addInformation(int, long, long)}.
+     *
+     * @param longUuids whether the response lists 128-bit UUIDs, else 16-bit UUIDs
+     * @return the pdu
+     */
+    public AttPdu findInformationResponse(boolean longUuids) {
+        start(Att.FIND_INFORMATION_RSP, LIST_HEADER_SIZE);
+        buffer.put(1, (byte) (longUuids ? FORMAT_LONG_UUIDS : FORMAT_SHORT_UUIDS));
+        return this;
+    }
+
+    /**
+     * Adds a handle and its type to a Find Information Response.
+     *
+     * @param handle the handle
+     * @param typeMsb the most significant bits of the type
+     * @param typeLsb the least significant bits of the type
+     * @return false if the response is full
+     * @throws IllegalArgumentException if a 128-bit UUID is added to a response of 16-bit UUIDs
+     */
+    public boolean addInformation(int handle, long typeMsb, long typeLsb) {
+        final boolean longUuids = isLongUuidFormat();
+        if (!longUuids && !Att.isShortUuid(typeMsb, typeLsb)) {
+            throw new IllegalArgumentException("Not a 16-bit UUID");
+        }
+        final int index = buffer.limit();
+        if (!grow(longUuids ? 18 : 4)) {
+            return false;
+        }
+        buffer.putShort(index, (short) handle);
+        putUuid(index + 2, typeMsb, typeLsb, longUuids);
+        return true;
+    }
+
+    /**
+     * Encodes a Read By Type Request.
+     *
+     * @param startHandle the first handle
+     * @param endHandle the last handle
+     * @param typeMsb the most significant bits of the attribute type
+     * @param typeLsb the least significant bits of the attribute type
+     * @return the pdu
+     */
+    public AttPdu readByTypeRequest(int startHandle, int endHandle, long typeMsb, long typeLsb) {
+        return typedHandleRange(Att.READ_BY_TYPE_REQ, startHandle, endHandle, typeMsb, typeLsb);
+    }
+
+    /**
+     * Encodes a Read By Type Request.
+     *
+     * @param startHandle the first handle
+     * @param endHandle the last handle
+     * @param type the attribute type
+     * @return the pdu
+     */
+    public AttPdu readByTypeRequest(int startHandle, int endHandle, UUID type) {
+        return readByTypeRequest(startHandle, endHandle, type.getMostSignificantBits(), type.getLeastSignificantBits());
+    }
+
+    /**
+     * Starts a Read By Type Response, see {@link #addAttribute(int, byte[], int)}.
+     *
+     * @param valueLength the length of every attribute value
+     * @return the pdu
+     */
+    public AttPdu readByTypeResponse(int valueLength) {
+        return entryList(Att.READ_BY_TYPE_RSP, 2 + valueLength);
+    }
+
+    /**
+     * Adds an attribute to a Read By Type Response.
+     *
+     * @param handle the handle
+     * @param value the array holding the value, of the length given when starting the response
+     * @param offset the offset of the value in the array
+     * @return false if the response is full
+     */
+    public boolean addAttribute(int handle, byte[] value, int offset) {
+        final int entrySize = getEntrySize();
+        final int index = buffer.limit();
+        if (!grow(entrySize)) {
+            return false;
+        }
+        buffer.putShort(index, (short) handle);
+        putBytes(index + 2, value, offset, entrySize - 2);
+        return true;
+    }
+
+    /**
+     * Encodes a Read By Group Type Request.
+     *
+     * @param startHandle the first handle
+     * @param endHandle the last handle
+     * @param groupTypeMsb the most significant bits of the group type
+     * @param groupTypeLsb the least significant bits of the group type
+     * @return the pdu
+     */
+    public AttPdu readByGroupTypeRequest(int startHandle, int endHandle, long groupTypeMsb, long groupTypeLsb) {
+        return typedHandleRange(Att.READ_BY_GROUP_TYPE_REQ, startHandle, endHandle, groupTypeMsb, groupTypeLsb);
+    }
+
+    /**
+     * Encodes a Read By Group Type Request.
+     *
+     * @param startHandle the first handle
+     * @param endHandle the last handle
+     * @param groupType the group type
+     * @return the pdu
+     */
+    public AttPdu readByGroupTypeRequest(int startHandle, int endHandle, UUID groupType) {
+        return readByGroupTypeRequest(startHandle, endHandle, groupType.getMostSignificantBits(),
+                                      groupType.getLeastSignificantBits());
+    }
+
+    /**
+     * Starts a Read By Group Type Response, see {@link #addGroup(int, int, byte[], int)}.
+     *
+     * @param valueLength the length of every attribute value
+     * @return the pdu
+     */
+    public AttPdu readByGroupTypeResponse(int valueLength) {
+        return entryList(Att.READ_BY_GROUP_TYPE_RSP, 4 + valueLength);
+    }
+
+    /**
+     * Adds a group to a Read By Group Type Response.
+     *
+     * @param handle the handle of the group attribute
+     * @param endGroupHandle the last handle of the group
+     * @param value the array holding the value, of the length given when starting the response
+     * @param offset the offset of the value in the array
+     * @return false if the response is full
+     */
+    public boolean addGroup(int handle, int endGroupHandle, byte[] value, int offset) {
+        final int entrySize = getEntrySize();
+        final int index = buffer.limit();
+        if (!grow(entrySize)) {
+            return false;
+        }
+        buffer.putShort(index, (short) handle);
+        buffer.putShort(index + 2, (short) endGroupHandle);
+        putBytes(index + 4, value, offset, entrySize - 4);
+        return true;
+    }
+
+    /**
+     * Encodes a Read Request.
+     *
+     * @param handle the handle
+     * @return the pdu
+     */
+    public AttPdu readRequest(int handle) {
+        start(Att.READ_REQ, 3);
+        buffer.putShort(1, (short) handle);
+        return this;
+    }
+
+    /**
+     * Encodes a Read Response, truncating the value to ATT_MTU - 1 bytes.
+     *
+     * @param value the array holding the value
+     * @param offset the offset of the value
+     * @param length the length of the value
+     * @return the pdu
+     */
+    public AttPdu readResponse(byte[] value, int offset, int length) {
+        return opcodeAndValue(Att.READ_RSP, value, offset, length);
+    }
+
+    /**
+     * Encodes a Read Blob Request.
+     *
+     * @param handle the handle
+     * @param valueOffset the offset of the first byte to read
+     * @return the pdu
+     */
+    public AttPdu readBlobRequest(int handle, int valueOffset) {
+        start(Att.READ_BLOB_REQ, 5);
+        buffer.putShort(1, (short) handle);
+        buffer.putShort(3, (short) valueOffset);
+        return this;
+    }
+
+    /**
+     * Encodes a Read Blob Response, truncating the part of the value to ATT_MTU - 1 bytes.
+     *
+     * @param value the array holding the part of the value
+     * @param offset the offset of the part
+     * @param length the length of the part
+     * @return the pdu
+     */
+    public AttPdu readBlobResponse(byte[] value, int offset, int length) {
+        return opcodeAndValue(Att.READ_BLOB_RSP, value, offset, length);
+    }
+
+    /**
+     * Encodes a Write Request.
+     *
+     * @param handle the handle
+     * @param value the array holding the value
+     * @param offset the offset of the value
+     * @param length the length of the value, at most ATT_MTU - 3
+     * @return the pdu
+     */
+    public AttPdu writeRequest(int handle, byte[] value, int offset, int length) {
+        return handleAndValue(Att.WRITE_REQ, handle, value, offset, length, false);
+    }
+
+    /**
+     * Encodes a Write Response.
+     *
+     * @return the pdu
+     */
+    public AttPdu writeResponse() {
+        start(Att.WRITE_RSP, 1);
+        return this;
+    }
+
+    /**
+     * Encodes a Write Command.
+     *
+     * @param handle the handle
+     * @param value the array holding the value
+     * @param offset the offset of the value
+     * @param length the length of the value, at most ATT_MTU - 3
+     * @return the pdu
+     */
+    public AttPdu writeCommand(int handle, byte[] value, int offset, int length) {
+        return handleAndValue(Att.WRITE_CMD, handle, value, offset, length, false);
+    }
+
+    /**
+     * Encodes a Prepare Write Request.
+     *
+     * @param handle the handle
+     * @param valueOffset the offset of the part in the attribute value
+     * @param value the array holding the part of the value
+     * @param offset the offset of the part in the array
+     * @param length the length of the part, at most ATT_MTU - 5
+     * @return the pdu
+     */
+    public AttPdu prepareWriteRequest(int handle, int valueOffset, byte[] value, int offset, int length) {
+        return prepareWrite(Att.PREPARE_WRITE_REQ, handle, valueOffset, value, offset, length);
+    }
+
+    /**
+     * Encodes a Prepare Write Response echoing the request.
+     *
+     * @param handle the handle
+     * @param valueOffset the offset of the part in the attribute value
+     * @param value the array holding the part of the value
+     * @param offset the offset of the part in the array
+     * @param length the length of the part, at most ATT_MTU - 5
+     * @return the pdu
+     */
+    public AttPdu prepareWriteResponse(int handle, int valueOffset, byte[] value, int offset, int length) {
+        return prepareWrite(Att.PREPARE_WRITE_RSP, handle, valueOffset, value, offset, length);
+    }
+
+    /**
+     * Encodes an Execute Write Request.
+     *
+     * @param commit true to write the prepared values, false to cancel them
+     * @return the pdu
+     */
+    public AttPdu executeWriteRequest(boolean commit) {
+        start(Att.EXECUTE_WRITE_REQ, 2);
+        buffer.put(1, (byte) (commit ? 0x01 : 0x00));
+        return this;
+    }
+
+    /**
+     * Encodes an Execute Write Response.
+     *
+     * @return the pdu
+     */
+    public AttPdu executeWriteResponse() {
+        start(Att.EXECUTE_WRITE_RSP, 1);
+        return this;
+    }
+
+    /**
+     * Encodes a Handle Value Notification, truncating the value to ATT_MTU - 3 bytes.
+     *
+     * @param handle the handle
+     * @param value the array holding the value
+     * @param offset the offset of the value
+     * @param length the length of the value
+     * @return the pdu
+     */
+    public AttPdu notification(int handle, byte[] value, int offset, int length) {
+        return handleAndValue(Att.HANDLE_VALUE_NTF, handle, value, offset, length, true);
+    }
+
+    /**
+     * Encodes a Handle Value Indication, truncating the value to ATT_MTU - 3 bytes.
+     *
+     * @param handle the handle
+     * @param value the array holding the value
+     * @param offset the offset of the value
+     * @param length the length of the value
+     * @return the pdu
+     */
+    public AttPdu indication(int handle, byte[] value, int offset, int length) {
+        return handleAndValue(Att.HANDLE_VALUE_IND, handle, value, offset, length, true);
+    }
+
+    /**
+     * Encodes a Handle Value Confirmation.
+     *
+     * @return the pdu
+     */
+    public AttPdu confirmation() {
+        start(Att.HANDLE_VALUE_CFM, 1);
+        return this;
+    }
+
+    // decoding
+
+    /**
+     * Gets opcode.
+     *
+     * @return the opcode, -1 for an empty PDU
+     */
+    public int getOpcode() {
+        return buffer.limit() == 0 ? -1 : buffer.get(OPCODE) & 0xFF;
+    }
+
+    /**
+     * Checks whether the PDU is long enough for its opcode and its lists are well formed, so
+     * the getters of the opcode read within the PDU.
+     *
+     * @return false for malformed PDUs and unsupported opcodes
+     */
+    public boolean isValid() {
+        final int length = buffer.limit();
+        switch (getOpcode()) {
+            case Att.ERROR_RSP:
+                return length == 5;
+
+            case Att.EXCHANGE_MTU_REQ:
+            case Att.EXCHANGE_MTU_RSP:
+            case Att.READ_REQ:
+                return length == 3;
+
+            case Att.FIND_INFORMATION_REQ:
+            case Att.READ_BLOB_REQ:
+                return length == 5;
+
+            case Att.READ_BY_TYPE_REQ:
+            case Att.READ_BY_GROUP_TYPE_REQ:
+                return length == 7 || length == 21;
+
+            case Att.FIND_INFORMATION_RSP: {
+                if (length < LIST_HEADER_SIZE) {
+                    return false;
+                }
+                final int format = buffer.get(1) & 0xFF;
+                return (format == FORMAT_SHORT_UUIDS || format == FORMAT_LONG_UUIDS)
+                       && length > LIST_HEADER_SIZE && (length - LIST_HEADER_SIZE) % getEntrySize() == 0;
+            }
+
+            case Att.READ_BY_TYPE_RSP:
+            case Att.READ_BY_GROUP_TYPE_RSP: {
+                if (length < LIST_HEADER_SIZE) {
+                    return false;
+                }
+                final int entrySize = getEntrySize();
+                final int minimum = getOpcode() == Att.READ_BY_TYPE_RSP ? 2 : 4;
+                return entrySize >= minimum && length > LIST_HEADER_SIZE && (length - LIST_HEADER_SIZE) % entrySize == 0;
+            }
+
+            case Att.READ_RSP:
+            case Att.READ_BLOB_RSP:
+            case Att.WRITE_RSP:
+            case Att.EXECUTE_WRITE_RSP:
+            case Att.HANDLE_VALUE_CFM:
+                return length >= 1;
+
+            case Att.WRITE_REQ:
+            case Att.WRITE_CMD:
+            case Att.HANDLE_VALUE_NTF:
+            case Att.HANDLE_VALUE_IND:
+                return length >= 3;
+
+            case Att.PREPARE_WRITE_REQ:
+            case Att.PREPARE_WRITE_RSP:
+                return length >= 5;
+
+            case Att.EXECUTE_WRITE_REQ:
+                return length == 2 && (buffer.get(1) & 0xFF) <= 0x01;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gets the opcode of the request an Error Response refers to.
+     *
+     * @return the request opcode
+     */
+    public int getErrorRequestOpcode() {
+        return buffer.get(1) & 0xFF;
+    }
+
+    /**
+     * Gets the handle an Error Response refers to.
+     *
+     * @return the handle
+     */
+    public int getErrorHandle() {
+        return buffer.getShort(2) & 0xFFFF;
+    }
+
+    /**
+     * Gets the error code of an Error Response.
+     *
+     * @return the error code
+     */
+    public int getErrorCode() {
+        return buffer.get(4) & 0xFF;
+    }
+
+    /**
+     * Gets the receive MTU of an Exchange MTU Request or Response.
+     *
+     * @return the mtu
+     */
+    public int getExchangedMtu() {
+        return buffer.getShort(1) & 0xFFFF;
+    }
+
+    /**
+     * Gets the handle of a Read, Read Blob, Write, Prepare Write, Notification or Indication.
+     *
+     * @return the handle
+     */
+    public int getHandle() {
+        return buffer.getShort(1) & 0xFFFF;
+    }
+
+    /**
+     * Gets the first handle of a Find Information, Read By Type or Read By Group Type Request.
+     *
+     * @return the start handle
+     */
+    public int getStartHandle() {
+        return buffer.getShort(1) & 0xFFFF;
+    }
+
+    /**
+     * Gets the last handle of a Find Information, Read By Type or Read By Group Type Request.
+     *
+     * @return the end handle
+     */
+    public int getEndHandle() {
+        return buffer.getShort(3) & 0xFFFF;
+    }
+
+    /**
+     * Gets the most significant bits of the type of a Read By Type or Read By Group Type Request.
+     *
+     * @return the most significant bits
+     */
+    public long getTypeMsb() {
+        return getUuidMsb(5, buffer.limit() == 21);
+    }
+
+    /**
+     * Gets the least significant bits of the type of a Read By Type or Read By Group Type Request.
+     *
+     * @return the least significant bits
+     */
+    public long getTypeLsb() {
+        return getUuidLsb(5, buffer.limit() == 21);
+    }
+
+    /**
+     * Gets the value offset of a Read Blob Request or a Prepare Write Request or Response.
+     *
+     * @return the value offset
+     */
+    public int getValueOffset() {
+        return buffer.getShort(3) & 0xFFFF;
+    }
+
+    /**
+     * Checks whether an Execute Write Request commits the prepared values.
+     *
+     * @return false if it cancels them
+     */
+    public boolean isExecuteCommit() {
+        return buffer.get(1) == 0x01;
+    }
+
+    /**
+     * Gets the index of the value in the buffer, for Read, Read Blob, Write, Prepare Write,
+     * Notification and Indication PDUs.
+     *
+     * @return the value start
+     */
+    public int getValueStart() {
+        switch (getOpcode()) {
+            case Att.READ_RSP:
+            case Att.READ_BLOB_RSP:
+                return 1;
+
+            case Att.PREPARE_WRITE_REQ:
+            case Att.PREPARE_WRITE_RSP:
+                return 5;
+
+            default:
+                return 3;
+        }
+    }
+
+    /**
+     * Gets the length of the value, see {@link #getValueStart()}.
+     *
+     * @return the value length
+     */
+    public int getValueLength() {
+        return buffer.limit() - getValueStart();
+    }
+
+    /**
+     * Copies the value out, see {@link #getValueStart()}.
+     *
+     * @param destination the destination array, at least {@link #getValueLength()} long
+     * @param offset the offset in the destination
+     * @return the value length
+     */
+    public int copyValue(byte[] destination, int offset) {
+        final int start = getValueStart();
+        final int length = buffer.limit() - start;
+        for (int i = 0; i < length; i++) {
+            destination[offset + i] = buffer.get(start + i);
+        }
+        return length;
+    }
+
+    /**
+     * Checks whether a Find Information Response lists 128-bit UUIDs.
+     *
+     * @return the boolean
+     */
+    public boolean isLongUuidFormat() {
+        return buffer.get(1) == FORMAT_LONG_UUIDS;
+    }
+
+    /**
+     * Gets the number of entries of a Find Information, Read By Type or Read By Group Type Response.
+     *
+     * @return the entry count
+     */
+    public int getEntryCount() {
+        return (buffer.limit() - LIST_HEADER_SIZE) / getEntrySize();
+    }
+
+    /**
+     * Gets the handle of an entry.
+     *
+     * @param entry the entry
+     * @return the handle
+     */
+    public int getEntryHandle(int entry) {
+        return buffer.getShort(entryIndex(entry)) & 0xFFFF;
+    }
+
+    /**
+     * Gets the end group handle of an entry of a Read By Group Type Response.
+     *
+     * @param entry the entry
+     * @return the end group handle
+     */
+    public int getEntryEndGroupHandle(int entry) {
+        return buffer.getShort(entryIndex(entry) + 2) & 0xFFFF;
+    }
+
+    /**
+     * Gets the most significant bits of the type of an entry of a Find Information Response.
+     *
+     * @param entry the entry
+     * @return the most significant bits
+     */
+    public long getEntryTypeMsb(int entry) {
+        return getUuidMsb(entryIndex(entry) + 2, isLongUuidFormat());
+    }
+
+    /**
+     * Gets the least significant bits of the type of an entry of a Find Information Response.
+     *
+     * @param entry the entry
+     * @return the least significant bits
+     */
+    public long getEntryTypeLsb(int entry) {
+        return getUuidLsb(entryIndex(entry) + 2, isLongUuidFormat());
+    }
+
+    /**
+     * Gets the index of the value of an entry of a Read By Type or Read By Group Type Response.
+     *
+     * @param entry the entry
+     * @return the value start
+     */
+    public int getEntryValueStart(int entry) {
+        return entryIndex(entry) + (getOpcode() == Att.READ_BY_GROUP_TYPE_RSP ? 4 : 2);
+    }
+
+    /**
+     * Gets the length of the entry values of a Read By Type or Read By Group Type Response.
+     *
+     * @return the value length
+     */
+    public int getEntryValueLength() {
+        return getEntrySize() - (getOpcode() == Att.READ_BY_GROUP_TYPE_RSP ? 4 : 2);
+    }
+
+    private int getEntrySize() {
+        if (getOpcode() == Att.FIND_INFORMATION_RSP) {
+            return isLongUuidFormat() ? 18 : 4;
+        }
+        return buffer.get(1) & 0xFF;
+    }
+
+    private int entryIndex(int entry) {
+        return LIST_HEADER_SIZE + entry * getEntrySize();
+    }
+
+    private void start(int opcode, int length) {
+        buffer.clear();
+        buffer.limit(length);
+        buffer.put(OPCODE, (byte) opcode);
+    }
+
+    private boolean grow(int size) {
+        final int length = buffer.limit() + size;
+        if (length > mtu) {
+            return false;
+        }
+        buffer.limit(length);
+        return true;
+    }
+
+    private AttPdu handleRange(int opcode, int startHandle, int endHandle, int length) {
+        start(opcode, length);
+        buffer.putShort(1, (short) startHandle);
+        buffer.putShort(3, (short) endHandle);
+        return this;
+    }
+
+    private AttPdu typedHandleRange(int opcode, int startHandle, int endHandle, long typeMsb, long typeLsb) {
+        final boolean longUuid = !Att.isShortUuid(typeMsb, typeLsb);
+        handleRange(opcode, startHandle, endHandle, longUuid ? 21 : 7);
+        putUuid(5, typeMsb, typeLsb, longUuid);
+        return this;
+    }
+
+    private AttPdu entryList(int opcode, int entrySize) {
+        if (entrySize > 0xFF || LIST_HEADER_SIZE + entrySize > mtu) {
+            throw new IllegalArgumentException("Attribute value too long for a list: " + entrySize);
+        }
+        start(opcode, LIST_HEADER_SIZE);
+        buffer.put(1, (byte) entrySize);
+        return this;
+    }
+
+    private AttPdu opcodeAndValue(int opcode, byte[] value, int offset, int length) {
+        final int truncated = Math.min(length, mtu - 1);
+        start(opcode, 1 + truncated);
+        putBytes(1, value, offset, truncated);
+        return this;
+    }
+
+    private AttPdu handleAndValue(int opcode, int handle, byte[] value, int offset, int length, boolean truncate) {
+        if (!truncate && length > mtu - 3) {
+            throw new IllegalArgumentException("Value longer than ATT_MTU - 3: " + length);
+        }
+        final int truncated = Math.min(length, mtu - 3);
+        start(opcode, 3 + truncated);
+        buffer.putShort(1, (short) handle);
+        putBytes(3, value, offset, truncated);
+        return this;
+    }
+
+    private AttPdu prepareWrite(int opcode, int handle, int valueOffset, byte[] value, int offset, int length) {
+        if (length > mtu - 5) {
+            throw new IllegalArgumentException("Value part longer than ATT_MTU - 5: " + length);
+        }
+        start(opcode, 5 + length);
+        buffer.putShort(1, (short) handle);
+        buffer.putShort(3, (short) valueOffset);
+        putBytes(5, value, offset, length);
+        return this;
+    }
+
+    private void putBytes(int index, byte[] value, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer.put(index + i, value[offset + i]);
+        }
+    }
+
+    private void putUuid(int index, long msb, long lsb, boolean longUuid) {
+        if (longUuid) {
+            buffer.putLong(index, lsb);
+            buffer.putLong(index + 8, msb);
+        } else {
+            buffer.putShort(index, (short) (msb >>> 32));
+        }
+    }
+
+    private long getUuidMsb(int index, boolean longUuid) {
+        return longUuid ? buffer.getLong(index + 8) : Att.shortUuidMsb(buffer.getShort(index));
+    }
+
+    private long getUuidLsb(int index, boolean longUuid) {
+        return longUuid ? buffer.getLong(index) : Att.BASE_UUID_LSB;
+    }
+}
@@ -0,0 +1,120 @@
+package com.matters.ble.library.beacon;
+
+import com.matters.ble.library.util.Bytes;
+
+/**
+ * Reusable flyweight of an AltBeacon frame. The first 16 bytes of the beacon id are kept
+ * as two longs, followed by two 16-bit identifiers.
+ */
+public final class AltBeacon {
+
+    /**
+     * The length of manufacturer data: company id, beacon code, 20 bytes of id, reference RSSI and reserved byte.
+     */
+    static final int DATA_LENGTH = 26;
+
+    private int manufacturerId;
+
+    private long id1MostSignificantBits;
+
+    private long id1LeastSignificantBits;
+
+    private int id2;
+
+    private int id3;
+
+    private int referenceRssi;
+
+    private int reserved;
+
+    /**
+     * Checks whether the manufacturer data is an AltBeacon frame.
+     *
+     * @param record the raw record
+     * @param offset the offset of the manufacturer data, right after the AD type
+     * @param length the length of the manufacturer data
+     * @return the boolean
+     */
+    static boolean matches(byte[] record, int offset, int length) {
+        return length == DATA_LENGTH && record[offset + 2] == (byte) 0xBE && record[offset + 3] == (byte) 0xAC;
+    }
+
+    /**
+     * Reads the frame. The data must have been checked with {@link #matches(byte[], int, int)}.
+     *
+     * @param record the raw record
+     * @param offset the offset of the manufacturer data
+     */
+    void read(byte[] record, int offset) {
+        manufacturerId = Bytes.readUInt16LittleEndian(record, offset);
+        id1MostSignificantBits = Bytes.readBigEndian(record, offset + 4, 8);
+        id1LeastSignificantBits = Bytes.readBigEndian(record, offset + 12, 8);
+        id2 = Bytes.readUInt16BigEndian(record, offset + 20);
+        id3 = Bytes.readUInt16BigEndian(record, offset + 22);
+        referenceRssi = record[offset + 24];
+        reserved = record[offset + 25] & 0xFF;
+    }
+
+    /**
+     * Gets manufacturer id.
+     *
+     * @return the manufacturer id
+     */
+    public int getManufacturerId() {
+        return manufacturerId;
+    }
+
+    /**
+     * Gets most significant bits of the first identifier.
+     *
+     * @return the most significant bits
+     */
+    public long getId1MostSignificantBits() {
+        return id1MostSignificantBits;
+    }
+
+    /**
+     * Gets least significant bits of the first identifier.
+     *
+     * @return the least significant bits
+     */
+    public long getId1LeastSignificantBits() {
+        return id1LeastSignificantBits;
+    }
+
+    /**
+     * Gets the second identifier.
+     *
+     * @return the id 2
+     */
+    public int getId2() {
+        return id2;
+    }
+
+    /**
+     * Gets the third identifier.
+     *
+     * @return the id 3
+     */
+    public int getId3() {
+        return id3;
+    }
+
+    /**
+     * Gets reference rssi at 1 m.
+     *
+     * @return the reference rssi in dBm
+     */
+    public int getReferenceRssi() {
+        return referenceRssi;
+    }
+
+    /**
+     * Gets the manufacturer reserved byte.
+     *
+     * @return the reserved
+     */
+    public int getReserved() {
+        return reserved;
+    }
+}
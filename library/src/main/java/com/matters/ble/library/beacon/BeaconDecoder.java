@@ -0,0 +1,173 @@
+package com.matters.ble.library.beacon;
+
+import com.matters.ble.library.device.ScanRecord;
+
+/**
+ * Detects and decodes standard beacon frames straight from the raw scan record into
+ * reusable flyweights. Detection costs a few byte comparisons per AD structure and
+ * decoding does not allocate.
+ *
+ * A decoder holds the state of the last decoded frame and must be confined to one thread.
+ *
+ * <pre>
+ * switch (decoder.decode(scanRecord)) {
+ *     case BeaconDecoder.FRAME_IBEACON:
+ *         int major = decoder.getIBeacon().getMajor();
+ *         ...
+ * }
+ * </pre>
+ */
+public final class BeaconDecoder {
+
+    /**
+     * No known beacon frame found.
+     */
+    public static final int FRAME_NONE = 0;
+
+    /**
+     * iBeacon frame, see {@link #getIBeacon()}.
+     */
+    public static final int FRAME_IBEACON = 1;
+
+    /**
+     * AltBeacon frame, see {@link #getAltBeacon()}.
+     */
+    public static final int FRAME_ALTBEACON = 2;
+
+    /**
+     * Eddystone-UID frame, see {@link #getEddystoneUid()}.
+     */
+    public static final int FRAME_EDDYSTONE_UID = 3;
+
+    /**
+     * Eddystone-URL frame, see {@link #getEddystoneUrl()}.
+     */
+    public static final int FRAME_EDDYSTONE_URL = 4;
+
+    /**
+     * Eddystone-TLM frame, see {@link #getEddystoneTlm()}.
+     */
+    public static final int FRAME_EDDYSTONE_TLM = 5;
+
+    private static final int EDDYSTONE_FRAME_UID = 0x00;
+
+    private static final int EDDYSTONE_FRAME_URL = 0x10;
+
+    private static final int EDDYSTONE_FRAME_TLM = 0x20;
+
+    private final IBeacon iBeacon = new IBeacon();
+
+    private final AltBeacon altBeacon = new AltBeacon();
+
+    private final EddystoneUid eddystoneUid = new EddystoneUid();
+
+    private final EddystoneUrl eddystoneUrl = new EddystoneUrl();
+
+    private final EddystoneTlm eddystoneTlm = new EddystoneTlm();
+
+    /**
+     * Decodes the first beacon frame found in the record.
+     *
+     * @param record the raw scan record
+     * @return the frame type, {@link #FRAME_NONE} if none found
+     */
+    public int decode(final byte[] record) {
+        for (int position = ScanRecord.firstStructure(record); position != ScanRecord.NOT_FOUND;
+                position = ScanRecord.nextStructure(record, position)) {
+            final int type = ScanRecord.typeAt(record, position);
+            final int dataOffset = ScanRecord.dataOffsetAt(position);
+            final int dataLength = ScanRecord.dataLengthAt(record, position);
+
+            if (type == ScanRecord.TYPE_MANUFACTURER_DATA) {
+                if (IBeacon.matches(record, dataOffset, dataLength)) {
+                    iBeacon.read(record, dataOffset);
+                    return FRAME_IBEACON;
+                }
+                if (AltBeacon.matches(record, dataOffset, dataLength)) {
+                    altBeacon.read(record, dataOffset);
+                    return FRAME_ALTBEACON;
+                }
+            } else if (type == ScanRecord.TYPE_SERVICE_DATA_16 && dataLength >= 3
+                    && record[dataOffset] == (byte) 0xAA && record[dataOffset + 1] == (byte) 0xFE) {
+                final int frame = decodeEddystone(record, dataOffset + 2, dataLength - 2);
+                if (frame != FRAME_NONE) {
+                    return frame;
+                }
+            }
+        }
+        return FRAME_NONE;
+    }
+
+    private int decodeEddystone(final byte[] record, final int offset, final int length) {
+        switch (record[offset] & 0xFF) {
+            case EDDYSTONE_FRAME_UID:
+                if (length >= EddystoneUid.MIN_FRAME_LENGTH) {
+                    eddystoneUid.read(record, offset);
+                    return FRAME_EDDYSTONE_UID;
+                }
+                return FRAME_NONE;
+
+            case EDDYSTONE_FRAME_URL:
+                if (length >= EddystoneUrl.MIN_FRAME_LENGTH) {
+                    eddystoneUrl.read(record, offset, length);
+                    return FRAME_EDDYSTONE_URL;
+                }
+                return FRAME_NONE;
+
+            case EDDYSTONE_FRAME_TLM:
+                if (length >= EddystoneTlm.FRAME_LENGTH && record[offset + 1] == 0x00) {
+                    eddystoneTlm.read(record, offset);
+                    return FRAME_EDDYSTONE_TLM;
+                }
+                return FRAME_NONE;
+
+            default:
+                return FRAME_NONE;
+        }
+    }
+
+    /**
+     * Gets the iBeacon flyweight filled by the last decode.
+     *
+     * @return the i beacon
+     */
+    public IBeacon getIBeacon() {
+        return iBeacon;
+    }
+
+    /**
+     * Gets the AltBeacon flyweight filled by the last decode.
+     *
+     * @return the alt beacon
+     */
+    public AltBeacon getAltBeacon() {
+        return altBeacon;
+    }
+
+    /**
+     * Gets the Eddystone-UID flyweight filled by the last decode.
+     *
+     * @return the eddystone uid
+     */
+    public EddystoneUid getEddystoneUid() {
+        return eddystoneUid;
+    }
+
+    /**
+     * Gets the Eddystone-URL flyweight filled by the last decode.
+     *
+     * @return the eddystone url
+     */
+    public EddystoneUrl getEddystoneUrl() {
+        return eddystoneUrl;
+    }
+
+    /**
+     * Gets the Eddystone-TLM flyweight filled by the last decode.
+     *
+     * @return the eddystone tlm
+     */
+    public EddystoneTlm getEddystoneTlm() {
+        return eddystoneTlm;
+    }
+}
@@ -0,0 +1,97 @@
+package com.matters.ble.library.beacon;
+
+import com.matters.ble.library.util.Bytes;
+
+/**
+ * Reusable flyweight of an unencrypted Eddystone-TLM frame.
+ */
+public final class EddystoneTlm {
+
+    /**
+     * The frame length: frame type, version, battery, temperature, advertising and uptime counters.
+     */
+    static final int FRAME_LENGTH = 14;
+
+    /**
+     * The temperature value reported by beacons not supporting temperature.
+     */
+    public static final int TEMPERATURE_NOT_SUPPORTED = 0x8000;
+
+    private int version;
+
+    private int batteryMillivolts;
+
+    private int rawTemperature;
+
+    private long advertisingCount;
+
+    private long uptimeDeciseconds;
+
+    /**
+     * Reads the frame.
+     *
+     * @param record the raw record
+     * @param offset the offset of the frame type byte
+     */
+    void read(byte[] record, int offset) {
+        version = record[offset + 1] & 0xFF;
+        batteryMillivolts = Bytes.readUInt16BigEndian(record, offset + 2);
+        rawTemperature = Bytes.readUInt16BigEndian(record, offset + 4);
+        advertisingCount = Bytes.readBigEndian(record, offset + 6, 4);
+        uptimeDeciseconds = Bytes.readBigEndian(record, offset + 10, 4);
+    }
+
+    /**
+     * Gets TLM version.
+     *
+     * @return the version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets battery voltage.
+     *
+     * @return the battery voltage in mV, 0 if not supported
+     */
+    public int getBatteryMillivolts() {
+        return batteryMillivolts;
+    }
+
+    /**
+     * Gets the temperature as signed 8.8 fixed point value.
+     *
+     * @return the raw temperature
+     */
+    public int getRawTemperature() {
+        return rawTemperature;
+    }
+
+    /**
+     * Gets temperature.
+     *
+     * @return the temperature in degrees Celsius or NaN if not supported
+     */
+    public float getTemperature() {
+        return rawTemperature == TEMPERATURE_NOT_SUPPORTED ? Float.NaN : ((short) rawTemperature) / 256f;
+    }
+
+    /**
+     * Gets the number of frames advertised since power-up.
+     *
+     * @return the advertising count
+     */
+    public long getAdvertisingCount() {
+        return advertisingCount;
+    }
+
+    /**
+     * Gets time since power-up.
+     *
+     * @return the uptime in 0.1 s units
+     */
+    public long getUptimeDeciseconds() {
+        return uptimeDeciseconds;
+    }
+}
@@ -0,0 +1,73 @@
+package com.matters.ble.library.beacon;
+
+import com.matters.ble.library.util.Bytes;
+
+/**
+ * Reusable flyweight of an Eddystone-UID frame. The 10-byte namespace is split into
+ * its 2 most significant bytes and 8 least significant bytes, the 6-byte instance
+ * is kept in a long.
+ */
+public final class EddystoneUid {
+
+    /**
+     * The minimum frame length: frame type, tx power, namespace and instance.
+     */
+    static final int MIN_FRAME_LENGTH = 18;
+
+    private int txPower;
+
+    private int namespaceHigh;
+
+    private long namespaceLow;
+
+    private long instance;
+
+    /**
+     * Reads the frame.
+     *
+     * @param record the raw record
+     * @param offset the offset of the frame type byte
+     */
+    void read(byte[] record, int offset) {
+        txPower = record[offset + 1];
+        namespaceHigh = Bytes.readUInt16BigEndian(record, offset + 2);
+        namespaceLow = Bytes.readBigEndian(record, offset + 4, 8);
+        instance = Bytes.readBigEndian(record, offset + 12, 6);
+    }
+
+    /**
+     * Gets calibrated tx power at 0 m.
+     *
+     * @return the tx power in dBm
+     */
+    public int getTxPower() {
+        return txPower;
+    }
+
+    /**
+     * Gets the 2 most significant bytes of the namespace.
+     *
+     * @return the namespace high
+     */
+    public int getNamespaceHigh() {
+        return namespaceHigh;
+    }
+
+    /**
+     * Gets the 8 least significant bytes of the namespace.
+     *
+     * @return the namespace low
+     */
+    public long getNamespaceLow() {
+        return namespaceLow;
+    }
+
+    /**
+     * Gets instance.
+     *
+     * @return the instance
+     */
+    public long getInstance() {
+        return instance;
+    }
+}
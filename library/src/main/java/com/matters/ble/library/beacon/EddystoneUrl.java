@@ -0,0 +1,108 @@
+package com.matters.ble.library.beacon;
+
+/**
+ * Reusable flyweight of an Eddystone-URL frame. The encoded URL is copied out of the record,
+ * which the caller may reuse for the next advertisement, into a buffer owned by the flyweight
+ * and expanded only when {@link #getUrl()} is called.
+ */
+public final class EddystoneUrl {
+
+    /**
+     * The minimum frame length: frame type, tx power and URL scheme.
+     */
+    static final int MIN_FRAME_LENGTH = 3;
+
+    private static final String[] SCHEMES = { "http://www.", "https://www.", "http://", "https://" };
+
+    private static final String[] EXPANSIONS = {
+            ".com/", ".org/", ".edu/", ".net/", ".info/", ".biz/", ".gov/",
+            ".com", ".org", ".edu", ".net", ".info", ".biz", ".gov"
+    };
+
+    /**
+     * The encoded URL, grown only for longer URLs than seen before.
+     */
+    private byte[] encodedUrl = new byte[17];
+
+    private int encodedUrlLength;
+
+    private int schemeCode;
+
+    private int txPower;
+
+    /**
+     * Reads the frame.
+     *
+     * @param record the raw record
+     * @param offset the offset of the frame type byte
+     * @param length the frame length
+     */
+    void read(byte[] record, int offset, int length) {
+        this.txPower = record[offset + 1];
+        this.schemeCode = record[offset + 2] & 0xFF;
+        this.encodedUrlLength = length - 3;
+        if (encodedUrl.length < encodedUrlLength) {
+            encodedUrl = new byte[encodedUrlLength];
+        }
+        System.arraycopy(record, offset + 3, encodedUrl, 0, encodedUrlLength);
+    }
+
+    /**
+     * Gets calibrated tx power at 0 m.
+     *
+     * @return the tx power in dBm
+     */
+    public int getTxPower() {
+        return txPower;
+    }
+
+    /**
+     * Gets the URL scheme code.
+     *
+     * @return the scheme code
+     */
+    public int getSchemeCode() {
+        return schemeCode;
+    }
+
+    /**
+     * Gets length of the encoded URL.
+     *
+     * @return the encoded url length
+     */
+    public int getEncodedUrlLength() {
+        return encodedUrlLength;
+    }
+
+    /**
+     * Copies the encoded URL.
+     *
+     * @param destination the destination array
+     * @param destinationOffset the offset in the destination array
+     */
+    public void copyEncodedUrl(byte[] destination, int destinationOffset) {
+        System.arraycopy(encodedUrl, 0, destination, destinationOffset, encodedUrlLength);
+    }
+
+    /**
+     * Expands the encoded URL. Allocates the resulting string.
+     *
+     * @return the url or null if the scheme is unknown
+     */
+    public String getUrl() {
+        if (schemeCode >= SCHEMES.length) {
+            return null;
+        }
+
+        final StringBuilder url = new StringBuilder(32).append(SCHEMES[schemeCode]);
+        for (int i = 0; i < encodedUrlLength; i++) {
+            final int code = encodedUrl[i] & 0xFF;
+            if (code < EXPANSIONS.length) {
+                url.append(EXPANSIONS[code]);
+            } else {
+                url.append((char) code);
+            }
+        }
+        return url.toString();
+    }
+}
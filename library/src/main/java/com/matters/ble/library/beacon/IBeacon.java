@@ -0,0 +1,102 @@
+package com.matters.ble.library.beacon;
+
+import com.matters.ble.library.util.Bytes;
+
+/**
+ * Reusable flyweight of an iBeacon frame. The proximity UUID is kept as two longs.
+ */
+public final class IBeacon {
+
+    /**
+     * The Apple company identifier.
+     */
+    static final int COMPANY_ID = 0x004C;
+
+    /**
+     * The length of manufacturer data: company id, type, length and 21 bytes of payload.
+     */
+    static final int DATA_LENGTH = 25;
+
+    private long uuidMostSignificantBits;
+
+    private long uuidLeastSignificantBits;
+
+    private int major;
+
+    private int minor;
+
+    private int measuredPower;
+
+    /**
+     * Checks whether the manufacturer data is an iBeacon frame.
+     *
+     * @param record the raw record
+     * @param offset the offset of the manufacturer data, right after the AD type
+     * @param length the length of the manufacturer data
+     * @return the boolean
+     */
+    static boolean matches(byte[] record, int offset, int length) {
+        return length == DATA_LENGTH
+               && record[offset] == 0x4C && record[offset + 1] == 0x00
+               && record[offset + 2] == 0x02 && record[offset + 3] == 0x15;
+    }
+
+    /**
+     * Reads the frame. The data must have been checked with {@link #matches(byte[], int, int)}.
+     *
+     * @param record the raw record
+     * @param offset the offset of the manufacturer data
+     */
+    void read(byte[] record, int offset) {
+        uuidMostSignificantBits = Bytes.readBigEndian(record, offset + 4, 8);
+        uuidLeastSignificantBits = Bytes.readBigEndian(record, offset + 12, 8);
+        major = Bytes.readUInt16BigEndian(record, offset + 20);
+        minor = Bytes.readUInt16BigEndian(record, offset + 22);
+        measuredPower = record[offset + 24];
+    }
+
+    /**
+     * Gets proximity UUID most significant bits.
+     *
+     * @return the most significant bits
+     */
+    public long getUuidMostSignificantBits() {
+        return uuidMostSignificantBits;
+    }
+
+    /**
+     * Gets proximity UUID least significant bits.
+     *
+     * @return the least significant bits
+     */
+    public long getUuidLeastSignificantBits() {
+        return uuidLeastSignificantBits;
+    }
+
+    /**
+     * Gets major.
+     *
+     * @return the major
+     */
+    public int getMajor() {
+        return major;
+    }
+
+    /**
+     * Gets minor.
+     *
+     * @return the minor
+     */
+    public int getMinor() {
+        return minor;
+    }
+
+    /**
+     * Gets measured power, the calibrated RSSI at 1 m.
+     *
+     * @return the measured power in dBm
+     */
+    public int getMeasuredPower() {
+        return measuredPower;
+    }
+}
@@ -0,0 +1,285 @@
+package com.matters.ble.library.callback;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.view.Choreographer;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+
+import com.matters.ble.library.device.BLEDevice;
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.metrics.ScanMetrics;
+
+/**
+ * Coalesces device updates and delivers them to the listener in batches, either
+ * at a fixed interval or on the next frame. A device updated several times
+ * between flushes is delivered once, with its latest state.
+ *
+ * Two lists are swapped between the scan thread and the main thread so that
+ * no allocation happens in steady state.
+ */
+final class BatchDispatcher implements DeviceDispatcher {
+
+    /**
+     * The interface Timer running the flushes, backed by the main thread Handler and the
+     * Choreographer.
+     */
+    interface Timer {
+
+        /**
+         * Runs the task after the delay.
+         *
+         * @param task the task
+         * @param delayMillis the delay in milliseconds
+         */
+        void postDelayed(Runnable task, long delayMillis);
+
+        /**
+         * Runs the task on the next frame.
+         *
+         * @param task the task
+         */
+        void postFrame(Runnable task);
+
+        /**
+         * Cancels the pending runs of the task.
+         *
+         * @param task the task
+         */
+        void removeCallbacks(Runnable task);
+    }
+
+    private final Object lock = new Object();
+
+    private final Timer timer;
+
+    private final BLEManager.RangingListener rangingListener;
+
+    private final BLEManager.BatchRangingListener batchRangingListener;
+
+    private final BLEManager.DeliveryMode deliveryMode;
+
+    private final long intervalMillis;
+
+    private final ScanMetrics metrics;
+
+    private final Batch[] batches = { new Batch(), new Batch() };
+
+    private int pendingIndex;
+
+    private boolean scheduled;
+
+    private boolean closed;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Instantiates a new Batch dispatcher.
+     *
+     * @param uiThreadHandler the ui thread handler
+     * @param rangingListener the ranging listener
+     * @param deliveryMode either {@link BLEManager.DeliveryMode#INTERVAL} or {@link BLEManager.DeliveryMode#FRAME}
+     * @param intervalMillis the flush interval used in interval mode
+     * @param metrics the metrics recording the delivery latency
+     */
+    BatchDispatcher(Handler uiThreadHandler,
+                    BLEManager.RangingListener rangingListener,
+                    BLEManager.DeliveryMode deliveryMode,
+                    long intervalMillis,
+                    ScanMetrics metrics) {
+        this(new HandlerTimer(uiThreadHandler), rangingListener, deliveryMode, intervalMillis, metrics);
+    }
+
+    /**
+     * Instantiates a new Batch dispatcher flushing through the timer.
+     *
+     * @param timer the timer
+     * @param rangingListener the ranging listener
+     * @param deliveryMode either {@link BLEManager.DeliveryMode#INTERVAL} or {@link BLEManager.DeliveryMode#FRAME}
+     * @param intervalMillis the flush interval used in interval mode
+     * @param metrics the metrics recording the delivery latency
+     */
+    BatchDispatcher(Timer timer,
+                    BLEManager.RangingListener rangingListener,
+                    BLEManager.DeliveryMode deliveryMode,
+                    long intervalMillis,
+                    ScanMetrics metrics) {
+        this.timer = timer;
+        this.rangingListener = rangingListener;
+        this.batchRangingListener = rangingListener instanceof BLEManager.BatchRangingListener
+                                    ? (BLEManager.BatchRangingListener) rangingListener : null;
+        this.deliveryMode = deliveryMode;
+        this.intervalMillis = intervalMillis;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void dispatch(DeviceReport report) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (!report.isPending()) {
+                report.setPending(true);
+                batches[pendingIndex].reports.add(report);
+            }
+
+            if (!scheduled) {
+                scheduled = true;
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Delivers all pending devices. Runs on the main thread.
+     */
+    void flush() {
+        final Batch batch;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            batch = batches[pendingIndex];
+            pendingIndex = 1 - pendingIndex;
+            scheduled = false;
+
+            final ArrayList<DeviceReport> reports = batch.reports;
+            for (int i = 0, size = reports.size(); i < size; i++) {
+                reports.get(i).setPending(false);
+            }
+        }
+
+        try {
+            if (batch.reports.isEmpty()) {
+                return;
+            }
+            final ArrayList<DeviceReport> reports = batch.reports;
+            final long now = System.nanoTime();
+            for (int i = 0, size = reports.size(); i < size; i++) {
+                metrics.onDelivery(now - reports.get(i).getDevice().getAdvertisedAt());
+            }
+            if (batchRangingListener != null) {
+                batchRangingListener.onDevicesFound(batch.devices);
+            } else {
+                for (int i = 0, size = batch.devices.size(); i < size; i++) {
+                    rangingListener.onDeviceFound(batch.devices.get(i));
+                }
+            }
+        } finally {
+            batch.reports.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            batches[pendingIndex].reports.clear();
+        }
+        timer.removeCallbacks(flushRunnable);
+    }
+
+    private void schedule() {
+        if (deliveryMode == BLEManager.DeliveryMode.FRAME) {
+            timer.postFrame(flushRunnable);
+        } else {
+            timer.postDelayed(flushRunnable, intervalMillis);
+        }
+    }
+
+    /**
+     * The devices of a batch, reused every other flush.
+     */
+    private static final class Batch {
+
+        private final ArrayList<DeviceReport> reports = new ArrayList<DeviceReport>();
+
+        private final DeviceView devices = new DeviceView(reports);
+    }
+
+    /**
+     * Read only view of the devices of a batch.
+     */
+    private static final class DeviceView extends AbstractList<BLEDevice> {
+
+        private final ArrayList<DeviceReport> batch;
+
+        private DeviceView(ArrayList<DeviceReport> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public BLEDevice get(int index) {
+            return batch.get(index).getDevice();
+        }
+
+        @Override
+        public int size() {
+            return batch.size();
+        }
+    }
+
+    /**
+     * Flushes on the main thread Handler, frames come from the Choreographer of the main thread.
+     * Holds one frame task at a time, which is all a dispatcher posts, so that requesting a
+     * frame does not allocate.
+     */
+    private static final class HandlerTimer implements Timer {
+
+        private final Handler handler;
+
+        private volatile Runnable frameTask;
+
+        private Object frameCallback;
+
+        private final Runnable frameRequest = new Runnable() {
+            @Override
+            public void run() {
+                // the Choreographer is per thread, so the frame is requested from the main thread
+                requestFrame();
+            }
+        };
+
+        private HandlerTimer(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            handler.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void postFrame(Runnable task) {
+            frameTask = task;
+            handler.post(frameRequest);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            handler.removeCallbacks(task);
+            handler.removeCallbacks(frameRequest);
+        }
+
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        private void requestFrame() {
+            if (frameCallback == null) {
+                frameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        frameTask.run();
+                    }
+                };
+            }
+            Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) frameCallback);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.matters.ble.library.callback;
+
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.util.Clock;
+
+/**
+ * Decides whether a device update is worth reporting to the ranging listener.
+ *
+ * An update is reported when the device has not been reported yet, when its RSSI moved
+ * by at least the configured delta since the last report or when its payload changed.
+ * Reports are additionally throttled by a minimum re-report interval and a per device
+ * token bucket. The per device state is kept in the {@link DeviceReport} of the client on
+ * the device itself so the filter does not allocate.
+ *
+ * Not thread safe, confined to the thread processing advertisements.
+ */
+final class ChangeFilter {
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final int rssiDelta;
+
+    private final boolean payloadChangeDetection;
+
+    private final long minReportIntervalMillis;
+
+    private final double tokensPerMilli;
+
+    private final double burst;
+
+    private final boolean timed;
+
+    private final Clock clock;
+
+    /**
+     * Instantiates a new Change filter.
+     *
+     * @param configuration the configuration
+     * @param clock the clock
+     */
+    ChangeFilter(BLEManager.Configuration configuration, Clock clock) {
+        this.rssiDelta = configuration.getReportRssiDelta();
+        // With zero delta every update is a change already, skip hashing the payload.
+        this.payloadChangeDetection = configuration.isReportOnPayloadChange() && rssiDelta > 0;
+        this.minReportIntervalMillis = configuration.getMinReportIntervalMillis();
+        this.tokensPerMilli = configuration.getReportRateLimit() / 1000d;
+        this.burst = configuration.getReportBurst();
+        this.timed = minReportIntervalMillis > 0 || tokensPerMilli > 0;
+        this.clock = clock;
+    }
+
+    /**
+     * Checks whether the update should be reported and, if so, records it as reported.
+     *
+     * @param report the report state of the device
+     * @param rssi the rssi of the update
+     * @param scanRecord the payload of the update
+     * @return the boolean
+     */
+    boolean shouldReport(DeviceReport report, int rssi, byte[] scanRecord) {
+        final long payloadHash = payloadChangeDetection ? hash(scanRecord) : 0;
+        final boolean reported = report.hasBeenReported();
+
+        if (reported) {
+            final boolean changed = Math.abs(rssi - report.getReportedRssi()) >= rssiDelta
+                                    || (payloadChangeDetection && payloadHash != report.getReportedPayloadHash());
+            if (!changed) {
+                return false;
+            }
+        }
+
+        final long now = timed ? clock.elapsedRealtime() : 0;
+
+        if (reported && minReportIntervalMillis > 0 && now - report.getReportedAt() < minReportIntervalMillis) {
+            return false;
+        }
+
+        if (tokensPerMilli > 0 && !takeToken(report, reported, now)) {
+            return false;
+        }
+
+        report.setReported(rssi, payloadHash, now);
+        return true;
+    }
+
+    private boolean takeToken(DeviceReport report, boolean reported, long now) {
+        double tokens = reported
+                        ? Math.min(burst, report.getTokens() + (now - report.getTokensUpdatedAt()) * tokensPerMilli)
+                        : burst;
+
+        final boolean granted = tokens >= 1;
+        if (granted) {
+            tokens -= 1;
+        }
+        report.setTokens(tokens, now);
+        return granted;
+    }
+
+    private static long hash(byte[] scanRecord) {
+        long hash = FNV_OFFSET_BASIS;
+        if (scanRecord != null) {
+            for (int i = 0; i < scanRecord.length; i++) {
+                hash ^= scanRecord[i] & 0xFF;
+                hash *= FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,263 @@
+package com.matters.ble.library.callback;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.os.Build;
+
+import com.matters.ble.library.util.Clock;
+import com.matters.ble.library.util.LimitedLinkedHashMap;
+
+/**
+ * Per address cache of the {@link BluetoothDevice} attributes which require
+ * a binder call to the Bluetooth stack (name, type and bond state).
+ *
+ * Attributes are fetched once when the device is first seen and then refreshed
+ * either explicitly (bond state or name change broadcast) or after the staleness
+ * window elapses.
+ */
+public final class DeviceAttributeCache {
+
+    /**
+     * The default staleness window.
+     */
+    public static final long DEFAULT_STALENESS_MILLIS = 60 * 1000;
+
+    /**
+     * The default number of cached addresses.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final LimitedLinkedHashMap<String, Attributes> cache;
+
+    private final long stalenessMillis;
+
+    private final Clock clock;
+
+    private final Fetcher fetcher;
+
+    /**
+     * Instantiates a new Device attribute cache with default settings.
+     */
+    public DeviceAttributeCache() {
+        this(DEFAULT_STALENESS_MILLIS);
+    }
+
+    /**
+     * Instantiates a new Device attribute cache.
+     *
+     * @param stalenessMillis the staleness window after which attributes are fetched again
+     */
+    public DeviceAttributeCache(long stalenessMillis) {
+        this(stalenessMillis, DEFAULT_CAPACITY, Clock.SYSTEM);
+    }
+
+    /**
+     * Instantiates a new Device attribute cache.
+     *
+     * @param stalenessMillis the staleness window after which attributes are fetched again
+     * @param capacity the maximum number of cached addresses
+     * @param clock the clock
+     */
+    public DeviceAttributeCache(long stalenessMillis, int capacity, Clock clock) {
+        this(stalenessMillis, capacity, clock, Fetcher.BLUETOOTH_DEVICE);
+    }
+
+    /**
+     * Instantiates a new Device attribute cache fetching attributes with the fetcher.
+     *
+     * @param stalenessMillis the staleness window after which attributes are fetched again
+     * @param capacity the maximum number of cached addresses
+     * @param clock the clock
+     * @param fetcher the fetcher
+     */
+    DeviceAttributeCache(long stalenessMillis, int capacity, Clock clock, Fetcher fetcher) {
+        if (stalenessMillis <= 0) {
+            throw new IllegalArgumentException("Staleness window must be positive");
+        }
+        this.stalenessMillis = stalenessMillis;
+        this.clock = clock;
+        this.fetcher = fetcher;
+        this.cache = new LimitedLinkedHashMap<String, Attributes>(capacity, true);
+    }
+
+    /**
+     * Gets attributes of the device, fetching them from the Bluetooth stack only
+     * if they are not cached yet or have become stale.
+     *
+     * @param device the device
+     * @return the attributes
+     */
+    public Attributes get(BluetoothDevice device) {
+        return get(device.getAddress(), device);
+    }
+
+    /**
+     * Gets attributes of the device at the address, see {@link #get(BluetoothDevice)}.
+     *
+     * @param address the device address
+     * @param device the device
+     * @return the attributes
+     */
+    Attributes get(String address, BluetoothDevice device) {
+        final long now = clock.elapsedRealtime();
+
+        synchronized (cache) {
+            final Attributes attributes = cache.get(address);
+            if (attributes != null && now - attributes.fetchedAt < stalenessMillis) {
+                return attributes;
+            }
+        }
+
+        final Attributes fetched = fetcher.fetch(device, now);
+
+        synchronized (cache) {
+            cache.put(address, fetched);
+        }
+
+        return fetched;
+    }
+
+    /**
+     * Updates cached name after {@link BluetoothDevice#ACTION_NAME_CHANGED} broadcast.
+     *
+     * @param address the device address
+     * @param name the new name
+     */
+    public void onNameChanged(String address, String name) {
+        synchronized (cache) {
+            final Attributes attributes = cache.get(address);
+            if (attributes != null) {
+                cache.put(address, new Attributes(name, attributes.type, attributes.bondState, attributes.fetchedAt));
+            }
+        }
+    }
+
+    /**
+     * Updates cached bond state after {@link BluetoothDevice#ACTION_BOND_STATE_CHANGED} broadcast.
+     *
+     * @param address the device address
+     * @param bondState the new bond state
+     */
+    public void onBondStateChanged(String address, int bondState) {
+        synchronized (cache) {
+            final Attributes attributes = cache.get(address);
+            if (attributes != null) {
+                cache.put(address, new Attributes(attributes.name, attributes.type, bondState, attributes.fetchedAt));
+            }
+        }
+    }
+
+    /**
+     * Invalidates attributes of the device so that they are fetched on next advertisement.
+     *
+     * @param address the device address
+     */
+    public void invalidate(String address) {
+        synchronized (cache) {
+            cache.remove(address);
+        }
+    }
+
+    /**
+     * Clears the cache.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Gets staleness millis.
+     *
+     * @return the staleness window in milliseconds
+     */
+    public long getStalenessMillis() {
+        return stalenessMillis;
+    }
+
+    /**
+     * Gets the number of cached addresses.
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * The interface fetching the attributes of a device.
+     */
+    interface Fetcher {
+
+        /**
+         * The constant BLUETOOTH_DEVICE, fetching from the Bluetooth stack through the device.
+         */
+        Fetcher BLUETOOTH_DEVICE = new Fetcher() {
+            @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+            @Override
+            public Attributes fetch(BluetoothDevice device, long now) {
+                return new Attributes(device.getName(), device.getType(), device.getBondState(), now);
+            }
+        };
+
+        /**
+         * Fetches the attributes.
+         *
+         * @param device the device
+         * @param now the fetch time
+         * @return the attributes
+         */
+        Attributes fetch(BluetoothDevice device, long now);
+    }
+
+    /**
+     * Immutable snapshot of the device attributes.
+     */
+    public static final class Attributes {
+
+        private final String name;
+
+        private final int type;
+
+        private final int bondState;
+
+        private final long fetchedAt;
+
+        Attributes(String name, int type, int bondState, long fetchedAt) {
+            this.name = name;
+            this.type = type;
+            this.bondState = bondState;
+            this.fetchedAt = fetchedAt;
+        }
+
+        /**
+         * Gets name.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets type.
+         *
+         * @return the type
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * Gets bond state.
+         *
+         * @return the bond state
+         */
+        public int getBondState() {
+            return bondState;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.matters.ble.library.callback;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import com.matters.ble.library.device.BLEDevice;
+import com.matters.ble.library.device.DeviceRegistry;
+import com.matters.ble.library.filter.ScanFilter;
+
+/**
+ * Compact block of device updates sent by {@link com.matters.ble.library.manager.BLEService} to
+ * clients in another process, so that one binder transaction carries hundreds of devices.
+ * <pre>
+ * header    byte version, short device count
+ * devices   6 bytes address, byte rssi, byte name length in chars (0xFF if unknown), 2 bytes per
+ *           name char, byte scan record length, scan record
+ * </pre>
+ * Names are cut at {@link #MAX_NAME_LENGTH} chars and scan records at {@link #MAX_RECORD_LENGTH}
+ * bytes, so every device fits into {@link #MAX_ENTRY_SIZE} bytes. Runs on a plain JVM.
+ */
+public final class DeviceBlock {
+
+    /**
+     * The id of the message carrying a block.
+     */
+    public static final int MESSAGE_DEVICES = 104;
+
+    /**
+     * The key of the block in the data of the message.
+     */
+    public static final String KEY_BLOCK = "com.matters.ble.library.DEVICES";
+
+    /**
+     * The default block size, well below the binder transaction buffer of 1MB shared by all
+     * transactions in flight of the process.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The largest supported block size.
+     */
+    public static final int MAX_BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * The longest transferred name.
+     */
+    public static final int MAX_NAME_LENGTH = 32;
+
+    /**
+     * The longest transferred scan record.
+     */
+    public static final int MAX_RECORD_LENGTH = 255;
+
+    static final int HEADER_SIZE = 3;
+
+    /**
+     * The maximum size of a device in a block.
+     */
+    public static final int MAX_ENTRY_SIZE = 6 + 1 + 1 + 2 * MAX_NAME_LENGTH + 1 + MAX_RECORD_LENGTH;
+
+    /**
+     * The smallest supported block size.
+     */
+    public static final int MIN_BLOCK_SIZE = HEADER_SIZE + MAX_ENTRY_SIZE;
+
+    private static final byte VERSION = 1;
+
+    private static final int UNKNOWN_NAME = 0xFF;
+
+    private DeviceBlock() {
+    }
+
+    /**
+     * Writes devices into a reused buffer. Not thread safe.
+     */
+    public static final class Writer {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        private int count;
+
+        /**
+         * Instantiates a new Writer.
+         *
+         * @param blockSize the block size, between {@link #MIN_BLOCK_SIZE} and {@link #MAX_BLOCK_SIZE}
+         */
+        public Writer(int blockSize) {
+            if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+                throw new IllegalArgumentException("Unsupported block size: " + blockSize);
+            }
+            this.buffer = new byte[blockSize];
+            reset();
+        }
+
+        /**
+         * Adds a device to the block.
+         *
+         * @param address the packed address
+         * @param rssi the rssi
+         * @param name the name or null
+         * @param scanRecord the scan record or null
+         * @return false if the block is full, the device is then not added
+         */
+        public boolean add(long address, int rssi, String name, byte[] scanRecord) {
+            if (count == 0xFFFF || buffer.length - position < MAX_ENTRY_SIZE) {
+                return false;
+            }
+            for (int shift = 40; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (address >>> shift);
+            }
+            buffer[position++] = (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, rssi));
+            if (name == null) {
+                buffer[position++] = (byte) UNKNOWN_NAME;
+            } else {
+                final int length = Math.min(name.length(), MAX_NAME_LENGTH);
+                buffer[position++] = (byte) length;
+                for (int i = 0; i < length; i++) {
+                    final char c = name.charAt(i);
+                    buffer[position++] = (byte) (c >>> 8);
+                    buffer[position++] = (byte) c;
+                }
+            }
+            final int length = scanRecord == null ? 0 : Math.min(scanRecord.length, MAX_RECORD_LENGTH);
+            buffer[position++] = (byte) length;
+            if (length > 0) {
+                System.arraycopy(scanRecord, 0, buffer, position, length);
+                position += length;
+            }
+            count++;
+            return true;
+        }
+
+        /**
+         * Gets the number of devices in the block.
+         *
+         * @return the count
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Copies the block out, sized to its content.
+         *
+         * @return the block
+         */
+        public byte[] toByteArray() {
+            buffer[0] = VERSION;
+            buffer[1] = (byte) (count >>> 8);
+            buffer[2] = (byte) count;
+            final byte[] block = new byte[position];
+            System.arraycopy(buffer, 0, block, 0, position);
+            return block;
+        }
+
+        /**
+         * Empties the block.
+         */
+        public void reset() {
+            position = HEADER_SIZE;
+            count = 0;
+        }
+    }
+
+    /**
+     * Reads blocks into devices reused from one block to the next. Not thread safe.
+     */
+    public static final class Reader {
+
+        private final DeviceRegistry<RemoteBLEDevice> devices;
+
+        private final ArrayList<RemoteBLEDevice> updated = new ArrayList<RemoteBLEDevice>();
+
+        private final Collection<BLEDevice> view = new AbstractList<BLEDevice>() {
+            @Override
+            public BLEDevice get(int index) {
+                return updated.get(index);
+            }
+
+            @Override
+            public int size() {
+                return updated.size();
+            }
+        };
+
+        private final char[] name = new char[MAX_NAME_LENGTH];
+
+        /**
+         * Instantiates a new Reader.
+         *
+         * @param capacity the number of devices kept between blocks
+         */
+        public Reader(int capacity) {
+            this.devices = new DeviceRegistry<RemoteBLEDevice>(capacity);
+        }
+
+        /**
+         * Reads a block.
+         *
+         * @param block the block
+         * @param scanFilter the filter applied to the devices of the block
+         * @return the devices of the block accepted by the filter, the collection is reused
+         *         by the next call
+         */
+        public Collection<BLEDevice> read(byte[] block, ScanFilter scanFilter) {
+            updated.clear();
+            if (block == null || block.length < HEADER_SIZE || block[0] != VERSION) {
+                return view;
+            }
+            final int count = ((block[1] & 0xFF) << 8) | (block[2] & 0xFF);
+            int position = HEADER_SIZE;
+            for (int i = 0; i < count; i++) {
+                long address = 0;
+                for (int j = 0; j < 6; j++) {
+                    address = (address << 8) | (block[position++] & 0xFF);
+                }
+                final int rssi = block[position++];
+                final int nameLength = block[position++] & 0xFF;
+                final int nameStart = position;
+                if (nameLength != UNKNOWN_NAME) {
+                    position += 2 * nameLength;
+                }
+                final int recordLength = block[position++] & 0xFF;
+                final int recordStart = position;
+                position += recordLength;
+
+                RemoteBLEDevice device = devices.get(address);
+                final byte[] scanRecord = device != null && device.hasScanResponse(block, recordStart, recordLength)
+                                          ? device.getScanResponse()
+                                          : copy(block, recordStart, recordLength);
+                if (!scanFilter.accept(address, scanRecord)) {
+                    continue;
+                }
+                if (device == null) {
+                    device = new RemoteBLEDevice(address);
+                    devices.put(address, device);
+                }
+                device.setRssi(rssi);
+                device.setScanResponse(scanRecord);
+                device.setName(nameLength == UNKNOWN_NAME ? null : readName(block, nameStart, nameLength, device.getName()));
+                updated.add(device);
+            }
+            return view;
+        }
+
+        private String readName(byte[] block, int offset, int length, String current) {
+            for (int i = 0; i < length; i++) {
+                name[i] = (char) (((block[offset + 2 * i] & 0xFF) << 8) | (block[offset + 2 * i + 1] & 0xFF));
+            }
+            if (current != null && current.length() == length) {
+                boolean same = true;
+                for (int i = 0; i < length && same; i++) {
+                    same = current.charAt(i) == name[i];
+                }
+                if (same) {
+                    return current;
+                }
+            }
+            return new String(name, 0, length);
+        }
+
+        private static byte[] copy(byte[] block, int offset, int length) {
+            final byte[] bytes = new byte[length];
+            System.arraycopy(block, offset, bytes, 0, length);
+            return bytes;
+        }
+    }
+}
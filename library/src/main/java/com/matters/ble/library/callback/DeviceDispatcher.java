@@ -0,0 +1,20 @@
+package com.matters.ble.library.callback;
+
+/**
+ * Delivers device updates from the thread processing advertisements to the ranging listener
+ * of one client.
+ */
+interface DeviceDispatcher {
+
+    /**
+     * Dispatches the updated device.
+     *
+     * @param report the report state of the device towards the client
+     */
+    void dispatch(DeviceReport report);
+
+    /**
+     * Stops delivering, updates still pending are discarded.
+     */
+    void close();
+}
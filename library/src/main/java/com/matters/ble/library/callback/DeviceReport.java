@@ -0,0 +1,153 @@
+package com.matters.ble.library.callback;
+
+/**
+ * Reporting state of a device towards one client: what was last reported to it, its report
+ * rate limiting bucket and whether the device awaits delivery in its next batch. Kept on the
+ * {@link MutableBLEDevice} in the slot of the client, see {@link MutableBLEDevice#getReport(int, Object)}.
+ */
+final class DeviceReport {
+
+    private final MutableBLEDevice device;
+
+    private final Object owner;
+
+    private boolean pending;
+
+    private boolean reported;
+
+    private int reportedRssi;
+
+    private long reportedPayloadHash;
+
+    private long reportedAt;
+
+    private double tokens;
+
+    private long tokensUpdatedAt;
+
+    /**
+     * Instantiates a new Device report.
+     *
+     * @param device the device
+     * @param owner the client the state belongs to
+     */
+    DeviceReport(MutableBLEDevice device, Object owner) {
+        this.device = device;
+        this.owner = owner;
+    }
+
+    /**
+     * Gets device.
+     *
+     * @return the device
+     */
+    MutableBLEDevice getDevice() {
+        return device;
+    }
+
+    /**
+     * Gets the client the state belongs to.
+     *
+     * @return the owner
+     */
+    Object getOwner() {
+        return owner;
+    }
+
+    /**
+     * Checks whether the device awaits delivery in a batch. Guarded by the dispatcher lock.
+     *
+     * @return the boolean
+     */
+    boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * Sets pending.
+     *
+     * @param pending the pending
+     */
+    void setPending(boolean pending) {
+        this.pending = pending;
+    }
+
+    /**
+     * Checks whether the device has already been reported to the listener.
+     *
+     * @return the boolean
+     */
+    boolean hasBeenReported() {
+        return reported;
+    }
+
+    /**
+     * Gets rssi of the last report.
+     *
+     * @return the reported rssi
+     */
+    int getReportedRssi() {
+        return reportedRssi;
+    }
+
+    /**
+     * Gets payload hash of the last report.
+     *
+     * @return the reported payload hash
+     */
+    long getReportedPayloadHash() {
+        return reportedPayloadHash;
+    }
+
+    /**
+     * Gets time of the last report.
+     *
+     * @return the reported at
+     */
+    long getReportedAt() {
+        return reportedAt;
+    }
+
+    /**
+     * Records the device as reported.
+     *
+     * @param rssi the reported rssi
+     * @param payloadHash the reported payload hash
+     * @param now the time of report
+     */
+    void setReported(int rssi, long payloadHash, long now) {
+        this.reported = true;
+        this.reportedRssi = rssi;
+        this.reportedPayloadHash = payloadHash;
+        this.reportedAt = now;
+    }
+
+    /**
+     * Gets report tokens left in the rate limiting bucket.
+     *
+     * @return the tokens
+     */
+    double getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Gets time the token bucket was last updated.
+     *
+     * @return the tokens updated at
+     */
+    long getTokensUpdatedAt() {
+        return tokensUpdatedAt;
+    }
+
+    /**
+     * Sets tokens.
+     *
+     * @param tokens the tokens
+     * @param now the update time
+     */
+    void setTokens(double tokens, long now) {
+        this.tokens = tokens;
+        this.tokensUpdatedAt = now;
+    }
+}
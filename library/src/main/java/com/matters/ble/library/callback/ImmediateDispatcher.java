@@ -0,0 +1,54 @@
+package com.matters.ble.library.callback;
+
+import android.os.Handler;
+
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.metrics.ScanMetrics;
+
+/**
+ * Posts every advertisement to the listener separately, kept for compatibility.
+ */
+final class ImmediateDispatcher implements DeviceDispatcher {
+
+    private final Handler uiThreadHandler;
+
+    private final BLEManager.RangingListener rangingListener;
+
+    private final ScanMetrics metrics;
+
+    private volatile boolean closed;
+
+    /**
+     * Instantiates a new Immediate dispatcher.
+     *
+     * @param uiThreadHandler the ui thread handler
+     * @param rangingListener the ranging listener
+     * @param metrics the metrics recording the delivery latency
+     */
+    ImmediateDispatcher(Handler uiThreadHandler, BLEManager.RangingListener rangingListener, ScanMetrics metrics) {
+        this.uiThreadHandler = uiThreadHandler;
+        this.rangingListener = rangingListener;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void dispatch(DeviceReport report) {
+        final MutableBLEDevice device = report.getDevice();
+        final long advertisedAt = device.getAdvertisedAt();
+        uiThreadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (closed) {
+                    return;
+                }
+                metrics.onDelivery(System.nanoTime() - advertisedAt);
+                rangingListener.onDeviceFound(device);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
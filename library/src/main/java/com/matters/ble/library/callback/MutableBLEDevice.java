@@ -2,36 +2,46 @@ package com.matters.ble.library.callback;
 
 import android.bluetooth.BluetoothDevice;
 
-import com.google.common.base.Joiner;
-import com.matters.ble.library.device.BLEDevice;
+import java.util.Arrays;
+
+import com.matters.ble.library.device.ScanRecord;
+import com.matters.ble.library.device.ScannedBLEDevice;
+import com.matters.ble.library.util.MacAddress;
 
 /**
  * The type Mutable bLE device impl.
  */
-final class MutableBLEDevice implements BLEDevice {
+final class MutableBLEDevice implements ScannedBLEDevice {
+
+    private static final DeviceReport[] NO_REPORTS = new DeviceReport[0];
 
     private final BluetoothDevice bluetoothDevice;
 
-    private final byte[] scanResponse;
+    private final DeviceAttributeCache attributeCache;
+
+    private final long address;
+
+    private volatile byte[] scanResponse;
+
+    private volatile int rssi;
 
-    private final int hashCode;
+    private volatile ScanRecord scanRecord;
 
-    private final String toString;
+    private volatile long advertisedAt;
 
-    private int rssi;
+    private DeviceReport[] reports = NO_REPORTS;
 
     /**
      * Instantiates a new BLE device.
      *
-     * @param bluetoothDevice the bluetooth device
-     * @param scanResponse the scan respnse
-     * @param hashCode the device hash code
+     * @param bluetoothDevice the bluetooth device, null for devices of a synthetic scan source
+     * @param attributeCache the cache the device attributes are read from
+     * @param address the address packed into a long
      */
-    public MutableBLEDevice(BluetoothDevice bluetoothDevice, byte[] scanResponse, int hashCode) {
+    public MutableBLEDevice(BluetoothDevice bluetoothDevice, DeviceAttributeCache attributeCache, long address) {
         this.bluetoothDevice = bluetoothDevice;
-        this.scanResponse = scanResponse;
-        this.hashCode = hashCode;
-        this.toString = String.format("BLEDevice[%s, %s]", bluetoothDevice.getName(), bluetoothDevice.getAddress());
+        this.attributeCache = attributeCache;
+        this.address = address;
     }
 
     /**
@@ -41,7 +51,16 @@ final class MutableBLEDevice implements BLEDevice {
      */
     @Override
     public String getAddress() {
-        return bluetoothDevice.getAddress();
+        return bluetoothDevice == null ? MacAddress.toString(address) : bluetoothDevice.getAddress();
+    }
+
+    /**
+     * Gets the address packed into a long.
+     *
+     * @return the packed address
+     */
+    long getPackedAddress() {
+        return address;
     }
 
     /**
@@ -51,7 +70,7 @@ final class MutableBLEDevice implements BLEDevice {
      */
     @Override
     public String getName() {
-        return bluetoothDevice.getName();
+        return bluetoothDevice == null ? null : attributeCache.get(bluetoothDevice).getName();
     }
 
     /**
@@ -64,6 +83,35 @@ final class MutableBLEDevice implements BLEDevice {
         return scanResponse;
     }
 
+    /**
+     * Gets scan record, indexing the current scan response on first access.
+     *
+     * @return the scan record
+     */
+    @Override
+    public ScanRecord getScanRecord() {
+        final byte[] bytes = scanResponse;
+        ScanRecord record = scanRecord;
+        if (record == null || record.getBytes() != bytes) {
+            record = ScanRecord.parse(bytes);
+            scanRecord = record;
+        }
+        return record;
+    }
+
+    /**
+     * Sets scan response. The bytes are copied only when they differ from the current
+     * scan response, as the caller may reuse the array.
+     *
+     * @param scanResponse the scan response
+     */
+    public void setScanResponse(byte[] scanResponse) {
+        final byte[] current = this.scanResponse;
+        if (current == null || !Arrays.equals(current, scanResponse)) {
+            this.scanResponse = scanResponse == null ? null : scanResponse.clone();
+        }
+    }
+
     /**
      * Sets rssi.
      *
@@ -83,13 +131,51 @@ final class MutableBLEDevice implements BLEDevice {
         return rssi;
     }
 
+    /**
+     * Gets the timestamp of the latest advertisement.
+     *
+     * @return the {@link System#nanoTime()} the advertisement was received at
+     */
+    long getAdvertisedAt() {
+        return advertisedAt;
+    }
+
+    /**
+     * Sets the timestamp of the latest advertisement.
+     *
+     * @param timestampNanos the timestamp
+     */
+    void setAdvertisedAt(long timestampNanos) {
+        this.advertisedAt = timestampNanos;
+    }
+
+    /**
+     * Gets the reporting state towards the client in the slot. A slot taken over by another
+     * client starts over with a fresh state. Confined to the thread processing advertisements.
+     *
+     * @param slot the slot of the client
+     * @param owner the client
+     * @return the report state
+     */
+    DeviceReport getReport(int slot, Object owner) {
+        if (slot >= reports.length) {
+            reports = Arrays.copyOf(reports, Math.max(slot + 1, reports.length * 2));
+        }
+        DeviceReport report = reports[slot];
+        if (report == null || report.getOwner() != owner) {
+            report = new DeviceReport(this, owner);
+            reports[slot] = report;
+        }
+        return report;
+    }
+
     @Override
     public int hashCode() {
-        return hashCode;
+        return (int) (address ^ (address >>> 32));
     }
 
     @Override
     public String toString() {
-        return toString;
+        return String.format("BLEDevice[%s, %s]", getName(), getAddress());
     }
 }
@@ -4,63 +4,315 @@ import android.annotation.TargetApi;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.Messenger;
+import android.util.Log;
 
-import com.matters.ble.library.device.BLEDevice;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.matters.ble.library.device.DeviceRegistry;
 import com.matters.ble.library.manager.BLEManager;
-import com.matters.ble.library.util.HashCodeBuilder;
-import com.matters.ble.library.util.LimitedLinkedHashMap;
+import com.matters.ble.library.metrics.EventTrace;
+import com.matters.ble.library.metrics.ScanMetrics;
+import com.matters.ble.library.pipeline.AdvertisementSink;
+import com.matters.ble.library.pipeline.ScanPipeline;
+import com.matters.ble.library.trace.TraceRecorder;
+import com.matters.ble.library.util.Clock;
+import com.matters.ble.library.util.MacAddress;
 
 /**
  * The type Range callback.
+ *
+ * Advertisements arrive either from the adapter through {@link #onLeScan(BluetoothDevice, int, byte[])}
+ * or from a {@link com.matters.ble.library.scan.ScanSource} as an {@link AdvertisementSink}. Unless the
+ * scan queue is disabled they are only copied into the {@link ScanPipeline} and all processing happens
+ * on its worker thread.
+ * The callback must be {@link #close() closed} once scanning stops.
+ *
+ * One callback serves every {@link ScanClient} of the scan. Each advertisement is looked up in the
+ * shared device registry and applied to the shared device once; a device is only tracked while at
+ * least one client's scan filter accepts it. The update is then passed through the change filter of
+ * every accepting client and fanned out to its dispatcher.
+ *
+ * Processing is counted in the {@link ScanMetrics}, the delivery latency is measured from the
+ * advertisement timestamp and is only meaningful for timestamps taken from {@link System#nanoTime()}.
  */
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
-public class RangeCallback implements BluetoothAdapter.LeScanCallback {
+public class RangeCallback implements BluetoothAdapter.LeScanCallback, AdvertisementSink, ScanMetrics.Gauges {
+
+    /**
+     * The maximum number of clients.
+     */
+    public static final int MAX_CLIENTS = 64;
+
+    private static final String TAG = RangeCallback.class.getSimpleName();
+
+    private static final ScanClient[] NO_CLIENTS = new ScanClient[0];
 
-    private static final int CACHE_SIZE = 20;
+    private final DeviceRegistry<MutableBLEDevice> cache;
 
-    private final LimitedLinkedHashMap<Integer, MutableBLEDevice> cache =
-                                                    new LimitedLinkedHashMap<Integer, MutableBLEDevice>(CACHE_SIZE);
-    private final BLEManager.RangingListener rangingListener;
+    private final DeviceAttributeCache attributeCache;
 
-    private final Handler uiThreadHandler = new Handler(Looper.getMainLooper());
+    private final ScanPipeline pipeline;
+
+    private final TraceRecorder recorder;
+
+    private final ScanMetrics metrics;
+
+    private final Object clientsLock = new Object();
+
+    private volatile ScanClient[] clients = NO_CLIENTS;
 
     /**
-     * Instantiates a new Range callback.
+     * Slots in use, one bit per slot.
+     */
+    private long usedSlots;
+
+    /**
+     * Instantiates a new Range callback delivering to the listener.
      *
      * @param rangingListener the ranging listener
      */
     public RangeCallback(BLEManager.RangingListener rangingListener) {
-        this.rangingListener = rangingListener;
+        this(new BLEManager.Configuration.Builder().setRangingListener(rangingListener).build(),
+             new DeviceAttributeCache());
+    }
+
+    /**
+     * Instantiates a new Range callback with the configuration as its single client.
+     *
+     * @param configuration the configuration
+     * @param attributeCache the device attribute cache
+     */
+    public RangeCallback(BLEManager.Configuration configuration, DeviceAttributeCache attributeCache) {
+        this(configuration, attributeCache, new ScanMetrics());
+        addClient(configuration);
+    }
+
+    /**
+     * Instantiates a new Range callback without clients. Only the settings of the shared scan
+     * are taken from the configuration: the device registry, the scan queue and the trace.
+     *
+     * @param configuration the configuration
+     * @param attributeCache the device attribute cache
+     * @param metrics the metrics, bound to the callback until it is closed
+     */
+    public RangeCallback(BLEManager.Configuration configuration, DeviceAttributeCache attributeCache, final ScanMetrics metrics) {
+        this.attributeCache = attributeCache;
+        this.metrics = metrics;
+        this.cache = new DeviceRegistry<MutableBLEDevice>(configuration.getCacheCapacity(),
+                                                          configuration.getCacheEvictionPolicy(),
+                                                          configuration.getCacheTimeToLiveMillis(),
+                                                          Clock.SYSTEM,
+                                                          new DeviceRegistry.EvictionListener<MutableBLEDevice>() {
+                                                              @Override
+                                                              public void onEvicted(long address, MutableBLEDevice value) {
+                                                                  metrics.onCacheEviction();
+                                                                  EventTrace.instant(EventTrace.EVICTION, address);
+                                                              }
+                                                          });
+
+        this.recorder = createRecorder(configuration);
+
+        if (configuration.getScanQueueCapacity() > 0) {
+            this.pipeline = new ScanPipeline(configuration.getScanQueueCapacity(),
+                                             configuration.getScanQueueOverflowPolicy(),
+                                             new AdvertisementSink() {
+                                                 @Override
+                                                 public void onAdvertisement(BluetoothDevice device, long address, int rssi,
+                                                                             long timestampNanos, byte[] scanRecord) {
+                                                     process(device, address, rssi, timestampNanos, scanRecord);
+                                                 }
+                                             });
+            this.pipeline.start();
+        } else {
+            this.pipeline = null;
+        }
+        metrics.bind(this);
     }
 
     @Override
     public void onLeScan(BluetoothDevice device, int rssi, byte[] scanRecord) {
-        final int hashCode = HashCodeBuilder.init()
-                                            .append(device.getAddress())
-                                            .append(device.getName())
-                                            .append(device.getType())
-                                            .append(device.getBondState())
-                                            .append(scanRecord)
-                                            .build();
+        onAdvertisement(device, MacAddress.toLong(device.getAddress()), rssi, System.nanoTime(), scanRecord);
+    }
+
+    @Override
+    public void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+        metrics.onAdvertisement();
+        if (recorder != null) {
+            recorder.onAdvertisement(device, address, rssi, timestampNanos, scanRecord);
+        }
+        if (pipeline != null) {
+            pipeline.offer(device, address, rssi, timestampNanos, scanRecord);
+        } else {
+            process(device, address, rssi, timestampNanos, scanRecord);
+        }
+    }
+
+    /**
+     * Adds a client to the scan.
+     *
+     * @param configuration the configuration of the client
+     * @return the client
+     * @throws IllegalStateException if the maximum number of clients is reached
+     */
+    public ScanClient addClient(BLEManager.Configuration configuration) {
+        return addClient(configuration, null, ScanClient.LostListener.NULL);
+    }
+
+    /**
+     * Adds a client in another process, its updates are sent to the messenger in blocks of
+     * the configured size at the batch interval of the configuration.
+     *
+     * @param configuration the configuration of the client
+     * @param remote the messenger of the client or null for a client in this process
+     * @param lostListener the listener notified once the messenger cannot be reached
+     * @return the client
+     * @throws IllegalStateException if the maximum number of clients is reached
+     */
+    public ScanClient addClient(BLEManager.Configuration configuration, Messenger remote, ScanClient.LostListener lostListener) {
+        synchronized (clientsLock) {
+            if (usedSlots == -1L) {
+                throw new IllegalStateException("At most " + MAX_CLIENTS + " clients are supported");
+            }
+            final int slot = Long.numberOfTrailingZeros(~usedSlots);
+            usedSlots |= 1L << slot;
+            final ScanClient client = new ScanClient(slot, configuration, remote, lostListener, metrics);
+            final ScanClient[] current = clients;
+            final ScanClient[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = client;
+            clients = updated;
+            return client;
+        }
+    }
+
+    /**
+     * Removes the client from the scan and stops delivery to it.
+     *
+     * @param client the client
+     * @return false if the client was not added to this callback
+     */
+    public boolean removeClient(ScanClient client) {
+        synchronized (clientsLock) {
+            final ScanClient[] current = clients;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == client) {
+                    final ScanClient[] updated = new ScanClient[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    clients = updated;
+                    usedSlots &= ~(1L << client.getSlot());
+                    client.close();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 
-        MutableBLEDevice bleDevice = cache.get(hashCode);
+    /**
+     * Gets the number of clients.
+     *
+     * @return the client count
+     */
+    public int getClientCount() {
+        return clients.length;
+    }
+
+    private void process(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+        final ScanClient[] clients = this.clients;
+        long accepted = 0;
+        for (int i = 0; i < clients.length; i++) {
+            if (clients[i].accept(address, scanRecord)) {
+                accepted |= 1L << i;
+            }
+        }
+        if (accepted == 0) {
+            metrics.onFilterDrop();
+            return;
+        }
+
+        MutableBLEDevice bleDevice = cache.get(address);
+        metrics.onCacheLookup(bleDevice != null);
 
         if(bleDevice == null) {
-            bleDevice = new MutableBLEDevice(device, scanRecord, hashCode);
-            cache.put(hashCode, bleDevice);
+            bleDevice = new MutableBLEDevice(device, attributeCache, address);
+            cache.put(address, bleDevice);
         }
 
+        bleDevice.setScanResponse(scanRecord);
         bleDevice.setRssi(rssi);
+        bleDevice.setAdvertisedAt(timestampNanos);
 
-        final BLEDevice result = bleDevice;
+        for (int i = 0; i < clients.length; i++) {
+            if ((accepted & (1L << i)) != 0) {
+                clients[i].onUpdate(bleDevice, rssi, scanRecord);
+            }
+        }
+    }
 
-        uiThreadHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                rangingListener.onDeviceFound(result);
+    /**
+     * Gets the number of tracked devices. Approximate while advertisements are being processed.
+     *
+     * @return the tracked device count
+     */
+    @Override
+    public int getTrackedDeviceCount() {
+        return cache.size();
+    }
+
+    /**
+     * Gets the number of advertisements waiting to be processed.
+     *
+     * @return the queue depth
+     */
+    @Override
+    public int getQueueDepth() {
+        return pipeline == null ? 0 : pipeline.getQueueDepth();
+    }
+
+    /**
+     * Gets the number of advertisements dropped because the scan queue was full.
+     *
+     * @return the dropped count
+     */
+    @Override
+    public long getDroppedCount() {
+        return pipeline == null ? 0 : pipeline.getDroppedCount();
+    }
+
+    /**
+     * Stops the processing thread, the trace recorder and the delivery to all clients.
+     * Advertisements still queued are discarded.
+     */
+    public void close() {
+        metrics.unbind(this);
+        synchronized (clientsLock) {
+            for (ScanClient client : clients) {
+                client.close();
             }
-        });
+            clients = NO_CLIENTS;
+            usedSlots = 0;
+        }
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    private static TraceRecorder createRecorder(BLEManager.Configuration configuration) {
+        if (configuration.getTraceDirectory() == null) {
+            return null;
+        }
+        try {
+            return new TraceRecorder(configuration.getTraceDirectory(),
+                                     configuration.getTraceSegmentSize(),
+                                     configuration.getTraceSizeBudget());
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot record scan trace", e);
+            return null;
+        }
     }
 }
@@ -0,0 +1,117 @@
+package com.matters.ble.library.callback;
+
+import com.matters.ble.library.device.ScanRecord;
+import com.matters.ble.library.device.ScannedBLEDevice;
+import com.matters.ble.library.util.MacAddress;
+
+/**
+ * A device read from a {@link DeviceBlock} in the process of a remote client. Updated on the
+ * main thread only.
+ */
+final class RemoteBLEDevice implements ScannedBLEDevice {
+
+    private final long address;
+
+    private String name;
+
+    private int rssi;
+
+    private byte[] scanResponse;
+
+    private ScanRecord scanRecord;
+
+    /**
+     * Instantiates a new Remote BLE device.
+     *
+     * @param address the packed address
+     */
+    RemoteBLEDevice(long address) {
+        this.address = address;
+    }
+
+    @Override
+    public int getRssi() {
+        return rssi;
+    }
+
+    /**
+     * Sets rssi.
+     *
+     * @param rssi the rssi
+     */
+    void setRssi(int rssi) {
+        this.rssi = rssi;
+    }
+
+    @Override
+    public String getAddress() {
+        return MacAddress.toString(address);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets name.
+     *
+     * @param name the name
+     */
+    void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public byte[] getScanResponse() {
+        return scanResponse;
+    }
+
+    /**
+     * Sets scan response, kept as is.
+     *
+     * @param scanResponse the scan response
+     */
+    void setScanResponse(byte[] scanResponse) {
+        this.scanResponse = scanResponse;
+    }
+
+    /**
+     * Checks whether the scan response equals a range of the block.
+     *
+     * @param block the block
+     * @param offset the offset of the range
+     * @param length the length of the range
+     * @return the boolean
+     */
+    boolean hasScanResponse(byte[] block, int offset, int length) {
+        final byte[] current = scanResponse;
+        if (current == null || current.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (current[i] != block[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ScanRecord getScanRecord() {
+        if (scanRecord == null || scanRecord.getBytes() != scanResponse) {
+            scanRecord = ScanRecord.parse(scanResponse);
+        }
+        return scanRecord;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (address ^ (address >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BLEDevice[%s, %s]", name, getAddress());
+    }
+}
@@ -0,0 +1,163 @@
+package com.matters.ble.library.callback;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.matters.ble.library.metrics.ScanMetrics;
+
+/**
+ * Coalesces device updates like {@link BatchDispatcher} and ships them to a client in another
+ * process as {@link DeviceBlock}s at a fixed interval. A batch larger than a block is split over
+ * several messages, each one staying under the block size.
+ *
+ * Delivery stops when the client cannot be reached anymore, the unreachable callback then runs
+ * on the thread of the handler.
+ */
+final class RemoteDispatcher implements DeviceDispatcher {
+
+    private static final String TAG = RemoteDispatcher.class.getSimpleName();
+
+    private final Object lock = new Object();
+
+    private final Handler handler;
+
+    private final Messenger messenger;
+
+    private final long intervalMillis;
+
+    private final ScanMetrics metrics;
+
+    private final Runnable unreachableCallback;
+
+    private final DeviceBlock.Writer writer;
+
+    private final List<ArrayList<DeviceReport>> buffers = new ArrayList<ArrayList<DeviceReport>>(2);
+
+    private int pendingIndex;
+
+    private boolean scheduled;
+
+    private boolean closed;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Instantiates a new Remote dispatcher.
+     *
+     * @param handler the handler of the thread sending the blocks
+     * @param messenger the messenger of the client
+     * @param intervalMillis the interval between two transfers
+     * @param blockSize the maximum size of a block
+     * @param metrics the metrics recording the delivery latency
+     * @param unreachableCallback the callback run once the client cannot be reached
+     */
+    RemoteDispatcher(Handler handler,
+                     Messenger messenger,
+                     long intervalMillis,
+                     int blockSize,
+                     ScanMetrics metrics,
+                     Runnable unreachableCallback) {
+        this.handler = handler;
+        this.messenger = messenger;
+        this.intervalMillis = intervalMillis;
+        this.metrics = metrics;
+        this.unreachableCallback = unreachableCallback;
+        this.writer = new DeviceBlock.Writer(blockSize);
+        buffers.add(new ArrayList<DeviceReport>());
+        buffers.add(new ArrayList<DeviceReport>());
+    }
+
+    @Override
+    public void dispatch(DeviceReport report) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (!report.isPending()) {
+                report.setPending(true);
+                buffers.get(pendingIndex).add(report);
+            }
+
+            if (!scheduled) {
+                scheduled = true;
+                handler.postDelayed(flushRunnable, intervalMillis);
+            }
+        }
+    }
+
+    /**
+     * Sends all pending devices. Runs on the thread of the handler.
+     */
+    void flush() {
+        final int deliveredIndex;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            deliveredIndex = pendingIndex;
+            pendingIndex = 1 - pendingIndex;
+            scheduled = false;
+
+            final ArrayList<DeviceReport> batch = buffers.get(deliveredIndex);
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                batch.get(i).setPending(false);
+            }
+        }
+
+        final ArrayList<DeviceReport> batch = buffers.get(deliveredIndex);
+        boolean unreachable = false;
+        try {
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                final MutableBLEDevice device = batch.get(i).getDevice();
+                if (!writer.add(device.getPackedAddress(), device.getRssi(), device.getName(), device.getScanResponse())) {
+                    send();
+                    writer.add(device.getPackedAddress(), device.getRssi(), device.getName(), device.getScanResponse());
+                }
+                metrics.onDelivery(System.nanoTime() - device.getAdvertisedAt());
+            }
+            if (writer.getCount() > 0) {
+                send();
+            }
+        } catch (RemoteException e) {
+            Log.w(TAG, "Client unreachable, delivery stopped", e);
+            close();
+            unreachable = true;
+        } finally {
+            writer.reset();
+            batch.clear();
+        }
+        if (unreachable) {
+            unreachableCallback.run();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            buffers.get(pendingIndex).clear();
+        }
+        handler.removeCallbacks(flushRunnable);
+    }
+
+    private void send() throws RemoteException {
+        final Bundle data = new Bundle();
+        data.putByteArray(DeviceBlock.KEY_BLOCK, writer.toByteArray());
+        final Message message = Message.obtain(null, DeviceBlock.MESSAGE_DEVICES);
+        message.setData(data);
+        writer.reset();
+        messenger.send(message);
+    }
+}
@@ -0,0 +1,139 @@
+package com.matters.ble.library.callback;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Messenger;
+
+import com.matters.ble.library.filter.ScanFilter;
+import com.matters.ble.library.manager.BLEManager;
+import com.matters.ble.library.metrics.ScanMetrics;
+import com.matters.ble.library.util.Clock;
+
+/**
+ * A consumer of the shared scan, with its own scan filter, report settings and delivery to its
+ * ranging listener, taken from the client's {@link BLEManager.Configuration}.
+ *
+ * Clients are created by {@link RangeCallback#addClient(BLEManager.Configuration)}. Each one
+ * occupies a slot of the callback, which indexes its {@link DeviceReport} on every device.
+ * Clients in another process get their updates as {@link DeviceBlock}s through a messenger,
+ * their {@link LostListener} is notified once the messenger cannot be reached anymore.
+ */
+public final class ScanClient {
+
+    private final int slot;
+
+    private final BLEManager.Configuration configuration;
+
+    private final ScanFilter scanFilter;
+
+    private final ChangeFilter changeFilter;
+
+    private final DeviceDispatcher dispatcher;
+
+    ScanClient(int slot,
+               BLEManager.Configuration configuration,
+               Messenger remote,
+               final LostListener lostListener,
+               ScanMetrics metrics) {
+        this.slot = slot;
+        this.configuration = configuration;
+        this.scanFilter = configuration.getScanFilter();
+        this.changeFilter = new ChangeFilter(configuration, Clock.SYSTEM);
+
+        final Handler uiThreadHandler = new Handler(Looper.getMainLooper());
+        if (remote != null) {
+            this.dispatcher = new RemoteDispatcher(uiThreadHandler,
+                                                   remote,
+                                                   configuration.getBatchIntervalMillis(),
+                                                   configuration.getRemoteBlockSize(),
+                                                   metrics,
+                                                   new Runnable() {
+                                                       @Override
+                                                       public void run() {
+                                                           lostListener.onClientLost(ScanClient.this);
+                                                       }
+                                                   });
+        } else if (configuration.getDeliveryMode() == BLEManager.DeliveryMode.PER_ADVERTISEMENT) {
+            this.dispatcher = new ImmediateDispatcher(uiThreadHandler, configuration.getRangingListener(), metrics);
+        } else {
+            this.dispatcher = new BatchDispatcher(uiThreadHandler,
+                                                  configuration.getRangingListener(),
+                                                  configuration.getDeliveryMode(),
+                                                  configuration.getBatchIntervalMillis(),
+                                                  metrics);
+        }
+    }
+
+    /**
+     * Gets configuration.
+     *
+     * @return the configuration
+     */
+    public BLEManager.Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Gets slot.
+     *
+     * @return the slot
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Checks whether the client wants the advertisement.
+     *
+     * @param address the packed address
+     * @param scanRecord the scan record
+     * @return the boolean
+     */
+    boolean accept(long address, byte[] scanRecord) {
+        return scanFilter.accept(address, scanRecord);
+    }
+
+    /**
+     * Reports the updated device to the client if the update passes its change filter.
+     *
+     * @param device the device
+     * @param rssi the rssi of the update
+     * @param scanRecord the payload of the update
+     */
+    void onUpdate(MutableBLEDevice device, int rssi, byte[] scanRecord) {
+        final DeviceReport report = device.getReport(slot, this);
+        if (changeFilter.shouldReport(report, rssi, scanRecord)) {
+            dispatcher.dispatch(report);
+        }
+    }
+
+    /**
+     * Stops delivery to the client.
+     */
+    void close() {
+        dispatcher.close();
+    }
+
+    /**
+     * The interface Lost listener of a client in another process.
+     */
+    public interface LostListener {
+
+        /**
+         * The constant NULL.
+         */
+        public static final LostListener NULL = new LostListener() {
+            @Override
+            public void onClientLost(ScanClient client) {
+            }
+        };
+
+        /**
+         * On client lost, when its messenger cannot be reached anymore. Runs on the main thread,
+         * delivery to the client has stopped already.
+         *
+         * @param client the client
+         */
+        void onClientLost(ScanClient client);
+    }
+}
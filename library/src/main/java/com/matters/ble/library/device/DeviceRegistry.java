@@ -0,0 +1,482 @@
+package com.matters.ble.library.device;
+
+import java.util.Arrays;
+
+import com.matters.ble.library.util.Clock;
+
+/**
+ * Fixed capacity registry of devices keyed by the 48-bit MAC address packed into a long
+ * (see {@link com.matters.ble.library.util.MacAddress}).
+ *
+ * The registry is an open-addressing hash table with linear probing over primitive arrays
+ * and keeps the entries on an intrusive doubly linked list in access order. When the registry
+ * is full an entry is evicted according to the {@link EvictionPolicy}. Lookups and updates
+ * of present entries do not allocate.
+ *
+ * Entries not accessed within the time-to-live are reclaimed lazily: on lookup, and from
+ * the cold end of the access list whenever a new device is registered.
+ *
+ * The registry is not thread safe and is meant to be confined to the thread processing advertisements.
+ *
+ * @param <V> the type of registered values
+ */
+public final class DeviceRegistry<V> {
+
+    /**
+     * The constant NO_TTL disabling expiry of entries.
+     */
+    public static final long NO_TTL = 0;
+
+    private static final int NONE = -1;
+
+    private static final int LFU_SAMPLE_SIZE = 8;
+
+    private static final int EXPIRED_PER_PUT = 2;
+
+    private final int capacity;
+
+    private final EvictionPolicy evictionPolicy;
+
+    private final long ttlMillis;
+
+    private final Clock clock;
+
+    private final int mask;
+
+    /**
+     * Hash table of entry index + 1, 0 marks an empty slot.
+     */
+    private final int[] table;
+
+    private final long[] addresses;
+
+    private final Object[] values;
+
+    private final int[] previous;
+
+    private final int[] next;
+
+    private final long[] lastAccess;
+
+    private final int[] frequencies;
+
+    private final EvictionListener<? super V> evictionListener;
+
+    private int head = NONE;
+
+    private int tail = NONE;
+
+    private int freeHead;
+
+    private int size;
+
+    private int accessesSinceDecay;
+
+    private int random = 0x2545F491;
+
+    /**
+     * Instantiates a new Device registry.
+     *
+     * @param capacity the maximum number of registered devices
+     */
+    public DeviceRegistry(final int capacity) {
+        this(capacity, EvictionListener.NULL);
+    }
+
+    /**
+     * Instantiates a new Device registry.
+     *
+     * @param capacity the maximum number of registered devices
+     * @param evictionListener the listener notified about evicted entries
+     */
+    public DeviceRegistry(final int capacity, final EvictionListener<? super V> evictionListener) {
+        this(capacity, EvictionPolicy.LRU, NO_TTL, Clock.SYSTEM, evictionListener);
+    }
+
+    /**
+     * Instantiates a new Device registry.
+     *
+     * @param capacity the maximum number of registered devices
+     * @param evictionPolicy the policy choosing the entry evicted when the registry is full
+     * @param ttlMillis the time after last access when an entry expires, or {@link #NO_TTL}
+     * @param clock the clock
+     * @param evictionListener the listener notified about evicted and expired entries
+     */
+    public DeviceRegistry(final int capacity,
+                          final EvictionPolicy evictionPolicy,
+                          final long ttlMillis,
+                          final Clock clock,
+                          final EvictionListener<? super V> evictionListener) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative");
+        }
+        this.capacity = capacity;
+        this.evictionPolicy = evictionPolicy;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.evictionListener = evictionListener;
+
+        final int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.mask = tableSize - 1;
+        this.table = new int[tableSize];
+
+        this.addresses = new long[capacity];
+        this.values = new Object[capacity];
+        this.previous = new int[capacity];
+        this.next = new int[capacity];
+        this.lastAccess = new long[capacity];
+        this.frequencies = new int[capacity];
+        initFreeList();
+    }
+
+    /**
+     * Gets the value registered for the address and marks it as most recently used.
+     *
+     * @param address the packed address
+     * @return the value or null if absent or expired
+     */
+    public V get(final long address) {
+        final int slot = findSlot(address);
+        if (slot == NONE) {
+            return null;
+        }
+        final int entry = table[slot] - 1;
+        final long now = now();
+        if (isExpired(entry, now)) {
+            evict(entry);
+            return null;
+        }
+        touch(entry, now);
+        return value(entry);
+    }
+
+    /**
+     * Gets the value registered for the address without changing the eviction order.
+     *
+     * @param address the packed address
+     * @return the value or null if absent
+     */
+    public V peek(final long address) {
+        final int slot = findSlot(address);
+        return slot == NONE ? null : this.<V>value(table[slot] - 1);
+    }
+
+    /**
+     * Registers the value under the address. If the registry is full an entry
+     * chosen by the eviction policy is evicted first.
+     *
+     * @param address the packed address
+     * @param value the value
+     * @return the previously registered value or null
+     */
+    public V put(final long address, final V value) {
+        if (value == null) {
+            throw new NullPointerException("Value is null");
+        }
+
+        final int slot = findSlot(address);
+        if (slot != NONE) {
+            final int entry = table[slot] - 1;
+            final V previousValue = value(entry);
+            values[entry] = value;
+            touch(entry, now());
+            return previousValue;
+        }
+
+        final long now = now();
+        evictExpired(now);
+        if (size == capacity) {
+            evict(victim());
+        }
+
+        final int entry = freeHead;
+        freeHead = next[entry];
+
+        addresses[entry] = address;
+        values[entry] = value;
+        lastAccess[entry] = now;
+        frequencies[entry] = 1;
+        linkHead(entry);
+        insertSlot(entry);
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes the entry registered under the address.
+     *
+     * @param address the packed address
+     * @return the removed value or null
+     */
+    public V remove(final long address) {
+        final int slot = findSlot(address);
+        if (slot == NONE) {
+            return null;
+        }
+        final int entry = table[slot] - 1;
+        final V value = value(entry);
+        deleteSlot(slot);
+        release(entry);
+        return value;
+    }
+
+    /**
+     * Checks whether a value is registered under the address.
+     *
+     * @param address the packed address
+     * @return the boolean
+     */
+    public boolean contains(final long address) {
+        return findSlot(address) != NONE;
+    }
+
+    /**
+     * Gets the number of registered devices.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets capacity.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets eviction policy.
+     *
+     * @return the eviction policy
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Removes all entries without notifying the eviction listener.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(values, null);
+        head = NONE;
+        tail = NONE;
+        size = 0;
+        initFreeList();
+    }
+
+    private void touch(final int entry, final long now) {
+        lastAccess[entry] = now;
+        if (evictionPolicy == EvictionPolicy.LFU) {
+            if (frequencies[entry] != Integer.MAX_VALUE) {
+                frequencies[entry]++;
+            }
+            if (++accessesSinceDecay >= capacity * 16) {
+                decayFrequencies();
+            }
+        }
+        moveToHead(entry);
+    }
+
+    /**
+     * Halves all frequencies so that devices popular in the past do not stay forever.
+     */
+    private void decayFrequencies() {
+        accessesSinceDecay = 0;
+        for (int i = 0; i < capacity; i++) {
+            frequencies[i] >>>= 1;
+        }
+    }
+
+    private int victim() {
+        if (evictionPolicy == EvictionPolicy.LRU) {
+            return tail;
+        }
+
+        // Sampled LFU: the registry is full so every entry index is in use.
+        int victim = tail;
+        for (int i = 0; i < LFU_SAMPLE_SIZE; i++) {
+            final int candidate = nextRandom() % capacity;
+            if (frequencies[candidate] < frequencies[victim]
+                    || (frequencies[candidate] == frequencies[victim] && lastAccess[candidate] < lastAccess[victim])) {
+                victim = candidate;
+            }
+        }
+        return victim;
+    }
+
+    private void evictExpired(final long now) {
+        for (int i = 0; i < EXPIRED_PER_PUT && tail != NONE && isExpired(tail, now); i++) {
+            evict(tail);
+        }
+    }
+
+    private boolean isExpired(final int entry, final long now) {
+        return ttlMillis != NO_TTL && now - lastAccess[entry] >= ttlMillis;
+    }
+
+    private long now() {
+        return ttlMillis == NO_TTL && evictionPolicy == EvictionPolicy.LRU ? 0 : clock.elapsedRealtime();
+    }
+
+    private int nextRandom() {
+        int x = random;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        random = x;
+        return x & Integer.MAX_VALUE;
+    }
+
+    private void evict(final int entry) {
+        final long address = addresses[entry];
+        final V value = value(entry);
+        deleteSlot(findSlot(address));
+        release(entry);
+        evictionListener.onEvicted(address, value);
+    }
+
+    private void release(final int entry) {
+        unlink(entry);
+        values[entry] = null;
+        next[entry] = freeHead;
+        freeHead = entry;
+        size--;
+    }
+
+    private int findSlot(final long address) {
+        int slot = hash(address);
+        int stored;
+        while ((stored = table[slot]) != 0) {
+            if (addresses[stored - 1] == address) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private void insertSlot(final int entry) {
+        int slot = hash(addresses[entry]);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    /**
+     * Backward shift deletion, keeps probe sequences intact without tombstones.
+     */
+    private void deleteSlot(final int slot) {
+        int hole = slot;
+        int current = (slot + 1) & mask;
+        int stored;
+        while ((stored = table[current]) != 0) {
+            final int home = hash(addresses[stored - 1]);
+            if (((current - home) & mask) >= ((current - hole) & mask)) {
+                table[hole] = stored;
+                hole = current;
+            }
+            current = (current + 1) & mask;
+        }
+        table[hole] = 0;
+    }
+
+    private int hash(final long address) {
+        final long mixed = address * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 32) & mask;
+    }
+
+    private void moveToHead(final int entry) {
+        if (entry != head) {
+            unlink(entry);
+            linkHead(entry);
+        }
+    }
+
+    private void linkHead(final int entry) {
+        previous[entry] = NONE;
+        next[entry] = head;
+        if (head != NONE) {
+            previous[head] = entry;
+        }
+        head = entry;
+        if (tail == NONE) {
+            tail = entry;
+        }
+    }
+
+    private void unlink(final int entry) {
+        final int before = previous[entry];
+        final int after = next[entry];
+        if (before == NONE) {
+            head = after;
+        } else {
+            next[before] = after;
+        }
+        if (after == NONE) {
+            tail = before;
+        } else {
+            previous[after] = before;
+        }
+    }
+
+    private void initFreeList() {
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NONE;
+        }
+        freeHead = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T value(final int entry) {
+        return (T) values[entry];
+    }
+
+    /**
+     * The enum Eviction policy.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evicts the least recently used device.
+         */
+        LRU,
+        /**
+         * Evicts the least frequently used device, approximated by sampling.
+         */
+        LFU
+    }
+
+    /**
+     * The interface Eviction listener.
+     *
+     * @param <V> the type of registered values
+     */
+    public interface EvictionListener<V> {
+
+        /**
+         * The constant NULL.
+         */
+        public static final EvictionListener<Object> NULL = new EvictionListener<Object>() {
+            @Override
+            public void onEvicted(long address, Object value) {
+
+            }
+        };
+
+        /**
+         * On evicted.
+         *
+         * @param address the packed address of the evicted device
+         * @param value the evicted value
+         */
+        void onEvicted(long address, V value);
+    }
+}
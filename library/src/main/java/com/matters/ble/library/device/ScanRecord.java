@@ -0,0 +1,524 @@
+package com.matters.ble.library.device;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.matters.ble.library.util.Bytes;
+
+/**
+ * Lazy view over the advertisement data (AD) structures of a raw scan record.
+ *
+ * The record is indexed in a single pass which stores only the offset and type of every
+ * AD structure in a small int array. Values are decoded when requested, either as primitives
+ * or as read-only {@link ByteBuffer} slices sharing the underlying array. Nothing is copied.
+ *
+ * An instance can be reused for consecutive records with {@link #reset(byte[])}. It does not
+ * depend on Android classes and can be used on a plain JVM.
+ *
+ * Code which must not hold a view, such as thread safe filters, walks the raw record with the
+ * static {@link #firstStructure(byte[])} and {@link #nextStructure(byte[], int)}, which the view
+ * is indexed with as well:
+ * <pre>
+ * for (int position = ScanRecord.firstStructure(record); position != ScanRecord.NOT_FOUND;
+ *         position = ScanRecord.nextStructure(record, position)) {
+ *     int type = ScanRecord.typeAt(record, position);
+ *     ...
+ * }
+ * </pre>
+ */
+public final class ScanRecord {
+
+    /**
+     * The AD type Flags.
+     */
+    public static final int TYPE_FLAGS = 0x01;
+
+    /**
+     * The AD type Incomplete List of 16-bit Service UUIDs.
+     */
+    public static final int TYPE_SERVICE_UUIDS_16_INCOMPLETE = 0x02;
+
+    /**
+     * The AD type Complete List of 16-bit Service UUIDs.
+     */
+    public static final int TYPE_SERVICE_UUIDS_16_COMPLETE = 0x03;
+
+    /**
+     * The AD type Incomplete List of 32-bit Service UUIDs.
+     */
+    public static final int TYPE_SERVICE_UUIDS_32_INCOMPLETE = 0x04;
+
+    /**
+     * The AD type Complete List of 32-bit Service UUIDs.
+     */
+    public static final int TYPE_SERVICE_UUIDS_32_COMPLETE = 0x05;
+
+    /**
+     * The AD type Incomplete List of 128-bit Service UUIDs.
+     */
+    public static final int TYPE_SERVICE_UUIDS_128_INCOMPLETE = 0x06;
+
+    /**
+     * The AD type Complete List of 128-bit Service UUIDs.
+     */
+    public static final int TYPE_SERVICE_UUIDS_128_COMPLETE = 0x07;
+
+    /**
+     * The AD type Shortened Local Name.
+     */
+    public static final int TYPE_LOCAL_NAME_SHORT = 0x08;
+
+    /**
+     * The AD type Complete Local Name.
+     */
+    public static final int TYPE_LOCAL_NAME_COMPLETE = 0x09;
+
+    /**
+     * The AD type Tx Power Level.
+     */
+    public static final int TYPE_TX_POWER_LEVEL = 0x0A;
+
+    /**
+     * The AD type Service Data - 16-bit UUID.
+     */
+    public static final int TYPE_SERVICE_DATA_16 = 0x16;
+
+    /**
+     * The AD type Service Data - 32-bit UUID.
+     */
+    public static final int TYPE_SERVICE_DATA_32 = 0x20;
+
+    /**
+     * The AD type Service Data - 128-bit UUID.
+     */
+    public static final int TYPE_SERVICE_DATA_128 = 0x21;
+
+    /**
+     * The AD type Manufacturer Specific Data.
+     */
+    public static final int TYPE_MANUFACTURER_DATA = 0xFF;
+
+    /**
+     * The constant returned when a value is absent.
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * The constant TX_POWER_UNKNOWN returned when the record carries no Tx Power Level.
+     */
+    public static final int TX_POWER_UNKNOWN = Integer.MIN_VALUE;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] bytes = EMPTY;
+
+    /**
+     * Entries packed as (offset of the length byte << 8) | AD type.
+     */
+    private int[] structures = new int[8];
+
+    private int count;
+
+    /**
+     * Parses the record into a new view.
+     *
+     * @param bytes the raw scan record
+     * @return the scan record
+     */
+    public static ScanRecord parse(final byte[] bytes) {
+        return new ScanRecord().reset(bytes);
+    }
+
+    /**
+     * Re-indexes this view over another raw record.
+     *
+     * @param bytes the raw scan record, null is treated as empty
+     * @return this scan record
+     */
+    public ScanRecord reset(final byte[] bytes) {
+        this.bytes = bytes == null ? EMPTY : bytes;
+        this.count = 0;
+
+        final byte[] record = this.bytes;
+        for (int position = firstStructure(record); position != NOT_FOUND; position = nextStructure(record, position)) {
+            if (count == structures.length) {
+                final int[] grown = new int[count * 2];
+                System.arraycopy(structures, 0, grown, 0, count);
+                structures = grown;
+            }
+            structures[count++] = (position << 8) | typeAt(record, position);
+        }
+        return this;
+    }
+
+    /**
+     * Finds the first AD structure of a raw record.
+     *
+     * @param record the raw scan record, may be null
+     * @return the position of its length byte or {@link #NOT_FOUND}
+     */
+    public static int firstStructure(final byte[] record) {
+        return record == null ? NOT_FOUND : structureAt(record, 0);
+    }
+
+    /**
+     * Finds the AD structure following the one at the position.
+     *
+     * @param record the raw scan record
+     * @param position the position of the length byte of a structure
+     * @return the position of the length byte of the next structure or {@link #NOT_FOUND}
+     */
+    public static int nextStructure(final byte[] record, final int position) {
+        return structureAt(record, position + 1 + (record[position] & 0xFF));
+    }
+
+    /**
+     * Gets AD type of the structure at the position.
+     *
+     * @param record the raw scan record
+     * @param position the position of the length byte of the structure
+     * @return the AD type
+     */
+    public static int typeAt(final byte[] record, final int position) {
+        return record[position + 1] & 0xFF;
+    }
+
+    /**
+     * Gets offset of the data of the structure at the position.
+     *
+     * @param position the position of the length byte of the structure
+     * @return the data offset
+     */
+    public static int dataOffsetAt(final int position) {
+        return position + 2;
+    }
+
+    /**
+     * Gets length of the data of the structure at the position, excluding the length and type bytes.
+     *
+     * @param record the raw scan record
+     * @param position the position of the length byte of the structure
+     * @return the data length
+     */
+    public static int dataLengthAt(final byte[] record, final int position) {
+        return (record[position] & 0xFF) - 1;
+    }
+
+    private static int structureAt(final byte[] record, final int position) {
+        if (position >= record.length) {
+            return NOT_FOUND;
+        }
+        final int length = record[position] & 0xFF;
+        // zero length marks padding up to the end, overflow marks a malformed tail
+        return length == 0 || position + 1 + length > record.length ? NOT_FOUND : position;
+    }
+
+    /**
+     * Gets the raw record.
+     *
+     * @return the bytes
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of AD structures.
+     *
+     * @return the structure count
+     */
+    public int getStructureCount() {
+        return count;
+    }
+
+    /**
+     * Gets AD type of the structure.
+     *
+     * @param index the structure index
+     * @return the AD type
+     */
+    public int getType(final int index) {
+        return entry(index) & 0xFF;
+    }
+
+    /**
+     * Gets offset of the structure data in the raw record.
+     *
+     * @param index the structure index
+     * @return the data offset
+     */
+    public int getDataOffset(final int index) {
+        return dataOffsetAt(entry(index) >>> 8);
+    }
+
+    /**
+     * Gets length of the structure data, excluding the length and type bytes.
+     *
+     * @param index the structure index
+     * @return the data length
+     */
+    public int getDataLength(final int index) {
+        return dataLengthAt(bytes, entry(index) >>> 8);
+    }
+
+    /**
+     * Finds the first structure of the type.
+     *
+     * @param type the AD type
+     * @return the structure index or {@link #NOT_FOUND}
+     */
+    public int indexOf(final int type) {
+        return indexOf(type, 0);
+    }
+
+    /**
+     * Finds the first structure of the type at or after the index.
+     *
+     * @param type the AD type
+     * @param fromIndex the structure index to start from
+     * @return the structure index or {@link #NOT_FOUND}
+     */
+    public int indexOf(final int type, final int fromIndex) {
+        for (int i = fromIndex; i < count; i++) {
+            if ((structures[i] & 0xFF) == type) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Gets a read-only slice over the structure data.
+     *
+     * @param index the structure index
+     * @return the slice
+     */
+    public ByteBuffer slice(final int index) {
+        return slice(getDataOffset(index), getDataLength(index));
+    }
+
+    /**
+     * Gets Flags.
+     *
+     * @return the flags or {@link #NOT_FOUND}
+     */
+    public int getFlags() {
+        final int index = indexOf(TYPE_FLAGS);
+        return index == NOT_FOUND || getDataLength(index) < 1 ? NOT_FOUND : bytes[getDataOffset(index)] & 0xFF;
+    }
+
+    /**
+     * Gets Tx Power Level.
+     *
+     * @return the tx power level in dBm or {@link #TX_POWER_UNKNOWN}
+     */
+    public int getTxPowerLevel() {
+        final int index = indexOf(TYPE_TX_POWER_LEVEL);
+        return index == NOT_FOUND || getDataLength(index) < 1 ? TX_POWER_UNKNOWN : bytes[getDataOffset(index)];
+    }
+
+    /**
+     * Gets Local Name, preferring the complete one. The name is decoded on every call.
+     *
+     * @return the local name or null
+     */
+    public String getLocalName() {
+        int index = indexOf(TYPE_LOCAL_NAME_COMPLETE);
+        if (index == NOT_FOUND) {
+            index = indexOf(TYPE_LOCAL_NAME_SHORT);
+        }
+        return index == NOT_FOUND ? null : new String(bytes, getDataOffset(index), getDataLength(index), UTF_8);
+    }
+
+    /**
+     * Checks whether the record lists the 16-bit service UUID.
+     *
+     * @param uuid the 16-bit service UUID
+     * @return the boolean
+     */
+    public boolean hasServiceUuid16(final int uuid) {
+        return containsUuid(TYPE_SERVICE_UUIDS_16_INCOMPLETE, TYPE_SERVICE_UUIDS_16_COMPLETE, 2, uuid);
+    }
+
+    /**
+     * Checks whether the record lists the 32-bit service UUID.
+     *
+     * @param uuid the 32-bit service UUID
+     * @return the boolean
+     */
+    public boolean hasServiceUuid32(final long uuid) {
+        return containsUuid(TYPE_SERVICE_UUIDS_32_INCOMPLETE, TYPE_SERVICE_UUIDS_32_COMPLETE, 4, uuid);
+    }
+
+    /**
+     * Checks whether the record lists the 128-bit service UUID.
+     *
+     * @param mostSignificantBits the most significant bits of the UUID
+     * @param leastSignificantBits the least significant bits of the UUID
+     * @return the boolean
+     */
+    public boolean hasServiceUuid128(final long mostSignificantBits, final long leastSignificantBits) {
+        for (int i = 0; i < count; i++) {
+            final int type = structures[i] & 0xFF;
+            if (type != TYPE_SERVICE_UUIDS_128_INCOMPLETE && type != TYPE_SERVICE_UUIDS_128_COMPLETE) {
+                continue;
+            }
+            final int end = getDataOffset(i) + getDataLength(i);
+            for (int offset = getDataOffset(i); offset + 16 <= end; offset += 16) {
+                if (readLittleEndian(offset + 8, 8) == mostSignificantBits
+                        && readLittleEndian(offset, 8) == leastSignificantBits) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds Service Data structure of the 16-bit service UUID.
+     *
+     * @param uuid the 16-bit service UUID
+     * @return the structure index or {@link #NOT_FOUND}
+     */
+    public int indexOfServiceData16(final int uuid) {
+        for (int i = indexOf(TYPE_SERVICE_DATA_16); i != NOT_FOUND; i = indexOf(TYPE_SERVICE_DATA_16, i + 1)) {
+            if (getDataLength(i) >= 2 && readLittleEndian(getDataOffset(i), 2) == uuid) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Gets a read-only slice over the Service Data of the 16-bit service UUID, without the UUID.
+     *
+     * @param uuid the 16-bit service UUID
+     * @return the service data or null
+     */
+    public ByteBuffer getServiceData16(final int uuid) {
+        final int index = indexOfServiceData16(uuid);
+        return index == NOT_FOUND ? null : slice(getDataOffset(index) + 2, getDataLength(index) - 2);
+    }
+
+    /**
+     * Finds Service Data structure of the 32-bit service UUID.
+     *
+     * @param uuid the 32-bit service UUID
+     * @return the structure index or {@link #NOT_FOUND}
+     */
+    public int indexOfServiceData32(final long uuid) {
+        for (int i = indexOf(TYPE_SERVICE_DATA_32); i != NOT_FOUND; i = indexOf(TYPE_SERVICE_DATA_32, i + 1)) {
+            if (getDataLength(i) >= 4 && readLittleEndian(getDataOffset(i), 4) == uuid) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Gets a read-only slice over the Service Data of the 32-bit service UUID, without the UUID.
+     *
+     * @param uuid the 32-bit service UUID
+     * @return the service data or null
+     */
+    public ByteBuffer getServiceData32(final long uuid) {
+        final int index = indexOfServiceData32(uuid);
+        return index == NOT_FOUND ? null : slice(getDataOffset(index) + 4, getDataLength(index) - 4);
+    }
+
+    /**
+     * Finds Service Data structure of the 128-bit service UUID.
+     *
+     * @param mostSignificantBits the most significant bits of the UUID
+     * @param leastSignificantBits the least significant bits of the UUID
+     * @return the structure index or {@link #NOT_FOUND}
+     */
+    public int indexOfServiceData128(final long mostSignificantBits, final long leastSignificantBits) {
+        for (int i = indexOf(TYPE_SERVICE_DATA_128); i != NOT_FOUND; i = indexOf(TYPE_SERVICE_DATA_128, i + 1)) {
+            final int offset = getDataOffset(i);
+            if (getDataLength(i) >= 16 && readLittleEndian(offset + 8, 8) == mostSignificantBits
+                    && readLittleEndian(offset, 8) == leastSignificantBits) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Gets a read-only slice over the Service Data of the 128-bit service UUID, without the UUID.
+     *
+     * @param mostSignificantBits the most significant bits of the UUID
+     * @param leastSignificantBits the least significant bits of the UUID
+     * @return the service data or null
+     */
+    public ByteBuffer getServiceData128(final long mostSignificantBits, final long leastSignificantBits) {
+        final int index = indexOfServiceData128(mostSignificantBits, leastSignificantBits);
+        return index == NOT_FOUND ? null : slice(getDataOffset(index) + 16, getDataLength(index) - 16);
+    }
+
+    /**
+     * Finds Manufacturer Specific Data structure of the company.
+     *
+     * @param companyId the Bluetooth SIG company identifier
+     * @return the structure index or {@link #NOT_FOUND}
+     */
+    public int indexOfManufacturerData(final int companyId) {
+        for (int i = indexOf(TYPE_MANUFACTURER_DATA); i != NOT_FOUND; i = indexOf(TYPE_MANUFACTURER_DATA, i + 1)) {
+            if (getDataLength(i) >= 2 && readLittleEndian(getDataOffset(i), 2) == companyId) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Gets a read-only slice over the Manufacturer Specific Data of the company, without the company identifier.
+     *
+     * @param companyId the Bluetooth SIG company identifier
+     * @return the manufacturer data or null
+     */
+    public ByteBuffer getManufacturerData(final int companyId) {
+        final int index = indexOfManufacturerData(companyId);
+        return index == NOT_FOUND ? null : slice(getDataOffset(index) + 2, getDataLength(index) - 2);
+    }
+
+    /**
+     * Reads an unsigned little endian value of up to 8 bytes from the raw record.
+     *
+     * @param offset the offset
+     * @param length the number of bytes
+     * @return the value
+     */
+    public long readLittleEndian(final int offset, final int length) {
+        return Bytes.readLittleEndian(bytes, offset, length);
+    }
+
+    private boolean containsUuid(final int incompleteType, final int completeType, final int width, final long uuid) {
+        for (int i = 0; i < count; i++) {
+            final int type = structures[i] & 0xFF;
+            if (type != incompleteType && type != completeType) {
+                continue;
+            }
+            final int end = getDataOffset(i) + getDataLength(i);
+            for (int offset = getDataOffset(i); offset + width <= end; offset += width) {
+                if (readLittleEndian(offset, width) == uuid) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private ByteBuffer slice(final int offset, final int length) {
+        return ByteBuffer.wrap(bytes, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    private int entry(final int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Structure index " + index + ", count " + count);
+        }
+        return structures[index];
+    }
+}
@@ -0,0 +1,22 @@
+package com.matters.ble.library.device;
+
+/**
+ * The interface Scanned BLE device, a {@link BLEDevice} keeping its scan response indexed.
+ * The devices delivered by the library implement it.
+ *
+ * <pre>
+ * if (bleDevice instanceof ScannedBLEDevice) {
+ *     int txPower = ((ScannedBLEDevice) bleDevice).getScanRecord().getTxPowerLevel();
+ *     ...
+ * }
+ * </pre>
+ */
+public interface ScannedBLEDevice extends BLEDevice {
+
+    /**
+     * Gets the scan response as a view over its AD structures.
+     *
+     * @return the scan record
+     */
+    ScanRecord getScanRecord();
+}
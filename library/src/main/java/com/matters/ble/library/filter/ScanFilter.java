@@ -0,0 +1,395 @@
+package com.matters.ble.library.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import com.matters.ble.library.device.ScanRecord;
+import com.matters.ble.library.util.BloomFilter;
+import com.matters.ble.library.util.Bytes;
+import com.matters.ble.library.util.LongHashSet;
+import com.matters.ble.library.util.MacAddress;
+
+/**
+ * Immutable filter evaluated on the packed address and the raw scan record before any
+ * object is created for the advertisement.
+ *
+ * An advertisement is accepted when all configured criteria hold:
+ * <ul>
+ *     <li>its address is not denied,</li>
+ *     <li>its address is allowed, if an allow-list is set,</li>
+ *     <li>it carries manufacturer data of one of the companies, if any are set,</li>
+ *     <li>it lists or carries service data of one of the service UUIDs, if any are set,</li>
+ *     <li>one of the data patterns matches, if any are set.</li>
+ * </ul>
+ *
+ * Large address lists are checked against a Bloom filter first, so that most rejected
+ * addresses never reach the exact set. Evaluation does not allocate and is thread safe.
+ */
+public final class ScanFilter {
+
+    /**
+     * The constant ACCEPT_ALL.
+     */
+    public static final ScanFilter ACCEPT_ALL = new Builder().build();
+
+    private final AddressSet allowedAddresses;
+
+    private final AddressSet deniedAddresses;
+
+    private final int[] companyIds;
+
+    private final long[] serviceUuids16;
+
+    private final long[] serviceUuids32;
+
+    private final long[] serviceUuids128;
+
+    private final DataPattern[] dataPatterns;
+
+    private final boolean inspectsRecord;
+
+    private ScanFilter(Builder builder) {
+        this.allowedAddresses = AddressSet.of(builder.allowedAddresses);
+        this.deniedAddresses = AddressSet.of(builder.deniedAddresses);
+        this.companyIds = toSortedArray(builder.companyIds);
+        this.serviceUuids16 = toArray(builder.serviceUuids16);
+        this.serviceUuids32 = toArray(builder.serviceUuids32);
+        this.serviceUuids128 = toArray(builder.serviceUuids128);
+        this.dataPatterns = builder.dataPatterns.toArray(new DataPattern[builder.dataPatterns.size()]);
+        this.inspectsRecord = companyIds.length > 0 || hasServiceUuids() || dataPatterns.length > 0;
+    }
+
+    /**
+     * Checks whether the advertisement passes the filter.
+     *
+     * @param address the packed address
+     * @param scanRecord the raw scan record
+     * @return the boolean
+     */
+    public boolean accept(final long address, final byte[] scanRecord) {
+        if (deniedAddresses != null && deniedAddresses.contains(address)) {
+            return false;
+        }
+        if (allowedAddresses != null && !allowedAddresses.contains(address)) {
+            return false;
+        }
+        return !inspectsRecord || acceptRecord(scanRecord);
+    }
+
+    private boolean acceptRecord(final byte[] record) {
+        if (record == null) {
+            return false;
+        }
+
+        boolean companyMatched = companyIds.length == 0;
+        boolean serviceMatched = !hasServiceUuids();
+        boolean patternMatched = dataPatterns.length == 0;
+
+        for (int position = ScanRecord.firstStructure(record);
+                position != ScanRecord.NOT_FOUND && !(companyMatched && serviceMatched && patternMatched);
+                position = ScanRecord.nextStructure(record, position)) {
+            final int type = ScanRecord.typeAt(record, position);
+            final int offset = ScanRecord.dataOffsetAt(position);
+            final int dataLength = ScanRecord.dataLengthAt(record, position);
+
+            if (!companyMatched && type == ScanRecord.TYPE_MANUFACTURER_DATA && dataLength >= 2) {
+                companyMatched = Arrays.binarySearch(companyIds, Bytes.readUInt16LittleEndian(record, offset)) >= 0;
+            }
+            if (!serviceMatched) {
+                serviceMatched = matchesService(record, type, offset, dataLength);
+            }
+            if (!patternMatched) {
+                for (final DataPattern pattern : dataPatterns) {
+                    if (pattern.matches(record, type, offset, dataLength)) {
+                        patternMatched = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return companyMatched && serviceMatched && patternMatched;
+    }
+
+    private boolean matchesService(final byte[] record, final int type, final int offset, final int length) {
+        switch (type) {
+            case ScanRecord.TYPE_SERVICE_UUIDS_16_INCOMPLETE:
+            case ScanRecord.TYPE_SERVICE_UUIDS_16_COMPLETE:
+                return matchesUuidList(record, offset, length, 2, serviceUuids16);
+            case ScanRecord.TYPE_SERVICE_UUIDS_32_INCOMPLETE:
+            case ScanRecord.TYPE_SERVICE_UUIDS_32_COMPLETE:
+                return matchesUuidList(record, offset, length, 4, serviceUuids32);
+            case ScanRecord.TYPE_SERVICE_UUIDS_128_INCOMPLETE:
+            case ScanRecord.TYPE_SERVICE_UUIDS_128_COMPLETE:
+                return matchesUuid128List(record, offset, length, 16);
+            case ScanRecord.TYPE_SERVICE_DATA_16:
+                return matchesUuidList(record, offset, Math.min(length, 2), 2, serviceUuids16);
+            case ScanRecord.TYPE_SERVICE_DATA_32:
+                return matchesUuidList(record, offset, Math.min(length, 4), 4, serviceUuids32);
+            case ScanRecord.TYPE_SERVICE_DATA_128:
+                return matchesUuid128List(record, offset, Math.min(length, 16), 16);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean matchesUuidList(final byte[] record, final int offset, final int length,
+                                           final int width, final long[] uuids) {
+        for (int position = offset; position + width <= offset + length; position += width) {
+            final long uuid = Bytes.readLittleEndian(record, position, width);
+            for (final long candidate : uuids) {
+                if (candidate == uuid) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesUuid128List(final byte[] record, final int offset, final int length, final int width) {
+        for (int position = offset; position + width <= offset + length; position += width) {
+            final long leastSignificantBits = Bytes.readLittleEndian(record, position, 8);
+            final long mostSignificantBits = Bytes.readLittleEndian(record, position + 8, 8);
+            for (int i = 0; i < serviceUuids128.length; i += 2) {
+                if (serviceUuids128[i] == mostSignificantBits && serviceUuids128[i + 1] == leastSignificantBits) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hasServiceUuids() {
+        return serviceUuids16.length > 0 || serviceUuids32.length > 0 || serviceUuids128.length > 0;
+    }
+
+    private static long[] toArray(final List<Long> values) {
+        final long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static int[] toSortedArray(final List<Integer> values) {
+        final int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        Arrays.sort(array);
+        return array;
+    }
+
+    /**
+     * Address set with an optional Bloom filter pre-check for large lists.
+     */
+    private static final class AddressSet {
+
+        private static final int BLOOM_FILTER_THRESHOLD = 256;
+
+        private static final double BLOOM_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+        private final LongHashSet exact;
+
+        private final BloomFilter bloomFilter;
+
+        private AddressSet(final LongHashSet exact, final BloomFilter bloomFilter) {
+            this.exact = exact;
+            this.bloomFilter = bloomFilter;
+        }
+
+        static AddressSet of(final List<Long> addresses) {
+            if (addresses.isEmpty()) {
+                return null;
+            }
+
+            final LongHashSet exact = new LongHashSet(addresses.size());
+            BloomFilter bloomFilter = null;
+            if (addresses.size() >= BLOOM_FILTER_THRESHOLD) {
+                bloomFilter = new BloomFilter(addresses.size(), BLOOM_FILTER_FALSE_POSITIVE_RATE);
+            }
+            for (final Long address : addresses) {
+                exact.add(address);
+                if (bloomFilter != null) {
+                    bloomFilter.put(address);
+                }
+            }
+            return new AddressSet(exact, bloomFilter);
+        }
+
+        boolean contains(final long address) {
+            return (bloomFilter == null || bloomFilter.mightContain(address)) && exact.contains(address);
+        }
+    }
+
+    /**
+     * Masked prefix match on the data of AD structures of one type.
+     */
+    private static final class DataPattern {
+
+        private final int adType;
+
+        private final byte[] pattern;
+
+        private final byte[] mask;
+
+        private DataPattern(final int adType, final byte[] pattern, final byte[] mask) {
+            this.adType = adType;
+            this.pattern = pattern;
+            this.mask = mask;
+        }
+
+        boolean matches(final byte[] record, final int type, final int offset, final int length) {
+            if (type != adType || length < pattern.length) {
+                return false;
+            }
+            for (int i = 0; i < pattern.length; i++) {
+                if (((record[offset + i] ^ pattern[i]) & mask[i]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The type Builder.
+     */
+    public static final class Builder {
+
+        private final List<Long> allowedAddresses = new ArrayList<Long>();
+
+        private final List<Long> deniedAddresses = new ArrayList<Long>();
+
+        private final List<Integer> companyIds = new ArrayList<Integer>();
+
+        private final List<Long> serviceUuids16 = new ArrayList<Long>();
+
+        private final List<Long> serviceUuids32 = new ArrayList<Long>();
+
+        private final List<Long> serviceUuids128 = new ArrayList<Long>();
+
+        private final List<DataPattern> dataPatterns = new ArrayList<DataPattern>();
+
+        /**
+         * Allows the address. Once any address is allowed, all others are rejected.
+         *
+         * @param address the address in "XX:XX:XX:XX:XX:XX" format
+         * @return the builder
+         */
+        public Builder allowAddress(final String address) {
+            allowedAddresses.add(MacAddress.toLong(address));
+            return this;
+        }
+
+        /**
+         * Allows the addresses. Once any address is allowed, all others are rejected.
+         *
+         * @param addresses the addresses in "XX:XX:XX:XX:XX:XX" format
+         * @return the builder
+         */
+        public Builder allowAddresses(final Iterable<String> addresses) {
+            for (final String address : addresses) {
+                allowAddress(address);
+            }
+            return this;
+        }
+
+        /**
+         * Denies the address.
+         *
+         * @param address the address in "XX:XX:XX:XX:XX:XX" format
+         * @return the builder
+         */
+        public Builder denyAddress(final String address) {
+            deniedAddresses.add(MacAddress.toLong(address));
+            return this;
+        }
+
+        /**
+         * Denies the addresses.
+         *
+         * @param addresses the addresses in "XX:XX:XX:XX:XX:XX" format
+         * @return the builder
+         */
+        public Builder denyAddresses(final Iterable<String> addresses) {
+            for (final String address : addresses) {
+                denyAddress(address);
+            }
+            return this;
+        }
+
+        /**
+         * Requires manufacturer data of one of the added companies.
+         *
+         * @param companyId the Bluetooth SIG company identifier
+         * @return the builder
+         */
+        public Builder addCompanyId(final int companyId) {
+            companyIds.add(companyId & 0xFFFF);
+            return this;
+        }
+
+        /**
+         * Requires one of the added service UUIDs, listed or as service data.
+         *
+         * @param uuid the 16-bit service UUID
+         * @return the builder
+         */
+        public Builder addServiceUuid16(final int uuid) {
+            serviceUuids16.add((long) (uuid & 0xFFFF));
+            return this;
+        }
+
+        /**
+         * Requires one of the added service UUIDs, listed or as service data.
+         *
+         * @param uuid the 32-bit service UUID
+         * @return the builder
+         */
+        public Builder addServiceUuid32(final long uuid) {
+            serviceUuids32.add(uuid & 0xFFFFFFFFL);
+            return this;
+        }
+
+        /**
+         * Requires one of the added service UUIDs, listed or as service data.
+         *
+         * @param uuid the 128-bit service UUID
+         * @return the builder
+         */
+        public Builder addServiceUuid128(final UUID uuid) {
+            serviceUuids128.add(uuid.getMostSignificantBits());
+            serviceUuids128.add(uuid.getLeastSignificantBits());
+            return this;
+        }
+
+        /**
+         * Requires one of the added patterns to match the beginning of the data of an
+         * AD structure of the type. Bits cleared in the mask are ignored.
+         *
+         * @param adType the AD type
+         * @param pattern the expected bytes
+         * @param mask the mask of the same length as the pattern
+         * @return the builder
+         */
+        public Builder addDataPattern(final int adType, final byte[] pattern, final byte[] mask) {
+            if (pattern.length != mask.length) {
+                throw new IllegalArgumentException("Pattern and mask lengths differ");
+            }
+            dataPatterns.add(new DataPattern(adType & 0xFF, pattern.clone(), mask.clone()));
+            return this;
+        }
+
+        /**
+         * Build scan filter.
+         *
+         * @return the scan filter
+         */
+        public ScanFilter build() {
+            return new ScanFilter(this);
+        }
+    }
+}
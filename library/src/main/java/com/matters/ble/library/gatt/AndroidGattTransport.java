@@ -0,0 +1,169 @@
+package com.matters.ble.library.gatt;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.Build;
+
+import java.util.UUID;
+
+/**
+ * The transport over {@link BluetoothGatt}. Becomes ready once connected and services are
+ * discovered.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public final class AndroidGattTransport implements GattTransport {
+
+    private final BluetoothGatt gatt;
+
+    private AndroidGattTransport(BluetoothGatt gatt) {
+        this.gatt = gatt;
+    }
+
+    /**
+     * Creates the connector of a device.
+     *
+     * @param context the context
+     * @param address the address of the device
+     * @return the connector
+     */
+    public static Connector connector(final Context context, final String address) {
+        return new Connector() {
+            @Override
+            public GattTransport open(Callback callback) {
+                final BluetoothManager manager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
+                final BluetoothDevice device = manager.getAdapter().getRemoteDevice(address);
+                return new AndroidGattTransport(device.connectGatt(context, false, new GattCallback(callback)));
+            }
+        };
+    }
+
+    /**
+     * Creates the connector factory of a {@link ConnectionScheduler}.
+     *
+     * @param context the context
+     * @return the connector factory
+     */
+    public static ConnectionScheduler.ConnectorFactory connectors(final Context context) {
+        return new ConnectionScheduler.ConnectorFactory() {
+            @Override
+            public Connector connector(String address) {
+                return AndroidGattTransport.connector(context, address);
+            }
+        };
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID service, UUID characteristic) {
+        final BluetoothGattCharacteristic gattCharacteristic = find(service, characteristic);
+        return gattCharacteristic != null && gatt.readCharacteristic(gattCharacteristic);
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+        final BluetoothGattCharacteristic gattCharacteristic = find(service, characteristic);
+        if (gattCharacteristic == null) {
+            return false;
+        }
+        gattCharacteristic.setValue(value);
+        gattCharacteristic.setWriteType(withResponse
+                                        ? BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT
+                                        : BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        return gatt.writeCharacteristic(gattCharacteristic);
+    }
+
+    @Override
+    public boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+        final BluetoothGattCharacteristic gattCharacteristic = find(service, characteristic);
+        final BluetoothGattDescriptor gattDescriptor = gattCharacteristic == null ? null : gattCharacteristic.getDescriptor(descriptor);
+        if (gattDescriptor == null) {
+            return false;
+        }
+        gattDescriptor.setValue(value);
+        return gatt.writeDescriptor(gattDescriptor);
+    }
+
+    @Override
+    public boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable) {
+        final BluetoothGattCharacteristic gattCharacteristic = find(service, characteristic);
+        return gattCharacteristic != null && gatt.setCharacteristicNotification(gattCharacteristic, enable);
+    }
+
+    @Override
+    public void close() {
+        gatt.disconnect();
+        gatt.close();
+    }
+
+    private BluetoothGattCharacteristic find(UUID service, UUID characteristic) {
+        final BluetoothGattService gattService = gatt.getService(service);
+        return gattService == null ? null : gattService.getCharacteristic(characteristic);
+    }
+
+    /**
+     * Translates the callbacks of the stack, values are copied as the stack reuses its objects.
+     */
+    private static final class GattCallback extends BluetoothGattCallback {
+
+        private final Callback callback;
+
+        private GattCallback(Callback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            if (newState == BluetoothProfile.STATE_CONNECTED && status == BluetoothGatt.GATT_SUCCESS) {
+                if (!gatt.discoverServices()) {
+                    callback.onDisconnected(BluetoothGatt.GATT_FAILURE);
+                }
+            } else if (newState == BluetoothProfile.STATE_DISCONNECTED || status != BluetoothGatt.GATT_SUCCESS) {
+                callback.onDisconnected(status);
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                callback.onReady();
+            } else {
+                gatt.disconnect();
+            }
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            callback.onCharacteristicRead(characteristic.getService().getUuid(), characteristic.getUuid(), status,
+                                          copy(characteristic.getValue()));
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            callback.onCharacteristicWrite(characteristic.getService().getUuid(), characteristic.getUuid(), status);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            final BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
+            callback.onDescriptorWrite(characteristic.getService().getUuid(), characteristic.getUuid(),
+                                       descriptor.getUuid(), status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            callback.onCharacteristicChanged(characteristic.getService().getUuid(), characteristic.getUuid(),
+                                             copy(characteristic.getValue()));
+        }
+
+        private static byte[] copy(byte[] value) {
+            return value == null ? new byte[0] : value.clone();
+        }
+    }
+}
@@ -0,0 +1,830 @@
+package com.matters.ble.library.gatt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.device.BLEDevice;
+import com.matters.ble.library.metrics.Histogram;
+
+/**
+ * Schedules GATT connections to many devices over a controller supporting few concurrent links.
+ *
+ * Connections are requested with {@link #acquire(String, Priority)} and used through the
+ * {@link Lease} the future completes with. At most {@link Builder#setMaxConnections(int)} links
+ * exist at once; further requests wait in a queue ordered by a deadline, the time of the request
+ * plus the delay of its priority, so a request of a low priority overtakes requests of a higher
+ * one arriving long enough after it and never starves. Requests of a device already linked share
+ * its link.
+ *
+ * A link whose last lease is released stays connected in an LRU pool of idle links, from which
+ * a new request of the device is served immediately. Idle links are disconnected after the idle
+ * timeout, when the pool is full, or when a waiting request needs the slot. A link which
+ * disconnects or times out is closed, the operations of its outstanding leases fail and the
+ * leases report it, see {@link Lease#isLost()}. Cancelling the future of a request withdraws
+ * it; a link which gets ready without any request left goes to the idle pool.
+ *
+ * The time requests wait for their link and the time links take to connect are recorded per
+ * device, see {@link #getStats(String)}. Thread safe, links are opened outside the lock of
+ * the scheduler.
+ */
+public final class ConnectionScheduler implements Closeable {
+
+    private final Object lock = new Object();
+
+    private final ConnectorFactory connectorFactory;
+
+    private final ScheduledExecutorService timer;
+
+    private final int maxConnections;
+
+    private final int maxIdleConnections;
+
+    private final long idleTimeoutMillis;
+
+    private final long connectTimeoutMillis;
+
+    private final long operationTimeoutMillis;
+
+    private final long agingMillis;
+
+    private final Map<String, Link> links = new HashMap<String, Link>();
+
+    /**
+     * Idle links, least recently released first.
+     */
+    private final LinkedHashMap<String, Link> idleLinks = new LinkedHashMap<String, Link>();
+
+    private final PriorityQueue<Request> waiting = new PriorityQueue<Request>();
+
+    private final Map<String, ConnectionStats> stats = new HashMap<String, ConnectionStats>();
+
+    private long requestSequence;
+
+    private boolean closed;
+
+    private ConnectionScheduler(Builder builder) {
+        this.connectorFactory = builder.connectorFactory;
+        this.timer = builder.timer;
+        this.maxConnections = builder.maxConnections;
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.idleTimeoutMillis = builder.idleTimeoutMillis;
+        this.connectTimeoutMillis = builder.connectTimeoutMillis;
+        this.operationTimeoutMillis = builder.operationTimeoutMillis;
+        this.agingMillis = builder.agingMillis;
+    }
+
+    /**
+     * Requests a connection to the device.
+     *
+     * @param device the device
+     * @param priority the priority
+     * @return the future of the lease
+     */
+    public ListenableFuture<Lease> acquire(BLEDevice device, Priority priority) {
+        return acquire(device.getAddress(), priority);
+    }
+
+    /**
+     * Requests a connection to the device. The future fails with a {@link GattException} if
+     * the device does not connect in time or disconnects while connecting.
+     *
+     * @param address the address of the device
+     * @param priority the priority
+     * @return the future of the lease
+     */
+    public ListenableFuture<Lease> acquire(String address, Priority priority) {
+        Preconditions.checkNotNull(address, "Address is null");
+        Preconditions.checkNotNull(priority, "Priority is null");
+        final Request request;
+        final List<Request> granted = new ArrayList<Request>(1);
+        final List<Link> opening = new ArrayList<Link>(1);
+        synchronized (lock) {
+            final long now = System.nanoTime();
+            request = new Request(address, now, now / 1000000 + priority.rank * agingMillis, requestSequence++);
+            if (closed) {
+                request.fail(new GattException("Scheduler closed", GattException.STATUS_CLOSED));
+                return request.future;
+            }
+            final Link link = links.get(address);
+            if (link != null) {
+                attach(request, link, granted);
+            } else {
+                waiting.add(request);
+                dispatch(opening);
+                collectGranted(granted);
+            }
+        }
+        request.future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (request.future.isCancelled()) {
+                    withdraw(request);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        open(opening);
+        complete(granted);
+        return request.future;
+    }
+
+    /**
+     * Gets the connection statistics of a device.
+     *
+     * @param address the address of the device
+     * @return the statistics, null if the device was never requested
+     */
+    public ConnectionStats getStats(String address) {
+        synchronized (lock) {
+            return stats.get(address);
+        }
+    }
+
+    /**
+     * Gets the number of links, connecting, leased or idle.
+     *
+     * @return the connection count
+     */
+    public int getConnectionCount() {
+        synchronized (lock) {
+            return links.size();
+        }
+    }
+
+    /**
+     * Gets the number of idle links.
+     *
+     * @return the idle connection count
+     */
+    public int getIdleConnectionCount() {
+        synchronized (lock) {
+            return idleLinks.size();
+        }
+    }
+
+    /**
+     * Gets the number of waiting requests.
+     *
+     * @return the waiting count
+     */
+    public int getWaitingCount() {
+        synchronized (lock) {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * Disconnects all links and fails the waiting requests.
+     */
+    @Override
+    public void close() {
+        final List<Link> closedLinks;
+        final List<Request> failed;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closedLinks = new ArrayList<Link>(links.values());
+            failed = new ArrayList<Request>(waiting);
+            for (Link link : closedLinks) {
+                failed.addAll(link.waiters);
+                link.waiters.clear();
+            }
+            links.clear();
+            idleLinks.clear();
+            waiting.clear();
+        }
+        for (Request request : failed) {
+            request.fail(new GattException("Scheduler closed", GattException.STATUS_CLOSED));
+        }
+        for (Link link : closedLinks) {
+            // a link being opened is closed by its opener
+            if (link.client != null) {
+                link.client.close();
+            }
+        }
+    }
+
+    /**
+     * Creates the links of waiting requests while slots are free, reclaiming idle links for
+     * them. The new links are opened once the lock is released, see {@link #open(List)}.
+     */
+    private void dispatch(List<Link> opening) {
+        while (!waiting.isEmpty()) {
+            final Request request = waiting.peek();
+            if (request.future.isCancelled()) {
+                waiting.poll();
+                continue;
+            }
+            final Link existing = links.get(request.address);
+            if (existing != null) {
+                waiting.poll();
+                existing.waiters.add(request);
+                continue;
+            }
+            if (links.size() >= maxConnections && !evictEldestIdle()) {
+                return;
+            }
+            waiting.poll();
+            final Link link = new Link(request.address);
+            link.waiters.add(request);
+            links.put(request.address, link);
+            statsOf(request.address).connects++;
+            opening.add(link);
+        }
+    }
+
+    /**
+     * Opens the clients of new links. Runs without the lock, connecting may call into the stack.
+     */
+    private void open(List<Link> opening) {
+        for (int i = 0, size = opening.size(); i < size; i++) {
+            open(opening.get(i));
+        }
+    }
+
+    private void open(final Link link) {
+        final GattClient client = GattClient.open(connectorFactory.connector(link.address), timer, operationTimeoutMillis);
+        final boolean current;
+        synchronized (lock) {
+            link.client = client;
+            current = links.get(link.address) == link;
+        }
+        if (!current) {
+            // the scheduler was closed meanwhile
+            client.close();
+            return;
+        }
+        client.setConnectionListener(new GattClient.ConnectionListener() {
+            @Override
+            public void onReady(GattClient client) {
+                onLinkReady(link);
+            }
+
+            @Override
+            public void onDisconnected(GattClient client, int status) {
+                onLinkLost(link, new GattException("Device disconnected", status));
+            }
+        });
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onLinkLost(link, new GattException("Connection timed out", GattException.STATUS_TIMEOUT));
+            }
+        }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (client.isReady()) {
+            // the transport got ready before the listener was set
+            timer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onLinkReady(link);
+                }
+            });
+        }
+    }
+
+    private void onLinkReady(Link link) {
+        final List<Request> granted = new ArrayList<Request>();
+        final List<Link> opening = new ArrayList<Link>(1);
+        GattClient evicted = null;
+        synchronized (lock) {
+            if (link.ready || links.get(link.address) != link) {
+                return;
+            }
+            link.ready = true;
+            statsOf(link.address).connectTimes.record(System.nanoTime() - link.connectStartedAt);
+            // requests of the device queued behind others share the link now
+            for (Iterator<Request> queued = waiting.iterator(); queued.hasNext();) {
+                final Request request = queued.next();
+                if (request.address.equals(link.address)) {
+                    queued.remove();
+                    link.waiters.add(request);
+                }
+            }
+            for (Request request : link.waiters) {
+                grant(request, link, granted);
+            }
+            link.waiters.clear();
+            if (link.leases == 0) {
+                // every request of the link was cancelled while connecting
+                evicted = retire(link, granted, opening);
+            }
+        }
+        if (evicted != null) {
+            evicted.close();
+        }
+        open(opening);
+        complete(granted);
+    }
+
+    private void onLinkLost(Link link, GattException cause) {
+        final List<Request> failed;
+        final List<Request> granted = new ArrayList<Request>();
+        final List<Link> opening = new ArrayList<Link>(1);
+        synchronized (lock) {
+            if (links.get(link.address) != link || (link.ready && cause.getStatus() == GattException.STATUS_TIMEOUT)) {
+                // already gone, or a connect timeout firing after the link got ready
+                return;
+            }
+            links.remove(link.address);
+            idleLinks.remove(link.address);
+            link.lost = true;
+            failed = new ArrayList<Request>(link.waiters);
+            link.waiters.clear();
+            if (!closed) {
+                dispatch(opening);
+                collectGranted(granted);
+            }
+        }
+        // fails the operations of outstanding leases and releases the transport
+        link.client.close();
+        for (Request request : failed) {
+            request.fail(cause);
+        }
+        open(opening);
+        complete(granted);
+    }
+
+    private void release(Link link) {
+        final List<Request> granted = new ArrayList<Request>();
+        final List<Link> opening = new ArrayList<Link>(1);
+        GattClient evicted = null;
+        synchronized (lock) {
+            if (--link.leases > 0 || link.lost || closed) {
+                return;
+            }
+            evicted = retire(link, granted, opening);
+        }
+        if (evicted != null) {
+            evicted.close();
+        }
+        open(opening);
+        complete(granted);
+    }
+
+    /**
+     * Hands the slot of a ready link without leases to a waiting request, or else puts the link
+     * in the idle pool.
+     *
+     * @return the client to close once the lock is released, or null
+     */
+    private GattClient retire(Link link, List<Request> granted, List<Link> opening) {
+        if (!waiting.isEmpty() && links.size() >= maxConnections) {
+            // a waiting request takes the slot right away
+            links.remove(link.address);
+            dispatch(opening);
+            collectGranted(granted);
+            return link.client;
+        }
+        link.idleSince = System.nanoTime();
+        idleLinks.put(link.address, link);
+        if (idleLinks.size() > maxIdleConnections) {
+            evictEldestIdle();
+        }
+        scheduleIdleCheck(link);
+        return null;
+    }
+
+    private void withdraw(Request request) {
+        synchronized (lock) {
+            if (!waiting.remove(request)) {
+                final Link link = links.get(request.address);
+                if (link != null) {
+                    link.waiters.remove(request);
+                }
+            }
+        }
+    }
+
+    private void scheduleIdleCheck(final Link link) {
+        final long idleSince = link.idleSince;
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                GattClient evicted = null;
+                synchronized (lock) {
+                    if (idleLinks.get(link.address) == link && link.idleSince == idleSince) {
+                        idleLinks.remove(link.address);
+                        links.remove(link.address);
+                        evicted = link.client;
+                    }
+                }
+                if (evicted != null) {
+                    evicted.close();
+                }
+            }
+        }, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean evictEldestIdle() {
+        final Iterator<Link> eldest = idleLinks.values().iterator();
+        if (!eldest.hasNext()) {
+            return false;
+        }
+        final Link link = eldest.next();
+        eldest.remove();
+        links.remove(link.address);
+        // closing only reports to the transport, it does not call back into the scheduler
+        link.client.close();
+        return true;
+    }
+
+    private void attach(Request request, Link link, List<Request> granted) {
+        if (link.ready) {
+            if (idleLinks.remove(link.address) != null) {
+                statsOf(link.address).reuses++;
+            }
+            grant(request, link, granted);
+        } else {
+            link.waiters.add(request);
+        }
+    }
+
+    private void grant(Request request, Link link, List<Request> granted) {
+        link.leases++;
+        request.link = link;
+        statsOf(request.address).waitTimes.record(System.nanoTime() - request.requestedAt);
+        granted.add(request);
+    }
+
+    /**
+     * Grants the requests attached by {@link #dispatch(List)} to links which are ready already.
+     */
+    private void collectGranted(List<Request> granted) {
+        for (Link link : links.values()) {
+            if (link.ready && !link.waiters.isEmpty()) {
+                for (Request request : link.waiters) {
+                    idleLinks.remove(link.address);
+                    grant(request, link, granted);
+                }
+                link.waiters.clear();
+            }
+        }
+    }
+
+    private ConnectionStats statsOf(String address) {
+        ConnectionStats deviceStats = stats.get(address);
+        if (deviceStats == null) {
+            deviceStats = new ConnectionStats();
+            stats.put(address, deviceStats);
+        }
+        return deviceStats;
+    }
+
+    private void complete(List<Request> granted) {
+        for (int i = 0, size = granted.size(); i < size; i++) {
+            final Request request = granted.get(i);
+            if (!request.future.set(new Lease(request.link))) {
+                // cancelled meanwhile, nobody holds the lease
+                release(request.link);
+            }
+        }
+    }
+
+    /**
+     * The enum Priority of a connection request.
+     */
+    public enum Priority {
+        /**
+         * Served first.
+         */
+        HIGH(0),
+        /**
+         * Overtaken by high priority requests arriving up to one aging interval later.
+         */
+        NORMAL(1),
+        /**
+         * Overtaken by high priority requests arriving up to two aging intervals later.
+         */
+        LOW(2);
+
+        private final int rank;
+
+        Priority(int rank) {
+            this.rank = rank;
+        }
+    }
+
+    /**
+     * The interface creating the connector of a device, see {@link AndroidGattTransport#connectors}.
+     */
+    public interface ConnectorFactory {
+
+        /**
+         * Creates the connector of the device.
+         *
+         * @param address the address of the device
+         * @return the connector
+         */
+        GattTransport.Connector connector(String address);
+    }
+
+    /**
+     * The use of a link, to be released once the device is not needed anymore.
+     */
+    public final class Lease implements Closeable {
+
+        private final Link link;
+
+        private boolean released;
+
+        private Lease(Link link) {
+            this.link = link;
+        }
+
+        /**
+         * Gets the client of the link.
+         *
+         * @return the client
+         */
+        public GattClient getClient() {
+            return link.client;
+        }
+
+        /**
+         * Gets the address of the device.
+         *
+         * @return the address
+         */
+        public String getAddress() {
+            return link.address;
+        }
+
+        /**
+         * Checks whether the link disconnected, its client is closed then.
+         *
+         * @return the boolean
+         */
+        public boolean isLost() {
+            synchronized (lock) {
+                return link.lost;
+            }
+        }
+
+        /**
+         * Releases the lease, the link stays connected in the idle pool once all its leases
+         * are released.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(link);
+        }
+    }
+
+    /**
+     * The connection statistics of a device. Times are in nanoseconds.
+     */
+    public static final class ConnectionStats {
+
+        private final Histogram waitTimes = new Histogram(1);
+
+        private final Histogram connectTimes = new Histogram(1);
+
+        private volatile long connects;
+
+        private volatile long reuses;
+
+        /**
+         * Gets the times from requests to their leases.
+         *
+         * @return the wait times
+         */
+        public Histogram.Snapshot getWaitTimes() {
+            return waitTimes.snapshot();
+        }
+
+        /**
+         * Gets the times from connect to ready.
+         *
+         * @return the connect times
+         */
+        public Histogram.Snapshot getConnectTimes() {
+            return connectTimes.snapshot();
+        }
+
+        /**
+         * Gets the number of connects.
+         *
+         * @return the connect count
+         */
+        public long getConnectCount() {
+            return connects;
+        }
+
+        /**
+         * Gets the number of requests served from the idle pool.
+         *
+         * @return the reuse count
+         */
+        public long getReuseCount() {
+            return reuses;
+        }
+    }
+
+    /**
+     * A link to a device, connecting until ready.
+     */
+    private static final class Link {
+        private final String address;
+
+        private final long connectStartedAt = System.nanoTime();
+
+        private final List<Request> waiters = new ArrayList<Request>(1);
+
+        private GattClient client;
+
+        private boolean ready;
+
+        private boolean lost;
+
+        private int leases;
+
+        private long idleSince;
+
+        private Link(String address) {
+            this.address = address;
+        }
+    }
+
+    /**
+     * A request waiting for its link.
+     */
+    private static final class Request implements Comparable<Request> {
+        private final String address;
+
+        private final long requestedAt;
+
+        private final long deadlineMillis;
+
+        private final long sequence;
+
+        private final SettableFuture<Lease> future = SettableFuture.create();
+
+        private Link link;
+
+        private Request(String address, long requestedAt, long deadlineMillis, long sequence) {
+            this.address = address;
+            this.requestedAt = requestedAt;
+            this.deadlineMillis = deadlineMillis;
+            this.sequence = sequence;
+        }
+
+        private void fail(GattException cause) {
+            future.setException(cause);
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (deadlineMillis != other.deadlineMillis) {
+                return deadlineMillis < other.deadlineMillis ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * The type Builder.
+     */
+    public static final class Builder {
+
+        /**
+         * The default maximum number of links.
+         */
+        public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+        /**
+         * The default idle timeout.
+         */
+        public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10000;
+
+        /**
+         * The default connect timeout.
+         */
+        public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+
+        /**
+         * The default aging interval.
+         */
+        public static final long DEFAULT_AGING_MILLIS = 5000;
+
+        private final ConnectorFactory connectorFactory;
+
+        private final ScheduledExecutorService timer;
+
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+        private int maxIdleConnections = DEFAULT_MAX_CONNECTIONS;
+
+        private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+        private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+        private long operationTimeoutMillis = GattClient.DEFAULT_TIMEOUT_MILLIS;
+
+        private long agingMillis = DEFAULT_AGING_MILLIS;
+
+        /**
+         * Instantiates a new Builder.
+         *
+         * @param connectorFactory the factory of device connectors
+         * @param timer the executor timing connects, idle links and operations out
+         */
+        public Builder(ConnectorFactory connectorFactory, ScheduledExecutorService timer) {
+            this.connectorFactory = Preconditions.checkNotNull(connectorFactory, "Connector factory is null");
+            this.timer = Preconditions.checkNotNull(timer, "Timer is null");
+        }
+
+        /**
+         * Sets the maximum number of links, connecting, leased or idle. Should not exceed the
+         * concurrent connections supported by the controller.
+         *
+         * @param maxConnections the max connections
+         * @return the builder
+         */
+        public Builder setMaxConnections(int maxConnections) {
+            Preconditions.checkArgument(maxConnections > 0, "Max connections must be positive");
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * Sets how many released links are kept connected and how long.
+         *
+         * @param maxIdleConnections the max idle links, 0 to disconnect links on release
+         * @param idleTimeoutMillis the time after which an idle link is disconnected
+         * @return the builder
+         */
+        public Builder setIdlePool(int maxIdleConnections, long idleTimeoutMillis) {
+            Preconditions.checkArgument(maxIdleConnections >= 0, "Max idle connections must not be negative");
+            Preconditions.checkArgument(idleTimeoutMillis > 0, "Idle timeout must be positive");
+            this.maxIdleConnections = maxIdleConnections;
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets the time a link has to connect and discover services.
+         *
+         * @param connectTimeoutMillis the connect timeout in milliseconds
+         * @return the builder
+         */
+        public Builder setConnectTimeoutMillis(long connectTimeoutMillis) {
+            Preconditions.checkArgument(connectTimeoutMillis > 0, "Connect timeout must be positive");
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets the default timeout of the operations of the clients.
+         *
+         * @param operationTimeoutMillis the operation timeout in milliseconds
+         * @return the builder
+         */
+        public Builder setOperationTimeoutMillis(long operationTimeoutMillis) {
+            Preconditions.checkArgument(operationTimeoutMillis > 0, "Operation timeout must be positive");
+            this.operationTimeoutMillis = operationTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets the delay separating two priorities: a request waits behind requests of the next
+         * higher priority made up to this long after it.
+         *
+         * @param agingMillis the aging interval in milliseconds
+         * @return the builder
+         */
+        public Builder setAgingMillis(long agingMillis) {
+            Preconditions.checkArgument(agingMillis >= 0, "Aging interval must not be negative");
+            this.agingMillis = agingMillis;
+            return this;
+        }
+
+        /**
+         * Build connection scheduler.
+         *
+         * @return the connection scheduler
+         */
+        public ConnectionScheduler build() {
+            return new ConnectionScheduler(this);
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package com.matters.ble.library.gatt;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.device.BLEDevice;
+
+/**
+ * GATT client of one connected device.
+ *
+ * The Bluetooth stack runs one GATT operation per connection at a time, so operations are queued
+ * and the next one is submitted from the callback completing the previous one, before the future
+ * of the completed operation notifies its listeners. Operations submitted before the device is
+ * ready wait in the queue. Every operation has a timeout after which its future fails with a
+ * {@link GattException}. The stack still runs a timed out operation, so the queue moves on only
+ * once its late callback, which is dropped, or a disconnect arrives. Operations still pending
+ * when the device disconnects or the client is closed fail as well.
+ *
+ * Thread safe. Runs on a plain JVM against a fake {@link GattTransport}.
+ */
+public final class GattClient implements Closeable {
+
+    /**
+     * The default timeout of an operation.
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The uuid of the Client Characteristic Configuration descriptor.
+     */
+    public static final UUID CLIENT_CHARACTERISTIC_CONFIGURATION = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    private static final int GATT_SUCCESS = 0;
+
+    private static final byte[] ENABLE_NOTIFICATION_VALUE = { 1, 0 };
+
+    private static final byte[] ENABLE_INDICATION_VALUE = { 2, 0 };
+
+    private static final byte[] DISABLE_NOTIFICATION_VALUE = { 0, 0 };
+
+    private final Object lock = new Object();
+
+    private final ArrayDeque<GattOperation> queue = new ArrayDeque<GattOperation>();
+
+    private final ScheduledExecutorService timer;
+
+    private final long defaultTimeoutMillis;
+
+    private volatile GattTransport transport;
+
+    private volatile NotificationListener notificationListener = NotificationListener.NULL;
+
+    private volatile ConnectionListener connectionListener = ConnectionListener.NULL;
+
+    private GattOperation current;
+
+    private ScheduledFuture<?> currentTimeout;
+
+    /**
+     * The operation which timed out while the stack still runs it, blocking the queue.
+     */
+    private GattOperation timedOut;
+
+    private boolean ready;
+
+    private boolean closed;
+
+    private final GattTransport.Callback callback = new GattTransport.Callback() {
+        @Override
+        public void onReady() {
+            synchronized (lock) {
+                ready = true;
+            }
+            connectionListener.onReady(GattClient.this);
+            drain();
+        }
+
+        @Override
+        public void onDisconnected(int status) {
+            synchronized (lock) {
+                ready = false;
+            }
+            failAll("Device disconnected", GattException.STATUS_DISCONNECTED);
+            connectionListener.onDisconnected(GattClient.this, status);
+        }
+
+        @Override
+        public void onCharacteristicRead(UUID service, UUID characteristic, int status, byte[] value) {
+            complete(GattOperation.Type.READ, service, characteristic, null, status, value);
+        }
+
+        @Override
+        public void onCharacteristicWrite(UUID service, UUID characteristic, int status) {
+            complete(GattOperation.Type.WRITE, service, characteristic, null, status, null);
+        }
+
+        @Override
+        public void onDescriptorWrite(UUID service, UUID characteristic, UUID descriptor, int status) {
+            complete(GattOperation.Type.WRITE_DESCRIPTOR, service, characteristic, descriptor, status, null);
+        }
+
+        @Override
+        public void onCharacteristicChanged(UUID service, UUID characteristic, byte[] value) {
+            notificationListener.onNotification(service, characteristic, value);
+        }
+    };
+
+    private GattClient(ScheduledExecutorService timer, long defaultTimeoutMillis) {
+        this.timer = timer;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    /**
+     * Opens a client over the transport of the connector.
+     *
+     * @param connector the connector
+     * @param timer the executor timing operations out
+     * @param defaultTimeoutMillis the timeout of operations submitted without one
+     * @return the client
+     */
+    public static GattClient open(GattTransport.Connector connector, ScheduledExecutorService timer, long defaultTimeoutMillis) {
+        Preconditions.checkNotNull(connector, "Connector is null");
+        Preconditions.checkNotNull(timer, "Timer is null");
+        Preconditions.checkArgument(defaultTimeoutMillis > 0, "Timeout must be positive");
+        final GattClient client = new GattClient(timer, defaultTimeoutMillis);
+        client.transport = connector.open(client.callback);
+        // the transport may have become ready while being opened
+        client.drain();
+        return client;
+    }
+
+    /**
+     * Connects to the device.
+     *
+     * @param context the context
+     * @param device the device
+     * @return the client
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public static GattClient connect(Context context, BLEDevice device) {
+        return open(AndroidGattTransport.connector(context, device.getAddress()), DefaultTimer.INSTANCE, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Sets the listener of notifications and indications.
+     *
+     * @param notificationListener the notification listener
+     */
+    public void setNotificationListener(NotificationListener notificationListener) {
+        this.notificationListener = Preconditions.checkNotNull(notificationListener, "NotificationListener is null");
+    }
+
+    /**
+     * Sets the listener of connection changes.
+     *
+     * @param connectionListener the connection listener
+     */
+    public void setConnectionListener(ConnectionListener connectionListener) {
+        this.connectionListener = Preconditions.checkNotNull(connectionListener, "ConnectionListener is null");
+    }
+
+    /**
+     * Is ready, connected with services discovered.
+     *
+     * @return the boolean
+     */
+    public boolean isReady() {
+        synchronized (lock) {
+            return ready;
+        }
+    }
+
+    /**
+     * Reads a characteristic.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @return the future of the value
+     */
+    public ListenableFuture<byte[]> read(UUID service, UUID characteristic) {
+        return read(service, characteristic, defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads a characteristic.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param timeout the timeout, counted from the start of the operation
+     * @param unit the unit of the timeout
+     * @return the future of the value
+     */
+    public ListenableFuture<byte[]> read(UUID service, UUID characteristic, long timeout, TimeUnit unit) {
+        return submit(GattOperation.read(checkUuid(service), checkUuid(characteristic), unit.toMillis(timeout)));
+    }
+
+    /**
+     * Writes a characteristic.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param value the value
+     * @param withResponse whether the device acknowledges the write
+     * @return the future of the written value
+     */
+    public ListenableFuture<byte[]> write(UUID service, UUID characteristic, byte[] value, boolean withResponse) {
+        return write(service, characteristic, value, withResponse, defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a characteristic.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param value the value
+     * @param withResponse whether the device acknowledges the write
+     * @param timeout the timeout, counted from the start of the operation
+     * @param unit the unit of the timeout
+     * @return the future of the written value
+     */
+    public ListenableFuture<byte[]> write(UUID service, UUID characteristic, byte[] value, boolean withResponse,
+                                          long timeout, TimeUnit unit) {
+        Preconditions.checkNotNull(value, "Value is null");
+        return submit(GattOperation.write(checkUuid(service), checkUuid(characteristic), value.clone(), withResponse,
+                                          unit.toMillis(timeout)));
+    }
+
+    /**
+     * Writes a descriptor.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param descriptor the descriptor uuid
+     * @param value the value
+     * @return the future of the written value
+     */
+    public ListenableFuture<byte[]> writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value) {
+        return writeDescriptor(service, characteristic, descriptor, value, defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a descriptor.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param descriptor the descriptor uuid
+     * @param value the value
+     * @param timeout the timeout, counted from the start of the operation
+     * @param unit the unit of the timeout
+     * @return the future of the written value
+     */
+    public ListenableFuture<byte[]> writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value,
+                                                    long timeout, TimeUnit unit) {
+        Preconditions.checkNotNull(value, "Value is null");
+        return submit(GattOperation.writeDescriptor(checkUuid(service), checkUuid(characteristic), checkUuid(descriptor),
+                                                    value.clone(), null, unit.toMillis(timeout)));
+    }
+
+    /**
+     * Enables notifications or indications of a characteristic, delivered to the
+     * {@link NotificationListener}.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param indicate true for indications, false for notifications
+     * @return the future of the written configuration
+     */
+    public ListenableFuture<byte[]> enableNotifications(UUID service, UUID characteristic, boolean indicate) {
+        return submit(GattOperation.writeDescriptor(checkUuid(service), checkUuid(characteristic),
+                                                    CLIENT_CHARACTERISTIC_CONFIGURATION,
+                                                    indicate ? ENABLE_INDICATION_VALUE : ENABLE_NOTIFICATION_VALUE,
+                                                    Boolean.TRUE, defaultTimeoutMillis));
+    }
+
+    /**
+     * Disables notifications and indications of a characteristic.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @return the future of the written configuration
+     */
+    public ListenableFuture<byte[]> disableNotifications(UUID service, UUID characteristic) {
+        return submit(GattOperation.writeDescriptor(checkUuid(service), checkUuid(characteristic),
+                                                    CLIENT_CHARACTERISTIC_CONFIGURATION, DISABLE_NOTIFICATION_VALUE,
+                                                    Boolean.FALSE, defaultTimeoutMillis));
+    }
+
+    /**
+     * Gets the number of operations queued or running.
+     *
+     * @return the pending count
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return queue.size() + (current == null ? 0 : 1);
+        }
+    }
+
+    /**
+     * Fails the pending operations and closes the connection.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            ready = false;
+        }
+        failAll("Client closed", GattException.STATUS_CLOSED);
+        final GattTransport current = transport;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private ListenableFuture<byte[]> submit(GattOperation operation) {
+        final boolean rejected;
+        synchronized (lock) {
+            rejected = closed;
+            if (!rejected) {
+                queue.addLast(operation);
+            }
+        }
+        if (rejected) {
+            operation.getFuture().setException(new GattException("Client closed", GattException.STATUS_CLOSED));
+        } else {
+            drain();
+        }
+        return operation.getFuture();
+    }
+
+    /**
+     * Starts queued operations until one is in flight, failing the ones the transport refuses.
+     */
+    private void drain() {
+        while (true) {
+            final GattOperation refused;
+            synchronized (lock) {
+                if (current != null || timedOut != null || !ready || transport == null) {
+                    return;
+                }
+                final GattOperation next = queue.pollFirst();
+                if (next == null) {
+                    return;
+                }
+                if (next.getFuture().isCancelled()) {
+                    continue;
+                }
+                current = next;
+                currentTimeout = timer.schedule(new Timeout(next), next.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+                if (next.start(transport)) {
+                    return;
+                }
+                current = null;
+                currentTimeout.cancel(false);
+                refused = next;
+            }
+            refused.getFuture().setException(new GattException("Operation not started", GattException.STATUS_NOT_STARTED));
+        }
+    }
+
+    private void complete(GattOperation.Type type, UUID service, UUID characteristic, UUID descriptor, int status, byte[] value) {
+        final GattOperation completed;
+        synchronized (lock) {
+            if (timedOut != null) {
+                if (timedOut.matches(type, service, characteristic, descriptor)) {
+                    // the late completion of the timed out operation frees the stack
+                    timedOut = null;
+                    completed = null;
+                } else {
+                    return;
+                }
+            } else if (current == null || !current.matches(type, service, characteristic, descriptor)) {
+                return;
+            } else {
+                completed = current;
+                current = null;
+                currentTimeout.cancel(false);
+            }
+        }
+        drain();
+        if (completed == null) {
+            return;
+        }
+
+        if (status == GATT_SUCCESS) {
+            completed.getFuture().set(type == GattOperation.Type.READ ? value : completed.getValue());
+        } else {
+            completed.getFuture().setException(new GattException("Operation failed", status));
+        }
+    }
+
+    private void failAll(String message, int status) {
+        final List<GattOperation> failed = new ArrayList<GattOperation>();
+        synchronized (lock) {
+            if (current != null) {
+                failed.add(current);
+                current = null;
+                currentTimeout.cancel(false);
+            }
+            // the stack drops the operations of a closed connection
+            timedOut = null;
+            failed.addAll(queue);
+            queue.clear();
+        }
+        for (GattOperation operation : failed) {
+            operation.getFuture().setException(new GattException(message, status));
+        }
+    }
+
+    private static UUID checkUuid(UUID uuid) {
+        return Preconditions.checkNotNull(uuid, "UUID is null");
+    }
+
+    /**
+     * Fails the operation if it is still running.
+     */
+    private final class Timeout implements Runnable {
+
+        private final GattOperation operation;
+
+        private Timeout(GattOperation operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            synchronized (lock) {
+                if (current != operation) {
+                    return;
+                }
+                current = null;
+                timedOut = operation;
+            }
+            operation.getFuture().setException(new GattException("Operation timed out", GattException.STATUS_TIMEOUT));
+        }
+    }
+
+    /**
+     * The timer of clients connected without one, on a daemon thread created on first use.
+     */
+    private static final class DefaultTimer {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "GattClient-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * The interface Connection listener, called on a binder thread.
+     */
+    public interface ConnectionListener {
+
+        /**
+         * The constant NULL.
+         */
+        public static final ConnectionListener NULL = new ConnectionListener() {
+            @Override
+            public void onReady(GattClient client) {
+
+            }
+
+            @Override
+            public void onDisconnected(GattClient client, int status) {
+
+            }
+        };
+
+        /**
+         * On ready, connected with services discovered.
+         *
+         * @param client the client
+         */
+        void onReady(GattClient client);
+
+        /**
+         * On disconnected. Pending operations have failed already.
+         *
+         * @param client the client
+         * @param status the GATT status
+         */
+        void onDisconnected(GattClient client, int status);
+    }
+
+    /**
+     * The interface Notification listener.
+     */
+    public interface NotificationListener {
+
+        /**
+         * The constant NULL.
+         */
+        public static final NotificationListener NULL = new NotificationListener() {
+            @Override
+            public void onNotification(UUID service, UUID characteristic, byte[] value) {
+
+            }
+        };
+
+        /**
+         * On notification or indication of a characteristic. Called on a binder thread.
+         *
+         * @param service the service uuid
+         * @param characteristic the characteristic uuid
+         * @param value the value
+         */
+        void onNotification(UUID service, UUID characteristic, byte[] value);
+    }
+}
@@ -0,0 +1,53 @@
+package com.matters.ble.library.gatt;
+
+import java.io.IOException;
+
+/**
+ * The exception failing a GATT operation.
+ */
+public class GattException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The status of an operation which did not complete in time.
+     */
+    public static final int STATUS_TIMEOUT = -1;
+
+    /**
+     * The status of an operation the stack refused to start.
+     */
+    public static final int STATUS_NOT_STARTED = -2;
+
+    /**
+     * The status of an operation pending when the device disconnected.
+     */
+    public static final int STATUS_DISCONNECTED = -3;
+
+    /**
+     * The status of an operation pending when the client was closed.
+     */
+    public static final int STATUS_CLOSED = -4;
+
+    private final int status;
+
+    /**
+     * Instantiates a new Gatt exception.
+     *
+     * @param message the message
+     * @param status the GATT status reported by the stack, or one of the negative STATUS constants
+     */
+    public GattException(String message, int status) {
+        super(message + " (status " + status + ")");
+        this.status = status;
+    }
+
+    /**
+     * Gets status.
+     *
+     * @return the status
+     */
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,159 @@
+package com.matters.ble.library.gatt;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.UUID;
+
+/**
+ * A queued GATT operation and the future it completes.
+ */
+final class GattOperation {
+
+    /**
+     * The type of an operation, telling which callback completes it.
+     */
+    enum Type {
+        READ,
+        WRITE,
+        WRITE_DESCRIPTOR
+    }
+
+    private final Type type;
+
+    private final UUID service;
+
+    private final UUID characteristic;
+
+    private final UUID descriptor;
+
+    private final byte[] value;
+
+    private final boolean withResponse;
+
+    /**
+     * Notifications enabled locally before the descriptor is written, null to leave them.
+     */
+    private final Boolean notification;
+
+    private final long timeoutMillis;
+
+    private final SettableFuture<byte[]> future = SettableFuture.create();
+
+    private GattOperation(Type type, UUID service, UUID characteristic, UUID descriptor, byte[] value,
+                          boolean withResponse, Boolean notification, long timeoutMillis) {
+        this.type = type;
+        this.service = service;
+        this.characteristic = characteristic;
+        this.descriptor = descriptor;
+        this.value = value;
+        this.withResponse = withResponse;
+        this.notification = notification;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    static GattOperation read(UUID service, UUID characteristic, long timeoutMillis) {
+        return new GattOperation(Type.READ, service, characteristic, null, null, true, null, timeoutMillis);
+    }
+
+    static GattOperation write(UUID service, UUID characteristic, byte[] value, boolean withResponse, long timeoutMillis) {
+        return new GattOperation(Type.WRITE, service, characteristic, null, value, withResponse, null, timeoutMillis);
+    }
+
+    static GattOperation writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value,
+                                         Boolean notification, long timeoutMillis) {
+        return new GattOperation(Type.WRITE_DESCRIPTOR, service, characteristic, descriptor, value, true,
+                                 notification, timeoutMillis);
+    }
+
+    /**
+     * Starts the operation.
+     *
+     * @param transport the transport
+     * @return false if the transport refused it
+     */
+    boolean start(GattTransport transport) {
+        switch (type) {
+            case READ:
+                return transport.readCharacteristic(service, characteristic);
+
+            case WRITE:
+                return transport.writeCharacteristic(service, characteristic, value, withResponse);
+
+            default:
+                if (notification != null && !transport.setCharacteristicNotification(service, characteristic, notification)) {
+                    return false;
+                }
+                return transport.writeDescriptor(service, characteristic, descriptor, value);
+        }
+    }
+
+    /**
+     * Checks whether a completion reported by the transport belongs to the operation.
+     *
+     * @param type the type
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param descriptor the descriptor uuid or null
+     * @return the boolean
+     */
+    boolean matches(Type type, UUID service, UUID characteristic, UUID descriptor) {
+        return this.type == type
+               && this.service.equals(service)
+               && this.characteristic.equals(characteristic)
+               && (descriptor == null ? this.descriptor == null : descriptor.equals(this.descriptor));
+    }
+
+    /**
+     * Gets type.
+     *
+     * @return the type
+     */
+    Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets service.
+     *
+     * @return the service uuid
+     */
+    UUID getService() {
+        return service;
+    }
+
+    /**
+     * Gets characteristic.
+     *
+     * @return the characteristic uuid
+     */
+    UUID getCharacteristic() {
+        return characteristic;
+    }
+
+    /**
+     * Gets value.
+     *
+     * @return the value written, null for reads
+     */
+    byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * Gets timeout.
+     *
+     * @return the timeout in milliseconds
+     */
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Gets future.
+     *
+     * @return the future
+     */
+    SettableFuture<byte[]> getFuture() {
+        return future;
+    }
+}
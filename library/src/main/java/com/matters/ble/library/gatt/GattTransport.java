@@ -0,0 +1,130 @@
+package com.matters.ble.library.gatt;
+
+import java.util.UUID;
+
+/**
+ * The GATT operations of one connected device as used by {@link GattClient}, implemented over
+ * {@link android.bluetooth.BluetoothGatt} by {@link AndroidGattTransport} and by fakes in tests.
+ *
+ * Methods starting an operation return whether it was started; its completion is reported
+ * asynchronously to the {@link Callback} given to the {@link Connector}.
+ */
+public interface GattTransport {
+
+    /**
+     * Starts reading a characteristic.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @return false if the operation could not be started
+     */
+    boolean readCharacteristic(UUID service, UUID characteristic);
+
+    /**
+     * Starts writing a characteristic.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param value the value
+     * @param withResponse whether the device acknowledges the write
+     * @return false if the operation could not be started
+     */
+    boolean writeCharacteristic(UUID service, UUID characteristic, byte[] value, boolean withResponse);
+
+    /**
+     * Starts writing a descriptor.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param descriptor the descriptor uuid
+     * @param value the value
+     * @return false if the operation could not be started
+     */
+    boolean writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value);
+
+    /**
+     * Enables or disables local delivery of notifications of a characteristic. Completes
+     * synchronously.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param enable whether notifications are delivered
+     * @return false if the characteristic is unknown
+     */
+    boolean setCharacteristicNotification(UUID service, UUID characteristic, boolean enable);
+
+    /**
+     * Disconnects and releases the connection.
+     */
+    void close();
+
+    /**
+     * The interface opening a transport.
+     */
+    interface Connector {
+
+        /**
+         * Opens a transport reporting to the callback.
+         *
+         * @param callback the callback
+         * @return the transport
+         */
+        GattTransport open(Callback callback);
+    }
+
+    /**
+     * The interface Callback, called on a binder thread of the Bluetooth stack.
+     */
+    interface Callback {
+
+        /**
+         * On ready, connected with services discovered.
+         */
+        void onReady();
+
+        /**
+         * On disconnected.
+         *
+         * @param status the GATT status
+         */
+        void onDisconnected(int status);
+
+        /**
+         * On characteristic read.
+         *
+         * @param service the service uuid
+         * @param characteristic the characteristic uuid
+         * @param status the GATT status
+         * @param value the value
+         */
+        void onCharacteristicRead(UUID service, UUID characteristic, int status, byte[] value);
+
+        /**
+         * On characteristic write.
+         *
+         * @param service the service uuid
+         * @param characteristic the characteristic uuid
+         * @param status the GATT status
+         */
+        void onCharacteristicWrite(UUID service, UUID characteristic, int status);
+
+        /**
+         * On descriptor write.
+         *
+         * @param service the service uuid
+         * @param characteristic the characteristic uuid
+         * @param descriptor the descriptor uuid
+         * @param status the GATT status
+         */
+        void onDescriptorWrite(UUID service, UUID characteristic, UUID descriptor, int status);
+
+        /**
+         * On characteristic changed by a notification or indication.
+         *
+         * @param service the service uuid
+         * @param characteristic the characteristic uuid
+         * @param value the value
+         */
+        void onCharacteristicChanged(UUID service, UUID characteristic, byte[] value);
+    }
+}
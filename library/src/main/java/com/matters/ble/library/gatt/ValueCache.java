@@ -0,0 +1,395 @@
+package com.matters.ble.library.gatt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.matters.ble.library.util.Clock;
+
+/**
+ * Cache of the characteristic values of one device in front of its {@link GattClient}.
+ *
+ * A read is served from the cache while the cached value is fresh according to the
+ * {@link Freshness} of its characteristic. Otherwise it goes over the air, unless a read of the
+ * same characteristic is in flight already: concurrent reads coalesce into that one and its
+ * value is handed to every waiter. Notifications and indications update the cache, so a
+ * notified characteristic is read from the cache as long as the device keeps notifying. A read
+ * started before a notification does not overwrite the notified value.
+ *
+ * The cache installs itself as the {@link GattClient.NotificationListener} of the client and
+ * forwards notifications to its own listener. Values are kept across reconnects of the client,
+ * see {@link #invalidate(UUID, UUID)} and {@link #clear()}. Every caller gets its own copy of a
+ * value. Thread safe. Runs on a plain JVM.
+ */
+public final class ValueCache {
+
+    private final Object lock = new Object();
+
+    private final GattClient client;
+
+    private final Clock clock;
+
+    private final Map<Key, Freshness> policies = new HashMap<Key, Freshness>();
+
+    private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+
+    private final Map<Key, InFlightRead> inFlight = new HashMap<Key, InFlightRead>();
+
+    private volatile GattClient.NotificationListener notificationListener = GattClient.NotificationListener.NULL;
+
+    private Freshness defaultFreshness = Freshness.NONE;
+
+    private long hitCount;
+
+    private long coalescedCount;
+
+    private long readCount;
+
+    /**
+     * The number of notifications received, so a read knows whether one arrived while in flight.
+     */
+    private long notificationCount;
+
+    /**
+     * Instantiates a new Value cache of the client.
+     *
+     * @param client the client
+     * @param clock the clock timing the freshness of values
+     */
+    public ValueCache(GattClient client, Clock clock) {
+        this.client = Preconditions.checkNotNull(client, "Client is null");
+        this.clock = Preconditions.checkNotNull(clock, "Clock is null");
+        client.setNotificationListener(new GattClient.NotificationListener() {
+            @Override
+            public void onNotification(UUID service, UUID characteristic, byte[] value) {
+                storeNotified(new Key(service, characteristic), value, ValueCache.this.clock.elapsedRealtime());
+                notificationListener.onNotification(service, characteristic, value);
+            }
+        });
+    }
+
+    /**
+     * Sets the listener the notifications of the client are forwarded to.
+     *
+     * @param notificationListener the notification listener
+     */
+    public void setNotificationListener(GattClient.NotificationListener notificationListener) {
+        this.notificationListener = Preconditions.checkNotNull(notificationListener, "NotificationListener is null");
+    }
+
+    /**
+     * Sets the freshness of characteristics without one, {@link Freshness#NONE} by default.
+     *
+     * @param freshness the freshness
+     */
+    public void setDefaultFreshness(Freshness freshness) {
+        Preconditions.checkNotNull(freshness, "Freshness is null");
+        synchronized (lock) {
+            defaultFreshness = freshness;
+        }
+    }
+
+    /**
+     * Sets the freshness of a characteristic.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @param freshness the freshness
+     */
+    public void setFreshness(UUID service, UUID characteristic, Freshness freshness) {
+        Preconditions.checkNotNull(freshness, "Freshness is null");
+        final Key key = new Key(service, characteristic);
+        synchronized (lock) {
+            policies.put(key, freshness);
+        }
+    }
+
+    /**
+     * Reads a characteristic from the cache if fresh, else over the air.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @return the future of the value
+     */
+    public ListenableFuture<byte[]> read(UUID service, UUID characteristic) {
+        final Key key = new Key(service, characteristic);
+        final SettableFuture<byte[]> waiter = SettableFuture.create();
+        final InFlightRead started;
+        synchronized (lock) {
+            final Entry entry = entries.get(key);
+            final Freshness freshness = policies.containsKey(key) ? policies.get(key) : defaultFreshness;
+            final long now = clock.elapsedRealtime();
+            if (entry != null && freshness.isFresh(now - entry.updatedMillis)) {
+                hitCount++;
+                waiter.set(entry.value.clone());
+                return waiter;
+            }
+            final InFlightRead current = inFlight.get(key);
+            if (current != null) {
+                coalescedCount++;
+                current.waiters.add(waiter);
+                return waiter;
+            }
+            readCount++;
+            started = new InFlightRead(key, now, notificationCount);
+            started.waiters.add(waiter);
+            inFlight.put(key, started);
+        }
+        // the read may complete synchronously, so it is submitted once registered
+        Futures.addCallback(client.read(service, characteristic), started, MoreExecutors.directExecutor());
+        return waiter;
+    }
+
+    /**
+     * Gets the cached value of a characteristic regardless of its freshness.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     * @return a copy of the value or null
+     */
+    public byte[] peek(UUID service, UUID characteristic) {
+        final Key key = new Key(service, characteristic);
+        synchronized (lock) {
+            final Entry entry = entries.get(key);
+            return entry == null ? null : entry.value.clone();
+        }
+    }
+
+    /**
+     * Invalidates the value of a characteristic, e.g. after writing it.
+     *
+     * @param service the service uuid
+     * @param characteristic the characteristic uuid
+     */
+    public void invalidate(UUID service, UUID characteristic) {
+        final Key key = new Key(service, characteristic);
+        synchronized (lock) {
+            entries.remove(key);
+            detach(inFlight.remove(key));
+        }
+    }
+
+    /**
+     * Invalidates all values.
+     */
+    public void clear() {
+        synchronized (lock) {
+            entries.clear();
+            for (InFlightRead read : inFlight.values()) {
+                detach(read);
+            }
+            inFlight.clear();
+        }
+    }
+
+    /**
+     * Gets the number of reads served from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        synchronized (lock) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * Gets the number of reads coalesced into a read in flight.
+     *
+     * @return the coalesced count
+     */
+    public long getCoalescedCount() {
+        synchronized (lock) {
+            return coalescedCount;
+        }
+    }
+
+    /**
+     * Gets the number of reads sent over the air.
+     *
+     * @return the read count
+     */
+    public long getReadCount() {
+        synchronized (lock) {
+            return readCount;
+        }
+    }
+
+    private void storeNotified(Key key, byte[] value, long updatedMillis) {
+        synchronized (lock) {
+            notificationCount++;
+            entries.put(key, new Entry(value.clone(), updatedMillis, notificationCount));
+        }
+    }
+
+    /**
+     * Keeps a read in flight from caching its value, which may predate the invalidation. Its
+     * waiters still get the value, later reads go over the air again.
+     */
+    private static void detach(InFlightRead read) {
+        if (read != null) {
+            read.detached = true;
+        }
+    }
+
+    /**
+     * A read over the air and the reads waiting for it.
+     */
+    private final class InFlightRead implements FutureCallback<byte[]> {
+
+        private final Key key;
+
+        private final long startedMillis;
+
+        private final long startedNotificationCount;
+
+        private final List<SettableFuture<byte[]>> waiters = new ArrayList<SettableFuture<byte[]>>();
+
+        private boolean detached;
+
+        private InFlightRead(Key key, long startedMillis, long startedNotificationCount) {
+            this.key = key;
+            this.startedMillis = startedMillis;
+            this.startedNotificationCount = startedNotificationCount;
+        }
+
+        @Override
+        public void onSuccess(byte[] value) {
+            for (SettableFuture<byte[]> waiter : complete(value)) {
+                waiter.set(value.clone());
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            for (SettableFuture<byte[]> waiter : complete(null)) {
+                waiter.setException(t);
+            }
+        }
+
+        private List<SettableFuture<byte[]>> complete(byte[] value) {
+            synchronized (lock) {
+                if (!detached) {
+                    inFlight.remove(key);
+                    final Entry entry = entries.get(key);
+                    // a value notified while the read was in flight is newer and stays cached,
+                    // even within the same millisecond
+                    if (value != null && (entry == null || entry.notificationCount <= startedNotificationCount)) {
+                        entries.put(key, new Entry(value.clone(), startedMillis, startedNotificationCount));
+                    }
+                }
+                return new ArrayList<SettableFuture<byte[]>>(waiters);
+            }
+        }
+    }
+
+    /**
+     * A cached value.
+     */
+    private static final class Entry {
+
+        private final byte[] value;
+
+        private final long updatedMillis;
+
+        /**
+         * The notification count when the value was notified or its read started.
+         */
+        private final long notificationCount;
+
+        private Entry(byte[] value, long updatedMillis, long notificationCount) {
+            this.value = value;
+            this.updatedMillis = updatedMillis;
+            this.notificationCount = notificationCount;
+        }
+    }
+
+    /**
+     * The key of a characteristic.
+     */
+    private static final class Key {
+
+        private final UUID service;
+
+        private final UUID characteristic;
+
+        private Key(UUID service, UUID characteristic) {
+            this.service = Preconditions.checkNotNull(service, "UUID is null");
+            this.characteristic = Preconditions.checkNotNull(characteristic, "UUID is null");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return service.equals(key.service) && characteristic.equals(key.characteristic);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * service.hashCode() + characteristic.hashCode();
+        }
+    }
+
+    /**
+     * How long the cached value of a characteristic is served.
+     */
+    public static final class Freshness {
+
+        /**
+         * Never served from the cache, reads still coalesce.
+         */
+        public static final Freshness NONE = new Freshness(0);
+
+        /**
+         * Served as long as cached, for values fixed by the firmware such as its revision.
+         */
+        public static final Freshness FOREVER = new Freshness(Long.MAX_VALUE);
+
+        private final long maxAgeMillis;
+
+        private Freshness(long maxAgeMillis) {
+            this.maxAgeMillis = maxAgeMillis;
+        }
+
+        /**
+         * Creates the freshness of values served for a while after being read or notified.
+         *
+         * @param maxAge the max age
+         * @param unit the unit of the max age
+         * @return the freshness
+         */
+        public static Freshness maxAge(long maxAge, TimeUnit unit) {
+            Preconditions.checkArgument(maxAge >= 0, "Max age must not be negative");
+            return new Freshness(unit.toMillis(maxAge));
+        }
+
+        /**
+         * Gets max age millis.
+         *
+         * @return the max age millis
+         */
+        public long getMaxAgeMillis() {
+            return maxAgeMillis;
+        }
+
+        private boolean isFresh(long ageMillis) {
+            return ageMillis < maxAgeMillis;
+        }
+    }
+}
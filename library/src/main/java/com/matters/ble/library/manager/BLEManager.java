@@ -8,17 +8,56 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import com.google.common.base.Preconditions;
+import com.matters.ble.library.callback.DeviceAttributeCache;
+import com.matters.ble.library.callback.DeviceBlock;
 import com.matters.ble.library.device.BLEDevice;
+import com.matters.ble.library.device.DeviceRegistry;
+import com.matters.ble.library.filter.ScanFilter;
+import com.matters.ble.library.gatt.AndroidGattTransport;
+import com.matters.ble.library.gatt.ConnectionScheduler;
+import com.matters.ble.library.metrics.EventTrace;
+import com.matters.ble.library.metrics.MetricsSnapshot;
+import com.matters.ble.library.metrics.ScanMetrics;
+import com.matters.ble.library.pipeline.OverflowPolicy;
+import com.matters.ble.library.scan.ScanProfile;
+import com.matters.ble.library.scan.ScanSource;
+import com.matters.ble.library.trace.TraceRecorder;
 
 /**
  * The type BLE manager.
+ *
+ * Ranging follows the state machine IDLE, STARTING, RANGING, STOPPING. Commands move the
+ * manager into STARTING or STOPPING with a compare-and-set, so a command is only sent when
+ * the state allows it, and {@link BLEService} acknowledges them to move on into RANGING or IDLE.
+ * Ranging commands and state queries do not lock; transitions can be observed through a
+ * {@link StateListener} or awaited with {@link #awaitState(State, long, TimeUnit)}.
+ *
+ * A service running in the same process is called directly: commands issued on the main thread
+ * are executed and acknowledged before the command method returns, without any message. A service
+ * in another process, declared with {@code android:process} in the manifest, is reached through
+ * a {@link Messenger} and acknowledges asynchronously. It sends device updates in
+ * {@link DeviceBlock}s at the batch interval, which the manager filters with the scan filter of
+ * the configuration and delivers to the ranging listener on the main thread.
  */
 public class BLEManager {
 
@@ -29,9 +68,37 @@ public class BLEManager {
 
     private Context context;
 
-    private ServiceConnection serviceConnection;
+    private volatile ServiceConnection serviceConnection;
+
+    private volatile CommandChannel channel;
+
+    private volatile ScanMetrics metrics;
+
+    private MetricsSnapshot lastMetrics;
+
+    private volatile int clientId;
+
+    private final CopyOnWriteArrayList<StateListener> stateListeners = new CopyOnWriteArrayList<StateListener>();
+
+    private final RangingState state = new RangingState(new StateListener() {
+        @Override
+        public void onStateChanged(State previous, State current) {
+            for (StateListener listener : stateListeners) {
+                listener.onStateChanged(previous, current);
+            }
+        }
+    });
 
-    private Messenger serviceMessenger;
+    private volatile ServiceBoundCallback pendingBoundCallback;
+
+    private DeviceBlock.Reader deviceReader;
+
+    private final Messenger replyMessenger = new Messenger(new Handler(Looper.getMainLooper(), new Handler.Callback() {
+        @Override
+        public boolean handleMessage(Message msg) {
+            return onReply(msg);
+        }
+    }));
 
     private BluetoothManager systemBluetoothManager;
 
@@ -39,8 +106,6 @@ public class BLEManager {
 
     private Configuration configuration = Configuration.NULL;
 
-    private State state = State.IDLE;
-
     /**
      * New instance.
      *\
@@ -66,31 +131,57 @@ public class BLEManager {
         configurationBuilder.setRangingListener(rangingListener);
     }
 
+    /**
+     * Gets the builder of the configuration applied to the service on next connect.
+     *
+     * @return the configuration builder
+     */
+    public Configuration.Builder configure() {
+        return configurationBuilder;
+    }
+
     /**
      * Connect void.
      *\
      * @param callback the callback
      */
     public synchronized void connect(final ServiceBoundCallback callback) {
+        final long bindCookie = System.identityHashCode(this);
+        EventTrace.asyncBegin(EventTrace.SERVICE_BIND, bindCookie);
         try {
             serviceConnection = new ServiceConnection() {
                 @Override
                 public void onServiceConnected(ComponentName name, IBinder binder) {
+                    EventTrace.asyncEnd(EventTrace.SERVICE_BIND, bindCookie);
                     configuration = configurationBuilder.build();
                     configurationBuilder.clear();
-                    BLEService service = ((BLEService.ServiceBinder) binder).getServiceInstance();
-                    service.setConfiguration(configuration);
-                    serviceMessenger = new Messenger(service.getMessagingHandler());
+                    final BLEService service = BLEService.ServiceBinder.getLocalService(binder);
+                    if (service != null) {
+                        clientId = service.registerClient(configuration);
+                        metrics = service.getMetrics();
+                        channel = new BLEService.LocalChannel(service);
+                        notifyServiceBound(callback);
+                        return;
+                    }
+                    // the service runs in another process, the callback waits for the registration
+                    final Messenger messenger = new Messenger(binder);
+                    final Message register = Message.obtain(null, BLEService.MESSAGE_REGISTER);
+                    register.replyTo = replyMessenger;
+                    register.setData(configuration.toBundle());
+                    deviceReader = new DeviceBlock.Reader(configuration.getCacheCapacity());
+                    pendingBoundCallback = callback;
                     try {
-                        callback.onServiceBound();
+                        messenger.send(register);
+                        channel = new CommandChannel.MessengerChannel(messenger);
                     } catch (RemoteException e) {
-                        throw new IllegalStateException("Unknown error occured");
+                        pendingBoundCallback = null;
+                        Log.e(TAG, "Could not register with the service", e);
                     }
                 }
 
                 @Override
                 public void onServiceDisconnected(ComponentName name) {
-
+                    state.reset();
                 }
             };
 
@@ -102,7 +193,12 @@ public class BLEManager {
         }
     }
 
-    public synchronized boolean isConnected() {
+    /**
+     * Is connected.
+     *
+     * @return the boolean
+     */
+    public boolean isConnected() {
         return serviceConnection != null;
     }
 
@@ -117,7 +213,10 @@ public class BLEManager {
         }
 
         try {
-            serviceMessenger.send(Message.obtain(null, BLEService.MESSAGE_DISCONNECT));
+            final CommandChannel current = channel;
+            if (current != null) {
+                current.send(BLEService.MESSAGE_DISCONNECT, clientId, 0, null);
+            }
         } catch (RemoteException e) {
             e.printStackTrace();
         } finally {
@@ -125,33 +224,141 @@ public class BLEManager {
             context = null;
             serviceConnection = null;
             configuration = Configuration.NULL;
-            serviceMessenger = null;
+            channel = null;
+            pendingBoundCallback = null;
+            deviceReader = null;
+            metrics = null;
+            lastMetrics = null;
+            state.reset();
         }
     }
 
     /**
-     * Start ranging.
+     * Start ranging, moving from IDLE or STOPPING to STARTING. Does nothing while starting
+     * or ranging already.
+     *
+     * @return whether the command was sent
+     * @throws RemoteException if the service cannot be reached, the state is then restored
      */
-    public synchronized void startRanging() throws RemoteException {
-        if(isConnected() && isIdle()) {
-            Preconditions.checkNotNull(serviceMessenger, "BLEManager not connected");
-            serviceMessenger.send(Message.obtain(null, BLEService.MESSAGE_START_RANGING));
-        } else {
-            Log.d(TAG, "either disconnected or in Idle state");
+    public boolean startRanging() throws RemoteException {
+        final CommandChannel current = channel;
+        if (current == null) {
+            Log.d(TAG, "not connected");
+            return false;
         }
+        final RangingState.Stamp command = state.request(State.STARTING);
+        return command != null && send(current, BLEService.MESSAGE_START_RANGING, command);
+    }
+
+    /**
+     * Stop ranging, moving from STARTING or RANGING to STOPPING. Does nothing while stopping
+     * or idle already.
+     *
+     * @return whether the command was sent
+     * @throws RemoteException if the service cannot be reached, the state is then restored
+     */
+    public boolean stopRanging() throws RemoteException {
+        final CommandChannel current = channel;
+        if (current == null) {
+            Log.d(TAG, "not connected");
+            return false;
+        }
+        final RangingState.Stamp command = state.request(State.STOPPING);
+        return command != null && send(current, BLEService.MESSAGE_STOP_RANGING, command);
+    }
+
+    /**
+     * Gets state.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Waits until the manager reaches the state. Must not be called on the main thread, where
+     * the acknowledgements of the service are delivered.
+     *
+     * @param target the state
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return false if the state was not reached in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitState(final State target, long timeout, TimeUnit unit) throws InterruptedException {
+        final CountDownLatch reached = new CountDownLatch(1);
+        final StateListener listener = new StateListener() {
+            @Override
+            public void onStateChanged(State previous, State current) {
+                if (current == target) {
+                    reached.countDown();
+                }
+            }
+        };
+        stateListeners.add(listener);
+        try {
+            return state.get() == target || reached.await(timeout, unit);
+        } finally {
+            stateListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Adds a listener notified about state transitions.
+     *
+     * @param listener the listener
+     */
+    public void addStateListener(StateListener listener) {
+        stateListeners.add(Preconditions.checkNotNull(listener, "StateListener is null"));
     }
 
     /**
-     * Stop ranging.
+     * Removes the state listener.
+     *
+     * @param listener the listener
      */
-    public synchronized void stopRanging() throws RemoteException {
+    public void removeStateListener(StateListener listener) {
+        stateListeners.remove(listener);
+    }
 
-        if(!isRanging()) {
-            Log.d(TAG, "not ranging");
+    /**
+     * Takes a snapshot of the scan metrics. The advertisement rate is measured since the
+     * previous snapshot of this manager.
+     *
+     * The metrics of a {@link BLEService} running in another process stay in that process,
+     * they are written by {@code adb shell dumpsys activity service <package>/.BLEService}.
+     *
+     * @return the metrics snapshot
+     * @throws UnsupportedOperationException if the service runs in another process
+     * @throws IllegalStateException if the manager is not connected
+     */
+    public synchronized MetricsSnapshot getMetrics() {
+        final ScanMetrics current = metrics;
+        if (current == null && deviceReader != null) {
+            throw new UnsupportedOperationException("Metrics of a BLEService in another process are only dumped there");
         }
+        Preconditions.checkState(current != null, "BLEManager not connected");
+        lastMetrics = current.snapshot(lastMetrics);
+        return lastMetrics;
+    }
 
-        Preconditions.checkNotNull(serviceMessenger, "BLEManager not connected");
-        serviceMessenger.send(Message.obtain(null, BLEService.MESSAGE_STOP_RANGING));
+    /**
+     * Writes a snapshot of the scan metrics to the file in a text format, see {@link MetricsSnapshot}.
+     *
+     * @param file the file, replaced if it exists
+     * @throws IOException if the file cannot be written
+     * @throws UnsupportedOperationException if the service runs in another process, see {@link #getMetrics()}
+     * @throws IllegalStateException if the manager is not connected
+     */
+    public void dumpMetrics(File file) throws IOException {
+        final MetricsSnapshot snapshot = getMetrics();
+        final Writer writer = new FileWriter(file);
+        try {
+            snapshot.writeTo(writer);
+        } finally {
+            writer.close();
+        }
     }
 
     /**
@@ -159,8 +366,8 @@ public class BLEManager {
      *
      * @return the boolean
      */
-    public synchronized boolean isIdle() {
-        return state == State.IDLE;
+    public boolean isIdle() {
+        return state.get() == State.IDLE;
     }
 
     /**
@@ -168,8 +375,20 @@ public class BLEManager {
      *
      * @return the boolean
      */
-    public synchronized boolean isRanging() {
-        return state == State.RANGING;
+    public boolean isRanging() {
+        return state.get() == State.RANGING;
+    }
+
+    /**
+     * Creates the builder of a scheduler sharing the connections of the controller between
+     * the ranged devices.
+     *
+     * @param timer the executor timing connects, idle links and operations out
+     * @return the connection scheduler builder
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public ConnectionScheduler.Builder newConnectionScheduler(ScheduledExecutorService timer) {
+        return new ConnectionScheduler.Builder(AndroidGattTransport.connectors(context), timer);
     }
 
     /**
@@ -192,18 +411,142 @@ public class BLEManager {
     }
 
 
+    private boolean send(CommandChannel current, int what, RangingState.Stamp command) throws RemoteException {
+        final boolean acknowledged;
+        try {
+            acknowledged = current.send(what, clientId, command.getSequence(), replyMessenger);
+        } catch (RemoteException e) {
+            state.cancel(command);
+            throw e;
+        }
+        if (acknowledged) {
+            state.acknowledge(command.getSequence(), command.getState());
+        }
+        return true;
+    }
+
     /**
-     * Set state.
-     *
-     * @param state the state
+     * Handles a message of the service. Runs on the main thread.
      */
-    void setState(State state){
-        this.state = state;
+    private boolean onReply(Message msg) {
+        if (msg.what == BLEService.MESSAGE_REGISTERED) {
+            final ServiceBoundCallback callback = pendingBoundCallback;
+            pendingBoundCallback = null;
+            if (callback != null) {
+                clientId = msg.arg1;
+                notifyServiceBound(callback);
+            }
+            return true;
+        }
+        if (msg.what == DeviceBlock.MESSAGE_DEVICES) {
+            onDevices(msg.getData().getByteArray(DeviceBlock.KEY_BLOCK));
+            return true;
+        }
+        return onAcknowledged(msg.what, msg.arg2);
+    }
+
+    private void onDevices(byte[] block) {
+        final DeviceBlock.Reader reader = deviceReader;
+        if (reader == null) {
+            return;
+        }
+        final Collection<BLEDevice> devices = reader.read(block, configuration.getScanFilter());
+        if (devices.isEmpty()) {
+            return;
+        }
+        final RangingListener listener = configuration.getRangingListener();
+        if (configuration.getDeliveryMode() != DeliveryMode.PER_ADVERTISEMENT
+                && listener instanceof BatchRangingListener) {
+            ((BatchRangingListener) listener).onDevicesFound(devices);
+        } else {
+            for (BLEDevice device : devices) {
+                listener.onDeviceFound(device);
+            }
+        }
     }
 
-    private enum State {
+    private boolean onAcknowledged(int acknowledgement, int sequence) {
+        // ignored by the state if superseded by a later command
+        switch (acknowledgement) {
+            case BLEService.MESSAGE_RANGING_STARTED:
+                state.acknowledge(sequence, State.STARTING);
+                return true;
+
+            case BLEService.MESSAGE_RANGING_STOPPED:
+                state.acknowledge(sequence, State.STOPPING);
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private static void notifyServiceBound(ServiceBoundCallback callback) {
+        try {
+            callback.onServiceBound();
+        } catch (RemoteException e) {
+            throw new IllegalStateException("Unknown error occured");
+        }
+    }
+
+    /**
+     * The enum State of ranging.
+     */
+    public enum State {
+        /**
+         * Not ranging.
+         */
         IDLE,
-        RANGING
+        /**
+         * Start requested, not yet acknowledged by the service.
+         */
+        STARTING,
+        /**
+         * Ranging.
+         */
+        RANGING,
+        /**
+         * Stop requested, not yet acknowledged by the service.
+         */
+        STOPPING
+    }
+
+    /**
+     * The interface State listener.
+     */
+    public interface StateListener {
+
+        /**
+         * On state changed. Called on the thread causing the transition: the caller of a ranging
+         * command, or the main thread for acknowledgements of the service. Commands issued on the
+         * main thread to a service in the same process are acknowledged before they return.
+         *
+         * @param previous the previous state
+         * @param current the current state
+         */
+        void onStateChanged(State previous, State current);
+    }
+
+    /**
+     * The enum Delivery mode of device updates to the {@link RangingListener}.
+     */
+    public enum DeliveryMode {
+        /**
+         * Every advertisement is posted to {@link RangingListener#onDeviceFound(BLEDevice)}
+         * separately. Kept for compatibility.
+         */
+        PER_ADVERTISEMENT,
+        /**
+         * Updates are coalesced per device and delivered at a fixed interval, to
+         * {@link BatchRangingListener#onDevicesFound(Collection)} or else device by device.
+         */
+        INTERVAL,
+        /**
+         * Updates are coalesced per device and delivered on the next frame, to
+         * {@link BatchRangingListener#onDevicesFound(Collection)} or else device by device.
+         * Requires API level 16.
+         */
+        FRAME
     }
 
     /**
@@ -222,12 +565,30 @@ public class BLEManager {
         };
 
         /**
-         * On device found.
+         * On device found. Called for every advertisement in {@link DeliveryMode#PER_ADVERTISEMENT} mode,
+         * in batched delivery modes once per device and batch unless the listener is a
+         * {@link BatchRangingListener}.
          * @param bleDevice the ble device
          */
         void onDeviceFound(BLEDevice bleDevice);
     }
 
+    /**
+     * The interface Batch ranging listener, receiving the batches of the batched delivery modes
+     * at once.
+     */
+    public interface BatchRangingListener extends RangingListener {
+
+        /**
+         * On devices found. Called in batched delivery modes with devices updated since the
+         * previous batch, each one once and in its latest state. The collection is reused
+         * and must not be retained after the call returns.
+         *
+         * @param bleDevices the ble devices
+         */
+        void onDevicesFound(Collection<BLEDevice> bleDevices);
+    }
+
     /**
      * The interface Service bound callback.
      */
@@ -240,8 +601,14 @@ public class BLEManager {
 
     /**
      * The type Configuration.
+     *
+     * The ranging listener, delivery, report and scan filter settings apply to the client alone.
+     * The attribute cache, device registry, scan queue, scan profile, scan source and trace
+     * settings configure the scan shared by all clients of the service and are taken from the
+     * client connecting first. A client connecting to a service in another process only shares its
+     * report settings, batch interval and block size with the service.
      */
-    static class Configuration {
+    public static class Configuration {
 
         /**
          * The NULL.
@@ -249,13 +616,379 @@ public class BLEManager {
         static final Configuration NULL = new Builder()
                                                 .setRangingListener(RangingListener.NULL).build();
 
+        private static final String KEY_BATCH_INTERVAL = "batchIntervalMillis";
+
+        private static final String KEY_REPORT_RSSI_DELTA = "reportRssiDelta";
+
+        private static final String KEY_REPORT_ON_PAYLOAD_CHANGE = "reportOnPayloadChange";
+
+        private static final String KEY_MIN_REPORT_INTERVAL = "minReportIntervalMillis";
+
+        private static final String KEY_REPORT_RATE_LIMIT = "reportRateLimit";
+
+        private static final String KEY_REPORT_BURST = "reportBurst";
+
+        private static final String KEY_REMOTE_BLOCK_SIZE = "remoteBlockSize";
+
         /**
          * The Ranging listener.
          */
         final RangingListener rangingListener;
 
+        /**
+         * The staleness window of cached device attributes.
+         */
+        final long attributeStalenessMillis;
+
+        /**
+         * The maximum number of tracked devices.
+         */
+        final int cacheCapacity;
+
+        /**
+         * The device cache eviction policy.
+         */
+        final DeviceRegistry.EvictionPolicy cacheEvictionPolicy;
+
+        /**
+         * The time after which a device not seen is dropped from the cache.
+         */
+        final long cacheTimeToLiveMillis;
+
+        /**
+         * The delivery mode.
+         */
+        final DeliveryMode deliveryMode;
+
+        /**
+         * The batch flush interval.
+         */
+        final long batchIntervalMillis;
+
+        /**
+         * The RSSI change which makes an update reportable.
+         */
+        final int reportRssiDelta;
+
+        /**
+         * Whether a payload change makes an update reportable.
+         */
+        final boolean reportOnPayloadChange;
+
+        /**
+         * The minimum interval between two reports of the same device.
+         */
+        final long minReportIntervalMillis;
+
+        /**
+         * The per device report rate limit.
+         */
+        final double reportRateLimit;
+
+        /**
+         * The per device report burst.
+         */
+        final int reportBurst;
+
+        /**
+         * The filter applied to raw advertisements.
+         */
+        final ScanFilter scanFilter;
+
+        /**
+         * The capacity of the queue between the scan callback and the processing thread.
+         */
+        final int scanQueueCapacity;
+
+        /**
+         * The policy applied when the scan queue is full.
+         */
+        final OverflowPolicy scanQueueOverflowPolicy;
+
+        /**
+         * The scan duty cycle while the application is in the foreground.
+         */
+        final ScanProfile foregroundScanProfile;
+
+        /**
+         * The scan duty cycle while the application is in the background.
+         */
+        final ScanProfile backgroundScanProfile;
+
+        /**
+         * The source of advertisements, null for the Bluetooth adapter.
+         */
+        final ScanSource scanSource;
+
+        /**
+         * The directory advertisements are recorded to, null if not recorded.
+         */
+        final File traceDirectory;
+
+        /**
+         * The size of a trace segment.
+         */
+        final int traceSegmentSize;
+
+        /**
+         * The total size of trace segments.
+         */
+        final long traceSizeBudget;
+
+        /**
+         * The maximum size of a block of devices sent to a client in another process.
+         */
+        final int remoteBlockSize;
+
         private Configuration(Builder builder) {
             this.rangingListener = builder.rangingListener;
+            this.attributeStalenessMillis = builder.attributeStalenessMillis;
+            this.cacheCapacity = builder.cacheCapacity;
+            this.cacheEvictionPolicy = builder.cacheEvictionPolicy;
+            this.cacheTimeToLiveMillis = builder.cacheTimeToLiveMillis;
+            this.deliveryMode = builder.deliveryMode;
+            this.batchIntervalMillis = builder.batchIntervalMillis;
+            this.reportRssiDelta = builder.reportRssiDelta;
+            this.reportOnPayloadChange = builder.reportOnPayloadChange;
+            this.minReportIntervalMillis = builder.minReportIntervalMillis;
+            this.reportRateLimit = builder.reportRateLimit;
+            this.reportBurst = builder.reportBurst;
+            this.scanFilter = builder.scanFilter;
+            this.scanQueueCapacity = builder.scanQueueCapacity;
+            this.scanQueueOverflowPolicy = builder.scanQueueOverflowPolicy;
+            this.foregroundScanProfile = builder.foregroundScanProfile;
+            this.backgroundScanProfile = builder.backgroundScanProfile;
+            this.scanSource = builder.scanSource;
+            this.traceDirectory = builder.traceDirectory;
+            this.traceSegmentSize = builder.traceSegmentSize;
+            this.traceSizeBudget = builder.traceSizeBudget;
+            this.remoteBlockSize = builder.remoteBlockSize;
+        }
+
+        /**
+         * Packs the settings a service in another process applies to the client: the report
+         * settings, the batch interval and the block size.
+         *
+         * @return the bundle
+         */
+        Bundle toBundle() {
+            final Bundle bundle = new Bundle();
+            bundle.putLong(KEY_BATCH_INTERVAL, batchIntervalMillis);
+            bundle.putInt(KEY_REPORT_RSSI_DELTA, reportRssiDelta);
+            bundle.putBoolean(KEY_REPORT_ON_PAYLOAD_CHANGE, reportOnPayloadChange);
+            bundle.putLong(KEY_MIN_REPORT_INTERVAL, minReportIntervalMillis);
+            bundle.putDouble(KEY_REPORT_RATE_LIMIT, reportRateLimit);
+            bundle.putInt(KEY_REPORT_BURST, reportBurst);
+            bundle.putInt(KEY_REMOTE_BLOCK_SIZE, remoteBlockSize);
+            return bundle;
+        }
+
+        /**
+         * Unpacks the settings of a client in another process, see {@link #toBundle()}.
+         *
+         * @param bundle the bundle or null for the defaults
+         * @return the configuration
+         */
+        static Configuration fromBundle(Bundle bundle) {
+            final Builder builder = new Builder().setRangingListener(RangingListener.NULL);
+            if (bundle != null) {
+                builder.setBatchIntervalMillis(bundle.getLong(KEY_BATCH_INTERVAL, Builder.DEFAULT_BATCH_INTERVAL_MILLIS))
+                       .setReportRssiDelta(bundle.getInt(KEY_REPORT_RSSI_DELTA, 0))
+                       .setReportOnPayloadChange(bundle.getBoolean(KEY_REPORT_ON_PAYLOAD_CHANGE, true))
+                       .setMinReportIntervalMillis(bundle.getLong(KEY_MIN_REPORT_INTERVAL, 0))
+                       .setReportRateLimit(bundle.getDouble(KEY_REPORT_RATE_LIMIT, 0), bundle.getInt(KEY_REPORT_BURST, 1))
+                       .setRemoteBlockSize(bundle.getInt(KEY_REMOTE_BLOCK_SIZE, DeviceBlock.DEFAULT_BLOCK_SIZE));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Gets ranging listener.
+         *
+         * @return the ranging listener
+         */
+        public RangingListener getRangingListener() {
+            return rangingListener;
+        }
+
+        /**
+         * Gets cache capacity.
+         *
+         * @return the cache capacity
+         */
+        public int getCacheCapacity() {
+            return cacheCapacity;
+        }
+
+        /**
+         * Gets cache eviction policy.
+         *
+         * @return the cache eviction policy
+         */
+        public DeviceRegistry.EvictionPolicy getCacheEvictionPolicy() {
+            return cacheEvictionPolicy;
+        }
+
+        /**
+         * Gets cache time to live.
+         *
+         * @return the cache time to live in milliseconds
+         */
+        public long getCacheTimeToLiveMillis() {
+            return cacheTimeToLiveMillis;
+        }
+
+        /**
+         * Gets delivery mode.
+         *
+         * @return the delivery mode
+         */
+        public DeliveryMode getDeliveryMode() {
+            return deliveryMode;
+        }
+
+        /**
+         * Gets batch interval.
+         *
+         * @return the batch interval in milliseconds
+         */
+        public long getBatchIntervalMillis() {
+            return batchIntervalMillis;
+        }
+
+        /**
+         * Gets report rssi delta.
+         *
+         * @return the report rssi delta in dBm
+         */
+        public int getReportRssiDelta() {
+            return reportRssiDelta;
+        }
+
+        /**
+         * Is report on payload change.
+         *
+         * @return the boolean
+         */
+        public boolean isReportOnPayloadChange() {
+            return reportOnPayloadChange;
+        }
+
+        /**
+         * Gets min report interval.
+         *
+         * @return the min report interval in milliseconds
+         */
+        public long getMinReportIntervalMillis() {
+            return minReportIntervalMillis;
+        }
+
+        /**
+         * Gets report rate limit.
+         *
+         * @return the reports per second per device, 0 if unlimited
+         */
+        public double getReportRateLimit() {
+            return reportRateLimit;
+        }
+
+        /**
+         * Gets report burst.
+         *
+         * @return the report burst
+         */
+        public int getReportBurst() {
+            return reportBurst;
+        }
+
+        /**
+         * Gets scan filter.
+         *
+         * @return the scan filter
+         */
+        public ScanFilter getScanFilter() {
+            return scanFilter;
+        }
+
+        /**
+         * Gets scan queue capacity.
+         *
+         * @return the scan queue capacity, 0 if advertisements are processed on the scan callback thread
+         */
+        public int getScanQueueCapacity() {
+            return scanQueueCapacity;
+        }
+
+        /**
+         * Gets scan queue overflow policy.
+         *
+         * @return the scan queue overflow policy
+         */
+        public OverflowPolicy getScanQueueOverflowPolicy() {
+            return scanQueueOverflowPolicy;
+        }
+
+        /**
+         * Gets foreground scan profile.
+         *
+         * @return the foreground scan profile
+         */
+        public ScanProfile getForegroundScanProfile() {
+            return foregroundScanProfile;
+        }
+
+        /**
+         * Gets background scan profile.
+         *
+         * @return the background scan profile
+         */
+        public ScanProfile getBackgroundScanProfile() {
+            return backgroundScanProfile;
+        }
+
+        /**
+         * Gets scan source.
+         *
+         * @return the scan source or null if advertisements come from the Bluetooth adapter
+         */
+        public ScanSource getScanSource() {
+            return scanSource;
+        }
+
+        /**
+         * Gets trace directory.
+         *
+         * @return the trace directory or null if advertisements are not recorded
+         */
+        public File getTraceDirectory() {
+            return traceDirectory;
+        }
+
+        /**
+         * Gets trace segment size.
+         *
+         * @return the trace segment size in bytes
+         */
+        public int getTraceSegmentSize() {
+            return traceSegmentSize;
+        }
+
+        /**
+         * Gets trace size budget.
+         *
+         * @return the trace size budget in bytes
+         */
+        public long getTraceSizeBudget() {
+            return traceSizeBudget;
+        }
+
+        /**
+         * Gets remote block size.
+         *
+         * @return the remote block size in bytes
+         */
+        public int getRemoteBlockSize() {
+            return remoteBlockSize;
         }
 
         /**
@@ -263,25 +996,315 @@ public class BLEManager {
          */
         public static final class Builder {
 
+            /**
+             * The default cache capacity.
+             */
+            public static final int DEFAULT_CACHE_CAPACITY = 256;
+
+            /**
+             * The default batch interval.
+             */
+            public static final long DEFAULT_BATCH_INTERVAL_MILLIS = 100;
+
+            /**
+             * The default scan queue capacity.
+             */
+            public static final int DEFAULT_SCAN_QUEUE_CAPACITY = 1024;
+
             private RangingListener rangingListener = RangingListener.NULL;
 
+            private long attributeStalenessMillis = DeviceAttributeCache.DEFAULT_STALENESS_MILLIS;
+
+            private int cacheCapacity = DEFAULT_CACHE_CAPACITY;
+
+            private DeviceRegistry.EvictionPolicy cacheEvictionPolicy = DeviceRegistry.EvictionPolicy.LRU;
+
+            private long cacheTimeToLiveMillis = DeviceRegistry.NO_TTL;
+
+            private DeliveryMode deliveryMode = DeliveryMode.INTERVAL;
+
+            private long batchIntervalMillis = DEFAULT_BATCH_INTERVAL_MILLIS;
+
+            private int reportRssiDelta = 0;
+
+            private boolean reportOnPayloadChange = true;
+
+            private long minReportIntervalMillis = 0;
+
+            private double reportRateLimit = 0;
+
+            private int reportBurst = 1;
+
+            private ScanFilter scanFilter = ScanFilter.ACCEPT_ALL;
+
+            private int scanQueueCapacity = DEFAULT_SCAN_QUEUE_CAPACITY;
+
+            private OverflowPolicy scanQueueOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+            private ScanProfile foregroundScanProfile = ScanProfile.CONTINUOUS;
+
+            private ScanProfile backgroundScanProfile = ScanProfile.CONTINUOUS;
+
+            private ScanSource scanSource;
+
+            private File traceDirectory;
+
+            private int traceSegmentSize = TraceRecorder.DEFAULT_SEGMENT_SIZE;
+
+            private long traceSizeBudget = TraceRecorder.DEFAULT_SIZE_BUDGET;
+
+            private int remoteBlockSize = DeviceBlock.DEFAULT_BLOCK_SIZE;
+
             /**
              * Sets ranging listener.
              *
              * @param rangingListener the ranging listener
              * @return the ranging listener
              */
-            Builder setRangingListener(RangingListener rangingListener) {
+            public Builder setRangingListener(RangingListener rangingListener) {
                 this.rangingListener = rangingListener;
                 return this;
             }
 
+            /**
+             * Sets the window after which device name, type and bond state are fetched
+             * again from the Bluetooth stack. Bond state and name change broadcasts
+             * refresh the attributes regardless of the window.
+             *
+             * @param attributeStalenessMillis the staleness window in milliseconds
+             * @return the builder
+             */
+            public Builder setAttributeStalenessMillis(long attributeStalenessMillis) {
+                Preconditions.checkArgument(attributeStalenessMillis > 0, "Staleness window must be positive");
+                this.attributeStalenessMillis = attributeStalenessMillis;
+                return this;
+            }
+
+            /**
+             * Sets the maximum number of devices tracked at once.
+             *
+             * @param cacheCapacity the cache capacity
+             * @return the builder
+             */
+            public Builder setCacheCapacity(int cacheCapacity) {
+                Preconditions.checkArgument(cacheCapacity > 0, "Cache capacity must be positive");
+                this.cacheCapacity = cacheCapacity;
+                return this;
+            }
+
+            /**
+             * Sets the policy choosing which device is dropped when the cache is full.
+             *
+             * @param cacheEvictionPolicy the cache eviction policy
+             * @return the builder
+             */
+            public Builder setCacheEvictionPolicy(DeviceRegistry.EvictionPolicy cacheEvictionPolicy) {
+                this.cacheEvictionPolicy = Preconditions.checkNotNull(cacheEvictionPolicy, "Eviction policy is null");
+                return this;
+            }
+
+            /**
+             * Sets the time after which a device which has not advertised is dropped
+             * from the cache. Expired devices are reclaimed lazily.
+             *
+             * @param cacheTimeToLiveMillis the time to live in milliseconds or {@link DeviceRegistry#NO_TTL}
+             * @return the builder
+             */
+            public Builder setCacheTimeToLiveMillis(long cacheTimeToLiveMillis) {
+                Preconditions.checkArgument(cacheTimeToLiveMillis >= 0, "Time to live must not be negative");
+                this.cacheTimeToLiveMillis = cacheTimeToLiveMillis;
+                return this;
+            }
+
+            /**
+             * Sets how device updates are delivered to the ranging listener.
+             *
+             * @param deliveryMode the delivery mode
+             * @return the builder
+             */
+            public Builder setDeliveryMode(DeliveryMode deliveryMode) {
+                this.deliveryMode = Preconditions.checkNotNull(deliveryMode, "Delivery mode is null");
+                return this;
+            }
+
+            /**
+             * Sets the flush interval of {@link DeliveryMode#INTERVAL} mode.
+             *
+             * @param batchIntervalMillis the batch interval in milliseconds
+             * @return the builder
+             */
+            public Builder setBatchIntervalMillis(long batchIntervalMillis) {
+                Preconditions.checkArgument(batchIntervalMillis > 0, "Batch interval must be positive");
+                this.batchIntervalMillis = batchIntervalMillis;
+                return this;
+            }
+
+            /**
+             * Sets the RSSI change since the last report which makes a device reportable again.
+             * With the default of 0 every advertisement is reported.
+             *
+             * @param reportRssiDelta the rssi delta in dBm
+             * @return the builder
+             */
+            public Builder setReportRssiDelta(int reportRssiDelta) {
+                Preconditions.checkArgument(reportRssiDelta >= 0, "RSSI delta must not be negative");
+                this.reportRssiDelta = reportRssiDelta;
+                return this;
+            }
+
+            /**
+             * Sets whether a changed payload makes a device reportable regardless of its RSSI.
+             *
+             * @param reportOnPayloadChange the report on payload change
+             * @return the builder
+             */
+            public Builder setReportOnPayloadChange(boolean reportOnPayloadChange) {
+                this.reportOnPayloadChange = reportOnPayloadChange;
+                return this;
+            }
+
+            /**
+             * Sets the minimum interval between two reports of the same device.
+             *
+             * @param minReportIntervalMillis the min report interval in milliseconds, 0 to disable
+             * @return the builder
+             */
+            public Builder setMinReportIntervalMillis(long minReportIntervalMillis) {
+                Preconditions.checkArgument(minReportIntervalMillis >= 0, "Report interval must not be negative");
+                this.minReportIntervalMillis = minReportIntervalMillis;
+                return this;
+            }
+
+            /**
+             * Sets the per device token bucket limiting reports.
+             *
+             * @param reportsPerSecond the sustained reports per second, 0 to disable
+             * @param burst the maximum number of reports in a burst
+             * @return the builder
+             */
+            public Builder setReportRateLimit(double reportsPerSecond, int burst) {
+                Preconditions.checkArgument(reportsPerSecond >= 0, "Report rate must not be negative");
+                Preconditions.checkArgument(burst >= 1, "Burst must be at least 1");
+                this.reportRateLimit = reportsPerSecond;
+                this.reportBurst = burst;
+                return this;
+            }
+
+            /**
+             * Sets the filter evaluated on raw advertisements before any device object
+             * is created for them.
+             *
+             * @param scanFilter the scan filter
+             * @return the builder
+             */
+            public Builder setScanFilter(ScanFilter scanFilter) {
+                this.scanFilter = Preconditions.checkNotNull(scanFilter, "Scan filter is null");
+                return this;
+            }
+
+            /**
+             * Sets the capacity of the queue advertisements are copied into on the scan callback
+             * thread before being processed on a worker thread. The capacity is rounded up to a
+             * power of two.
+             *
+             * @param scanQueueCapacity the scan queue capacity, 0 to process advertisements on the scan callback thread
+             * @return the builder
+             */
+            public Builder setScanQueueCapacity(int scanQueueCapacity) {
+                Preconditions.checkArgument(scanQueueCapacity >= 0, "Scan queue capacity must not be negative");
+                this.scanQueueCapacity = scanQueueCapacity;
+                return this;
+            }
+
+            /**
+             * Sets what happens to an advertisement arriving when the scan queue is full.
+             *
+             * @param scanQueueOverflowPolicy the scan queue overflow policy
+             * @return the builder
+             */
+            public Builder setScanQueueOverflowPolicy(OverflowPolicy scanQueueOverflowPolicy) {
+                this.scanQueueOverflowPolicy = Preconditions.checkNotNull(scanQueueOverflowPolicy, "Overflow policy is null");
+                return this;
+            }
+
+            /**
+             * Sets the scan window and interval used while an activity of the application is started.
+             *
+             * @param foregroundScanProfile the foreground scan profile
+             * @return the builder
+             */
+            public Builder setForegroundScanProfile(ScanProfile foregroundScanProfile) {
+                this.foregroundScanProfile = Preconditions.checkNotNull(foregroundScanProfile, "Scan profile is null");
+                return this;
+            }
+
+            /**
+             * Sets the scan window and interval used while no activity of the application is started,
+             * {@link ScanProfile#CONTINUOUS} by default as before profiles existed, e.g.
+             * {@link ScanProfile#BALANCED} to save power. Devices and listeners are kept while the
+             * radio pauses between windows.
+             *
+             * @param backgroundScanProfile the background scan profile
+             * @return the builder
+             */
+            public Builder setBackgroundScanProfile(ScanProfile backgroundScanProfile) {
+                this.backgroundScanProfile = Preconditions.checkNotNull(backgroundScanProfile, "Scan profile is null");
+                return this;
+            }
+
+            /**
+             * Replaces the Bluetooth adapter as the source of advertisements, for instance with a
+             * {@link com.matters.ble.library.scan.SyntheticScanSource} to load test without hardware.
+             *
+             * @param scanSource the scan source or null for the Bluetooth adapter
+             * @return the builder
+             */
+            public Builder setScanSource(ScanSource scanSource) {
+                this.scanSource = scanSource;
+                return this;
+            }
+
+            /**
+             * Records every raw advertisement to memory-mapped trace segments in the directory,
+             * to be replayed later with a {@link com.matters.ble.library.trace.TraceReader}.
+             *
+             * @param traceDirectory the trace directory or null to disable recording
+             * @param segmentSize the size of a segment in bytes
+             * @param sizeBudget the total size of the segments in bytes, the oldest ones are deleted above it
+             * @return the builder
+             */
+            public Builder setTrace(File traceDirectory, int segmentSize, long sizeBudget) {
+                Preconditions.checkArgument(segmentSize > 0, "Segment size must be positive");
+                Preconditions.checkArgument(sizeBudget >= segmentSize, "Size budget must hold a segment");
+                this.traceDirectory = traceDirectory;
+                this.traceSegmentSize = segmentSize;
+                this.traceSizeBudget = sizeBudget;
+                return this;
+            }
+
+            /**
+             * Sets the maximum size of a block of devices a service in another process sends
+             * in one transaction. Blocks go out at the batch interval, a batch not fitting into
+             * a block is split.
+             *
+             * @param remoteBlockSize the block size in bytes, between {@link DeviceBlock#MIN_BLOCK_SIZE}
+             *                        and {@link DeviceBlock#MAX_BLOCK_SIZE}
+             * @return the builder
+             */
+            public Builder setRemoteBlockSize(int remoteBlockSize) {
+                Preconditions.checkArgument(remoteBlockSize >= DeviceBlock.MIN_BLOCK_SIZE
+                                            && remoteBlockSize <= DeviceBlock.MAX_BLOCK_SIZE,
+                                            "Unsupported block size");
+                this.remoteBlockSize = remoteBlockSize;
+                return this;
+            }
+
             /**
              * Build configuration.
              *
              * @return the configuration
              */
-            Configuration build() {
+            public Configuration build() {
                 return new Configuration(this);
             }
 
@@ -290,6 +1313,27 @@ public class BLEManager {
              */
             void clear() {
                 rangingListener = null;
+                attributeStalenessMillis = DeviceAttributeCache.DEFAULT_STALENESS_MILLIS;
+                cacheCapacity = DEFAULT_CACHE_CAPACITY;
+                cacheEvictionPolicy = DeviceRegistry.EvictionPolicy.LRU;
+                cacheTimeToLiveMillis = DeviceRegistry.NO_TTL;
+                deliveryMode = DeliveryMode.INTERVAL;
+                batchIntervalMillis = DEFAULT_BATCH_INTERVAL_MILLIS;
+                reportRssiDelta = 0;
+                reportOnPayloadChange = true;
+                minReportIntervalMillis = 0;
+                reportRateLimit = 0;
+                reportBurst = 1;
+                scanFilter = ScanFilter.ACCEPT_ALL;
+                scanQueueCapacity = DEFAULT_SCAN_QUEUE_CAPACITY;
+                scanQueueOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+                foregroundScanProfile = ScanProfile.CONTINUOUS;
+                backgroundScanProfile = ScanProfile.CONTINUOUS;
+                scanSource = null;
+                traceDirectory = null;
+                traceSegmentSize = TraceRecorder.DEFAULT_SEGMENT_SIZE;
+                traceSizeBudget = TraceRecorder.DEFAULT_SIZE_BUDGET;
+                remoteBlockSize = DeviceBlock.DEFAULT_BLOCK_SIZE;
             }
         }
     }
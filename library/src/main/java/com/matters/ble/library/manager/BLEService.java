@@ -1,27 +1,71 @@
 package com.matters.ble.library.manager;
 
 import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
 import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.Parcel;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+import android.util.SparseArray;
 
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import com.matters.ble.library.callback.DeviceAttributeCache;
 import com.matters.ble.library.callback.RangeCallback;
+import com.matters.ble.library.callback.ScanClient;
+import com.matters.ble.library.metrics.EventTrace;
+import com.matters.ble.library.metrics.MetricsSnapshot;
+import com.matters.ble.library.metrics.ScanMetrics;
+import com.matters.ble.library.scan.AdapterScanSource;
+import com.matters.ble.library.scan.DutyCycleScheduler;
+import com.matters.ble.library.scan.ScanSource;
+import com.matters.ble.library.util.Clock;
 
 import static com.matters.ble.library.manager.BLEService.MESSAGE_START_RANGING;
 
 /**
  * The type BLE service.
+ *
+ * Every connected {@link BLEManager} registers as a client with its own configuration. All
+ * clients share one scan and one device registry, whose settings are taken from the first
+ * client registered while the service is idle. The scan runs while at least one client is
+ * ranging. Clients are registered and commanded on the main thread.
+ *
+ * The service may run in its own process, e.g. declared with {@code android:process=":ble"},
+ * so the scan survives jank and crashes of the application. Clients of other processes then
+ * receive their updates in {@link com.matters.ble.library.callback.DeviceBlock}s, one message
+ * per block at their batch interval. A client of another process is disconnected when its
+ * process dies or its messenger cannot be reached anymore. The activities of other processes
+ * are not visible to the service, so the foreground scan profile is used while a client of
+ * another process is registered. Activities are tracked from API level 14 on, before that the
+ * foreground scan profile is used while any client is registered.
  */
 public class BLEService extends Service {
 
+    private static final String TAG = BLEService.class.getSimpleName();
+
     /**
-     * The MESSAGE_START_RANGING.
+     * The MESSAGE_START_RANGING. Commands carry the client id in {@link Message#arg1}.
      */
     static final int MESSAGE_START_RANGING = 1;
 
@@ -35,20 +79,108 @@ public class BLEService extends Service {
      */
     static final int MESSAGE_DISCONNECT = 3;
 
+    /**
+     * The MESSAGE_REGISTER of a client in another process, acknowledged with MESSAGE_REGISTERED.
+     * Carries the settings of the client as data and its messenger as {@link Message#replyTo}.
+     */
+    static final int MESSAGE_REGISTER = 4;
+
+    /**
+     * The acknowledgement of MESSAGE_START_RANGING, sent to {@link Message#replyTo} with the
+     * client id and the command's sequence number in {@link Message#arg2}.
+     */
+    static final int MESSAGE_RANGING_STARTED = 101;
+
+    /**
+     * The acknowledgement of MESSAGE_STOP_RANGING.
+     */
+    static final int MESSAGE_RANGING_STOPPED = 102;
+
+    /**
+     * The acknowledgement of MESSAGE_REGISTER, with the id of the new client in {@link Message#arg1}.
+     */
+    static final int MESSAGE_REGISTERED = 103;
+
+    /**
+     * The client id returned for a client of another process which died while registering.
+     */
+    static final int NO_CLIENT = 0;
+
     private ServiceBinder serviceBinder;
 
     private Handler messagingHandler;
     private BLEManager.Configuration configuration = BLEManager.Configuration.NULL;
     private BluetoothAdapter bluetoothAdapter;
 
-    private BluetoothAdapter.LeScanCallback callback;
+    private ScanSource scanSource;
+
+    private RangeCallback callback;
+
+    private DutyCycleScheduler scheduler;
+
+    private ForegroundTracker foregroundTracker;
+
+    private final SparseArray<Client> clients = new SparseArray<Client>();
+
+    private int nextClientId = 1;
+
+    private int rangingClients;
+
+    private int remoteClients;
+
+    private final ScanMetrics metrics = new ScanMetrics();
+
+    private MetricsSnapshot lastDumpedMetrics;
+
+    private DeviceAttributeCache attributeCache = new DeviceAttributeCache(configuration.attributeStalenessMillis);
+
+    private final BroadcastReceiver deviceAttributesReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+            if (device == null) {
+                return;
+            }
+
+            final String action = intent.getAction();
+            if (BluetoothDevice.ACTION_NAME_CHANGED.equals(action)) {
+                attributeCache.onNameChanged(device.getAddress(), intent.getStringExtra(BluetoothDevice.EXTRA_NAME));
+            } else if (BluetoothDevice.ACTION_BOND_STATE_CHANGED.equals(action)) {
+                attributeCache.onBondStateChanged(device.getAddress(),
+                                                  intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, BluetoothDevice.ERROR));
+            }
+        }
+    };
 
     @Override
     public void onCreate() {
         super.onCreate();
-        serviceBinder = new ServiceBinder(this);
         messagingHandler = new MessagingHandler();
+        serviceBinder = new ServiceBinder(this, new Messenger(messagingHandler).getBinder());
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        scanSource = new AdapterScanSource(bluetoothAdapter);
+
+        final IntentFilter filter = new IntentFilter(BluetoothDevice.ACTION_NAME_CHANGED);
+        filter.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
+        registerReceiver(deviceAttributesReceiver, filter);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            foregroundTracker = new ForegroundTracker(isProcessVisible());
+            getApplication().registerActivityLifecycleCallbacks(foregroundTracker);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        // stops the scan and the delivery to every client, their managers are not told
+        while (clients.size() > 0) {
+            onDisconnect(clients.keyAt(0));
+        }
+        if (foregroundTracker != null) {
+            getApplication().unregisterActivityLifecycleCallbacks(foregroundTracker);
+        }
+        unregisterReceiver(deviceAttributesReceiver);
+        super.onDestroy();
     }
 
     @Override
@@ -56,6 +188,45 @@ public class BLEService extends Service {
         return serviceBinder;
     }
 
+    /**
+     * Writes the scan metrics, e.g. for {@code adb shell dumpsys activity service <package>/.BLEService},
+     * or with the {@code events} argument the {@link EventTrace} as JSON.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        try {
+            if (args != null && args.length > 0 && "events".equals(args[0])) {
+                if (!EventTrace.dump(writer)) {
+                    writer.println("Event tracing is disabled");
+                }
+            } else {
+                snapshotMetricsForDump().writeTo(writer);
+            }
+        } catch (IOException e) {
+            writer.println("Cannot dump: " + e);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the scan metrics measuring the advertisement rate since the previous
+     * dump, apart from the snapshots of the clients.
+     *
+     * @return the metrics snapshot
+     */
+    private synchronized MetricsSnapshot snapshotMetricsForDump() {
+        lastDumpedMetrics = metrics.snapshot(lastDumpedMetrics);
+        return lastDumpedMetrics;
+    }
+
+    /**
+     * Gets the scan metrics, kept for the lifetime of the service.
+     *
+     * @return the metrics
+     */
+    ScanMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Gets messaging handler.
      *
@@ -66,52 +237,303 @@ public class BLEService extends Service {
     }
 
     /**
-     * Sets configuration.
+     * Registers a client. While no other client is registered its configuration also
+     * becomes the configuration of the shared scan.
+     *
+     * @param configuration the configuration of the client
+     * @return the client id to send commands with
+     */
+    int registerClient(BLEManager.Configuration configuration) {
+        return registerClient(configuration, null);
+    }
+
+    /**
+     * Registers a client, see {@link #registerClient(BLEManager.Configuration)}.
+     *
+     * @param configuration the configuration of the client
+     * @param remote the messenger of a client in another process, null for a client in this process
+     * @return the client id to send commands with, {@link #NO_CLIENT} if the client in another
+     * process died already
+     */
+    int registerClient(BLEManager.Configuration configuration, Messenger remote) {
+        final int clientId = nextClientId++;
+        final Client client = new Client(configuration, remote);
+        if (remote != null) {
+            final IBinder.DeathRecipient deathRecipient = new ClientDeathRecipient(clientId);
+            try {
+                remote.getBinder().linkToDeath(deathRecipient, 0);
+                client.deathRecipient = deathRecipient;
+            } catch (RemoteException e) {
+                Log.w(TAG, "Client " + clientId + " died while registering", e);
+                return NO_CLIENT;
+            }
+        }
+        if (clients.size() == 0) {
+            setConfiguration(configuration);
+        }
+        clients.put(clientId, client);
+        if (remote != null) {
+            remoteClients++;
+            updateForeground();
+        }
+        return clientId;
+    }
+
+    /**
+     * Gets the number of registered clients.
+     *
+     * @return the client count
+     */
+    int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Gets the number of ranging clients.
+     *
+     * @return the ranging client count
+     */
+    int getRangingClientCount() {
+        return rangingClients;
+    }
+
+    /**
+     * Sets the configuration of the shared scan.
      *
      * @param configuration the configuration
      */
     void setConfiguration(BLEManager.Configuration configuration) {
         this.configuration = configuration;
+        this.scanSource = configuration.scanSource != null ? configuration.scanSource
+                                                           : new AdapterScanSource(bluetoothAdapter);
+        this.attributeCache = new DeviceAttributeCache(configuration.attributeStalenessMillis,
+                                                       configuration.cacheCapacity,
+                                                       Clock.SYSTEM);
     }
 
-    BluetoothAdapter.LeScanCallback getCallback() {
+    BLEManager.Configuration getConfiguration() {
+        return configuration;
+    }
+
+    DeviceAttributeCache getAttributeCache() {
+        return attributeCache;
+    }
+
+    RangeCallback getCallback() {
         if (callback == null) {
-            callback = new RangeCallback(configuration.rangingListener);
+            callback = new RangeCallback(configuration, attributeCache, metrics);
         }
 
         return callback;
     }
 
     void clearResources() {
-        serviceBinder = null;
-        messagingHandler = null;
-        callback = null;
+        if (scheduler != null) {
+            scheduler.stop();
+            scheduler = null;
+        }
+        // the binder and the handler stay, the system hands the same binder to later clients
+        if (callback != null) {
+            callback.close();
+            callback = null;
+        }
         configuration = BLEManager.Configuration.NULL;
     }
 
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
-    private void onRangingStart() {
-        bluetoothAdapter.startLeScan(getCallback());
+    DutyCycleScheduler getScheduler() {
+        if (scheduler == null) {
+            scheduler = new DutyCycleScheduler(new ScanSourceRadio(), new HandlerTimer(messagingHandler), Clock.SYSTEM,
+                                               configuration.foregroundScanProfile,
+                                               configuration.backgroundScanProfile);
+            scheduler.setForeground(isForegroundProfileUsed());
+        }
+
+        return scheduler;
     }
 
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
-    private void onRangingStop() {
-        bluetoothAdapter.stopLeScan(getCallback());
-        callback = null;
+    private boolean isForegroundProfileUsed() {
+        // without a tracker the started activities are unknown
+        return remoteClients > 0 || foregroundTracker == null || foregroundTracker.isForeground();
     }
 
-    private void onDisconnect() {
-        clearResources();
+    private void updateForeground() {
+        if (scheduler != null) {
+            scheduler.setForeground(isForegroundProfileUsed());
+        }
+    }
+
+    private boolean onRangingStart(final int clientId) {
+        final Client client = getClient(clientId);
+        if (client == null) {
+            return false;
+        }
+        if (client.scanClient != null) {
+            return true;
+        }
+        client.scanClient = getCallback().addClient(client.configuration, client.remote, new ScanClient.LostListener() {
+            @Override
+            public void onClientLost(ScanClient scanClient) {
+                onDisconnect(clientId);
+            }
+        });
+        if (++rangingClients == 1) {
+            getScheduler().start();
+        }
+        return true;
+    }
+
+    private boolean onRangingStop(int clientId) {
+        final Client client = getClient(clientId);
+        if (client == null) {
+            return false;
+        }
+        if (client.scanClient == null) {
+            return true;
+        }
+        getCallback().removeClient(client.scanClient);
+        client.scanClient = null;
+        if (--rangingClients == 0) {
+            getScheduler().stop();
+            scheduler = null;
+            if (callback != null) {
+                callback.close();
+                callback = null;
+            }
+        }
+        return true;
+    }
+
+    private void onDisconnect(int clientId) {
+        onRangingStop(clientId);
+        final Client client = getClient(clientId);
+        if (client == null) {
+            return;
+        }
+        clients.remove(clientId);
+        if (client.remote != null) {
+            if (client.deathRecipient != null) {
+                client.remote.getBinder().unlinkToDeath(client.deathRecipient, 0);
+            }
+            remoteClients--;
+            updateForeground();
+        }
+        if (clients.size() == 0) {
+            clearResources();
+        }
     }
 
     /**
-     * The type Service binder.
+     * Executes a command of a client. Runs on the main thread.
+     *
+     * @param command the command
+     * @param clientId the client id
+     * @return the acknowledgement of the command, 0 if there is none
+     */
+    int execute(int command, int clientId) {
+        EventTrace.begin(EventTrace.HANDLE_MESSAGE, command);
+        try {
+            switch(command) {
+
+                case MESSAGE_START_RANGING:
+                    return onRangingStart(clientId) ? MESSAGE_RANGING_STARTED : 0;
+
+                case MESSAGE_STOP_RANGING:
+                    return onRangingStop(clientId) ? MESSAGE_RANGING_STOPPED : 0;
+
+                case MESSAGE_DISCONNECT:
+                    onDisconnect(clientId);
+                    return 0;
+
+                default:
+                    throw new IllegalArgumentException("Unsupported message with id: " + command);
+            }
+        } finally {
+            EventTrace.end(EventTrace.HANDLE_MESSAGE);
+        }
+    }
+
+    private static void acknowledge(Message command, int what, int clientId) {
+        if (command.replyTo == null) {
+            return;
+        }
+        try {
+            command.replyTo.send(Message.obtain(null, what, clientId, command.arg2));
+        } catch (RemoteException e) {
+            Log.w(TAG, "Cannot acknowledge command of client " + command.arg1, e);
+        }
+    }
+
+    private Client getClient(int clientId) {
+        final Client client = clients.get(clientId);
+        if (client == null) {
+            Log.w(TAG, "Command of unknown client " + clientId);
+        }
+        return client;
+    }
+
+    /**
+     * A registered client, its scan client is set while it is ranging.
+     */
+    private static final class Client {
+        private final BLEManager.Configuration configuration;
+
+        private final Messenger remote;
+
+        private ScanClient scanClient;
+
+        private IBinder.DeathRecipient deathRecipient;
+
+        private Client(BLEManager.Configuration configuration, Messenger remote) {
+            this.configuration = configuration;
+            this.remote = remote;
+        }
+    }
+
+    /**
+     * Disconnects a client of another process when its process dies.
+     */
+    private final class ClientDeathRecipient implements IBinder.DeathRecipient {
+        private final int clientId;
+
+        private ClientDeathRecipient(int clientId) {
+            this.clientId = clientId;
+        }
+
+        @Override
+        public void binderDied() {
+            // runs on a binder thread, clients are handled on the main thread
+            messagingHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Log.w(TAG, "Process of client " + clientId + " died");
+                    onDisconnect(clientId);
+                }
+            });
+        }
+    }
+
+    /**
+     * The type Service binder. A client in the same process gets the binder itself and calls
+     * the service directly, see {@link LocalChannel}. A client in another process gets a proxy
+     * and wraps it into a {@link Messenger}, whose transactions are forwarded to the messenger
+     * of the service.
      */
     static class ServiceBinder extends Binder {
         private final BLEService service;
 
-        private ServiceBinder(final BLEService service) {
+        private final IBinder messengerBinder;
+
+        private ServiceBinder(final BLEService service, final IBinder messengerBinder) {
             this.service = service;
+            this.messengerBinder = messengerBinder;
+        }
+
+        @Override
+        protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            if (code >= FIRST_CALL_TRANSACTION && code <= LAST_CALL_TRANSACTION) {
+                return messengerBinder.transact(code, data, reply, flags);
+            }
+            return super.onTransact(code, data, reply, flags);
         }
 
         /**
@@ -122,27 +544,173 @@ public class BLEService extends Service {
         public BLEService getServiceInstance() {
             return service;
         }
+
+        /**
+         * Gets the service behind the binder if it runs in this process.
+         *
+         * @param binder the binder handed to the service connection
+         * @return the service, or null if the binder is a proxy of another process
+         */
+        static BLEService getLocalService(IBinder binder) {
+            return binder instanceof ServiceBinder ? ((ServiceBinder) binder).service : null;
+        }
     }
 
-    private class MessagingHandler extends Handler {
+    /**
+     * The channel of a client in the same process. Commands sent on the main thread, where the
+     * service runs, are executed synchronously without a message; commands from other threads
+     * are handed to the messaging handler.
+     */
+    static final class LocalChannel implements CommandChannel {
+        private final BLEService service;
+
+        /**
+         * Instantiates a new Local channel.
+         *
+         * @param service the service
+         */
+        LocalChannel(BLEService service) {
+            this.service = service;
+        }
+
         @Override
-        public void handleMessage(Message msg) {
-            switch(msg.what) {
+        public boolean send(int command, int clientId, int sequence, Messenger replyTo) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                return service.execute(command, clientId) != 0;
+            }
+            final Handler handler = service.getMessagingHandler();
+            final Message message = Message.obtain(handler, command, clientId, sequence);
+            message.replyTo = replyTo;
+            handler.sendMessage(message);
+            return false;
+        }
+    }
 
-                case MESSAGE_START_RANGING:
-                    onRangingStart();
-                    break;
+    /**
+     * Switches the scan source for the scheduler. The range callback, and with it the device
+     * registry, outlives the pauses between scan windows.
+     */
+    private class ScanSourceRadio implements DutyCycleScheduler.Radio {
+        @Override
+        public void startScan() {
+            scanSource.startScan(getCallback());
+        }
 
-                case MESSAGE_STOP_RANGING:
-                    onRangingStop();
-                    break;
+        @Override
+        public void stopScan() {
+            scanSource.stopScan(getCallback());
+        }
+    }
 
-                case MESSAGE_DISCONNECT:
-                    onDisconnect();
-                    break;
+    private static class HandlerTimer implements DutyCycleScheduler.Timer {
+        private final Handler handler;
 
-                default:
-                    throw new IllegalArgumentException("Unsupported message with id: " + msg.what);
+        private HandlerTimer(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            handler.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+    }
+
+    /**
+     * Checks whether the process of the service shows an activity, from its importance.
+     *
+     * @return the boolean
+     */
+    private boolean isProcessVisible() {
+        final ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        final List<ActivityManager.RunningAppProcessInfo> processes = activityManager.getRunningAppProcesses();
+        if (processes != null) {
+            final int pid = Process.myPid();
+            for (ActivityManager.RunningAppProcessInfo process : processes) {
+                if (process.pid == pid) {
+                    return process.importance <= ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts started activities of the application to switch between the foreground and
+     * background scan profiles. Activities started before the service was created are
+     * missed, so the count is seeded with one of them if the process was visible then.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private class ForegroundTracker implements Application.ActivityLifecycleCallbacks {
+        private int startedActivities;
+
+        private boolean foreground;
+
+        private ForegroundTracker(boolean visible) {
+            this.startedActivities = visible ? 1 : 0;
+            this.foreground = visible;
+        }
+
+        boolean isForeground() {
+            return foreground;
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            startedActivities++;
+            setForeground(true);
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            startedActivities = Math.max(0, startedActivities - 1);
+            setForeground(startedActivities > 0);
+        }
+
+        private void setForeground(boolean foreground) {
+            this.foreground = foreground;
+            updateForeground();
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+
+    private class MessagingHandler extends Handler {
+        @Override
+        public void handleMessage(Message msg) {
+            if (msg.what == MESSAGE_REGISTER) {
+                // the listener and scan filter of a remote client stay in its process
+                final int clientId = registerClient(BLEManager.Configuration.fromBundle(msg.getData()), msg.replyTo);
+                if (clientId != NO_CLIENT) {
+                    acknowledge(msg, MESSAGE_REGISTERED, clientId);
+                }
+                return;
+            }
+            final int acknowledgement = execute(msg.what, msg.arg1);
+            if (acknowledgement != 0) {
+                acknowledge(msg, acknowledgement, msg.arg1);
             }
         }
     }
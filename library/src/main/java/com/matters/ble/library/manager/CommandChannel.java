@@ -0,0 +1,51 @@
+package com.matters.ble.library.manager;
+
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+
+/**
+ * The way {@link BLEManager} sends commands to {@link BLEService}, chosen when the service is
+ * bound: {@link BLEService.LocalChannel} calls a service in the same process directly, a
+ * {@link MessengerChannel} sends messages to a service in another process.
+ */
+interface CommandChannel {
+
+    /**
+     * Sends the command.
+     *
+     * @param command the command, one of the {@code MESSAGE_} constants of {@link BLEService}
+     * @param clientId the client id
+     * @param sequence the sequence number returned with the acknowledgement
+     * @param replyTo the messenger receiving the acknowledgement, may be null
+     * @return true if the service executed and acknowledged the command before returning, no
+     *         acknowledgement is sent to replyTo then
+     * @throws RemoteException if the service cannot be reached
+     */
+    boolean send(int command, int clientId, int sequence, Messenger replyTo) throws RemoteException;
+
+    /**
+     * The channel sending messages through a {@link Messenger}.
+     */
+    final class MessengerChannel implements CommandChannel {
+
+        private final Messenger messenger;
+
+        /**
+         * Instantiates a new Messenger channel.
+         *
+         * @param messenger the messenger of the service
+         */
+        MessengerChannel(Messenger messenger) {
+            this.messenger = messenger;
+        }
+
+        @Override
+        public boolean send(int command, int clientId, int sequence, Messenger replyTo) throws RemoteException {
+            final Message message = Message.obtain(null, command, clientId, sequence);
+            message.replyTo = replyTo;
+            messenger.send(message);
+            return false;
+        }
+    }
+}
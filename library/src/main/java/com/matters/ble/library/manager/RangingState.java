@@ -0,0 +1,155 @@
+package com.matters.ble.library.manager;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The ranging state of {@link BLEManager} together with the sequence number of the latest
+ * ranging command. Both change in one compare and set of an immutable {@link Stamp}, so a
+ * command claims its transition and its sequence number at once, and an acknowledgement settles
+ * the state only while its command is the latest. Acknowledgements of superseded commands are
+ * ignored. Thread safe. Runs on a plain JVM.
+ */
+final class RangingState {
+
+    private final AtomicReference<Stamp> stamp = new AtomicReference<Stamp>(new Stamp(BLEManager.State.IDLE, 0, BLEManager.State.IDLE));
+
+    private final BLEManager.StateListener listener;
+
+    /**
+     * Instantiates a new Ranging state, idle.
+     *
+     * @param listener the listener notified about transitions, on the thread causing them
+     */
+    RangingState(BLEManager.StateListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Gets the state.
+     *
+     * @return the state
+     */
+    BLEManager.State get() {
+        return stamp.get().state;
+    }
+
+    /**
+     * Claims the transition to {@link BLEManager.State#STARTING} or {@link BLEManager.State#STOPPING}
+     * and the next sequence number. Refused while in that state or the state it settles to.
+     *
+     * @param pending the state of the command until acknowledged
+     * @return the stamp of the command, or null if refused
+     */
+    Stamp request(BLEManager.State pending) {
+        final BLEManager.State settled = settledState(pending);
+        Stamp current;
+        Stamp next;
+        do {
+            current = stamp.get();
+            if (current.state == pending || current.state == settled) {
+                return null;
+            }
+            next = new Stamp(pending, current.sequence + 1, current.state);
+        } while (!stamp.compareAndSet(current, next));
+
+        listener.onStateChanged(current.state, pending);
+        return next;
+    }
+
+    /**
+     * Restores the state preceding a command which could not be sent, unless superseded.
+     *
+     * @param command the stamp of the command
+     * @return whether the state was restored
+     */
+    boolean cancel(Stamp command) {
+        return settle(command.sequence, command.state, command.previous);
+    }
+
+    /**
+     * Settles the state of an acknowledged command, unless superseded.
+     *
+     * @param sequence the sequence number of the command
+     * @param pending the state of the command until acknowledged
+     * @return whether the state was settled
+     */
+    boolean acknowledge(int sequence, BLEManager.State pending) {
+        return settle(sequence, pending, settledState(pending));
+    }
+
+    /**
+     * Moves to {@link BLEManager.State#IDLE}, superseding the command in flight if any.
+     */
+    void reset() {
+        Stamp current;
+        do {
+            current = stamp.get();
+        } while (!stamp.compareAndSet(current, new Stamp(BLEManager.State.IDLE, current.sequence + 1, current.state)));
+
+        if (current.state != BLEManager.State.IDLE) {
+            listener.onStateChanged(current.state, BLEManager.State.IDLE);
+        }
+    }
+
+    private boolean settle(int sequence, BLEManager.State expected, BLEManager.State next) {
+        Stamp current;
+        do {
+            current = stamp.get();
+            if (current.sequence != sequence || current.state != expected) {
+                return false;
+            }
+        } while (!stamp.compareAndSet(current, new Stamp(next, sequence, expected)));
+
+        listener.onStateChanged(expected, next);
+        return true;
+    }
+
+    private static BLEManager.State settledState(BLEManager.State pending) {
+        switch (pending) {
+            case STARTING:
+                return BLEManager.State.RANGING;
+
+            case STOPPING:
+                return BLEManager.State.IDLE;
+
+            default:
+                throw new IllegalArgumentException("Not a pending state: " + pending);
+        }
+    }
+
+    /**
+     * A state and the sequence number of the command which led to it.
+     */
+    static final class Stamp {
+
+        private final BLEManager.State state;
+
+        private final int sequence;
+
+        private final BLEManager.State previous;
+
+        private Stamp(BLEManager.State state, int sequence, BLEManager.State previous) {
+            this.state = state;
+            this.sequence = sequence;
+            this.previous = previous;
+        }
+
+        /**
+         * Gets the state.
+         *
+         * @return the state
+         */
+        BLEManager.State getState() {
+            return state;
+        }
+
+        /**
+         * Gets the sequence number of the command, returned with its acknowledgement.
+         *
+         * @return the sequence number
+         */
+        int getSequence() {
+            return sequence;
+        }
+    }
+}
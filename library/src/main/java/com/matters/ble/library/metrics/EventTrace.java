@@ -0,0 +1,309 @@
+package com.matters.ble.library.metrics;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size ring buffer of timed library events, recording the event id, {@link System#nanoTime()}
+ * and an argument per event, and mirroring synchronous sections into {@link Trace} for systrace
+ * and Perfetto.
+ *
+ * Tracing is off by default. The static recording methods then cost a read of the active trace
+ * and a single branch. Once {@link #enable(int) enabled} recording claims a slot with an atomic
+ * increment and does not allocate; the oldest events are overwritten. Events written while the
+ * trace is dumped may come out torn.
+ *
+ * {@link #dump(File)} writes the buffer in the Chrome trace event JSON format, which opens in
+ * chrome://tracing and in the Perfetto UI.
+ */
+public final class EventTrace {
+
+    /**
+     * Binding of the manager to the service, an asynchronous event.
+     */
+    public static final int SERVICE_BIND = 0;
+
+    /**
+     * A call to {@code startLeScan}.
+     */
+    public static final int START_SCAN = 1;
+
+    /**
+     * A call to {@code stopLeScan}.
+     */
+    public static final int STOP_SCAN = 2;
+
+    /**
+     * A command handled by the service, received as a message or called directly, with the
+     * command id as argument.
+     */
+    public static final int HANDLE_MESSAGE = 3;
+
+    /**
+     * A device evicted from the registry, with the packed address as argument. Bursts of
+     * evictions show up as clusters of these instants.
+     */
+    public static final int EVICTION = 4;
+
+    private static final String[] NAMES = {
+            "bindService", "startLeScan", "stopLeScan", "handleMessage", "evictDevice"
+    };
+
+    private static final int BEGIN = 0;
+
+    private static final int END = 1;
+
+    private static final int INSTANT = 2;
+
+    private static final int ASYNC_BEGIN = 3;
+
+    private static final int ASYNC_END = 4;
+
+    private static final char[] PHASES = { 'B', 'E', 'i', 'b', 'e' };
+
+    private static volatile EventTrace active;
+
+    private final boolean systemTrace;
+
+    private final int mask;
+
+    /**
+     * Thread id, phase and event packed per slot.
+     */
+    private final long[] words;
+
+    private final long[] timestamps;
+
+    private final long[] args;
+
+    private final AtomicLong cursor = new AtomicLong();
+
+    private EventTrace(int capacity, boolean systemTrace) {
+        this.systemTrace = systemTrace;
+        this.mask = StripedCounter.powerOfTwo(capacity) - 1;
+        this.words = new long[mask + 1];
+        this.timestamps = new long[mask + 1];
+        this.args = new long[mask + 1];
+    }
+
+    /**
+     * Starts tracing into a new buffer, with {@link Trace} sections where available.
+     *
+     * @param capacity the number of events kept, rounded up to a power of two
+     */
+    public static void enable(int capacity) {
+        enable(capacity, Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2);
+    }
+
+    /**
+     * Starts tracing into a new buffer.
+     *
+     * @param capacity the number of events kept, rounded up to a power of two
+     * @param systemTrace whether to mirror synchronous sections into {@link Trace}
+     */
+    public static void enable(int capacity, boolean systemTrace) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        active = new EventTrace(capacity, systemTrace);
+    }
+
+    /**
+     * Stops tracing and discards the buffer.
+     */
+    public static void disable() {
+        active = null;
+    }
+
+    /**
+     * Checks whether tracing is enabled.
+     *
+     * @return the boolean
+     */
+    public static boolean isEnabled() {
+        return active != null;
+    }
+
+    /**
+     * Begins a synchronous section, ended by {@link #end(int)} on the same thread.
+     *
+     * @param event the event
+     * @param arg the argument
+     */
+    public static void begin(int event, long arg) {
+        final EventTrace trace = active;
+        if (trace != null) {
+            trace.record(BEGIN, event, arg);
+        }
+    }
+
+    /**
+     * Ends the innermost synchronous section of the current thread.
+     *
+     * @param event the event
+     */
+    public static void end(int event) {
+        final EventTrace trace = active;
+        if (trace != null) {
+            trace.record(END, event, 0);
+        }
+    }
+
+    /**
+     * Records an instant.
+     *
+     * @param event the event
+     * @param arg the argument
+     */
+    public static void instant(int event, long arg) {
+        final EventTrace trace = active;
+        if (trace != null) {
+            trace.record(INSTANT, event, arg);
+        }
+    }
+
+    /**
+     * Begins an asynchronous section, which may end on another thread.
+     *
+     * @param event the event
+     * @param cookie the id matching the end of the section
+     */
+    public static void asyncBegin(int event, long cookie) {
+        final EventTrace trace = active;
+        if (trace != null) {
+            trace.record(ASYNC_BEGIN, event, cookie);
+        }
+    }
+
+    /**
+     * Ends an asynchronous section.
+     *
+     * @param event the event
+     * @param cookie the id given when the section began
+     */
+    public static void asyncEnd(int event, long cookie) {
+        final EventTrace trace = active;
+        if (trace != null) {
+            trace.record(ASYNC_END, event, cookie);
+        }
+    }
+
+    /**
+     * Writes the buffered events to the file.
+     *
+     * @param file the file, replaced if it exists
+     * @return false if tracing is disabled and nothing was written
+     * @throws IOException if the file cannot be written
+     */
+    public static boolean dump(File file) throws IOException {
+        final EventTrace trace = active;
+        if (trace == null) {
+            return false;
+        }
+        final Writer writer = new FileWriter(file);
+        try {
+            trace.writeTo(writer);
+        } finally {
+            writer.close();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the buffered events of the active trace.
+     *
+     * @param out the output
+     * @return false if tracing is disabled and nothing was written
+     * @throws IOException if the output fails
+     */
+    public static boolean dump(Appendable out) throws IOException {
+        final EventTrace trace = active;
+        if (trace == null) {
+            return false;
+        }
+        trace.writeTo(out);
+        return true;
+    }
+
+    private void record(int phase, int event, long arg) {
+        final int slot = (int) cursor.getAndIncrement() & mask;
+        words[slot] = Thread.currentThread().getId() << 16 | phase << 8 | event;
+        timestamps[slot] = System.nanoTime();
+        args[slot] = arg;
+
+        if (systemTrace) {
+            if (phase == BEGIN) {
+                beginSection(NAMES[event]);
+            } else if (phase == END) {
+                endSection();
+            }
+        }
+    }
+
+    private void writeTo(Appendable out) throws IOException {
+        final long end = cursor.get();
+        final long start = Math.max(0, end - (mask + 1));
+        final Map<Long, String> threadNames = new HashMap<Long, String>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            threadNames.put(thread.getId(), thread.getName());
+        }
+
+        out.append("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        boolean first = true;
+        for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(String.valueOf(thread.getKey()))
+               .append(",\"args\":{\"name\":\"").append(escape(thread.getValue())).append("\"}}");
+        }
+
+        for (long i = start; i < end; i++) {
+            final int slot = (int) i & mask;
+            final long word = words[slot];
+            final int phase = (int) (word >>> 8) & 0xFF;
+            final int event = (int) word & 0xFF;
+            if (phase >= PHASES.length || event >= NAMES.length) {
+                continue;
+            }
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("{\"name\":\"").append(NAMES[event])
+               .append("\",\"cat\":\"ble\",\"ph\":\"").append(PHASES[phase])
+               .append("\",\"pid\":1,\"tid\":").append(String.valueOf(word >>> 16))
+               .append(",\"ts\":").append(String.format(Locale.US, "%.3f", timestamps[slot] / 1000.0));
+            if (phase == ASYNC_BEGIN || phase == ASYNC_END) {
+                out.append(",\"id\":").append(String.valueOf(args[slot]));
+            } else if (phase == INSTANT) {
+                out.append(",\"s\":\"t\",\"args\":{\"arg\":").append(String.valueOf(args[slot])).append('}');
+            } else if (phase == BEGIN) {
+                out.append(",\"args\":{\"arg\":").append(String.valueOf(args[slot])).append('}');
+            }
+            out.append('}');
+        }
+        out.append("\n]}\n");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endSection() {
+        Trace.endSection();
+    }
+}
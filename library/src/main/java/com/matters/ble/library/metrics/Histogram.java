@@ -0,0 +1,178 @@
+package com.matters.ble.library.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non negative values with fixed power of two buckets: bucket 0 counts zero,
+ * bucket {@code i} counts values in {@code [2^(i-1), 2^i)} and the last bucket everything above.
+ * Recording is a bucket computation and an atomic add on the cells of the current thread's
+ * stripe, see {@link StripedCounter}.
+ */
+public final class Histogram {
+
+    /**
+     * The number of buckets.
+     */
+    public static final int BUCKET_COUNT = 64;
+
+    private static final int SUM = BUCKET_COUNT;
+
+    private static final int ROW = BUCKET_COUNT + StripedCounter.PADDING;
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    /**
+     * Instantiates a new Histogram with a stripe per two available processors.
+     */
+    public Histogram() {
+        this(StripedCounter.stripeCount());
+    }
+
+    /**
+     * Instantiates a new Histogram.
+     *
+     * @param stripes the number of stripes, rounded up to a power of two
+     */
+    public Histogram(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Stripes must be positive");
+        }
+        this.mask = StripedCounter.powerOfTwo(stripes) - 1;
+        this.cells = new AtomicLongArray((mask + 1) * ROW);
+    }
+
+    /**
+     * Records the value, negative values are recorded as zero.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        final long clamped = Math.max(0, value);
+        final int row = (StripedCounter.stripe() & mask) * ROW;
+        cells.incrementAndGet(row + bucket(clamped));
+        cells.addAndGet(row + SUM, clamped);
+    }
+
+    /**
+     * Takes a snapshot, approximate while values are being recorded.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKET_COUNT];
+        long sum = 0;
+        for (int stripe = 0; stripe <= mask; stripe++) {
+            final int row = stripe * ROW;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += cells.get(row + i);
+            }
+            sum += cells.get(row + SUM);
+        }
+        return new Snapshot(counts, sum);
+    }
+
+    /**
+     * Gets the bucket of the value.
+     *
+     * @param value the non negative value
+     * @return the bucket
+     */
+    static int bucket(long value) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Gets the exclusive upper bound of the bucket.
+     *
+     * @param bucket the bucket
+     * @return the upper bound, {@link Long#MAX_VALUE} for the last bucket
+     */
+    public static long upperBound(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Immutable counts of a histogram.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+
+        private final long sum;
+
+        private final long count;
+
+        Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long count = 0;
+            for (long bucketCount : counts) {
+                count += bucketCount;
+            }
+            this.count = count;
+        }
+
+        /**
+         * Gets the number of recorded values.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the number of recorded values in the bucket.
+         *
+         * @param bucket the bucket
+         * @return the count
+         */
+        public long getCount(int bucket) {
+            return counts[bucket];
+        }
+
+        /**
+         * Gets the sum of recorded values.
+         *
+         * @return the sum
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Gets the mean of recorded values.
+         *
+         * @return the mean, 0 without values
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Gets an upper estimate of the percentile, the upper bound of the bucket holding it.
+         *
+         * @param percentile the percentile between 0 and 100
+         * @return the estimate, 0 without values
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile out of range: " + percentile);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKET_COUNT - 1);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.matters.ble.library.metrics;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Immutable snapshot of {@link ScanMetrics}.
+ *
+ * {@link #writeTo(Appendable)} writes the snapshot in the Prometheus text exposition format,
+ * one metric per line, so it can be scraped from a file or from
+ * {@code adb shell dumpsys activity service com.matters.ble.library.manager.BLEService}.
+ * Latencies are in nanoseconds.
+ */
+public final class MetricsSnapshot {
+
+    private final long timestampMillis;
+
+    private final long advertisementCount;
+
+    private final double advertisementsPerSecond;
+
+    private final int trackedDeviceCount;
+
+    private final long cacheHitCount;
+
+    private final long cacheMissCount;
+
+    private final long cacheEvictionCount;
+
+    private final long filterDropCount;
+
+    private final int queueDepth;
+
+    private final long queueDropCount;
+
+    private final long deliveryCount;
+
+    private final Histogram.Snapshot deliveryLatency;
+
+    MetricsSnapshot(long timestampMillis,
+                    long advertisementCount,
+                    double advertisementsPerSecond,
+                    int trackedDeviceCount,
+                    long cacheHitCount,
+                    long cacheMissCount,
+                    long cacheEvictionCount,
+                    long filterDropCount,
+                    int queueDepth,
+                    long queueDropCount,
+                    long deliveryCount,
+                    Histogram.Snapshot deliveryLatency) {
+        this.timestampMillis = timestampMillis;
+        this.advertisementCount = advertisementCount;
+        this.advertisementsPerSecond = advertisementsPerSecond;
+        this.trackedDeviceCount = trackedDeviceCount;
+        this.cacheHitCount = cacheHitCount;
+        this.cacheMissCount = cacheMissCount;
+        this.cacheEvictionCount = cacheEvictionCount;
+        this.filterDropCount = filterDropCount;
+        this.queueDepth = queueDepth;
+        this.queueDropCount = queueDropCount;
+        this.deliveryCount = deliveryCount;
+        this.deliveryLatency = deliveryLatency;
+    }
+
+    /**
+     * Gets the time the snapshot was taken.
+     *
+     * @return the milliseconds since boot
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * Gets the number of received advertisements.
+     *
+     * @return the advertisement count
+     */
+    public long getAdvertisementCount() {
+        return advertisementCount;
+    }
+
+    /**
+     * Gets the advertisement rate since the previous snapshot.
+     *
+     * @return the advertisements per second
+     */
+    public double getAdvertisementsPerSecond() {
+        return advertisementsPerSecond;
+    }
+
+    /**
+     * Gets the number of unique devices currently tracked.
+     *
+     * @return the tracked device count
+     */
+    public int getTrackedDeviceCount() {
+        return trackedDeviceCount;
+    }
+
+    /**
+     * Gets the number of advertisements of already registered devices.
+     *
+     * @return the cache hit count
+     */
+    public long getCacheHitCount() {
+        return cacheHitCount;
+    }
+
+    /**
+     * Gets the number of advertisements registering a new device.
+     *
+     * @return the cache miss count
+     */
+    public long getCacheMissCount() {
+        return cacheMissCount;
+    }
+
+    /**
+     * Gets the number of devices evicted or expired from the registry.
+     *
+     * @return the cache eviction count
+     */
+    public long getCacheEvictionCount() {
+        return cacheEvictionCount;
+    }
+
+    /**
+     * Gets the number of advertisements rejected by the scan filter.
+     *
+     * @return the filter drop count
+     */
+    public long getFilterDropCount() {
+        return filterDropCount;
+    }
+
+    /**
+     * Gets the number of advertisements waiting to be processed.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Gets the number of advertisements dropped because the scan queue was full.
+     *
+     * @return the queue drop count
+     */
+    public long getQueueDropCount() {
+        return queueDropCount;
+    }
+
+    /**
+     * Gets the number of deliveries to the ranging listener.
+     *
+     * @return the delivery count
+     */
+    public long getDeliveryCount() {
+        return deliveryCount;
+    }
+
+    /**
+     * Gets the latency from the advertisement to its delivery to the ranging listener.
+     *
+     * @return the delivery latency in nanoseconds
+     */
+    public Histogram.Snapshot getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    /**
+     * Writes the snapshot in the text exposition format.
+     *
+     * @param out the output
+     * @throws IOException if the output fails
+     */
+    public void writeTo(Appendable out) throws IOException {
+        counter(out, "ble_advertisements_total", advertisementCount);
+        gauge(out, "ble_advertisements_per_second", String.format(Locale.US, "%.2f", advertisementsPerSecond));
+        gauge(out, "ble_tracked_devices", String.valueOf(trackedDeviceCount));
+        counter(out, "ble_cache_hits_total", cacheHitCount);
+        counter(out, "ble_cache_misses_total", cacheMissCount);
+        counter(out, "ble_cache_evictions_total", cacheEvictionCount);
+        counter(out, "ble_filter_drops_total", filterDropCount);
+        gauge(out, "ble_queue_depth", String.valueOf(queueDepth));
+        counter(out, "ble_queue_drops_total", queueDropCount);
+        counter(out, "ble_deliveries_total", deliveryCount);
+
+        out.append("# TYPE ble_delivery_latency_nanos histogram\n");
+        int last = Histogram.BUCKET_COUNT - 2;
+        while (last > 0 && deliveryLatency.getCount(last) == 0) {
+            last--;
+        }
+        long cumulative = 0;
+        for (int i = 0; i <= last; i++) {
+            cumulative += deliveryLatency.getCount(i);
+            // buckets are exclusive of their upper bound, le is inclusive
+            out.append("ble_delivery_latency_nanos_bucket{le=\"").append(String.valueOf(Histogram.upperBound(i) - 1))
+               .append("\"} ").append(String.valueOf(cumulative)).append('\n');
+        }
+        out.append("ble_delivery_latency_nanos_bucket{le=\"+Inf\"} ").append(String.valueOf(deliveryLatency.getCount())).append('\n');
+        out.append("ble_delivery_latency_nanos_sum ").append(String.valueOf(deliveryLatency.getSum())).append('\n');
+        out.append("ble_delivery_latency_nanos_count ").append(String.valueOf(deliveryLatency.getCount())).append('\n');
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(4096);
+        try {
+            writeTo(builder);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return builder.toString();
+    }
+
+    private static void counter(Appendable out, String name, long value) throws IOException {
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(String.valueOf(value)).append('\n');
+    }
+
+    private static void gauge(Appendable out, String name, String value) throws IOException {
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,197 @@
+package com.matters.ble.library.metrics;
+
+import com.matters.ble.library.util.Clock;
+
+/**
+ * Metrics of the scan pipeline, updated by the range callback and its dispatchers.
+ *
+ * Counters are {@link StripedCounter}s and the delivery latency a {@link Histogram}, so
+ * updating them costs an atomic add on a cache line private to the thread in the common case.
+ * Values which are state rather than events, the number of tracked devices and the scan queue,
+ * are read from the bound {@link Gauges} when a snapshot is taken.
+ */
+public final class ScanMetrics {
+
+    private final Clock clock;
+
+    private final long createdAt;
+
+    private final StripedCounter advertisements = new StripedCounter();
+
+    private final StripedCounter filterDrops = new StripedCounter();
+
+    private final StripedCounter cacheHits = new StripedCounter();
+
+    private final StripedCounter cacheMisses = new StripedCounter();
+
+    private final StripedCounter cacheEvictions = new StripedCounter();
+
+    private final StripedCounter deliveries = new StripedCounter();
+
+    private final Histogram deliveryLatency = new Histogram();
+
+    private volatile Gauges gauges = Gauges.NULL;
+
+    /**
+     * Instantiates a new Scan metrics.
+     */
+    public ScanMetrics() {
+        this(Clock.SYSTEM);
+    }
+
+    /**
+     * Instantiates a new Scan metrics.
+     *
+     * @param clock the clock timing snapshots
+     */
+    public ScanMetrics(Clock clock) {
+        this.clock = clock;
+        this.createdAt = clock.elapsedRealtime();
+    }
+
+    /**
+     * Counts an advertisement received from the scan source.
+     */
+    public void onAdvertisement() {
+        advertisements.increment();
+    }
+
+    /**
+     * Counts an advertisement rejected by the scan filter.
+     */
+    public void onFilterDrop() {
+        filterDrops.increment();
+    }
+
+    /**
+     * Counts a lookup of the device registry.
+     *
+     * @param hit whether the device was registered
+     */
+    public void onCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    /**
+     * Counts a device evicted or expired from the device registry.
+     */
+    public void onCacheEviction() {
+        cacheEvictions.increment();
+    }
+
+    /**
+     * Records the delivery of a device to the ranging listener.
+     *
+     * @param latencyNanos the time from the advertisement to the delivery
+     */
+    public void onDelivery(long latencyNanos) {
+        deliveries.increment();
+        deliveryLatency.record(latencyNanos);
+    }
+
+    /**
+     * Binds the gauges read by snapshots.
+     *
+     * @param gauges the gauges
+     */
+    public void bind(Gauges gauges) {
+        this.gauges = gauges;
+    }
+
+    /**
+     * Unbinds the gauges if still bound.
+     *
+     * @param gauges the gauges
+     */
+    public void unbind(Gauges gauges) {
+        if (this.gauges == gauges) {
+            this.gauges = Gauges.NULL;
+        }
+    }
+
+    /**
+     * Takes a snapshot. The advertisement rate is measured since the metrics were created.
+     *
+     * @return the snapshot
+     */
+    public MetricsSnapshot snapshot() {
+        return snapshot(null);
+    }
+
+    /**
+     * Takes a snapshot. The advertisement rate is measured since the previous snapshot of the
+     * caller, so that callers polling at their own pace do not shorten each other's window.
+     *
+     * @param previous the previous snapshot of the caller, or null to measure since the metrics were created
+     * @return the snapshot
+     */
+    public MetricsSnapshot snapshot(MetricsSnapshot previous) {
+        final Gauges current = gauges;
+        final long now = clock.elapsedRealtime();
+        final long count = advertisements.sum();
+
+        final long sinceCount = previous == null ? 0 : previous.getAdvertisementCount();
+        final long sinceMillis = previous == null ? createdAt : previous.getTimestampMillis();
+        final double rate = now > sinceMillis ? (count - sinceCount) * 1000.0 / (now - sinceMillis) : 0;
+
+        return new MetricsSnapshot(now,
+                                   count,
+                                   rate,
+                                   current.getTrackedDeviceCount(),
+                                   cacheHits.sum(),
+                                   cacheMisses.sum(),
+                                   cacheEvictions.sum(),
+                                   filterDrops.sum(),
+                                   current.getQueueDepth(),
+                                   current.getDroppedCount(),
+                                   deliveries.sum(),
+                                   deliveryLatency.snapshot());
+    }
+
+    /**
+     * The interface Gauges.
+     */
+    public interface Gauges {
+
+        /**
+         * The constant NULL, reading zero for everything.
+         */
+        public static final Gauges NULL = new Gauges() {
+            @Override
+            public int getTrackedDeviceCount() {
+                return 0;
+            }
+
+            @Override
+            public int getQueueDepth() {
+                return 0;
+            }
+
+            @Override
+            public long getDroppedCount() {
+                return 0;
+            }
+        };
+
+        /**
+         * Gets the number of tracked devices.
+         *
+         * @return the tracked device count
+         */
+        int getTrackedDeviceCount();
+
+        /**
+         * Gets the number of advertisements waiting to be processed.
+         *
+         * @return the queue depth
+         */
+        int getQueueDepth();
+
+        /**
+         * Gets the number of advertisements dropped because the scan queue was full.
+         *
+         * @return the dropped count
+         */
+        long getDroppedCount();
+    }
+}
@@ -0,0 +1,96 @@
+package com.matters.ble.library.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spreading concurrent increments over padded cells, so that threads updating it
+ * do not contend on a single cache line. Reading sums all cells and is approximate while
+ * the counter is being updated.
+ */
+public final class StripedCounter {
+
+    /**
+     * The number of longs between two cells, one cache line.
+     */
+    static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    /**
+     * Instantiates a new Striped counter with a cell per two available processors.
+     */
+    public StripedCounter() {
+        this(stripeCount());
+    }
+
+    /**
+     * Instantiates a new Striped counter.
+     *
+     * @param stripes the number of cells, rounded up to a power of two
+     */
+    public StripedCounter(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Stripes must be positive");
+        }
+        this.mask = powerOfTwo(stripes) - 1;
+        this.cells = new AtomicLongArray((mask + 1) * PADDING);
+    }
+
+    /**
+     * Adds one.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds the delta.
+     *
+     * @param delta the delta
+     */
+    public void add(long delta) {
+        cells.addAndGet((stripe() & mask) * PADDING, delta);
+    }
+
+    /**
+     * Gets the sum of all cells.
+     *
+     * @return the sum
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the stripe of the current thread, stable for its lifetime.
+     *
+     * @return the stripe, to be masked by the caller
+     */
+    static int stripe() {
+        final long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40);
+    }
+
+    static int powerOfTwo(int value) {
+        int power = 1;
+        while (power < value) {
+            power <<= 1;
+        }
+        return power;
+    }
+
+    /**
+     * Gets the default number of stripes.
+     *
+     * @return the stripe count
+     */
+    static int stripeCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+}
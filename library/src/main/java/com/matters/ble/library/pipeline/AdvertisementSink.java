@@ -0,0 +1,21 @@
+package com.matters.ble.library.pipeline;
+
+import android.bluetooth.BluetoothDevice;
+
+/**
+ * The interface Advertisement sink consuming raw advertisements.
+ */
+public interface AdvertisementSink {
+
+    /**
+     * On advertisement. The scan record may be a buffer reused after the call returns,
+     * so implementations must copy whatever they keep.
+     *
+     * @param device the device, null when the advertisement does not come from the Bluetooth stack
+     * @param address the address packed into a long
+     * @param rssi the rssi
+     * @param timestampNanos the {@link System#nanoTime()} at which the advertisement was received
+     * @param scanRecord the raw scan record
+     */
+    void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord);
+}
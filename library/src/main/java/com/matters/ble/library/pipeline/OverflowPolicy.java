@@ -0,0 +1,19 @@
+package com.matters.ble.library.pipeline;
+
+/**
+ * The enum Overflow policy of the scan queue.
+ */
+public enum OverflowPolicy {
+    /**
+     * Drops the oldest queued advertisement to make room for the incoming one.
+     */
+    DROP_OLDEST,
+    /**
+     * Drops the incoming advertisement.
+     */
+    DROP_NEWEST,
+    /**
+     * Blocks the scan callback thread until the worker frees a slot.
+     */
+    BLOCK
+}
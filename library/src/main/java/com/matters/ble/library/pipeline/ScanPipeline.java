@@ -0,0 +1,122 @@
+package com.matters.ble.library.pipeline;
+
+import android.bluetooth.BluetoothDevice;
+import android.util.Log;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves advertisements off the scan callback thread.
+ *
+ * The scan callback only copies the advertisement into a preallocated {@link ScanRingBuffer}.
+ * A dedicated worker thread drains the buffer into the {@link AdvertisementSink}, so filtering,
+ * registry lookups and dispatching never run on the Bluetooth binder thread. The worker parks
+ * while the buffer is empty and is unparked by the producer only when it is waiting.
+ */
+public final class ScanPipeline {
+
+    private static final String TAG = ScanPipeline.class.getSimpleName();
+
+    private final ScanRingBuffer ringBuffer;
+
+    private final AdvertisementSink sink;
+
+    private final Thread worker;
+
+    private volatile boolean running;
+
+    private volatile boolean waiting;
+
+    /**
+     * Instantiates a new Scan pipeline.
+     *
+     * @param capacity the queue capacity
+     * @param overflowPolicy the overflow policy
+     * @param sink the sink advertisements are delivered to on the worker thread
+     */
+    public ScanPipeline(int capacity, OverflowPolicy overflowPolicy, AdvertisementSink sink) {
+        this.ringBuffer = new ScanRingBuffer(capacity, overflowPolicy);
+        this.sink = sink;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "BLEScanPipeline");
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Starts the worker thread.
+     */
+    public void start() {
+        running = true;
+        worker.start();
+    }
+
+    /**
+     * Stops the worker thread. Advertisements still queued are discarded.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * Copies the advertisement into the queue. Called on the scan callback thread.
+     *
+     * @param device the device
+     * @param address the packed address
+     * @param rssi the rssi
+     * @param timestampNanos the receive timestamp
+     * @param scanRecord the raw scan record
+     * @return false if the advertisement was dropped
+     */
+    public boolean offer(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+        if (!ringBuffer.offer(device, address, rssi, timestampNanos, scanRecord)) {
+            return false;
+        }
+        if (waiting) {
+            LockSupport.unpark(worker);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of advertisements waiting for the worker.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return ringBuffer.getDepth();
+    }
+
+    /**
+     * Gets the number of advertisements dropped on overflow.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return ringBuffer.getDroppedCount();
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                if (ringBuffer.poll(sink)) {
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to process advertisement", e);
+                continue;
+            }
+
+            waiting = true;
+            // re-check after publishing the flag, the producer may have missed it
+            if (ringBuffer.getDepth() == 0 && running) {
+                LockSupport.park(this);
+            }
+            waiting = false;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.matters.ble.library.pipeline;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated bounded queue of advertisements with a single producer (the scan callback
+ * thread) and a single consumer (the pipeline worker).
+ *
+ * Every slot owns its record buffer and the advertisement is copied into it, so offering
+ * does not allocate unless a record longer than the slot buffer arrives. A shorter record
+ * keeps the buffer and is handed to the sink in an array of its length reused by the consumer.
+ * Slots carry sequence numbers: a slot at position p is free for the producer when its sequence
+ * equals p, and readable when it equals p + 1. The producer may also consume from the head to
+ * drop the oldest advertisement, at most one per offer, hence the head is advanced with CAS.
+ */
+public final class ScanRingBuffer {
+
+    private static final int DEFAULT_RECORD_LENGTH = 62;
+
+    private static final long BLOCK_PARK_NANOS = 50 * 1000;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLongArray sequences;
+
+    private final BluetoothDevice[] devices;
+
+    private final long[] addresses;
+
+    private final int[] rssis;
+
+    private final long[] timestamps;
+
+    private final byte[][] records;
+
+    private final int[] lengths;
+
+    /**
+     * Arrays of the consumer for records shorter than their slot buffer, one per length.
+     */
+    private byte[][] views = new byte[DEFAULT_RECORD_LENGTH + 1][];
+
+    private final AtomicLong head = new AtomicLong();
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Instantiates a new Scan ring buffer.
+     *
+     * @param capacity the capacity, rounded up to a power of two
+     * @param overflowPolicy the overflow policy
+     */
+    public ScanRingBuffer(final int capacity, final OverflowPolicy overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = this.capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.devices = new BluetoothDevice[this.capacity];
+        this.addresses = new long[this.capacity];
+        this.rssis = new int[this.capacity];
+        this.timestamps = new long[this.capacity];
+        this.records = new byte[this.capacity][];
+        this.lengths = new int[this.capacity];
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+            records[i] = new byte[DEFAULT_RECORD_LENGTH];
+        }
+    }
+
+    /**
+     * Copies the advertisement into the queue. Must be called from a single producer thread.
+     *
+     * @param device the device
+     * @param address the packed address
+     * @param rssi the rssi
+     * @param timestampNanos the receive timestamp
+     * @param scanRecord the raw scan record
+     * @return false if the advertisement was dropped
+     */
+    public boolean offer(final BluetoothDevice device, final long address, final int rssi,
+                         final long timestampNanos, final byte[] scanRecord) {
+        final long position = tail.get();
+        final int slot = (int) position & mask;
+
+        while (sequences.get(slot) != position) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return false;
+
+                case DROP_OLDEST:
+                    // the oldest advertisement is the one in this slot, discarding it frees the slot
+                    if (!discardOldest(position - capacity)) {
+                        // the consumer is delivering it right now, drop the incoming one instead
+                        dropped.incrementAndGet();
+                        return false;
+                    }
+                    dropped.incrementAndGet();
+                    break;
+
+                default:
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    break;
+            }
+        }
+
+        devices[slot] = device;
+        addresses[slot] = address;
+        rssis[slot] = rssi;
+        timestamps[slot] = timestampNanos;
+
+        final int length = scanRecord == null ? 0 : scanRecord.length;
+        byte[] record = records[slot];
+        if (record.length < length) {
+            record = new byte[length];
+            records[slot] = record;
+        }
+        if (length > 0) {
+            System.arraycopy(scanRecord, 0, record, 0, length);
+        }
+        lengths[slot] = length;
+
+        sequences.lazySet(slot, position + 1);
+        tail.set(position + 1);
+        return true;
+    }
+
+    /**
+     * Delivers the oldest queued advertisement to the sink. Must be called from a single consumer thread.
+     * The record passed to the sink is reused once this method returns.
+     *
+     * @param sink the sink
+     * @return false if the queue was empty
+     */
+    public boolean poll(final AdvertisementSink sink) {
+        while (true) {
+            final long position = head.get();
+            final int slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1) {
+                return false;
+            }
+            if (head.compareAndSet(position, position + 1)) {
+                try {
+                    sink.onAdvertisement(devices[slot], addresses[slot], rssis[slot], timestamps[slot], record(slot));
+                } finally {
+                    devices[slot] = null;
+                    sequences.set(slot, position + capacity);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of queued advertisements.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        final long depth = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(capacity, depth));
+    }
+
+    /**
+     * Gets the number of dropped advertisements.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets capacity.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private byte[] record(int slot) {
+        final byte[] record = records[slot];
+        final int length = lengths[slot];
+        if (record.length == length) {
+            return record;
+        }
+        if (length >= views.length) {
+            views = Arrays.copyOf(views, length + 1);
+        }
+        byte[] view = views[length];
+        if (view == null) {
+            view = new byte[length];
+            views[length] = view;
+        }
+        System.arraycopy(record, 0, view, 0, length);
+        return view;
+    }
+
+    private boolean discardOldest(long position) {
+        final int slot = (int) position & mask;
+        if (sequences.get(slot) == position + 1 && head.compareAndSet(position, position + 1)) {
+            devices[slot] = null;
+            sequences.set(slot, position + capacity);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,71 @@
+package com.matters.ble.library.scan;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.os.Build;
+
+import com.matters.ble.library.metrics.EventTrace;
+import com.matters.ble.library.pipeline.AdvertisementSink;
+import com.matters.ble.library.util.MacAddress;
+
+/**
+ * The scan source backed by {@link BluetoothAdapter#startLeScan(BluetoothAdapter.LeScanCallback)}.
+ * A sink which is a {@link BluetoothAdapter.LeScanCallback} already is registered directly.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public final class AdapterScanSource implements ScanSource {
+
+    private final BluetoothAdapter adapter;
+
+    private AdvertisementSink sink;
+
+    private BluetoothAdapter.LeScanCallback callback;
+
+    /**
+     * Instantiates a new Adapter scan source.
+     *
+     * @param adapter the adapter
+     */
+    public AdapterScanSource(BluetoothAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    @Override
+    public void startScan(AdvertisementSink sink) {
+        EventTrace.begin(EventTrace.START_SCAN, 0);
+        try {
+            adapter.startLeScan(getCallback(sink));
+        } finally {
+            EventTrace.end(EventTrace.START_SCAN);
+        }
+    }
+
+    @Override
+    public void stopScan(AdvertisementSink sink) {
+        EventTrace.begin(EventTrace.STOP_SCAN, 0);
+        try {
+            adapter.stopLeScan(getCallback(sink));
+        } finally {
+            EventTrace.end(EventTrace.STOP_SCAN);
+        }
+    }
+
+    private BluetoothAdapter.LeScanCallback getCallback(final AdvertisementSink sink) {
+        if (this.sink != sink) {
+            this.sink = sink;
+            if (sink instanceof BluetoothAdapter.LeScanCallback) {
+                this.callback = (BluetoothAdapter.LeScanCallback) sink;
+            } else {
+                this.callback = new BluetoothAdapter.LeScanCallback() {
+                    @Override
+                    public void onLeScan(BluetoothDevice device, int rssi, byte[] scanRecord) {
+                        sink.onAdvertisement(device, MacAddress.toLong(device.getAddress()), rssi,
+                                             System.nanoTime(), scanRecord);
+                    }
+                };
+            }
+        }
+        return callback;
+    }
+}
@@ -0,0 +1,215 @@
+package com.matters.ble.library.scan;
+
+import com.matters.ble.library.util.Clock;
+
+/**
+ * Duty cycles the scan radio according to a foreground and a background {@link ScanProfile}.
+ *
+ * Pausing only stops the radio, whatever consumes advertisements stays alive between windows.
+ * When the profile switches mid cycle the current cycle is kept and re-timed against the new
+ * profile, so going to the foreground during a pause starts scanning at once when the new
+ * interval has already elapsed.
+ *
+ * Not thread safe, confined to the thread of the {@link Timer}.
+ */
+public final class DutyCycleScheduler {
+
+    /**
+     * The interface Radio the scheduler switches on and off.
+     */
+    public interface Radio {
+
+        /**
+         * Start scan.
+         */
+        void startScan();
+
+        /**
+         * Stop scan.
+         */
+        void stopScan();
+    }
+
+    /**
+     * The interface Timer running the scheduler callbacks, usually backed by a Handler.
+     */
+    public interface Timer {
+
+        /**
+         * Runs the task after the delay.
+         *
+         * @param task the task
+         * @param delayMillis the delay in milliseconds
+         */
+        void postDelayed(Runnable task, long delayMillis);
+
+        /**
+         * Cancels the pending runs of the task.
+         *
+         * @param task the task
+         */
+        void removeCallbacks(Runnable task);
+    }
+
+    private final Radio radio;
+
+    private final Timer timer;
+
+    private final Clock clock;
+
+    private final ScanProfile foregroundProfile;
+
+    private final ScanProfile backgroundProfile;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            if (scanning) {
+                endWindow();
+            } else {
+                beginCycle();
+            }
+        }
+    };
+
+    private boolean running;
+
+    private boolean scanning;
+
+    private boolean foreground = true;
+
+    private long cycleStartedAt;
+
+    /**
+     * Instantiates a new Duty cycle scheduler.
+     *
+     * @param radio the radio
+     * @param timer the timer
+     * @param clock the clock
+     * @param foregroundProfile the profile used while the application is in the foreground
+     * @param backgroundProfile the profile used while the application is in the background
+     */
+    public DutyCycleScheduler(Radio radio, Timer timer, Clock clock,
+                              ScanProfile foregroundProfile, ScanProfile backgroundProfile) {
+        this.radio = radio;
+        this.timer = timer;
+        this.clock = clock;
+        this.foregroundProfile = foregroundProfile;
+        this.backgroundProfile = backgroundProfile;
+    }
+
+    /**
+     * Starts duty cycling with a scan window.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        beginCycle();
+    }
+
+    /**
+     * Stops duty cycling and the radio.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        timer.removeCallbacks(tick);
+        if (scanning) {
+            scanning = false;
+            radio.stopScan();
+        }
+    }
+
+    /**
+     * Switches between the foreground and background profile.
+     *
+     * @param foreground whether the application is in the foreground
+     */
+    public void setForeground(boolean foreground) {
+        if (this.foreground == foreground) {
+            return;
+        }
+        this.foreground = foreground;
+        if (!running) {
+            return;
+        }
+
+        timer.removeCallbacks(tick);
+        final ScanProfile profile = getProfile();
+        final long elapsed = clock.elapsedRealtime() - cycleStartedAt;
+        if (scanning) {
+            if (profile.isContinuous()) {
+                return;
+            }
+            if (elapsed >= profile.getWindowMillis()) {
+                endWindow();
+            } else {
+                timer.postDelayed(tick, profile.getWindowMillis() - elapsed);
+            }
+        } else if (elapsed >= profile.getIntervalMillis() || profile.isContinuous()) {
+            beginCycle();
+        } else {
+            timer.postDelayed(tick, profile.getIntervalMillis() - elapsed);
+        }
+    }
+
+    /**
+     * Gets the profile in effect.
+     *
+     * @return the profile
+     */
+    public ScanProfile getProfile() {
+        return foreground ? foregroundProfile : backgroundProfile;
+    }
+
+    /**
+     * Is running.
+     *
+     * @return the boolean
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Is scanning.
+     *
+     * @return the boolean
+     */
+    public boolean isScanning() {
+        return scanning;
+    }
+
+    /**
+     * Is foreground.
+     *
+     * @return the boolean
+     */
+    public boolean isForeground() {
+        return foreground;
+    }
+
+    private void beginCycle() {
+        cycleStartedAt = clock.elapsedRealtime();
+        if (!scanning) {
+            scanning = true;
+            radio.startScan();
+        }
+        final ScanProfile profile = getProfile();
+        if (!profile.isContinuous()) {
+            timer.postDelayed(tick, profile.getWindowMillis());
+        }
+    }
+
+    private void endWindow() {
+        scanning = false;
+        radio.stopScan();
+        final ScanProfile profile = getProfile();
+        final long elapsed = clock.elapsedRealtime() - cycleStartedAt;
+        timer.postDelayed(tick, Math.max(0, profile.getIntervalMillis() - elapsed));
+    }
+}
@@ -0,0 +1,93 @@
+package com.matters.ble.library.scan;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Immutable scan window / scan interval pair of a duty cycle.
+ *
+ * The radio scans for the window at the start of every interval and is idle for the rest of it.
+ * A window equal to the interval scans continuously.
+ */
+public final class ScanProfile {
+
+    /**
+     * The profile scanning without pauses.
+     */
+    public static final ScanProfile CONTINUOUS = new ScanProfile(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    /**
+     * The profile scanning 2 seconds out of every 10.
+     */
+    public static final ScanProfile BALANCED = new ScanProfile(2000, 10000);
+
+    /**
+     * The profile scanning 1 second out of every 30.
+     */
+    public static final ScanProfile LOW_POWER = new ScanProfile(1000, 30000);
+
+    private final long windowMillis;
+
+    private final long intervalMillis;
+
+    /**
+     * Instantiates a new Scan profile.
+     *
+     * @param windowMillis the scan window in milliseconds
+     * @param intervalMillis the scan interval in milliseconds
+     */
+    public ScanProfile(long windowMillis, long intervalMillis) {
+        Preconditions.checkArgument(windowMillis > 0, "Scan window must be positive");
+        Preconditions.checkArgument(intervalMillis >= windowMillis, "Scan interval must not be shorter than the window");
+        this.windowMillis = windowMillis;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Gets scan window.
+     *
+     * @return the window in milliseconds
+     */
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Gets scan interval.
+     *
+     * @return the interval in milliseconds
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Is continuous.
+     *
+     * @return the boolean
+     */
+    public boolean isContinuous() {
+        return windowMillis == intervalMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScanProfile)) {
+            return false;
+        }
+        final ScanProfile that = (ScanProfile) o;
+        return windowMillis == that.windowMillis && intervalMillis == that.intervalMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (windowMillis ^ (windowMillis >>> 32)) + (int) (intervalMillis ^ (intervalMillis >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return isContinuous() ? "ScanProfile[continuous]" : "ScanProfile[" + windowMillis + "/" + intervalMillis + " ms]";
+    }
+}
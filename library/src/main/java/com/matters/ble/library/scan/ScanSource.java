@@ -0,0 +1,23 @@
+package com.matters.ble.library.scan;
+
+import com.matters.ble.library.pipeline.AdvertisementSink;
+
+/**
+ * The interface Scan source producing advertisements, usually the Bluetooth adapter.
+ */
+public interface ScanSource {
+
+    /**
+     * Starts delivering advertisements to the sink.
+     *
+     * @param sink the sink
+     */
+    void startScan(AdvertisementSink sink);
+
+    /**
+     * Stops delivering advertisements to the sink.
+     *
+     * @param sink the sink
+     */
+    void stopScan(AdvertisementSink sink);
+}
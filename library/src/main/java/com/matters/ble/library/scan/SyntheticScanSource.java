@@ -0,0 +1,393 @@
+package com.matters.ble.library.scan;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import com.matters.ble.library.pipeline.AdvertisementSink;
+
+/**
+ * Scan source simulating a population of advertisers, for load testing without hardware.
+ *
+ * Every device advertises at its interval plus the random 0-10 ms advertising delay of the
+ * Bluetooth specification. Its RSSI follows a bounded random walk, its payload changes with a
+ * configured probability per advertisement and its address is replaced by a new resolvable
+ * private address every rotation interval. Devices are kept in primitive arrays and a binary
+ * heap ordered by the next advertising time, records are mutated in place, so generating
+ * advertisements does not allocate.
+ *
+ * The simulation runs either in real time on its own thread once started as a {@link ScanSource},
+ * or in virtual time with {@link #advance(long, AdvertisementSink)}, which emits advertisements as
+ * fast as the sink accepts them. Devices carry no {@link android.bluetooth.BluetoothDevice}.
+ */
+public final class SyntheticScanSource implements ScanSource {
+
+    private static final long ADVERTISING_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final int MIN_RSSI = -100;
+
+    private static final int MAX_RSSI = -30;
+
+    private static final int COMPANY_ID = 0xFFFF;
+
+    private static final int PAYLOAD_HEADER_LENGTH = 7;
+
+    private final int deviceCount;
+
+    private final long advertisingIntervalNanos;
+
+    private final int rssiStep;
+
+    private final double payloadChurnProbability;
+
+    private final long macRotationIntervalNanos;
+
+    private final long[] addresses;
+
+    private final int[] rssis;
+
+    private final byte[][] records;
+
+    private final long[] nextAdvertisingAt;
+
+    private final long[] rotateAt;
+
+    private final int[] heap;
+
+    private long seed;
+
+    private long advertisementCount;
+
+    private long rotationCount;
+
+    private volatile Thread worker;
+
+    private SyntheticScanSource(Builder builder) {
+        this.deviceCount = builder.deviceCount;
+        this.advertisingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.advertisingIntervalMillis);
+        this.rssiStep = builder.rssiStep;
+        this.payloadChurnProbability = builder.payloadChurnProbability;
+        this.macRotationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.macRotationIntervalMillis);
+        this.seed = builder.seed == 0 ? 1 : builder.seed;
+
+        this.addresses = new long[deviceCount];
+        this.rssis = new int[deviceCount];
+        this.records = new byte[deviceCount][builder.payloadLength];
+        this.nextAdvertisingAt = new long[deviceCount];
+        this.rotateAt = new long[deviceCount];
+        this.heap = new int[deviceCount];
+
+        for (int i = 0; i < deviceCount; i++) {
+            addresses[i] = randomAddress();
+            rssis[i] = MIN_RSSI + 10 + nextInt(MAX_RSSI - MIN_RSSI - 20);
+            initRecord(records[i]);
+        }
+        reset(0);
+    }
+
+    /**
+     * Restarts the simulation clock. Every device advertises first at a random point of its
+     * first interval and rotates its address at a random point of its first rotation interval.
+     *
+     * @param originNanos the time the simulation starts at
+     */
+    public void reset(long originNanos) {
+        for (int i = 0; i < deviceCount; i++) {
+            nextAdvertisingAt[i] = originNanos + nextLong(advertisingIntervalNanos);
+            rotateAt[i] = macRotationIntervalNanos > 0 ? originNanos + nextLong(macRotationIntervalNanos) : Long.MAX_VALUE;
+            heap[i] = i;
+        }
+        for (int i = deviceCount / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Emits every advertisement due up to the time, in time order.
+     *
+     * @param untilNanos the simulation time to advance to
+     * @param sink the sink, receiving the simulation time as timestamp
+     * @return the number of emitted advertisements
+     */
+    public int advance(long untilNanos, AdvertisementSink sink) {
+        int emitted = 0;
+        while (deviceCount > 0 && nextAdvertisingAt[heap[0]] <= untilNanos) {
+            final int device = heap[0];
+            final long now = nextAdvertisingAt[device];
+
+            if (now >= rotateAt[device]) {
+                addresses[device] = randomAddress();
+                rotateAt[device] += macRotationIntervalNanos;
+                rotationCount++;
+            }
+            rssis[device] = Math.max(MIN_RSSI, Math.min(MAX_RSSI, rssis[device] + nextInt(2 * rssiStep + 1) - rssiStep));
+            if (payloadChurnProbability > 0 && nextDouble() < payloadChurnProbability) {
+                churn(records[device]);
+            }
+
+            sink.onAdvertisement(null, addresses[device], rssis[device], now, records[device]);
+            emitted++;
+
+            nextAdvertisingAt[device] = now + advertisingIntervalNanos + nextLong(ADVERTISING_DELAY_NANOS);
+            siftDown(0);
+        }
+        advertisementCount += emitted;
+        return emitted;
+    }
+
+    /**
+     * Gets the time of the next advertisement.
+     *
+     * @return the simulation time of the next advertisement
+     */
+    public long getNextAdvertisingAt() {
+        return deviceCount == 0 ? Long.MAX_VALUE : nextAdvertisingAt[heap[0]];
+    }
+
+    /**
+     * Gets the number of emitted advertisements.
+     *
+     * @return the advertisement count
+     */
+    public long getAdvertisementCount() {
+        return advertisementCount;
+    }
+
+    /**
+     * Gets the number of address rotations.
+     *
+     * @return the rotation count
+     */
+    public long getRotationCount() {
+        return rotationCount;
+    }
+
+    /**
+     * Gets device count.
+     *
+     * @return the device count
+     */
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+
+    /**
+     * Starts emitting advertisements in real time on a worker thread.
+     *
+     * @param sink the sink
+     */
+    @Override
+    public synchronized void startScan(final AdvertisementSink sink) {
+        Preconditions.checkState(worker == null, "Synthetic scan already started");
+        reset(System.nanoTime());
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final Thread self = Thread.currentThread();
+                while (worker == self) {
+                    final long now = System.nanoTime();
+                    advance(now, sink);
+                    LockSupport.parkNanos(Math.max(0, Math.min(MAX_IDLE_NANOS, getNextAdvertisingAt() - now)));
+                }
+            }
+        }, "SyntheticScanSource");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stopScan(AdvertisementSink sink) {
+        final Thread thread = worker;
+        worker = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void initRecord(byte[] record) {
+        // Flags followed by manufacturer specific data covering the rest of the record.
+        record[0] = 2;
+        record[1] = 0x01;
+        record[2] = 0x06;
+        record[3] = (byte) (record.length - 4);
+        record[4] = (byte) 0xFF;
+        record[5] = (byte) COMPANY_ID;
+        record[6] = (byte) (COMPANY_ID >> 8);
+        for (int i = PAYLOAD_HEADER_LENGTH; i < record.length; i++) {
+            record[i] = (byte) nextInt(256);
+        }
+    }
+
+    private void churn(byte[] record) {
+        for (int i = PAYLOAD_HEADER_LENGTH; i < record.length && ++record[i] == 0; i++) {
+            // carry into the next byte
+        }
+    }
+
+    private long randomAddress() {
+        // resolvable private address, the two most significant bits are 01
+        return (nextRandom() & 0x3FFFFFFFFFFFL) | 0x400000000000L;
+    }
+
+    private void siftDown(int index) {
+        final int device = heap[index];
+        final long time = nextAdvertisingAt[device];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= deviceCount) {
+                break;
+            }
+            if (child + 1 < deviceCount && nextAdvertisingAt[heap[child + 1]] < nextAdvertisingAt[heap[child]]) {
+                child++;
+            }
+            if (nextAdvertisingAt[heap[child]] >= time) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = device;
+    }
+
+    private long nextRandom() {
+        // xorshift64*
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        return seed * 0x2545F4914F6CDD1DL;
+    }
+
+    private int nextInt(int bound) {
+        return (int) ((nextRandom() >>> 33) % bound);
+    }
+
+    private long nextLong(long bound) {
+        return bound <= 0 ? 0 : (nextRandom() >>> 1) % bound;
+    }
+
+    private double nextDouble() {
+        return (nextRandom() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * The type Builder.
+     */
+    public static final class Builder {
+
+        private int deviceCount = 100;
+
+        private long advertisingIntervalMillis = 100;
+
+        private int rssiStep = 2;
+
+        private double payloadChurnProbability = 0.01;
+
+        private long macRotationIntervalMillis = 0;
+
+        private int payloadLength = 62;
+
+        private long seed = 0x5EEDL;
+
+        /**
+         * Sets the number of simulated devices.
+         *
+         * @param deviceCount the device count
+         * @return the builder
+         */
+        public Builder setDeviceCount(int deviceCount) {
+            Preconditions.checkArgument(deviceCount >= 0, "Device count must not be negative");
+            this.deviceCount = deviceCount;
+            return this;
+        }
+
+        /**
+         * Sets the advertising interval of every device.
+         *
+         * @param advertisingIntervalMillis the advertising interval in milliseconds
+         * @return the builder
+         */
+        public Builder setAdvertisingIntervalMillis(long advertisingIntervalMillis) {
+            Preconditions.checkArgument(advertisingIntervalMillis > 0, "Advertising interval must be positive");
+            this.advertisingIntervalMillis = advertisingIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Sets the maximum RSSI change between two advertisements of a device.
+         *
+         * @param rssiStep the rssi step in dBm
+         * @return the builder
+         */
+        public Builder setRssiStep(int rssiStep) {
+            Preconditions.checkArgument(rssiStep >= 0, "RSSI step must not be negative");
+            this.rssiStep = rssiStep;
+            return this;
+        }
+
+        /**
+         * Sets the probability that an advertisement carries a changed payload.
+         *
+         * @param payloadChurnProbability the probability between 0 and 1
+         * @return the builder
+         */
+        public Builder setPayloadChurnProbability(double payloadChurnProbability) {
+            Preconditions.checkArgument(payloadChurnProbability >= 0 && payloadChurnProbability <= 1,
+                                        "Probability must be between 0 and 1");
+            this.payloadChurnProbability = payloadChurnProbability;
+            return this;
+        }
+
+        /**
+         * Sets the interval after which a device advertises with a new random address.
+         *
+         * @param macRotationIntervalMillis the rotation interval in milliseconds, 0 to disable
+         * @return the builder
+         */
+        public Builder setMacRotationIntervalMillis(long macRotationIntervalMillis) {
+            Preconditions.checkArgument(macRotationIntervalMillis >= 0, "Rotation interval must not be negative");
+            this.macRotationIntervalMillis = macRotationIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Sets the length of the scan records.
+         *
+         * @param payloadLength the payload length in bytes
+         * @return the builder
+         */
+        public Builder setPayloadLength(int payloadLength) {
+            Preconditions.checkArgument(payloadLength >= PAYLOAD_HEADER_LENGTH && payloadLength <= 255 + 4,
+                                        "Payload length must be between 7 and 259");
+            this.payloadLength = payloadLength;
+            return this;
+        }
+
+        /**
+         * Sets the seed making the simulation reproducible.
+         *
+         * @param seed the seed
+         * @return the builder
+         */
+        public Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Build synthetic scan source.
+         *
+         * @return the synthetic scan source
+         */
+        public SyntheticScanSource build() {
+            return new SyntheticScanSource(this);
+        }
+    }
+}
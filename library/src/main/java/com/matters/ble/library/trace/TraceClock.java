@@ -0,0 +1,61 @@
+package com.matters.ble.library.trace;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The interface Trace clock. Advertisements are timestamped with {@link System#nanoTime()},
+ * which stops while the device sleeps, so traces are kept in elapsed realtime, which does not.
+ */
+interface TraceClock {
+
+    /**
+     * The constant SYSTEM backed by {@link SystemClock#elapsedRealtimeNanos()}, or by the
+     * milliseconds of {@link SystemClock#elapsedRealtime()} before API level 17.
+     */
+    TraceClock SYSTEM = new TraceClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+        @Override
+        public long elapsedRealtimeNanos() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                return SystemClock.elapsedRealtimeNanos();
+            }
+            return TimeUnit.MILLISECONDS.toNanos(SystemClock.elapsedRealtime());
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    };
+
+    /**
+     * Gets the time base of advertisement timestamps.
+     *
+     * @return the nanos
+     */
+    long nanoTime();
+
+    /**
+     * Gets nanoseconds since boot, including deep sleep.
+     *
+     * @return the elapsed realtime in nanoseconds
+     */
+    long elapsedRealtimeNanos();
+
+    /**
+     * Sleeps.
+     *
+     * @param nanos the nanoseconds to sleep
+     * @throws InterruptedException if interrupted while sleeping
+     */
+    void sleep(long nanos) throws InterruptedException;
+}
@@ -0,0 +1,93 @@
+package com.matters.ble.library.trace;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+
+/**
+ * Layout of trace segment files.
+ *
+ * A segment starts with a fixed header followed by fixed size records, all big endian:
+ * <pre>
+ * header  int magic, short version, short record size, short max record length, short reserved,
+ *         int segment number, long wall clock millis and long elapsed realtime nanos of the segment creation,
+ *         int record count, padding to {@link #HEADER_SIZE}
+ * record  long elapsed realtime timestamp nanos, long address, byte rssi, byte record length,
+ *         {@link #MAX_RECORD_LENGTH} bytes of record data
+ * </pre>
+ * The record count is updated after every record, so a segment cut short by a crash stays readable.
+ */
+final class TraceFormat {
+
+    static final int MAGIC = 0x424C4554;
+
+    static final short VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+
+    static final int MAX_RECORD_LENGTH = 62;
+
+    static final int RECORD_SIZE = 8 + 8 + 1 + 1 + MAX_RECORD_LENGTH;
+
+    static final int OFFSET_MAGIC = 0;
+
+    static final int OFFSET_VERSION = 4;
+
+    static final int OFFSET_RECORD_SIZE = 6;
+
+    static final int OFFSET_MAX_RECORD_LENGTH = 8;
+
+    static final int OFFSET_SEGMENT_NUMBER = 12;
+
+    static final int OFFSET_WALL_CLOCK_MILLIS = 16;
+
+    static final int OFFSET_ELAPSED_REALTIME_NANOS = 24;
+
+    static final int OFFSET_RECORD_COUNT = 32;
+
+    static final int RECORD_OFFSET_TIMESTAMP = 0;
+
+    static final int RECORD_OFFSET_ADDRESS = 8;
+
+    static final int RECORD_OFFSET_RSSI = 16;
+
+    static final int RECORD_OFFSET_LENGTH = 17;
+
+    static final int RECORD_OFFSET_DATA = 18;
+
+    static final String SEGMENT_PREFIX = "trace-";
+
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final FilenameFilter SEGMENT_FILTER = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+        }
+    };
+
+    private TraceFormat() {
+    }
+
+    static String segmentName(int segmentNumber) {
+        return String.format("%s%08d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX);
+    }
+
+    static int segmentNumber(File segment) {
+        final String name = segment.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Lists segments of the directory, oldest first.
+     */
+    static File[] listSegments(File directory) {
+        final File[] segments = directory.listFiles(SEGMENT_FILTER);
+        if (segments == null) {
+            return new File[0];
+        }
+        // names are zero padded, so the lexical order is the numeric one
+        Arrays.sort(segments);
+        return segments;
+    }
+}
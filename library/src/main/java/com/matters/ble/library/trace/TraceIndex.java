@@ -0,0 +1,288 @@
+package com.matters.ble.library.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Sparse index of a trace segment, stored next to it with the {@code .idx} extension.
+ *
+ * Records of the segment are grouped into blocks of consecutive records. The index keeps the
+ * timestamp range of every block and, for every device, the posting list of blocks holding at
+ * least one of its records. A query therefore only maps the blocks of the segment which overlap
+ * its time range and contain one of its devices.
+ * <pre>
+ * header    int magic, short version, short reserved, int record count, int block size,
+ *           int block count, int device count, int posting count, padding to {@link #HEADER_SIZE}
+ * blocks    long min timestamp, long max timestamp per block
+ * devices   long address, int first posting, int posting count per device, ordered by address
+ * postings  int block number, ordered per device
+ * </pre>
+ * An index is stale once its record count differs from the segment's, e.g. for the segment
+ * still being recorded, and is then rebuilt.
+ */
+public final class TraceIndex {
+
+    /**
+     * The minimum number of records in a block.
+     */
+    public static final int MIN_BLOCK_SIZE = 256;
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x424C4549;
+
+    private static final short VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    private static final int BLOCK_ENTRY_SIZE = 16;
+
+    private static final int DEVICE_ENTRY_SIZE = 16;
+
+    private static final int MAX_BLOCKS = 0xFFFF;
+
+    private final int recordCount;
+
+    private final int blockSize;
+
+    private final int blockCount;
+
+    private final int deviceCount;
+
+    private final ByteBuffer buffer;
+
+    private final int devicesOffset;
+
+    private final int postingsOffset;
+
+    private TraceIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+            throw new IOException("Not a trace index of a supported version");
+        }
+        this.buffer = buffer;
+        this.recordCount = buffer.getInt(8);
+        this.blockSize = buffer.getInt(12);
+        this.blockCount = buffer.getInt(16);
+        this.deviceCount = buffer.getInt(20);
+        this.devicesOffset = HEADER_SIZE + blockCount * BLOCK_ENTRY_SIZE;
+        this.postingsOffset = devicesOffset + deviceCount * DEVICE_ENTRY_SIZE;
+    }
+
+    /**
+     * Loads the index of the segment, building it first when missing or stale.
+     *
+     * @param segment the segment
+     * @return the index
+     * @throws IOException if the index cannot be read or written
+     */
+    public static TraceIndex forSegment(TraceSegment segment) throws IOException {
+        final File file = indexFile(segment.getFile());
+        if (file.isFile()) {
+            final TraceIndex index = load(file);
+            if (index.getRecordCount() == segment.getRecordCount()) {
+                return index;
+            }
+        }
+        build(segment, file);
+        return load(file);
+    }
+
+    /**
+     * Builds the index of the segment into the file.
+     *
+     * @param segment the segment
+     * @param file the index file
+     * @throws IOException if the segment cannot be read or the index written
+     */
+    public static void build(TraceSegment segment, File file) throws IOException {
+        final int recordCount = segment.getRecordCount();
+        final int blockSize = Math.max(MIN_BLOCK_SIZE, (recordCount + MAX_BLOCKS - 1) / MAX_BLOCKS);
+        final int blockCount = (recordCount + blockSize - 1) / blockSize;
+
+        final long[] minTimestamps = new long[blockCount];
+        final long[] maxTimestamps = new long[blockCount];
+        // address in the upper 48 bits, block number in the lower 16
+        final long[] keys = new long[recordCount];
+
+        for (int block = 0; block < blockCount; block++) {
+            final int from = block * blockSize;
+            final int to = Math.min(recordCount, from + blockSize);
+            segment.map(from, to);
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                final long timestamp = segment.getTimestamp(i);
+                min = Math.min(min, timestamp);
+                max = Math.max(max, timestamp);
+                keys[i] = (segment.getAddress(i) << 16) | block;
+            }
+            minTimestamps[block] = min;
+            maxTimestamps[block] = max;
+        }
+
+        // sort as unsigned so devices end up ordered by address
+        for (int i = 0; i < recordCount; i++) {
+            keys[i] ^= Long.MIN_VALUE;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < recordCount; i++) {
+            keys[i] ^= Long.MIN_VALUE;
+        }
+        int postingCount = 0;
+        int deviceCount = 0;
+        for (int i = 0; i < recordCount; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[postingCount++] = keys[i];
+                if (postingCount == 1 || (keys[postingCount - 1] >>> 16) != (keys[postingCount - 2] >>> 16)) {
+                    deviceCount++;
+                }
+            }
+        }
+
+        final int size = HEADER_SIZE + blockCount * BLOCK_ENTRY_SIZE + deviceCount * DEVICE_ENTRY_SIZE + postingCount * 4;
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(size);
+            final ByteBuffer out = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+            out.putInt(recordCount).putInt(blockSize).putInt(blockCount).putInt(deviceCount).putInt(postingCount);
+            out.position(HEADER_SIZE);
+            for (int block = 0; block < blockCount; block++) {
+                out.putLong(minTimestamps[block]).putLong(maxTimestamps[block]);
+            }
+            final int postingsStart = out.position() + deviceCount * DEVICE_ENTRY_SIZE;
+            int first = 0;
+            for (int i = 1; i <= postingCount; i++) {
+                if (i == postingCount || (keys[i] >>> 16) != (keys[first] >>> 16)) {
+                    out.putLong(keys[first] >>> 16).putInt(first).putInt(i - first);
+                    first = i;
+                }
+            }
+            out.position(postingsStart);
+            for (int i = 0; i < postingCount; i++) {
+                out.putInt((int) (keys[i] & 0xFFFF));
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Loads an index file.
+     *
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public static TraceIndex load(File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            return new TraceIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Gets the index file of the segment.
+     *
+     * @param segmentFile the segment file
+     * @return the index file
+     */
+    public static File indexFile(File segmentFile) {
+        final String name = segmentFile.getName();
+        return new File(segmentFile.getParentFile(),
+                        name.substring(0, name.length() - TraceFormat.SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    /**
+     * Gets the number of indexed records.
+     *
+     * @return the record count
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Gets the number of records in a block.
+     *
+     * @return the block size
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Gets block count.
+     *
+     * @return the block count
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Gets the number of distinct devices.
+     *
+     * @return the device count
+     */
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+
+    /**
+     * Gets the smallest timestamp of the block.
+     *
+     * @param block the block number
+     * @return the timestamp in nanoseconds
+     */
+    public long getMinTimestamp(int block) {
+        return buffer.getLong(HEADER_SIZE + block * BLOCK_ENTRY_SIZE);
+    }
+
+    /**
+     * Gets the largest timestamp of the block.
+     *
+     * @param block the block number
+     * @return the timestamp in nanoseconds
+     */
+    public long getMaxTimestamp(int block) {
+        return buffer.getLong(HEADER_SIZE + block * BLOCK_ENTRY_SIZE + 8);
+    }
+
+    /**
+     * Marks the blocks holding records of the device.
+     *
+     * @param address the packed address
+     * @param blocks the flags per block to set
+     * @return false if the device has no records in the segment
+     */
+    public boolean markBlocks(long address, boolean[] blocks) {
+        int low = 0;
+        int high = deviceCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int entry = devicesOffset + middle * DEVICE_ENTRY_SIZE;
+            final long candidate = buffer.getLong(entry);
+            if (candidate < address) {
+                low = middle + 1;
+            } else if (candidate > address) {
+                high = middle - 1;
+            } else {
+                final int first = buffer.getInt(entry + 8);
+                final int count = buffer.getInt(entry + 12);
+                for (int i = first; i < first + count; i++) {
+                    blocks[buffer.getInt(postingsOffset + i * 4)] = true;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,209 @@
+package com.matters.ble.library.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.matters.ble.library.pipeline.AdvertisementSink;
+import com.matters.ble.library.util.LongHashSet;
+import com.matters.ble.library.util.MacAddress;
+
+/**
+ * Query selecting recorded advertisements by device and time.
+ *
+ * For every segment the query loads its {@link TraceIndex}, picks the blocks overlapping the
+ * time range which hold records of the requested devices, and maps and scans only those blocks.
+ * Matches are streamed to an {@link AdvertisementSink} in recording order, with a scan record
+ * array reused between calls. Runs on a plain JVM.
+ */
+public final class TraceQuery {
+
+    private final long[] addresses;
+
+    private final LongHashSet addressSet;
+
+    private final boolean wallClock;
+
+    private final long from;
+
+    private final long to;
+
+    private TraceQuery(Builder builder) {
+        this.addresses = new long[builder.addressCount];
+        System.arraycopy(builder.addresses, 0, addresses, 0, builder.addressCount);
+        this.addressSet = new LongHashSet(Math.max(1, addresses.length));
+        for (long address : addresses) {
+            addressSet.add(address);
+        }
+        this.wallClock = builder.wallClock;
+        this.from = builder.from;
+        this.to = builder.to;
+    }
+
+    /**
+     * Streams the matching advertisements of the trace directory to the sink, oldest first.
+     *
+     * @param directory the trace directory
+     * @param sink the sink
+     * @return the number of matching advertisements
+     * @throws IOException if a segment or index cannot be read, or an index written
+     */
+    public long execute(File directory, AdvertisementSink sink) throws IOException {
+        long matches = 0;
+        for (File file : TraceFormat.listSegments(directory)) {
+            final TraceSegment segment = new TraceSegment(file);
+            try {
+                matches += execute(segment, sink);
+            } finally {
+                segment.close();
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Streams the matching advertisements of one segment to the sink.
+     *
+     * @param segment the segment
+     * @param sink the sink
+     * @return the number of matching advertisements
+     * @throws IOException if the segment or its index cannot be read, or the index written
+     */
+    public long execute(TraceSegment segment, AdvertisementSink sink) throws IOException {
+        final TraceIndex index = TraceIndex.forSegment(segment);
+        final long fromTimestamp = wallClock ? segment.toTimestampNanos(from) : from;
+        final long toTimestamp = wallClock ? segment.toTimestampNanos(to) : to;
+
+        final boolean[] blocks = new boolean[index.getBlockCount()];
+        if (addresses.length == 0) {
+            Arrays.fill(blocks, true);
+        } else {
+            boolean any = false;
+            for (long address : addresses) {
+                any |= index.markBlocks(address, blocks);
+            }
+            if (!any) {
+                return 0;
+            }
+        }
+
+        final byte[][] records = new byte[TraceFormat.MAX_RECORD_LENGTH + 1][];
+        long matches = 0;
+        for (int block = 0; block < blocks.length; block++) {
+            if (!blocks[block] || index.getMaxTimestamp(block) < fromTimestamp || index.getMinTimestamp(block) > toTimestamp) {
+                continue;
+            }
+            final int first = block * index.getBlockSize();
+            final int end = Math.min(index.getRecordCount(), first + index.getBlockSize());
+            segment.map(first, end);
+            for (int i = first; i < end; i++) {
+                final long address = segment.getAddress(i);
+                final long timestamp = segment.getTimestamp(i);
+                if ((addresses.length > 0 && !addressSet.contains(address))
+                    || timestamp < fromTimestamp || timestamp > toTimestamp) {
+                    continue;
+                }
+                // one reused array per record length
+                final int length = segment.getRecordLength(i);
+                byte[] record = records[length];
+                if (record == null) {
+                    record = new byte[length];
+                    records[length] = record;
+                }
+                segment.copyRecord(i, record);
+                sink.onAdvertisement(null, address, segment.getRssi(i), timestamp, record);
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * The type Builder.
+     */
+    public static final class Builder {
+
+        private long[] addresses = new long[16];
+
+        private int addressCount;
+
+        private boolean wallClock;
+
+        private long from = Long.MIN_VALUE;
+
+        private long to = Long.MAX_VALUE;
+
+        /**
+         * Restricts the query to the device, may be called for many devices. Without
+         * devices the query matches every device.
+         *
+         * @param address the address in the XX:XX:XX:XX:XX:XX format
+         * @return the builder
+         */
+        public Builder addAddress(String address) {
+            return addAddress(MacAddress.toLong(address));
+        }
+
+        /**
+         * Restricts the query to the device, may be called for many devices.
+         *
+         * @param address the packed address
+         * @return the builder
+         */
+        public Builder addAddress(long address) {
+            if (addressCount == addresses.length) {
+                final long[] grown = new long[addressCount * 2];
+                System.arraycopy(addresses, 0, grown, 0, addressCount);
+                addresses = grown;
+            }
+            addresses[addressCount++] = address;
+            return this;
+        }
+
+        /**
+         * Restricts the query to a range of recorded elapsed realtime timestamps.
+         *
+         * @param fromNanos the first timestamp, inclusive
+         * @param toNanos the last timestamp, inclusive
+         * @return the builder
+         */
+        public Builder setTimestampRange(long fromNanos, long toNanos) {
+            checkRange(fromNanos, toNanos);
+            this.wallClock = false;
+            this.from = fromNanos;
+            this.to = toNanos;
+            return this;
+        }
+
+        /**
+         * Restricts the query to a range of wall clock time, converted per segment with the
+         * clocks recorded in its header.
+         *
+         * @param fromMillis the first time in milliseconds since the epoch, inclusive
+         * @param toMillis the last time in milliseconds since the epoch, inclusive
+         * @return the builder
+         */
+        public Builder setWallClockRange(long fromMillis, long toMillis) {
+            checkRange(fromMillis, toMillis);
+            this.wallClock = true;
+            this.from = fromMillis;
+            this.to = toMillis;
+            return this;
+        }
+
+        /**
+         * Build trace query.
+         *
+         * @return the trace query
+         */
+        public TraceQuery build() {
+            return new TraceQuery(this);
+        }
+
+        private static void checkRange(long from, long to) {
+            if (from > to) {
+                throw new IllegalArgumentException("Range start after its end");
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.matters.ble.library.trace;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.matters.ble.library.pipeline.AdvertisementSink;
+
+/**
+ * Replays the segments of a trace directory, oldest first, into an {@link AdvertisementSink}
+ * such as {@link com.matters.ble.library.callback.RangeCallback}.
+ *
+ * Replayed advertisements carry no {@link android.bluetooth.BluetoothDevice} and their recorded
+ * timestamps. Runs on a plain JVM.
+ */
+public final class TraceReader {
+
+    /**
+     * The speed replaying advertisements as fast as the sink accepts them.
+     */
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    /**
+     * The speed replaying advertisements with their recorded timing.
+     */
+    public static final double ORIGINAL_SPEED = 1;
+
+    private final File directory;
+
+    private final TraceClock clock;
+
+    /**
+     * Instantiates a new Trace reader.
+     *
+     * @param directory the directory of the segments
+     */
+    public TraceReader(File directory) {
+        this(directory, TraceClock.SYSTEM);
+    }
+
+    /**
+     * Instantiates a new Trace reader pacing replays with the clock.
+     *
+     * @param directory the directory of the segments
+     * @param clock the clock
+     */
+    TraceReader(File directory, TraceClock clock) {
+        this.directory = directory;
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the segment files, oldest first.
+     *
+     * @return the segments
+     */
+    public File[] getSegments() {
+        return TraceFormat.listSegments(directory);
+    }
+
+    /**
+     * Replays the trace.
+     *
+     * @param sink the sink
+     * @param speed the speed relative to the recording, e.g. 10 replays ten times faster,
+     *              or {@link #AS_FAST_AS_POSSIBLE}
+     * @return the number of replayed advertisements
+     * @throws IOException if a segment cannot be read
+     * @throws InterruptedException if interrupted while waiting for the next advertisement
+     */
+    public long replay(AdvertisementSink sink, double speed) throws IOException, InterruptedException {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Speed must not be negative");
+        }
+        final byte[][] records = new byte[TraceFormat.MAX_RECORD_LENGTH + 1][];
+        long replayed = 0;
+        long firstTimestamp = 0;
+        long startedAt = 0;
+
+        for (File file : getSegments()) {
+            final TraceSegment segment = new TraceSegment(file);
+            try {
+                for (int i = 0; i < segment.getRecordCount(); i++) {
+                    final long timestamp = segment.getTimestamp(i);
+                    if (replayed == 0) {
+                        firstTimestamp = timestamp;
+                        startedAt = clock.nanoTime();
+                    } else if (speed > 0) {
+                        waitUntil(startedAt + (long) ((timestamp - firstTimestamp) / speed));
+                    }
+
+                    // records keep their original length, one reused array per length
+                    final int length = segment.getRecordLength(i);
+                    byte[] record = records[length];
+                    if (record == null) {
+                        record = new byte[length];
+                        records[length] = record;
+                    }
+                    segment.copyRecord(i, record);
+
+                    sink.onAdvertisement(null, segment.getAddress(i), segment.getRssi(i), timestamp, record);
+                    replayed++;
+                }
+            } finally {
+                segment.close();
+            }
+        }
+        return replayed;
+    }
+
+    private void waitUntil(long deadlineNanos) throws InterruptedException {
+        final long delay = deadlineNanos - clock.nanoTime();
+        if (delay > 0) {
+            clock.sleep(delay);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.matters.ble.library.trace;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.matters.ble.library.pipeline.AdvertisementSink;
+
+/**
+ * Appends every advertisement to memory-mapped trace segments.
+ *
+ * Segments are preallocated files of a fixed size holding fixed size records (see
+ * {@link TraceFormat}), so appending is a copy into the mapped buffer and does not allocate.
+ * When a segment is full the recorder rotates to a new one and deletes the oldest segments
+ * to stay within the total size budget. Records longer than {@link #MAX_RECORD_LENGTH} are
+ * truncated.
+ *
+ * Advertisement timestamps are converted from {@link System#nanoTime()} to elapsed realtime,
+ * which keeps counting while the device sleeps, so that the wall clock time of a record stays
+ * right across deep sleep, see {@link TraceSegment#toWallClockMillis(long)}.
+ *
+ * An I/O failure stops the recorder, the failure is kept for {@link #getFailure()}. Not thread
+ * safe, confined to the scan callback thread.
+ */
+public final class TraceRecorder implements AdvertisementSink, Closeable {
+
+    /**
+     * The maximum recorded length of a scan record.
+     */
+    public static final int MAX_RECORD_LENGTH = TraceFormat.MAX_RECORD_LENGTH;
+
+    /**
+     * The default segment size.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The default total size budget.
+     */
+    public static final long DEFAULT_SIZE_BUDGET = 64L * 1024 * 1024;
+
+    private final File directory;
+
+    private final TraceClock clock;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    private final Deque<File> segments = new ArrayDeque<File>();
+
+    private final byte[] padding = new byte[MAX_RECORD_LENGTH];
+
+    private MappedByteBuffer buffer;
+
+    private int segmentNumber;
+
+    private int recordCount;
+
+    private long recordedCount;
+
+    private IOException failure;
+
+    /**
+     * Instantiates a new Trace recorder continuing after the segments already in the directory.
+     *
+     * @param directory the directory of the segments
+     * @param segmentSize the size of a segment in bytes
+     * @param sizeBudget the total size of all segments in bytes
+     * @throws IOException if the directory or the first segment cannot be created
+     */
+    public TraceRecorder(File directory, int segmentSize, long sizeBudget) throws IOException {
+        this(directory, segmentSize, sizeBudget, TraceClock.SYSTEM);
+    }
+
+    /**
+     * Instantiates a new Trace recorder timestamping with the clock.
+     *
+     * @param directory the directory of the segments
+     * @param segmentSize the size of a segment in bytes
+     * @param sizeBudget the total size of all segments in bytes
+     * @param clock the clock
+     * @throws IOException if the directory or the first segment cannot be created
+     */
+    TraceRecorder(File directory, int segmentSize, long sizeBudget, TraceClock clock) throws IOException {
+        if (segmentSize < TraceFormat.HEADER_SIZE + TraceFormat.RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        if (sizeBudget < segmentSize) {
+            throw new IllegalArgumentException("Size budget smaller than a segment");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create trace directory " + directory);
+        }
+        this.directory = directory;
+        this.clock = clock;
+        this.segmentSize = segmentSize - (segmentSize - TraceFormat.HEADER_SIZE) % TraceFormat.RECORD_SIZE;
+        this.maxSegments = (int) Math.min(Integer.MAX_VALUE, sizeBudget / this.segmentSize);
+
+        for (File segment : TraceFormat.listSegments(directory)) {
+            segments.addLast(segment);
+            segmentNumber = Math.max(segmentNumber, TraceFormat.segmentNumber(segment));
+        }
+        rotate();
+    }
+
+    @Override
+    public void onAdvertisement(BluetoothDevice device, long address, int rssi, long timestampNanos, byte[] scanRecord) {
+        if (buffer == null) {
+            return;
+        }
+        if (buffer.remaining() < TraceFormat.RECORD_SIZE) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                failure = e;
+                buffer = null;
+                return;
+            }
+        }
+
+        final int length = scanRecord == null ? 0 : Math.min(scanRecord.length, MAX_RECORD_LENGTH);
+        // sampled per record, the device may have slept since the previous one
+        buffer.putLong(timestampNanos + clock.elapsedRealtimeNanos() - clock.nanoTime());
+        buffer.putLong(address);
+        buffer.put((byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, rssi)));
+        buffer.put((byte) length);
+        if (length > 0) {
+            buffer.put(scanRecord, 0, length);
+        }
+        buffer.put(padding, 0, MAX_RECORD_LENGTH - length);
+
+        buffer.putInt(TraceFormat.OFFSET_RECORD_COUNT, ++recordCount);
+        recordedCount++;
+    }
+
+    /**
+     * Gets the number of records written since the recorder was created.
+     *
+     * @return the recorded count
+     */
+    public long getRecordedCount() {
+        return recordedCount;
+    }
+
+    /**
+     * Gets the failure which stopped the recorder.
+     *
+     * @return the failure or null
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets directory.
+     *
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Flushes the current segment to the storage and stops recording.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+
+        while (segments.size() >= maxSegments) {
+            final File oldest = segments.removeFirst();
+            if (!oldest.delete() && oldest.exists()) {
+                throw new IOException("Cannot delete trace segment " + oldest);
+            }
+            TraceIndex.indexFile(oldest).delete();
+        }
+
+        final File file = new File(directory, TraceFormat.segmentName(++segmentNumber));
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(segmentSize);
+            // the mapping stays valid after the channel is closed
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } finally {
+            randomAccessFile.close();
+        }
+        segments.addLast(file);
+        recordCount = 0;
+
+        buffer.putInt(TraceFormat.OFFSET_MAGIC, TraceFormat.MAGIC);
+        buffer.putShort(TraceFormat.OFFSET_VERSION, TraceFormat.VERSION);
+        buffer.putShort(TraceFormat.OFFSET_RECORD_SIZE, (short) TraceFormat.RECORD_SIZE);
+        buffer.putShort(TraceFormat.OFFSET_MAX_RECORD_LENGTH, (short) MAX_RECORD_LENGTH);
+        buffer.putInt(TraceFormat.OFFSET_SEGMENT_NUMBER, segmentNumber);
+        buffer.putLong(TraceFormat.OFFSET_WALL_CLOCK_MILLIS, System.currentTimeMillis());
+        buffer.putLong(TraceFormat.OFFSET_ELAPSED_REALTIME_NANOS, clock.elapsedRealtimeNanos());
+        buffer.putInt(TraceFormat.OFFSET_RECORD_COUNT, 0);
+        buffer.position(TraceFormat.HEADER_SIZE);
+    }
+}
@@ -0,0 +1,213 @@
+package com.matters.ble.library.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of a single trace segment.
+ *
+ * Only the header is mapped on open; records are read through a window mapped on demand, so
+ * reading part of a segment does not touch the rest of the file.
+ */
+public final class TraceSegment implements Closeable {
+
+    private static final int WINDOW_RECORDS = 4096;
+
+    private final File file;
+
+    private final RandomAccessFile randomAccessFile;
+
+    private final FileChannel channel;
+
+    private final int segmentNumber;
+
+    private final long wallClockMillis;
+
+    private final long elapsedRealtimeNanos;
+
+    private final int recordCount;
+
+    private MappedByteBuffer window;
+
+    private int windowStart;
+
+    private int windowEnd;
+
+    /**
+     * Opens the segment.
+     *
+     * @param file the segment file
+     * @throws IOException if the file cannot be read or is not a trace segment
+     */
+    public TraceSegment(File file) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceFormat.HEADER_SIZE);
+            if (header.getInt(TraceFormat.OFFSET_MAGIC) != TraceFormat.MAGIC
+                || header.getShort(TraceFormat.OFFSET_VERSION) != TraceFormat.VERSION
+                || header.getShort(TraceFormat.OFFSET_RECORD_SIZE) != TraceFormat.RECORD_SIZE) {
+                throw new IOException("Not a trace segment of a supported version: " + file);
+            }
+            this.segmentNumber = header.getInt(TraceFormat.OFFSET_SEGMENT_NUMBER);
+            this.wallClockMillis = header.getLong(TraceFormat.OFFSET_WALL_CLOCK_MILLIS);
+            this.elapsedRealtimeNanos = header.getLong(TraceFormat.OFFSET_ELAPSED_REALTIME_NANOS);
+            final long capacity = (channel.size() - TraceFormat.HEADER_SIZE) / TraceFormat.RECORD_SIZE;
+            this.recordCount = (int) Math.min(capacity, header.getInt(TraceFormat.OFFSET_RECORD_COUNT));
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets segment number.
+     *
+     * @return the segment number
+     */
+    public int getSegmentNumber() {
+        return segmentNumber;
+    }
+
+    /**
+     * Gets record count.
+     *
+     * @return the record count
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Converts an elapsed realtime record timestamp to wall clock time.
+     *
+     * @param timestampNanos the record timestamp
+     * @return the wall clock time in milliseconds
+     */
+    public long toWallClockMillis(long timestampNanos) {
+        return wallClockMillis + (timestampNanos - elapsedRealtimeNanos) / 1000000;
+    }
+
+    /**
+     * Converts wall clock time to an elapsed realtime record timestamp.
+     *
+     * @param wallClockMillis the wall clock time in milliseconds
+     * @return the timestamp in nanoseconds
+     */
+    public long toTimestampNanos(long wallClockMillis) {
+        return elapsedRealtimeNanos + (wallClockMillis - this.wallClockMillis) * 1000000;
+    }
+
+    /**
+     * Gets timestamp of the record.
+     *
+     * @param index the record index
+     * @return the elapsed realtime timestamp in nanoseconds
+     * @throws IOException if the record cannot be mapped
+     */
+    public long getTimestamp(int index) throws IOException {
+        return window(index).getLong(offset(index) + TraceFormat.RECORD_OFFSET_TIMESTAMP);
+    }
+
+    /**
+     * Gets address of the record.
+     *
+     * @param index the record index
+     * @return the packed address
+     * @throws IOException if the record cannot be mapped
+     */
+    public long getAddress(int index) throws IOException {
+        return window(index).getLong(offset(index) + TraceFormat.RECORD_OFFSET_ADDRESS);
+    }
+
+    /**
+     * Gets rssi of the record.
+     *
+     * @param index the record index
+     * @return the rssi
+     * @throws IOException if the record cannot be mapped
+     */
+    public int getRssi(int index) throws IOException {
+        return window(index).get(offset(index) + TraceFormat.RECORD_OFFSET_RSSI);
+    }
+
+    /**
+     * Gets length of the scan record data.
+     *
+     * @param index the record index
+     * @return the record length
+     * @throws IOException if the record cannot be mapped
+     */
+    public int getRecordLength(int index) throws IOException {
+        return window(index).get(offset(index) + TraceFormat.RECORD_OFFSET_LENGTH) & 0xFF;
+    }
+
+    /**
+     * Copies the scan record data into the array.
+     *
+     * @param index the record index
+     * @param destination the array, at least {@link #getRecordLength(int)} long
+     * @return the record length
+     * @throws IOException if the record cannot be mapped
+     */
+    public int copyRecord(int index, byte[] destination) throws IOException {
+        final int length = getRecordLength(index);
+        final ByteBuffer buffer = window(index).duplicate();
+        buffer.position(offset(index) + TraceFormat.RECORD_OFFSET_DATA);
+        buffer.get(destination, 0, length);
+        return length;
+    }
+
+    /**
+     * Maps the records between the indexes, unmapping the previous window.
+     *
+     * @param fromIndex the first record index
+     * @param toIndex the record index after the last one
+     * @throws IOException if the records cannot be mapped
+     */
+    public void map(int fromIndex, int toIndex) throws IOException {
+        if (fromIndex < 0 || toIndex > recordCount || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Records " + fromIndex + "-" + toIndex + " of " + recordCount);
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY,
+                             TraceFormat.HEADER_SIZE + (long) fromIndex * TraceFormat.RECORD_SIZE,
+                             (long) (toIndex - fromIndex) * TraceFormat.RECORD_SIZE);
+        windowStart = fromIndex;
+        windowEnd = toIndex;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        randomAccessFile.close();
+    }
+
+    private ByteBuffer window(int index) throws IOException {
+        if (window == null || index < windowStart || index >= windowEnd) {
+            if (index < 0 || index >= recordCount) {
+                throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+            }
+            map(index, Math.min(recordCount, index + WINDOW_RECORDS));
+        }
+        return window;
+    }
+
+    private int offset(int index) {
+        return (index - windowStart) * TraceFormat.RECORD_SIZE;
+    }
+}
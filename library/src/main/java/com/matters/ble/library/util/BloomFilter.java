@@ -0,0 +1,76 @@
+package com.matters.ble.library.util;
+
+/**
+ * Bloom filter over primitive longs. Answers "definitely absent" or "possibly present"
+ * from a compact bit array, used as a cheap pre-check in front of an exact set.
+ */
+public final class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final long[] bits;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    /**
+     * Instantiates a new Bloom filter.
+     *
+     * @param expectedSize the expected number of elements
+     * @param falsePositiveRate the false positive rate at the expected size, between 0 and 1
+     */
+    public BloomFilter(final int expectedSize, final double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+        final int elements = Math.max(1, expectedSize);
+        final long optimalBits = (long) Math.ceil(-elements * Math.log(falsePositiveRate) / (LN2 * LN2));
+        this.bits = new long[(int) Math.max(1, (optimalBits + 63) >>> 6)];
+        this.bitCount = bits.length * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / elements * LN2));
+    }
+
+    /**
+     * Adds the value.
+     *
+     * @param value the value
+     */
+    public void put(final long value) {
+        final long hash = mix(value);
+        final long first = hash >>> 32;
+        final long second = hash & 0xFFFFFFFFL;
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = (first + i * second) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks whether the value might have been added.
+     *
+     * @param value the value
+     * @return false if the value was definitely not added
+     */
+    public boolean mightContain(final long value) {
+        final long hash = mix(value);
+        final long first = hash >>> 32;
+        final long second = hash & 0xFFFFFFFFL;
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = (first + i * second) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stafford variant 13 of the 64-bit finalizer of MurmurHash3.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,63 @@
+package com.matters.ble.library.util;
+
+/**
+ * Primitive reads from byte arrays which do not allocate.
+ */
+public final class Bytes {
+
+    private Bytes() { }
+
+    /**
+     * Reads an unsigned big endian value of up to 8 bytes.
+     *
+     * @param bytes the bytes
+     * @param offset the offset
+     * @param length the number of bytes
+     * @return the value
+     */
+    public static long readBigEndian(final byte[] bytes, final int offset, final int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Reads an unsigned little endian value of up to 8 bytes.
+     *
+     * @param bytes the bytes
+     * @param offset the offset
+     * @param length the number of bytes
+     * @return the value
+     */
+    public static long readLittleEndian(final byte[] bytes, final int offset, final int length) {
+        long value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Reads an unsigned big endian 16-bit value.
+     *
+     * @param bytes the bytes
+     * @param offset the offset
+     * @return the value
+     */
+    public static int readUInt16BigEndian(final byte[] bytes, final int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Reads an unsigned little endian 16-bit value.
+     *
+     * @param bytes the bytes
+     * @param offset the offset
+     * @return the value
+     */
+    public static int readUInt16LittleEndian(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+    }
+}
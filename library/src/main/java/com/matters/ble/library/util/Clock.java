@@ -0,0 +1,27 @@
+package com.matters.ble.library.util;
+
+import android.os.SystemClock;
+
+/**
+ * The interface Clock. Abstracts the monotonic time source so that time based
+ * components can be driven by a fake clock in tests.
+ */
+public interface Clock {
+
+    /**
+     * The constant SYSTEM backed by {@link SystemClock#elapsedRealtime()}.
+     */
+    public static final Clock SYSTEM = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    /**
+     * Gets milliseconds since boot.
+     *
+     * @return the elapsed realtime in milliseconds
+     */
+    long elapsedRealtime();
+}
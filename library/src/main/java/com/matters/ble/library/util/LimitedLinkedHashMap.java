@@ -11,6 +11,8 @@ import java.util.LinkedHashMap;
  * @param <V>  generic value parameter
  */
 public class LimitedLinkedHashMap<K, V> extends LinkedHashMap<K, V>{
+    private static final long serialVersionUID = 1L;
+
     private final int maxSize;
 
     /**
@@ -19,7 +21,17 @@ public class LimitedLinkedHashMap<K, V> extends LinkedHashMap<K, V>{
      * @param maxSize the size of
      */
     public LimitedLinkedHashMap(int maxSize){
-        super(maxSize + 1, 1, false);
+        this(maxSize, false);
+    }
+
+    /**
+     * Instantiates a new Limited linked hash map.
+     *
+     * @param maxSize the size of
+     * @param accessOrder true to evict the least recently accessed entry, false to evict the eldest inserted one
+     */
+    public LimitedLinkedHashMap(int maxSize, boolean accessOrder){
+        super(maxSize + 1, 1, accessOrder);
         this.maxSize = maxSize;
     }
 
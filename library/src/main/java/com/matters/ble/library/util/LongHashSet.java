@@ -0,0 +1,133 @@
+package com.matters.ble.library.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive longs with linear probing. Lookups do not allocate.
+ * Not thread safe for writes; safe to read from many threads once populated and published.
+ */
+public final class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] table;
+
+    private int mask;
+
+    private int size;
+
+    private boolean containsEmptyKey;
+
+    /**
+     * Instantiates a new Long hash set.
+     *
+     * @param expectedSize the expected number of elements
+     */
+    public LongHashSet(final int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Adds the value.
+     *
+     * @param value the value
+     * @return true if the value was not present
+     */
+    public boolean add(final long value) {
+        if (value == EMPTY) {
+            final boolean added = !containsEmptyKey;
+            containsEmptyKey = true;
+            if (added) {
+                size++;
+            }
+            return added;
+        }
+
+        int slot = hash(value);
+        long stored;
+        while ((stored = table[slot]) != EMPTY) {
+            if (stored == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        size++;
+
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the value is present.
+     *
+     * @param value the value
+     * @return the boolean
+     */
+    public boolean contains(final long value) {
+        if (value == EMPTY) {
+            return containsEmptyKey;
+        }
+
+        int slot = hash(value);
+        long stored;
+        while ((stored = table[slot]) != EMPTY) {
+            if (stored == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of elements.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the set is empty.
+     *
+     * @return the boolean
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void rehash(final int newTableSize) {
+        final long[] old = table;
+        allocate(newTableSize);
+        size = containsEmptyKey ? 1 : 0;
+        for (final long value : old) {
+            if (value != EMPTY) {
+                int slot = hash(value);
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+                size++;
+            }
+        }
+    }
+
+    private void allocate(final int tableSize) {
+        table = new long[tableSize];
+        Arrays.fill(table, EMPTY);
+        mask = tableSize - 1;
+    }
+
+    private int hash(final long value) {
+        final long mixed = value * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 32) & mask;
+    }
+
+    private static int tableSizeFor(final int expectedSize) {
+        return Integer.highestOneBit(Math.max(2, expectedSize * 2 - 1)) << 1;
+    }
+}
@@ -0,0 +1,84 @@
+package com.matters.ble.library.util;
+
+/**
+ * Conversions between the textual "XX:XX:XX:XX:XX:XX" Bluetooth address
+ * representation and the 48-bit address packed into a long.
+ */
+public final class MacAddress {
+
+    /**
+     * The constant INVALID. No 48-bit address can be packed into a negative long.
+     */
+    public static final long INVALID = -1L;
+
+    private static final int ADDRESS_LENGTH = 17;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private MacAddress() { }
+
+    /**
+     * Packs the textual address into a long without allocating.
+     *
+     * @param address the address in "XX:XX:XX:XX:XX:XX" format
+     * @return the packed address
+     * @throws IllegalArgumentException if the address is malformed
+     */
+    public static long toLong(final String address) {
+        if (address == null || address.length() != ADDRESS_LENGTH) {
+            throw new IllegalArgumentException("Invalid Bluetooth address: " + address);
+        }
+
+        long value = 0;
+        for (int i = 0; i < ADDRESS_LENGTH; i += 3) {
+            if (i > 0 && address.charAt(i - 1) != ':') {
+                throw new IllegalArgumentException("Invalid Bluetooth address: " + address);
+            }
+            value = (value << 8) | (digit(address, i) << 4) | digit(address, i + 1);
+        }
+        return value;
+    }
+
+    /**
+     * Packs six address bytes, most significant first, into a long.
+     *
+     * @param bytes the bytes
+     * @param offset the offset of the first address byte
+     * @return the packed address
+     */
+    public static long toLong(final byte[] bytes, final int offset) {
+        long value = 0;
+        for (int i = 0; i < 6; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Formats the packed address as "XX:XX:XX:XX:XX:XX".
+     *
+     * @param address the packed address
+     * @return the textual address
+     */
+    public static String toString(final long address) {
+        final char[] chars = new char[ADDRESS_LENGTH];
+        for (int i = 0; i < 6; i++) {
+            final int octet = (int) (address >>> (40 - 8 * i)) & 0xFF;
+            final int position = i * 3;
+            chars[position] = HEX_DIGITS[octet >>> 4];
+            chars[position + 1] = HEX_DIGITS[octet & 0x0F];
+            if (i < 5) {
+                chars[position + 2] = ':';
+            }
+        }
+        return new String(chars);
+    }
+
+    private static long digit(final String address, final int index) {
+        final int digit = Character.digit(address.charAt(index), 16);
+        if (digit < 0) {
+            throw new IllegalArgumentException("Invalid Bluetooth address: " + address);
+        }
+        return digit;
+    }
+}